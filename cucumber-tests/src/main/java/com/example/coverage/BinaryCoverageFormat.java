@@ -0,0 +1,423 @@
+package com.example.coverage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Compact, versioned binary coverage format, written by the coverage agent one scenario at
+ * a time and read back into {@link CoverageData}.
+ *
+ * <pre>
+ * file     := "CCOV" version:u8 record*
+ * record   := METHOD   string                       (defines the next method id)
+ *           | SCENARIO string                       (defines the next scenario id)
+ *           | COVERAGE scenarioId bitset
+ *           | PROFILE  scenarioId count (methodId calls selfNanos)*
+ * string   := varint(length) utf8-bytes
+ * bitset   := varint(wordCount) varlong(word)*
+ * </pre>
+ *
+ * Dictionary entries are written inline just before their first use, so the file can be
+ * appended to while a test run is in progress. A truncated record at the end of the file
+ * is the torn tail of an interrupted run and is ignored by the reader.
+ */
+public final class BinaryCoverageFormat {
+
+    public static final byte[] MAGIC = {'C', 'C', 'O', 'V'};
+    public static final int VERSION = 1;
+
+    private static final int METHOD = 1;
+    private static final int SCENARIO = 2;
+    private static final int COVERAGE = 3;
+    private static final int PROFILE = 4;
+
+    private BinaryCoverageFormat() {
+    }
+
+    /**
+     * Get the file header: magic bytes and format version
+     */
+    public static byte[] header() {
+        byte[] header = new byte[MAGIC.length + 1];
+        System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+        header[MAGIC.length] = VERSION;
+        return header;
+    }
+
+    /**
+     * Write a complete coverage data set to a file
+     */
+    public static void write(CoverageData data, Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            out.write(header());
+            Encoder encoder = new Encoder();
+            for (int s = 0; s < data.getScenarioCount(); s++) {
+                out.write(encoder.encode(data, s));
+            }
+        }
+    }
+
+    /**
+     * Read a coverage file, ignoring a torn last record
+     */
+    public static CoverageData read(Path file) throws IOException {
+        CoverageData data = new CoverageData();
+        readInto(file, data);
+        return data;
+    }
+
+    /**
+     * Merge a coverage file into a data set, matching scenarios and methods by name.
+     * Only the file's own dictionaries are held while it is read.
+     */
+    public static void readInto(Path file, CoverageData data) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            scan(in, data);
+        }
+    }
+
+    /**
+     * Cut a torn last record off a coverage file so it can be appended to again
+     * @return the number of bytes removed
+     */
+    public static long recoverTail(Path file) throws IOException {
+        long validSize;
+        try (InputStream in = Files.newInputStream(file)) {
+            validSize = scan(in, new CoverageData());
+        }
+        long size = Files.size(file);
+        if (validSize < size) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(validSize);
+            }
+            System.out.println("Recovered " + file + ": dropped " + (size - validSize)
+                    + " bytes of a torn last record");
+        }
+        return size - validSize;
+    }
+
+    /**
+     * Read records into a data set
+     * @return the end offset of the last complete record
+     */
+    private static long scan(InputStream stream, CoverageData data) throws IOException {
+        Input in = new Input(stream);
+        for (byte expected : MAGIC) {
+            if (in.readByte() != expected) {
+                throw new IOException("Not a binary coverage file");
+            }
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary coverage version " + version);
+        }
+
+        // Ids in the file are local to it; names are mapped onto the data set's dictionaries
+        // on first use, so definitions left dangling by a torn scenario add nothing
+        List<String> scenarioNames = new ArrayList<>();
+        List<String> methodNames = new ArrayList<>();
+        int[] scenarioIds = new int[0];
+        int[] methodIds = new int[0];
+        long validSize = in.position;
+        try {
+            int tag;
+            while ((tag = in.read()) >= 0) {
+                switch (tag) {
+                    case METHOD:
+                        methodNames.add(in.readString());
+                        break;
+                    case SCENARIO:
+                        scenarioNames.add(in.readString());
+                        break;
+                    case COVERAGE: {
+                        int localScenario = checkId(in.readVarInt(), scenarioNames.size());
+                        long[] words = new long[in.readVarInt()];
+                        for (int i = 0; i < words.length; i++) {
+                            words[i] = in.readVarLong();
+                        }
+                        BitSet local = BitSet.valueOf(words);
+                        scenarioIds = resolve(scenarioIds, scenarioNames, localScenario, data::scenarioId);
+                        BitSet mapped = new BitSet();
+                        for (int m = local.nextSetBit(0); m >= 0; m = local.nextSetBit(m + 1)) {
+                            methodIds = resolve(methodIds, methodNames, checkId(m, methodNames.size()), data::methodId);
+                            mapped.set(methodIds[m] - 1);
+                        }
+                        data.addCoverage(scenarioIds[localScenario] - 1, mapped);
+                        break;
+                    }
+                    case PROFILE: {
+                        int localScenario = checkId(in.readVarInt(), scenarioNames.size());
+                        int count = in.readVarInt();
+                        long[] entries = new long[count * 3];
+                        for (int i = 0; i < entries.length; i += 3) {
+                            entries[i] = checkId(in.readVarInt(), methodNames.size());
+                            entries[i + 1] = in.readVarLong();
+                            entries[i + 2] = in.readVarLong();
+                        }
+                        scenarioIds = resolve(scenarioIds, scenarioNames, localScenario, data::scenarioId);
+                        for (int i = 0; i < entries.length; i += 3) {
+                            int m = (int) entries[i];
+                            methodIds = resolve(methodIds, methodNames, m, data::methodId);
+                            data.addProfile(scenarioIds[localScenario] - 1, methodIds[m] - 1,
+                                    entries[i + 1], entries[i + 2]);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Corrupt binary coverage file: unknown record " + tag
+                                + " at offset " + validSize);
+                }
+                validSize = in.position;
+            }
+        } catch (EOFException e) {
+            // Torn last record: keep everything before it
+        }
+        return validSize;
+    }
+
+    /**
+     * Make sure a local id is mapped to a data set id; mapped ids are stored plus one
+     * so that zero means not yet mapped
+     */
+    private static int[] resolve(int[] ids, List<String> names, int localId, ToIntFunction<String> intern) {
+        if (localId >= ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(names.size(), 16));
+        }
+        if (ids[localId] == 0) {
+            ids[localId] = intern.applyAsInt(names.get(localId)) + 1;
+        }
+        return ids;
+    }
+
+    private static int checkId(int id, int count) throws IOException {
+        if (id < 0 || id >= count) {
+            throw new IOException("Corrupt binary coverage file: undefined id " + id);
+        }
+        return id;
+    }
+
+    /**
+     * Export a coverage file as CSV for humans, e.g.
+     * {@code BinaryCoverageFormat build/reports/cucumber-method-coverage.ccov coverage.csv}
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: BinaryCoverageFormat <coverage.ccov> <output.csv>");
+            System.exit(1);
+        }
+        try {
+            CoverageCsv.write(read(Paths.get(args[0])), Paths.get(args[1]));
+            System.out.println("Exported " + args[0] + " to " + args[1]);
+        } catch (IOException e) {
+            System.err.println("Error exporting coverage: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Encodes scenarios as records, keeping the dictionaries of the file being written
+     * so every string is written only once. Not thread-safe.
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> scenarioIds = new HashMap<>();
+        private final Map<String, Integer> methodIds = new HashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * Encode a scenario's coverage and profiling counters, with any new dictionary entries
+         * @param stats Profiling counters per method signature, empty if profiling is off
+         */
+        public byte[] encode(String scenario, Collection<String> methods,
+                             Map<String, ScenarioProfiler.MethodStats> stats) {
+            bytes.reset();
+            int scenarioId = defineScenario(scenario);
+            BitSet bits = new BitSet();
+            for (String method : methods) {
+                bits.set(defineMethod(method));
+            }
+            for (String method : stats.keySet()) {
+                defineMethod(method);
+            }
+            writeCoverage(scenarioId, bits);
+
+            if (!stats.isEmpty()) {
+                bytes.write(PROFILE);
+                writeVarLong(scenarioId);
+                writeVarLong(stats.size());
+                for (Map.Entry<String, ScenarioProfiler.MethodStats> entry : stats.entrySet()) {
+                    writeVarLong(methodIds.get(entry.getKey()));
+                    writeVarLong(entry.getValue().getCalls());
+                    writeVarLong(Math.max(0, entry.getValue().getSelfNanos()));
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Encode one scenario of a data set, with any new dictionary entries
+         */
+        public byte[] encode(CoverageData data, int scenario) {
+            bytes.reset();
+            int scenarioId = defineScenario(data.getScenarios().get(scenario));
+            BitSet source = data.getScenarioMethods(scenario);
+            BitSet bits = new BitSet();
+            for (int m = source.nextSetBit(0); m >= 0; m = source.nextSetBit(m + 1)) {
+                bits.set(defineMethod(data.getMethods().get(m)));
+            }
+            writeCoverage(scenarioId, bits);
+
+            if (data.hasProfile()) {
+                ByteArrayOutputStream profileBytes = new ByteArrayOutputStream();
+                int count = 0;
+                for (int m = source.nextSetBit(0); m >= 0; m = source.nextSetBit(m + 1)) {
+                    long[] counters = data.getProfile(scenario, m);
+                    if (counters != null) {
+                        writeVarLong(profileBytes, methodIds.get(data.getMethods().get(m)));
+                        writeVarLong(profileBytes, counters[0]);
+                        writeVarLong(profileBytes, Math.max(0, counters[1]));
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    bytes.write(PROFILE);
+                    writeVarLong(scenarioId);
+                    writeVarLong(count);
+                    bytes.writeBytes(profileBytes.toByteArray());
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private int defineScenario(String scenario) {
+            Integer id = scenarioIds.get(scenario);
+            if (id == null) {
+                id = scenarioIds.size();
+                scenarioIds.put(scenario, id);
+                bytes.write(SCENARIO);
+                writeString(scenario);
+            }
+            return id;
+        }
+
+        private int defineMethod(String method) {
+            Integer id = methodIds.get(method);
+            if (id == null) {
+                id = methodIds.size();
+                methodIds.put(method, id);
+                bytes.write(METHOD);
+                writeString(method);
+            }
+            return id;
+        }
+
+        private void writeCoverage(int scenarioId, BitSet bits) {
+            long[] words = bits.toLongArray();
+            bytes.write(COVERAGE);
+            writeVarLong(scenarioId);
+            writeVarLong(words.length);
+            for (long word : words) {
+                writeVarLong(word);
+            }
+        }
+
+        private void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            bytes.writeBytes(utf8);
+        }
+
+        private void writeVarLong(long value) {
+            writeVarLong(bytes, value);
+        }
+
+        private static void writeVarLong(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Buffered input that tracks its offset, for locating the last complete record
+     */
+    private static final class Input {
+        private final InputStream in;
+        private long position;
+
+        Input(InputStream in) {
+            this.in = new BufferedInputStream(in, 64 * 1024);
+        }
+
+        int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        int readByte() throws IOException {
+            int b = read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt binary coverage file: varint too long");
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt binary coverage file: value out of range");
+            }
+            return (int) value;
+        }
+
+        String readString() throws IOException {
+            byte[] utf8 = new byte[readVarInt()];
+            int offset = 0;
+            while (offset < utf8.length) {
+                int n = in.read(utf8, offset, utf8.length - offset);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                offset += n;
+            }
+            position += utf8.length;
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.coverage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Branch coverage per scenario, collected from the probe agent's probe arrays as
+ * scenarios are flushed by {@link CucumberCoverageAgent}. A scenario's branches are
+ * those of the methods it executed.
+ */
+class BranchCoverage {
+
+    // scenario -> class id -> hit probes
+    private final Map<String, Map<Integer, BitSet>> scenarioProbes = new TreeMap<>();
+
+    /**
+     * Account for the probes hit by a finished scenario; repeated scenarios are merged
+     */
+    synchronized void addScenario(String scenario, ProbeRuntime.ScenarioProbes probes) {
+        Map<Integer, BitSet> classHits = null;
+        for (int classId = 0; classId < probes.getClassCount(); classId++) {
+            boolean[] hits = probes.getHits(classId);
+            if (hits == null) {
+                continue;
+            }
+            if (classHits == null) {
+                classHits = scenarioProbes.computeIfAbsent(scenario, k -> new HashMap<>());
+            }
+            BitSet bits = classHits.computeIfAbsent(classId, k -> new BitSet());
+            for (int probe = 0; probe < hits.length; probe++) {
+                if (hits[probe]) {
+                    bits.set(probe);
+                }
+            }
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return scenarioProbes.isEmpty();
+    }
+
+    /**
+     * Write one row per branch of every method a scenario executed:
+     * {@code Scenario,Class,Method,Line,Branch,Covered}
+     */
+    synchronized void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("Scenario,Class,Method,Line,Branch,Covered\n");
+            for (Map.Entry<String, Map<Integer, BitSet>> scenario : scenarioProbes.entrySet()) {
+                for (Map.Entry<Integer, BitSet> classHits : new TreeMap<>(scenario.getValue()).entrySet()) {
+                    ProbeRuntime.ClassProbes layout = ProbeRuntime.getClassProbes(classHits.getKey());
+                    BitSet hits = classHits.getValue();
+                    BitSet executed = executedMethods(layout, hits);
+                    for (int probe = 0; probe < layout.getProbeCount(); probe++) {
+                        if (!layout.isBranch(probe) || !executed.get(layout.getMethodIndex(probe))) {
+                            continue;
+                        }
+                        String method = layout.getMethod(probe);
+                        writer.write(String.format("%s,%s,%s,%d,%s,%d\n",
+                            quote(scenario.getKey()),
+                            quote(layout.getClassName()),
+                            quote(method.substring(method.indexOf('#') + 1)),
+                            layout.getLine(probe),
+                            quote(layout.getBranch(probe)),
+                            hits.get(probe) ? 1 : 0));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Append branch totals and per-scenario branch coverage to the summary
+     */
+    synchronized void writeSummary(Writer writer) throws IOException {
+        // All branches of the instrumented classes, and the union of the scenarios' hits.
+        // A class loaded by several class loaders is counted once.
+        Map<String, BitSet> classUnion = new HashMap<>();
+        Map<String, ProbeRuntime.ClassProbes> classLayouts = new TreeMap<>();
+        for (int classId = 0; classId < ProbeRuntime.getClassCount(); classId++) {
+            ProbeRuntime.ClassProbes layout = ProbeRuntime.getClassProbes(classId);
+            if (layout == null) {
+                continue;
+            }
+            classLayouts.putIfAbsent(layout.getClassName(), layout);
+            BitSet union = classUnion.computeIfAbsent(layout.getClassName(), k -> new BitSet());
+            for (Map<Integer, BitSet> classHits : scenarioProbes.values()) {
+                BitSet hits = classHits.get(classId);
+                if (hits != null) {
+                    union.or(hits);
+                }
+            }
+        }
+        int totalBranches = 0;
+        int coveredBranches = 0;
+        for (ProbeRuntime.ClassProbes layout : classLayouts.values()) {
+            BitSet union = classUnion.get(layout.getClassName());
+            for (int probe = 0; probe < layout.getProbeCount(); probe++) {
+                if (layout.isBranch(probe)) {
+                    totalBranches++;
+                    if (union.get(probe)) {
+                        coveredBranches++;
+                    }
+                }
+            }
+        }
+
+        writer.write("\n");
+        writer.write("Branch Coverage by Scenario\n");
+        writer.write("---------------------------\n");
+        writer.write(String.format("Total Branches: %d\n", totalBranches));
+        writer.write(String.format("Branches Covered: %d (%.2f%%)\n", coveredBranches,
+            totalBranches > 0 ? (double) coveredBranches / totalBranches * 100 : 0));
+        for (Map.Entry<String, Map<Integer, BitSet>> scenario : scenarioProbes.entrySet()) {
+            int branches = 0;
+            int covered = 0;
+            for (Map.Entry<Integer, BitSet> classHits : scenario.getValue().entrySet()) {
+                ProbeRuntime.ClassProbes layout = ProbeRuntime.getClassProbes(classHits.getKey());
+                BitSet hits = classHits.getValue();
+                BitSet executed = executedMethods(layout, hits);
+                for (int probe = 0; probe < layout.getProbeCount(); probe++) {
+                    if (layout.isBranch(probe) && executed.get(layout.getMethodIndex(probe))) {
+                        branches++;
+                        if (hits.get(probe)) {
+                            covered++;
+                        }
+                    }
+                }
+            }
+            writer.write(String.format("%s: %d of %d branches\n", scenario.getKey(), covered, branches));
+        }
+    }
+
+    /**
+     * Get the indexes of the methods whose entry probe was hit
+     */
+    private static BitSet executedMethods(ProbeRuntime.ClassProbes layout, BitSet hits) {
+        BitSet executed = new BitSet();
+        for (int probe = hits.nextSetBit(0); probe >= 0; probe = hits.nextSetBit(probe + 1)) {
+            if (!layout.isBranch(probe)) {
+                executed.set(layout.getMethodIndex(probe));
+            }
+        }
+        return executed;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
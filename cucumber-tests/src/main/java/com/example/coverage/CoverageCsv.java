@@ -0,0 +1,139 @@
+package com.example.coverage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Human-readable CSV form of the coverage data:
+ * {@code Scenario,Class,Method,ParameterCount[,Calls,SelfTimeNanos]}, one row per
+ * (scenario, method) pair. The binary format is the primary output of the agent;
+ * this is its export and the fallback input for older coverage files.
+ */
+public final class CoverageCsv {
+
+    public static final String HEADER = "Scenario,Class,Method,ParameterCount";
+    public static final String PROFILE_HEADER = HEADER + ",Calls,SelfTimeNanos";
+
+    private CoverageCsv() {
+    }
+
+    /**
+     * Write the data as CSV, sorted by scenario and method
+     */
+    public static void write(CoverageData data, Path file) throws IOException {
+        List<String> methods = data.getMethods();
+        List<Integer> scenarioOrder = sortedIds(data.getScenarios());
+        List<Integer> methodOrder = sortedIds(methods);
+        int[] methodRank = new int[methods.size()];
+        for (int r = 0; r < methodOrder.size(); r++) {
+            methodRank[methodOrder.get(r)] = r;
+        }
+        boolean profiled = data.hasProfile();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write(profiled ? PROFILE_HEADER : HEADER);
+            writer.write("\n");
+            for (int s : scenarioOrder) {
+                String scenario = data.getScenarios().get(s);
+                // Re-index the scenario's methods by sort rank to visit them in order
+                BitSet bits = data.getScenarioMethods(s);
+                BitSet ranked = new BitSet(methods.size());
+                for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                    ranked.set(methodRank[m]);
+                }
+                for (int r = ranked.nextSetBit(0); r >= 0; r = ranked.nextSetBit(r + 1)) {
+                    int m = methodOrder.get(r);
+                    writer.write(formatRecord(scenario, methods.get(m)));
+                    if (profiled) {
+                        long[] counters = data.getProfile(s, m);
+                        writer.write(String.format(",%d,%d",
+                            counters != null ? counters[0] : 0,
+                            counters != null ? counters[1] : 0));
+                    }
+                    writer.write("\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Format the quoted scenario, class, method and parameter count columns of a row
+     */
+    static String formatRecord(String scenario, String methodSignature) {
+        String[] parts = methodSignature.split("#");
+        String className = parts[0];
+        String methodWithParams = parts[1];
+
+        // Count parameters
+        int paramCount = 0;
+        if (methodWithParams.contains("(") && methodWithParams.contains(")")) {
+            String paramsStr = methodWithParams.substring(
+                methodWithParams.indexOf("(") + 1,
+                methodWithParams.lastIndexOf(")")
+            );
+            if (!paramsStr.isEmpty()) {
+                paramCount = paramsStr.split(",").length;
+            }
+        }
+
+        return String.format("\"%s\",\"%s\",\"%s\",%d",
+            scenario.replace("\"", "\"\""),
+            className.replace("\"", "\"\""),
+            methodWithParams.replace("\"", "\"\""),
+            paramCount);
+    }
+
+    /**
+     * Read a coverage CSV, skipping a torn last record
+     */
+    public static CoverageData read(Path file) throws IOException {
+        CoverageData data = new CoverageData();
+        readInto(file, data);
+        return data;
+    }
+
+    /**
+     * Merge a coverage CSV into a data set, skipping a torn last record; the file is not changed
+     */
+    public static void readInto(Path file, CoverageData data) throws IOException {
+        try (MappedCsvReader reader = MappedCsvReader.openSkippingTornTail(file)) {
+            if (!reader.next()) {
+                return;
+            }
+            boolean profiled = reader.fieldCount() >= 6 && reader.field(4).equals("Calls");
+            // The reader returns the same String for a repeated class or method, with its hash cached
+            Map<String, Map<String, Integer>> methodIds = new HashMap<>();
+
+            while (reader.next()) {
+                if (reader.fieldCount() >= 3) {
+                    int scenario = data.scenarioId(reader.field(0));
+                    String className = reader.field(1);
+                    String methodName = reader.field(2);
+                    int method = methodIds.computeIfAbsent(className, k -> new HashMap<>())
+                        .computeIfAbsent(methodName, k -> data.methodId(className + "#" + methodName));
+                    data.addCoverage(scenario, method);
+                    if (profiled && reader.fieldCount() >= 6) {
+                        data.addProfile(scenario, method, reader.longField(4), reader.longField(5));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<Integer> sortedIds(List<String> names) {
+        List<Integer> ids = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            ids.add(i);
+        }
+        ids.sort(Comparator.comparing(names::get));
+        return ids;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * In-memory scenario to method coverage, shared by the coverage agent, the report
+ * generator and the analyzer. Scenario names and method signatures
+ * ("com.example.Class#method(Type, Type)") are kept once in dictionaries and each
+ * scenario holds a bitset of method ids.
+ */
+public class CoverageData {
+
+    private final Map<String, Integer> scenarioIds = new HashMap<>();
+    private final List<String> scenarios = new ArrayList<>();
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<String> methods = new ArrayList<>();
+    private final List<BitSet> scenarioMethods = new ArrayList<>();
+
+    // Optional profiling counters: scenario id -> method id -> {calls, self nanos}
+    private final Map<Integer, Map<Integer, long[]>> profile = new HashMap<>();
+
+    /**
+     * Get the id of a scenario, adding it to the dictionary if needed
+     */
+    public int scenarioId(String scenario) {
+        Integer id = scenarioIds.get(scenario);
+        if (id == null) {
+            id = scenarios.size();
+            scenarioIds.put(scenario, id);
+            scenarios.add(scenario);
+            scenarioMethods.add(new BitSet());
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of a method signature, adding it to the dictionary if needed
+     */
+    public int methodId(String methodSignature) {
+        Integer id = methodIds.get(methodSignature);
+        if (id == null) {
+            id = methods.size();
+            methodIds.put(methodSignature, id);
+            methods.add(methodSignature);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of a method signature without adding it
+     * @return the id, or -1 if no scenario covered the method
+     */
+    public int findMethodId(String methodSignature) {
+        Integer id = methodIds.get(methodSignature);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Record that a scenario executed the given methods; repeated calls for the
+     * same scenario are merged
+     */
+    public void addScenario(String scenario, Collection<String> methodSignatures) {
+        BitSet bits = scenarioMethods.get(scenarioId(scenario));
+        for (String method : methodSignatures) {
+            bits.set(methodId(method));
+        }
+    }
+
+    /**
+     * Record that a scenario executed a method
+     */
+    public void addCoverage(int scenarioId, int methodId) {
+        scenarioMethods.get(scenarioId).set(methodId);
+    }
+
+    /**
+     * Merge a bitset of method ids into a scenario
+     */
+    public void addCoverage(int scenarioId, BitSet methodIds) {
+        scenarioMethods.get(scenarioId).or(methodIds);
+    }
+
+    /**
+     * Add profiling counters for a method within a scenario
+     */
+    public void addProfile(int scenarioId, int methodId, long calls, long selfNanos) {
+        long[] counters = profile
+                .computeIfAbsent(scenarioId, k -> new HashMap<>())
+                .computeIfAbsent(methodId, k -> new long[2]);
+        counters[0] += calls;
+        counters[1] += selfNanos;
+    }
+
+    public List<String> getScenarios() {
+        return Collections.unmodifiableList(scenarios);
+    }
+
+    public List<String> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    public int getScenarioCount() {
+        return scenarios.size();
+    }
+
+    public int getMethodCount() {
+        return methods.size();
+    }
+
+    /**
+     * Get the ids of the methods executed by a scenario; the bitset must not be modified
+     */
+    public BitSet getScenarioMethods(int scenarioId) {
+        return scenarioMethods.get(scenarioId);
+    }
+
+    public boolean hasProfile() {
+        return !profile.isEmpty();
+    }
+
+    /**
+     * Get the {calls, self nanos} counters of a method within a scenario, or null if not profiled
+     */
+    public long[] getProfile(int scenarioId, int methodId) {
+        Map<Integer, long[]> methodsProfile = profile.get(scenarioId);
+        return methodsProfile != null ? methodsProfile.get(methodId) : null;
+    }
+
+    /**
+     * Get the coverage as sorted scenario to method signatures map
+     */
+    public Map<String, Set<String>> toScenarioMethodMap() {
+        Map<String, Set<String>> result = new TreeMap<>();
+        for (int s = 0; s < scenarios.size(); s++) {
+            Set<String> scenarioSet = new TreeSet<>();
+            BitSet bits = scenarioMethods.get(s);
+            for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                scenarioSet.add(methods.get(m));
+            }
+            result.put(scenarios.get(s), scenarioSet);
+        }
+        return result;
+    }
+
+    /**
+     * Load the coverage written by the agent, preferring the binary file and falling
+     * back to the CSV export
+     * @return the coverage, empty if neither file exists
+     */
+    public static CoverageData load(Path binaryFile, Path csvFile) throws IOException {
+        if (Files.exists(binaryFile)) {
+            return BinaryCoverageFormat.read(binaryFile);
+        }
+        if (Files.exists(csvFile)) {
+            return CoverageCsv.read(csvFile);
+        }
+        System.err.println("Coverage data not found: " + binaryFile + " or " + csvFile);
+        return new CoverageData();
+    }
+}
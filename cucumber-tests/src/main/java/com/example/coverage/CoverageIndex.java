@@ -0,0 +1,414 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Queryable scenario/method coverage index, built from the agent output. Coverage is
+ * held in both directions (scenario to methods and method to scenarios) as compressed
+ * bitmaps: sorted id arrays for sparse rows and bit words for dense ones, whichever is
+ * smaller, so lookups cost a few microseconds and memory follows the number of hits
+ * rather than scenarios times methods.
+ *
+ * Besides lookups it finds strictly redundant scenarios (whose methods are all covered
+ * by one other scenario) and a greedy minimal set of scenarios covering every covered
+ * method, for fast smoke runs.
+ *
+ * Usage: CoverageIndex covering &lt;method&gt; | uncovered [sourceRoot] | redundant | minimize [output]
+ * (defaults: source root ../src/main/java, output build/reports/cucumber-smoke.properties)
+ */
+public class CoverageIndex {
+
+    private static final String REPORTS_DIR = "build/reports";
+    private static final String SMOKE_FILE = REPORTS_DIR + "/cucumber-smoke.properties";
+
+    private final List<String> scenarios;
+    private final List<String> methods;
+    private final Bitmap[] scenarioMethods;
+    private final Bitmap[] methodScenarios;
+    private final Map<String, Integer> methodIds;
+
+    private List<String> redundant;
+
+    private CoverageIndex(CoverageData data) {
+        scenarios = data.getScenarios();
+        methods = data.getMethods();
+        int scenarioCount = scenarios.size();
+        int methodCount = methods.size();
+
+        // Transpose through per-method counts, so each row is allocated once at its final size
+        int[] methodHits = new int[methodCount];
+        int[][] rows = new int[scenarioCount][];
+        for (int s = 0; s < scenarioCount; s++) {
+            BitSet bits = data.getScenarioMethods(s);
+            int[] row = bits.stream().toArray();
+            rows[s] = row;
+            for (int m : row) {
+                methodHits[m]++;
+            }
+        }
+        int[][] columns = new int[methodCount][];
+        for (int m = 0; m < methodCount; m++) {
+            columns[m] = new int[methodHits[m]];
+        }
+        int[] filled = new int[methodCount];
+        scenarioMethods = new Bitmap[scenarioCount];
+        for (int s = 0; s < scenarioCount; s++) {
+            for (int m : rows[s]) {
+                columns[m][filled[m]++] = s;
+            }
+            scenarioMethods[s] = Bitmap.of(rows[s], methodCount);
+            rows[s] = null;
+        }
+        methodScenarios = new Bitmap[methodCount];
+        for (int m = 0; m < methodCount; m++) {
+            methodScenarios[m] = Bitmap.of(columns[m], scenarioCount);
+            columns[m] = null;
+        }
+
+        methodIds = new HashMap<>(methodCount * 2);
+        for (int m = 0; m < methodCount; m++) {
+            methodIds.put(methods.get(m), m);
+        }
+    }
+
+    /**
+     * Build the index from coverage data
+     */
+    public static CoverageIndex build(CoverageData data) {
+        return new CoverageIndex(data);
+    }
+
+    public int getScenarioCount() {
+        return scenarios.size();
+    }
+
+    public int getMethodCount() {
+        return methods.size();
+    }
+
+    /**
+     * Ids of the methods a scenario executed, ascending; the array must not be modified
+     */
+    int[] methodIds(int scenarioId) {
+        return scenarioMethods[scenarioId].toArray();
+    }
+
+    /**
+     * Ids of the scenarios that executed a method, ascending; the array must not be modified
+     */
+    int[] scenarioIds(int methodId) {
+        return methodScenarios[methodId].toArray();
+    }
+
+    int scenarioCount(int methodId) {
+        return methodScenarios[methodId].cardinality();
+    }
+
+    int methodCount(int scenarioId) {
+        return scenarioMethods[scenarioId].cardinality();
+    }
+
+    /**
+     * Get the scenarios that executed a method, empty if none did
+     */
+    public List<String> scenariosCovering(String methodSignature) {
+        Integer method = methodIds.get(methodSignature);
+        List<String> result = new ArrayList<>();
+        if (method != null) {
+            methodScenarios[method].forEach(s -> result.add(scenarios.get(s)));
+        }
+        return result;
+    }
+
+    /**
+     * Get the methods no scenario executed
+     * @param allMethods every known method signature, e.g. from the sources or the summary
+     */
+    public List<String> uncoveredMethods(Collection<String> allMethods) {
+        List<String> result = new ArrayList<>();
+        for (String method : allMethods) {
+            Integer id = methodIds.get(method);
+            if (id == null || methodScenarios[id].cardinality() == 0) {
+                result.add(method);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the scenarios whose methods are all executed by one other scenario as well. Of
+     * scenarios with identical coverage, all but the first are redundant.
+     */
+    public synchronized List<String> redundantScenarios() {
+        if (redundant == null) {
+            List<String> result = new ArrayList<>();
+            for (int s = 0; s < scenarios.size(); s++) {
+                if (isRedundant(s)) {
+                    result.add(scenarios.get(s));
+                }
+            }
+            redundant = result;
+        }
+        return redundant;
+    }
+
+    private boolean isRedundant(int scenario) {
+        Bitmap covered = scenarioMethods[scenario];
+        if (covered.cardinality() == 0) {
+            return scenarios.size() > 1;
+        }
+        // Only scenarios that also executed the scenario's rarest method can contain it
+        int rarest = -1;
+        for (int m : covered.toArray()) {
+            if (rarest < 0 || methodScenarios[m].cardinality() < methodScenarios[rarest].cardinality()) {
+                rarest = m;
+            }
+        }
+        for (int other : methodScenarios[rarest].toArray()) {
+            if (other == scenario) {
+                continue;
+            }
+            Bitmap candidate = scenarioMethods[other];
+            int size = candidate.cardinality();
+            if (size >= covered.cardinality() && (size > covered.cardinality() || other < scenario)
+                    && covered.isSubsetOf(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Greedily pick scenarios that together execute every covered method, each time the
+     * one adding the most methods not covered yet (ties go to the earlier scenario)
+     */
+    public List<String> minimalCover() {
+        BitSet covered = new BitSet(methods.size());
+        // Lazy greedy: a scenario's gain only shrinks, so a stale gain is an upper bound
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) ->
+            a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(a[1], b[1]));
+        for (int s = 0; s < scenarios.size(); s++) {
+            if (scenarioMethods[s].cardinality() > 0) {
+                queue.add(new long[]{scenarioMethods[s].cardinality(), s});
+            }
+        }
+
+        List<String> cover = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            long[] top = queue.poll();
+            int scenario = (int) top[1];
+            int gain = 0;
+            for (int m : scenarioMethods[scenario].toArray()) {
+                if (!covered.get(m)) {
+                    gain++;
+                }
+            }
+            if (gain == 0) {
+                continue;
+            }
+            if (!queue.isEmpty() && gain < queue.peek()[0]) {
+                top[0] = gain;
+                queue.add(top);
+                continue;
+            }
+            scenarioMethods[scenario].forEach(covered::set);
+            cover.add(scenarios.get(scenario));
+        }
+        return cover;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: CoverageIndex covering <method> | uncovered [sourceRoot] | redundant | minimize [output]");
+            return;
+        }
+        try {
+            Path reportsDir = Paths.get(REPORTS_DIR);
+            long start = System.nanoTime();
+            CoverageIndex index = build(CoverageData.load(reportsDir.resolve("cucumber-method-coverage.ccov"),
+                reportsDir.resolve("cucumber-method-coverage.csv")));
+            System.out.println(String.format("Indexed %d scenarios and %d methods in %.1f ms",
+                index.getScenarioCount(), index.getMethodCount(), (System.nanoTime() - start) / 1e6));
+
+            switch (args[0]) {
+                case "covering":
+                    index.scenariosCovering(args[1]).forEach(System.out::println);
+                    break;
+                case "uncovered":
+                    Path sourceRoot = Paths.get(args.length > 1 ? args[1] : "../src/main/java");
+                    index.uncoveredMethods(sourceMethods(sourceRoot)).forEach(System.out::println);
+                    break;
+                case "redundant":
+                    index.redundantScenarios().forEach(System.out::println);
+                    break;
+                case "minimize":
+                    List<String> cover = index.minimalCover();
+                    Path output = Paths.get(args.length > 1 ? args[1] : SMOKE_FILE);
+                    writeFilter(cover, index.getScenarioCount(), output);
+                    cover.forEach(System.out::println);
+                    System.out.println(String.format("%d of %d scenarios cover all %d covered methods; filter written to %s",
+                        cover.size(), index.getScenarioCount(), index.getMethodCount(), output));
+                    break;
+                default:
+                    System.err.println("Unknown query: " + args[0]);
+            }
+        } catch (IOException e) {
+            System.err.println("Error querying coverage index: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Every method declared in the sources under a directory, in the coverage signature format
+     */
+    static Set<String> sourceMethods(Path sourceRoot) throws IOException {
+        Set<String> result = new TreeSet<>();
+        try (Stream<Path> paths = Files.walk(sourceRoot)) {
+            for (Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".java"))::iterator) {
+                result.addAll(MethodBoundaryParser.parse(Files.readString(path)).getMethods().keySet());
+            }
+        }
+        return result;
+    }
+
+    private static void writeFilter(List<String> cover, int total, Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(TestImpactAnalysis.NAME_FILTER_PROPERTY, TestImpactAnalysis.nameFilter(cover));
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            properties.store(writer, "Smoke run: " + cover.size() + " of " + total + " scenarios covering every covered method");
+        }
+    }
+
+    /**
+     * Immutable set of ids below a bound: a sorted id array while that is smaller than one
+     * bit per possible id, otherwise a bitmap
+     */
+    static final class Bitmap {
+        private final int[] values;
+        private final long[] words;
+        private final int cardinality;
+
+        private Bitmap(int[] values, long[] words, int cardinality) {
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * @param sorted ascending ids, taken over when kept as an array
+         * @param bound all ids are below this
+         */
+        static Bitmap of(int[] sorted, int bound) {
+            // An int per id against a bit per possible id
+            if ((long) sorted.length * 32 <= bound) {
+                return new Bitmap(sorted, null, sorted.length);
+            }
+            long[] words = new long[(bound + 63) >>> 6];
+            for (int id : sorted) {
+                words[id >>> 6] |= 1L << id;
+            }
+            return new Bitmap(null, words, sorted.length);
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        boolean contains(int id) {
+            if (values != null) {
+                return Arrays.binarySearch(values, id) >= 0;
+            }
+            int word = id >>> 6;
+            return word < words.length && (words[word] & (1L << id)) != 0;
+        }
+
+        int[] toArray() {
+            if (values != null) {
+                return values;
+            }
+            int[] result = new int[cardinality];
+            int i = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    result[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return result;
+        }
+
+        void forEach(IntConsumer action) {
+            if (values != null) {
+                for (int id : values) {
+                    action.accept(id);
+                }
+                return;
+            }
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * Whether every id of this set is in the other one
+         */
+        boolean isSubsetOf(Bitmap other) {
+            if (cardinality > other.cardinality) {
+                return false;
+            }
+            if (words != null && other.words != null) {
+                for (int w = 0; w < words.length; w++) {
+                    long otherWord = w < other.words.length ? other.words[w] : 0;
+                    if ((words[w] & ~otherWord) != 0) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (values != null && other.values != null) {
+                // Merge walk over both sorted arrays
+                int j = 0;
+                for (int id : values) {
+                    while (j < other.values.length && other.values[j] < id) {
+                        j++;
+                    }
+                    if (j == other.values.length || other.values[j] != id) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            for (int id : toArray()) {
+                if (!other.contains(id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
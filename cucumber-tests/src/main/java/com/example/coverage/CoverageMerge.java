@@ -0,0 +1,108 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Merges the coverage written by sharded test JVMs (run with
+ * {@code -Dcucumber.coverage.shard=<id>}) into one coverage data set and summary, as
+ * if the suite had run in a single JVM. Shards are read one at a time straight into
+ * the merged dictionaries, and each scenario's methods are unioned as bitsets, so memory
+ * is bounded by the merged result rather than by the number of shards.
+ *
+ * Usage: CoverageMerge [shard files or directories...] (default: build/reports)
+ */
+public class CoverageMerge {
+
+    private static final String REPORTS_DIR = "build/reports";
+    private static final String SHARD_PREFIX = "cucumber-method-coverage-";
+
+    public static void main(String[] args) {
+        try {
+            List<Path> shards = findShards(args.length > 0 ? args : new String[]{REPORTS_DIR});
+            if (shards.isEmpty()) {
+                System.err.println("No coverage shards found in " + String.join(", ",
+                    args.length > 0 ? args : new String[]{REPORTS_DIR}));
+                return;
+            }
+            System.out.println("Merging " + shards.size() + " coverage shards...");
+
+            CoverageData merged = merge(shards);
+
+            Path reportsDir = Paths.get(REPORTS_DIR);
+            Files.createDirectories(reportsDir);
+            Path binary = reportsDir.resolve("cucumber-method-coverage.ccov");
+            Path csv = reportsDir.resolve("cucumber-method-coverage.csv");
+            Path summaryFile = reportsDir.resolve("cucumber-coverage-summary.txt");
+            BinaryCoverageFormat.write(merged, binary);
+            CoverageCsv.write(merged, csv);
+
+            CoverageSummary summary = new CoverageSummary();
+            summary.addCoverage(merged);
+            summary.write(summaryFile.toString(), LocalDateTime.now(), merged.hasProfile(), new BranchCoverage());
+
+            System.out.println(String.format("Merged %d scenarios and %d methods into %s, %s and %s",
+                merged.getScenarioCount(), merged.getMethodCount(), binary, csv, summaryFile));
+        } catch (IOException e) {
+            System.err.println("Error merging coverage shards: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Union coverage files into one data set; repeated scenarios are merged
+     */
+    public static CoverageData merge(List<Path> shards) throws IOException {
+        CoverageData merged = new CoverageData();
+        for (Path shard : shards) {
+            if (shard.getFileName().toString().endsWith(".csv")) {
+                CoverageCsv.readInto(shard, merged);
+            } else {
+                BinaryCoverageFormat.readInto(shard, merged);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Resolve shard files: files are taken as given, directories are searched for
+     * shard files, preferring a shard's binary file over its CSV export
+     */
+    static List<Path> findShards(String... locations) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        for (String location : locations) {
+            Path path = Paths.get(location);
+            if (!Files.isDirectory(path)) {
+                shards.add(path);
+                continue;
+            }
+
+            // shard id -> file, binary files replacing CSV exports of the same shard
+            TreeMap<String, Path> shardFiles = new TreeMap<>();
+            Set<String> binaryShards = new TreeSet<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, SHARD_PREFIX + "*.{ccov,csv}")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    String shard = name.substring(SHARD_PREFIX.length(), name.lastIndexOf('.'));
+                    if (name.endsWith(".ccov")) {
+                        binaryShards.add(shard);
+                        shardFiles.put(shard, file);
+                    } else if (!binaryShards.contains(shard)) {
+                        shardFiles.putIfAbsent(shard, file);
+                    }
+                }
+            }
+            shards.addAll(shardFiles.values());
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.coverage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Append-only writer for coverage files. Scenario records are handed over as soon as a
+ * scenario finishes and written by a background thread through a buffered file channel,
+ * so the file always holds every finished scenario and nothing needs to stay in memory.
+ *
+ * Each record is appended whole, so if the JVM dies in the middle of a write the only
+ * damage is a torn last record. Readers skip it without changing the file: for
+ * line-based CSV, {@link MappedCsvReader#openSkippingTornTail(Path)} stops at the last
+ * newline. Before appending to a file again, {@link #recoverTail(Path)} cuts the torn
+ * record off; the binary format has {@link BinaryCoverageFormat#recoverTail(Path)}.
+ */
+public class CoverageStreamWriter implements Closeable {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // Bounded so a slow disk applies back-pressure instead of growing the heap
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * Open the file and start the writer thread
+     * @param file The coverage file
+     * @param header The header, written when the file is created
+     * @param append Whether to keep an existing file's records instead of starting a new file;
+     *               a torn tail must have been recovered by the caller
+     */
+    public CoverageStreamWriter(Path file, byte[] header, boolean append) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        boolean resume = append && Files.exists(file) && Files.size(file) > 0;
+        this.channel = resume
+                ? FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        if (!resume) {
+            writeFully(ByteBuffer.wrap(header));
+        }
+
+        this.writerThread = new Thread(this::drain, "coverage-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Queue one or more complete records for writing
+     */
+    public void append(byte[] records) throws IOException {
+        if (records.length == 0) {
+            return;
+        }
+        checkFailure();
+        try {
+            queue.put(records);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queueing coverage records", e);
+        }
+    }
+
+    /**
+     * Write all queued records, stop the writer thread and close the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing coverage writer", e);
+        } finally {
+            channel.close();
+        }
+        checkFailure();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                byte[] records = queue.take();
+                if (records == END_OF_STREAM) {
+                    break;
+                }
+                if (records.length > buffer.remaining()) {
+                    flushBuffer();
+                }
+                if (records.length > buffer.capacity()) {
+                    writeFully(ByteBuffer.wrap(records));
+                } else {
+                    buffer.put(records);
+                }
+                // Hit the file as soon as we catch up, so finished scenarios survive a crash
+                if (queue.isEmpty()) {
+                    flushBuffer();
+                }
+            }
+            flushBuffer();
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("Failed to write coverage records to " + file + ": " + e.getMessage());
+            discardUntilEndOfStream();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Keep consuming after a failure until close, so producers that are already blocked
+     * on a full queue, or that queue before seeing the failure, never wait on a dead writer
+     */
+    private void discardUntilEndOfStream() {
+        try {
+            while (queue.take() != END_OF_STREAM) {
+                // Dropped: the failure is reported to the next append and to close
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Coverage writer failed", failure);
+        }
+    }
+
+    /**
+     * Apply the tail-recovery rule to a line-based coverage file: a last line without a
+     * terminating newline is a torn record from an interrupted run and is cut off.
+     * @return the number of bytes removed
+     */
+    public static long recoverTail(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long validSize = lastLineEnd(channel);
+            if (validSize < size) {
+                channel.truncate(validSize);
+                System.out.println("Recovered " + file + ": dropped " + (size - validSize)
+                        + " bytes of a torn last record");
+            }
+            return size - validSize;
+        }
+    }
+
+    /**
+     * @return the offset after the last newline of a line-based file, or 0 if it has none
+     */
+    static long lastLineEnd(FileChannel channel) throws IOException {
+        long end = channel.size();
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        while (end > 0) {
+            int length = (int) Math.min(chunk.capacity(), end);
+            chunk.clear().limit(length);
+            channel.read(chunk, end - length);
+            for (int i = length - 1; i >= 0; i--) {
+                if (chunk.get(i) == '\n') {
+                    return end - length + i + 1;
+                }
+            }
+            end -= length;
+        }
+        return 0;
+    }
+}
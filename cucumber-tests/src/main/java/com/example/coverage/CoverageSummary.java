@@ -0,0 +1,208 @@
+package com.example.coverage;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Coverage statistics maintained incrementally as scenarios are flushed by
+ * {@link CucumberCoverageAgent}, so the summary can be written without keeping
+ * the scenario records themselves in memory. Methods are dictionary-encoded and
+ * each scenario keeps only a bitset of the methods it touched.
+ */
+class CoverageSummary {
+
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<String> methods = new ArrayList<>();
+    private final Map<String, BitSet> scenarioMethods = new HashMap<>();
+    private final BitSet coveredMethods = new BitSet();
+    private final Set<String> discoveredMethods = new TreeSet<>();
+
+    // Profiling totals: name -> {calls, self nanos}
+    private final Map<String, long[]> scenarioProfile = new HashMap<>();
+    private final Map<String, long[]> methodProfile = new HashMap<>();
+    private long profiledCalls;
+    private long profiledSelfNanos;
+
+    /**
+     * Account for a finished scenario
+     * @param scenario The scenario name
+     * @param methodSignatures The methods it executed
+     * @param stats Profiling counters per method, empty if profiling is off
+     */
+    synchronized void addScenario(String scenario, Collection<String> methodSignatures,
+                                  Map<String, ScenarioProfiler.MethodStats> stats) {
+        BitSet scenarioBits = scenarioMethods.computeIfAbsent(scenario, k -> new BitSet());
+        for (String method : methodSignatures) {
+            int id = methodIds.computeIfAbsent(method, k -> {
+                methods.add(k);
+                return methods.size() - 1;
+            });
+            scenarioBits.set(id);
+            coveredMethods.set(id);
+            discoveredMethods.add(method);
+        }
+
+        for (Map.Entry<String, ScenarioProfiler.MethodStats> entry : stats.entrySet()) {
+            addProfile(scenario, entry.getKey(), entry.getValue().getCalls(), entry.getValue().getSelfNanos());
+        }
+    }
+
+    /**
+     * Account for every scenario of a coverage data set, e.g. merged from several shards
+     */
+    synchronized void addCoverage(CoverageData data) {
+        List<String> dataMethods = data.getMethods();
+        for (int s = 0; s < data.getScenarioCount(); s++) {
+            String scenario = data.getScenarios().get(s);
+            BitSet bits = data.getScenarioMethods(s);
+            List<String> scenarioMethodList = new ArrayList<>(bits.cardinality());
+            for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                scenarioMethodList.add(dataMethods.get(m));
+                long[] counters = data.getProfile(s, m);
+                if (counters != null) {
+                    addProfile(scenario, dataMethods.get(m), counters[0], counters[1]);
+                }
+            }
+            addScenario(scenario, scenarioMethodList, Map.of());
+        }
+    }
+
+    private void addProfile(String scenario, String method, long calls, long selfNanos) {
+        long[] scenarioTotal = scenarioProfile.computeIfAbsent(scenario, k -> new long[2]);
+        scenarioTotal[0] += calls;
+        scenarioTotal[1] += selfNanos;
+        long[] methodTotal = methodProfile.computeIfAbsent(method, k -> new long[2]);
+        methodTotal[0] += calls;
+        methodTotal[1] += selfNanos;
+        profiledCalls += calls;
+        profiledSelfNanos += selfNanos;
+    }
+
+    /**
+     * Account for methods executed outside of any scenario
+     */
+    synchronized void addDiscovered(Collection<String> methodSignatures) {
+        discoveredMethods.addAll(methodSignatures);
+    }
+
+    /**
+     * Write the summary report with coverage statistics
+     */
+    synchronized void write(String summaryFile, LocalDateTime startTime, boolean profiling,
+                            BranchCoverage branches) throws IOException {
+        try (FileWriter writer = new FileWriter(summaryFile)) {
+            // Calculate coverage metrics
+            int totalMethods = discoveredMethods.size();
+            int totalScenarios = scenarioMethods.size();
+            int coveredMethodCount = coveredMethods.cardinality();
+
+            // Find unique classes
+            Set<String> allClasses = new TreeSet<>();
+            for (String method : discoveredMethods) {
+                allClasses.add(method.split("#")[0]);
+            }
+
+            // Calculate coverage percentage
+            double coveragePercent = totalMethods > 0
+                ? (double) coveredMethodCount / totalMethods * 100
+                : 0;
+
+            // Write summary header
+            writer.write("Cucumber Method Coverage Summary\n");
+            writer.write("==============================\n\n");
+            writer.write(String.format("Generated: %s\n",
+                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+            writer.write(String.format("Test Run Started: %s\n",
+                startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+            writer.write("\n");
+
+            // Write coverage statistics
+            writer.write("Coverage Statistics\n");
+            writer.write("-------------------\n");
+            writer.write(String.format("Total Scenarios: %d\n", totalScenarios));
+            writer.write(String.format("Total Classes Discovered: %d\n", allClasses.size()));
+            writer.write(String.format("Total Methods Discovered: %d\n", totalMethods));
+            writer.write(String.format("Methods Covered: %d\n", coveredMethodCount));
+            writer.write(String.format("Coverage Percentage: %.2f%%\n", coveragePercent));
+            writer.write("\n");
+
+            // Print all found methods for debugging
+            writer.write("All Discovered Methods:\n");
+            for (String method : discoveredMethods) {
+                writer.write(" - " + method + "\n");
+            }
+            writer.write("\n");
+
+            // Top scenarios by method coverage
+            writer.write("Scenarios by Method Coverage\n");
+            writer.write("---------------------------\n");
+            List<Map.Entry<String, BitSet>> byCoverage = scenarioMethods.entrySet().stream()
+                .sorted((e1, e2) -> Integer.compare(e2.getValue().cardinality(), e1.getValue().cardinality()))
+                .collect(Collectors.toList());
+            for (Map.Entry<String, BitSet> entry : byCoverage) {
+                writer.write(String.format("%s: %d methods\n", entry.getKey(), entry.getValue().cardinality()));
+            }
+
+            if (!branches.isEmpty()) {
+                branches.writeSummary(writer);
+            }
+
+            if (profiling) {
+                writeProfileSummary(writer);
+            }
+        }
+    }
+
+    /**
+     * Append call counts and self-time per scenario and per method to the summary
+     */
+    private void writeProfileSummary(FileWriter writer) throws IOException {
+        writer.write("\n");
+        writer.write("Profile by Scenario (calls, self time)\n");
+        writer.write("--------------------------------------\n");
+        for (Map.Entry<String, long[]> entry : sortBySelfTime(scenarioProfile)) {
+            writer.write(String.format("%s: %d calls, %.3f ms\n",
+                entry.getKey(), entry.getValue()[0], entry.getValue()[1] / 1_000_000.0));
+        }
+        writer.write("\n");
+
+        writer.write("Profile by Method (calls, self time)\n");
+        writer.write("------------------------------------\n");
+        for (Map.Entry<String, long[]> entry : sortBySelfTime(methodProfile)) {
+            writer.write(String.format("%s: %d calls, %.3f ms\n",
+                entry.getKey(), entry.getValue()[0], entry.getValue()[1] / 1_000_000.0));
+        }
+        writer.write("\n");
+
+        // The profiler's own cost, so we can judge whether it is safe to leave on in CI
+        double overheadPerCall = ScenarioProfiler.getOverheadNanosPerCall();
+        writer.write("Profiler Overhead\n");
+        writer.write("-----------------\n");
+        writer.write(String.format("Profiled Calls: %d\n", profiledCalls));
+        writer.write(String.format("Profiled Self Time: %.3f ms\n", profiledSelfNanos / 1_000_000.0));
+        if (overheadPerCall >= 0) {
+            double overheadMillis = overheadPerCall * profiledCalls / 1_000_000.0;
+            writer.write(String.format("Overhead Per Call: %.1f ns\n", overheadPerCall));
+            writer.write(String.format("Estimated Overhead: %.3f ms (%.2f%% of profiled time)\n",
+                overheadMillis,
+                profiledSelfNanos > 0 ? overheadMillis * 1_000_000.0 / profiledSelfNanos * 100 : 0));
+        }
+    }
+
+    private static List<Map.Entry<String, long[]>> sortBySelfTime(Map<String, long[]> totals) {
+        return totals.entrySet().stream()
+            .sorted((e1, e2) -> Long.compare(e2.getValue()[1], e1.getValue()[1]))
+            .collect(Collectors.toList());
+    }
+}
@@ -1,24 +1,30 @@
 package com.example.coverage;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 
 /**
@@ -27,18 +33,51 @@ import org.aspectj.lang.reflect.MethodSignature;
 @Aspect
 public class CucumberCoverageAgent {
 
-    private static final String COVERAGE_FILE = "build/reports/cucumber-method-coverage.csv";
-    private static final String SUMMARY_FILE = "build/reports/cucumber-coverage-summary.txt";
-    
-    // Main data structure to track which methods are called in which scenarios
-    private static final Map<String, Set<String>> scenarioMethodMap = new ConcurrentHashMap<>();
-    
-    // Keep track of all discovered methods for summary reporting
-    private static final Set<String> allDiscoveredMethods = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // System property naming this JVM's shard when the suite is split across forks or machines
+    public static final String SHARD_PROPERTY = "cucumber.coverage.shard";
+
+    // Shard id appended to the report file names, null when the suite runs in a single JVM
+    private static final String SHARD = resolveShard(System.getProperty(SHARD_PROPERTY));
+
+    private static final String BINARY_COVERAGE_FILE = reportFile("cucumber-method-coverage", ".ccov");
+    private static final String COVERAGE_FILE = reportFile("cucumber-method-coverage", ".csv");
+    private static final String SUMMARY_FILE = reportFile("cucumber-coverage-summary", ".txt");
+    private static final String BRANCH_COVERAGE_FILE = reportFile("cucumber-branch-coverage", ".csv");
+    private static final String SCENARIO_PROFILE_FILE = reportFile("cucumber-scenario-profile", ".csv");
+    private static final String SCENARIO_PROFILE_REPORT = reportFile("cucumber-scenario-profile", ".txt");
     
-    // Current scenario being executed
-    private static String currentScenario = "unknown";
+    // Statistics of the scenarios flushed so far, written as the summary on save
+    private static volatile CoverageSummary summary = new CoverageSummary();
+
+    // Branch coverage of the scenarios flushed so far, only filled when running with the ProbeAgent
+    private static volatile BranchCoverage branchCoverage = new BranchCoverage();
+
+    // Background writer appending finished scenarios to the binary coverage file
+    private static CoverageStreamWriter coverageWriter;
+
+    // Dictionaries of the binary coverage file being written (guarded by the class lock)
+    private static BinaryCoverageFormat.Encoder coverageEncoder = new BinaryCoverageFormat.Encoder();
+
+    // Whether the coverage file was already created for the current run
+    private static boolean coverageFileStarted;
+
+    // Thread-confined buffers holding the scenarios each thread is still running
+    private static final Queue<CoverageBuffer> threadBuffers = new ConcurrentLinkedQueue<>();
+
+    // Bumped by initializeCoverage so threads drop buffers left over from a previous run
+    private static volatile int bufferGeneration = 0;
+
+    private static final ThreadLocal<CoverageBuffer> threadBuffer = new ThreadLocal<>();
+
+    // Scenario being executed on the current thread (null outside of a scenario)
+    private static final ThreadLocal<String> currentScenario = new ThreadLocal<>();
     
+    // Profiling mode (call counts and self-time), fixed for the lifetime of the JVM
+    private static final boolean PROFILING_ENABLED = ScenarioProfiler.isEnabled();
+
+    // Formatted signatures of profiled join points, to keep string building off the hot path
+    private static final Map<JoinPoint.StaticPart, CachedSignature> signatureCache = new ConcurrentHashMap<>();
+
     // Debug counter
     private static final AtomicInteger debugCounter = new AtomicInteger(0);
     
@@ -51,25 +90,76 @@ public class CucumberCoverageAgent {
         // Print some basic info about the environment
         System.out.println("Java version: " + System.getProperty("java.version"));
         System.out.println("AspectJ available: " + (JoinPoint.class != null));
+        if (SHARD != null) {
+            System.out.println("Coverage shard: " + SHARD);
+        }
+
+        // Drain queued records if the JVM is shut down before saveCoverageData runs
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                closeCoverageWriter();
+            } catch (IOException e) {
+                System.err.println("Failed to close coverage file: " + e.getMessage());
+            }
+        }, "coverage-writer-shutdown"));
     }
 
     /**
-     * Set the current Cucumber scenario name
+     * Turn the shard property into a file name suffix: "auto" picks a name unique to this
+     * host and process, any other value is used as given
+     * @return the shard id, or null if the suite is not sharded
+     */
+    static String resolveShard(String shard) {
+        if (StringUtils.isBlank(shard)) {
+            return null;
+        }
+        if (shard.trim().equals("auto")) {
+            String host = StringUtils.defaultIfBlank(System.getenv("HOSTNAME"), "local");
+            shard = host + "-" + ProcessHandle.current().pid();
+        }
+        return shard.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static String reportFile(String name, String extension) {
+        return "build/reports/" + name + (SHARD != null ? "-" + SHARD : "") + extension;
+    }
+
+    /**
+     * Get the shard id of this JVM's coverage files, or null if the suite is not sharded
+     */
+    public static String getShard() {
+        return SHARD;
+    }
+
+    /**
+     * Set the Cucumber scenario executing on the calling thread
      */
     public static void setCurrentScenario(String scenarioName) {
         if (StringUtils.isNotBlank(scenarioName)) {
-            System.out.println("=== Setting current scenario: " + scenarioName + " ===");
-            currentScenario = scenarioName;
-            // Create a thread-safe set for this scenario if it doesn't exist
-            scenarioMethodMap.putIfAbsent(currentScenario, Collections.newSetFromMap(new ConcurrentHashMap<>()));
+            System.out.println("=== Setting current scenario: " + scenarioName
+                    + " [" + Thread.currentThread().getName() + "] ===");
+            currentScenario.set(scenarioName);
+            ProbeRuntime.startScenario(scenarioName);
+            // Register the scenario even if it never reaches a tracked method
+            localBuffer().startScenario(scenarioName);
         }
     }
 
+    /**
+     * Detach the calling thread from its scenario so later work on a reused
+     * worker thread is not attributed to it
+     */
+    public static void clearCurrentScenario() {
+        currentScenario.remove();
+        ProbeRuntime.clearScenario();
+    }
+
     /**
      * Track all method executions in the calculator project
-     * Exclude standard Java packages and test classes to reduce noise
+     * Exclude standard Java packages and test classes to reduce noise, and the probe
+     * initializer JaCoCo adds when its agent instruments the classes first
      */
-    @Before("execution(* com.example.calculator..*(..)) && !within(com.example.coverage..*)")
+    @Before("execution(* com.example.calculator..*(..)) && !execution(* *.$jacoco*(..)) && !within(com.example.coverage..*)")
     public void trackMethodExecution(JoinPoint joinPoint) {
         try {
             MethodSignature signature = (MethodSignature) joinPoint.getSignature();
@@ -90,20 +180,60 @@ public class CucumberCoverageAgent {
                 System.out.println("DEBUG: Method tracked (" + count + "): " + methodSignature);
             }
             
-            // Add to global set of all methods
-            allDiscoveredMethods.add(methodSignature);
-            
-            // Record this method as being called during the current scenario
-            Set<String> methods = scenarioMethodMap.get(currentScenario);
-            if (methods != null) {
-                methods.add(methodSignature);
-            }
+            // Record the method in this thread's buffer, under the thread's scenario if any
+            localBuffer().record(currentScenario.get(), methodSignature);
         } catch (Exception e) {
             System.err.println("Error tracking method execution: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
+    /**
+     * Only weave in the profiling advice's work when profiling is enabled
+     */
+    @Pointcut("if()")
+    public static boolean profilingEnabled() {
+        return PROFILING_ENABLED;
+    }
+
+    /**
+     * Count calls and measure self-time of calculator methods per scenario
+     */
+    @Around("execution(* com.example.calculator..*(..)) && !execution(* *.$jacoco*(..)) && !within(com.example.coverage..*) && profilingEnabled()")
+    public Object profileMethodExecution(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = ScenarioProfiler.enter();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ScenarioProfiler.exit(currentScenario.get(), cachedMethodSignature(joinPoint), start);
+        }
+    }
+
+    /**
+     * Resolve the signature of a profiled join point, formatted as in the coverage data
+     * @return the signature, or null for proxies and static methods
+     */
+    private static String cachedMethodSignature(JoinPoint joinPoint) {
+        Object target = joinPoint.getTarget();
+        if (target == null) {
+            return null;
+        }
+        Class<?> targetClass = target.getClass();
+        CachedSignature cached = signatureCache.get(joinPoint.getStaticPart());
+        if (cached != null && cached.targetClass == targetClass) {
+            return cached.signature;
+        }
+
+        String className = targetClass.getName();
+        String signature = null;
+        if (!className.contains("$$") && !className.contains("$Proxy")) {
+            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+            signature = formatMethodSignature(className, method.getName(), method);
+        }
+        signatureCache.put(joinPoint.getStaticPart(), new CachedSignature(targetClass, signature));
+        return signature;
+    }
+
     /**
      * Format method signature in a readable way
      */
@@ -122,137 +252,158 @@ public class CucumberCoverageAgent {
     }
 
     /**
-     * Save the coverage data to CSV and summary files
+     * Get this thread's coverage buffer, registering a fresh one on first use
+     * or after the coverage was re-initialized
      */
-    public static void saveCoverageData() {
+    private static CoverageBuffer localBuffer() {
+        CoverageBuffer buffer = threadBuffer.get();
+        int generation = bufferGeneration;
+        if (buffer == null || buffer.generation != generation) {
+            buffer = new CoverageBuffer(generation);
+            threadBuffer.set(buffer);
+            threadBuffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Write the records of a finished scenario and drop it from this thread's buffer.
+     * Called from the Cucumber After hook so coverage reaches disk scenario by scenario.
+     */
+    public static void flushScenario(String scenarioName) {
+        if (StringUtils.isBlank(scenarioName)) {
+            return;
+        }
+        Set<String> methods = localBuffer().takeScenario(scenarioName);
+
+        // Methods and branches recorded by the ProbeAgent's probes, if it is loaded
+        ProbeRuntime.ScenarioProbes probes = ProbeRuntime.endScenario(scenarioName);
+        if (probes != null) {
+            if (methods == null) {
+                methods = new HashSet<>();
+            }
+            methods.addAll(probes.getCoveredMethods());
+            branchCoverage.addScenario(scenarioName, probes);
+        }
+
+        if (methods != null) {
+            writeScenario(scenarioName, methods);
+        }
+    }
+
+    /**
+     * Append a scenario's records to the coverage file and fold it into the summary
+     */
+    private static void writeScenario(String scenario, Set<String> methods) {
+        Map<String, ScenarioProfiler.MethodStats> stats = PROFILING_ENABLED
+                ? ScenarioProfiler.removeScenario(scenario)
+                : Collections.emptyMap();
         try {
-            System.out.println("=== Saving coverage data ===");
-            
-            // Create directories if they don't exist
-            Files.createDirectories(Paths.get("build/reports"));
-            
-            // Save detailed CSV data
-            saveDetailedCoverageData();
-            
-            // Save summary report
-            saveSummaryReport();
-            
-            System.out.println("Coverage data saved to " + COVERAGE_FILE + " and " + SUMMARY_FILE);
+            appendRecords(scenario, methods, stats);
         } catch (IOException e) {
-            System.err.println("Failed to write cucumber coverage data: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Failed to write coverage for scenario " + scenario + ": " + e.getMessage());
         }
+        summary.addScenario(scenario, methods, stats);
     }
-    
+
     /**
-     * Save detailed coverage data to CSV
+     * Encode and queue a scenario under one lock, so records reach the file in the
+     * order their dictionary entries were assigned
      */
-    private static void saveDetailedCoverageData() throws IOException {
-        try (FileWriter writer = new FileWriter(COVERAGE_FILE)) {
-            // Write CSV header
-            writer.write("Scenario,Class,Method,ParameterCount\n");
-            
-            // Sort for consistent output
-            Map<String, Set<String>> sortedMap = new TreeMap<>(scenarioMethodMap);
-            
-            for (Map.Entry<String, Set<String>> entry : sortedMap.entrySet()) {
-                String scenario = entry.getKey();
-                Set<String> methods = new TreeSet<>(entry.getValue());
-
-                for (String methodSignature : methods) {
-                    String[] parts = methodSignature.split("#");
-                    String className = parts[0];
-                    String methodWithParams = parts[1];
-                    
-                    // Count parameters
-                    int paramCount = 0;
-                    if (methodWithParams.contains("(") && methodWithParams.contains(")")) {
-                        String paramsStr = methodWithParams.substring(
-                            methodWithParams.indexOf("(") + 1, 
-                            methodWithParams.lastIndexOf(")")
-                        );
-                        if (!paramsStr.isEmpty()) {
-                            paramCount = paramsStr.split(",").length;
-                        }
-                    }
-                    
-                    writer.write(String.format("\"%s\",\"%s\",\"%s\",%d\n", 
-                        scenario.replace("\"", "\"\""), 
-                        className.replace("\"", "\"\""),
-                        methodWithParams.replace("\"", "\"\""),
-                        paramCount));
-                }
+    private static synchronized void appendRecords(String scenario, Set<String> methods,
+                                                   Map<String, ScenarioProfiler.MethodStats> stats) throws IOException {
+        CoverageStreamWriter writer = coverageWriter();
+        writer.append(coverageEncoder.encode(scenario, methods, stats));
+    }
+
+    /**
+     * Get the writer for the coverage file, starting the file on first use after initialization
+     */
+    private static synchronized CoverageStreamWriter coverageWriter() throws IOException {
+        if (coverageWriter == null) {
+            Path file = Paths.get(BINARY_COVERAGE_FILE);
+            if (coverageFileStarted && Files.exists(file)) {
+                // Reopening after a save keeps what was already written for this run
+                BinaryCoverageFormat.recoverTail(file);
             }
+            coverageWriter = new CoverageStreamWriter(file, BinaryCoverageFormat.header(), coverageFileStarted);
+            coverageFileStarted = true;
         }
+        return coverageWriter;
     }
-    
+
+    private static synchronized void closeCoverageWriter() throws IOException {
+        if (coverageWriter != null) {
+            try {
+                coverageWriter.close();
+            } finally {
+                coverageWriter = null;
+            }
+        }
+    }
+
+    /**
+     * Get the path of the coverage CSV exported by this agent
+     */
+    public static Path getCoverageFile() {
+        return Paths.get(COVERAGE_FILE);
+    }
+
+    /**
+     * Get the path of the binary coverage file written by this agent
+     */
+    public static Path getBinaryCoverageFile() {
+        return Paths.get(BINARY_COVERAGE_FILE);
+    }
+
     /**
-     * Save summary report with coverage statistics
+     * Get the path of the per-scenario branch coverage written when running with the ProbeAgent
      */
-    private static void saveSummaryReport() throws IOException {
-        try (FileWriter writer = new FileWriter(SUMMARY_FILE)) {
-            // Calculate coverage metrics
-            int totalMethods = allDiscoveredMethods.size();
-            int totalScenarios = scenarioMethodMap.size();
+    public static Path getBranchCoverageFile() {
+        return Paths.get(BRANCH_COVERAGE_FILE);
+    }
+
+    /**
+     * Save the coverage data to CSV and summary files
+     */
+    public static void saveCoverageData() {
+        try {
+            System.out.println("=== Saving coverage data ===");
             
-            // Count covered methods (methods executed at least once)
-            Set<String> coveredMethods = new TreeSet<>();
-            for (Set<String> methods : scenarioMethodMap.values()) {
-                coveredMethods.addAll(methods);
-            }
-            int coveredMethodCount = coveredMethods.size();
+            // Create directories if they don't exist
+            Files.createDirectories(Paths.get("build/reports"));
             
-            // Find unique classes
-            Set<String> allClasses = new TreeSet<>();
-            for (String method : allDiscoveredMethods) {
-                allClasses.add(method.split("#")[0]);
+            // Write scenarios whose After hook never ran, then finish the coverage file
+            for (CoverageBuffer buffer : threadBuffers) {
+                buffer.takeAllScenarios().forEach(CucumberCoverageAgent::writeScenario);
+                summary.addDiscovered(buffer.getDiscoveredMethods());
             }
+            summary.addDiscovered(ProbeRuntime.getUnattributedMethods());
+            coverageWriter();
+            closeCoverageWriter();
+
+            // Export the binary coverage as CSV for humans and CSV-based tools
+            CoverageCsv.write(BinaryCoverageFormat.read(getBinaryCoverageFile()), getCoverageFile());
             
-            // Calculate coverage percentage
-            double coveragePercent = totalMethods > 0 
-                ? (double)coveredMethodCount / totalMethods * 100 
-                : 0;
-            
-            // Write summary header
-            writer.write("Cucumber Method Coverage Summary\n");
-            writer.write("==============================\n\n");
-            writer.write(String.format("Generated: %s\n", 
-                LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
-            writer.write(String.format("Test Run Started: %s\n", 
-                startTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
-            writer.write("\n");
-            
-            // Write coverage statistics
-            writer.write("Coverage Statistics\n");
-            writer.write("-------------------\n");
-            writer.write(String.format("Total Scenarios: %d\n", totalScenarios));
-            writer.write(String.format("Total Classes Discovered: %d\n", allClasses.size()));
-            writer.write(String.format("Total Methods Discovered: %d\n", totalMethods));
-            writer.write(String.format("Methods Covered: %d\n", coveredMethodCount));
-            writer.write(String.format("Coverage Percentage: %.2f%%\n", coveragePercent));
-            writer.write("\n");
-            
-            // Print all found methods for debugging
-            writer.write("All Discovered Methods:\n");
-            for (String method : allDiscoveredMethods) {
-                writer.write(" - " + method + "\n");
+            if (!branchCoverage.isEmpty()) {
+                branchCoverage.write(getBranchCoverageFile());
+                System.out.println("Branch coverage saved to " + BRANCH_COVERAGE_FILE);
+            }
+
+            // Save summary report
+            summary.write(SUMMARY_FILE, startTime, PROFILING_ENABLED, branchCoverage);
+
+            if (!ScenarioResourceProfile.isEmpty()) {
+                ScenarioResourceProfile.write(Paths.get(SCENARIO_PROFILE_FILE), Paths.get(SCENARIO_PROFILE_REPORT),
+                    ScenarioResourceProfile.getBaselineFile());
+                System.out.println("Scenario resource profile saved to " + SCENARIO_PROFILE_REPORT);
             }
-            writer.write("\n");
-            
-            // Top scenarios by method coverage
-            writer.write("Scenarios by Method Coverage\n");
-            writer.write("---------------------------\n");
             
-            scenarioMethodMap.entrySet().stream()
-                .sorted((e1, e2) -> Integer.compare(e2.getValue().size(), e1.getValue().size()))
-                .forEach(entry -> {
-                    try {
-                        writer.write(String.format("%s: %d methods\n", 
-                            entry.getKey(), entry.getValue().size()));
-                    } catch (IOException e) {
-                        // Ignore
-                    }
-                });
+            System.out.println("Coverage data saved to " + BINARY_COVERAGE_FILE + ", " + COVERAGE_FILE
+                    + " and " + SUMMARY_FILE);
+        } catch (IOException e) {
+            System.err.println("Failed to write cucumber coverage data: " + e.getMessage());
+            e.printStackTrace();
         }
     }
 
@@ -260,12 +411,30 @@ public class CucumberCoverageAgent {
      * Initialize coverage tracking
      */
     public static void initializeCoverage() {
-        scenarioMethodMap.clear();
-        allDiscoveredMethods.clear();
-        currentScenario = "unknown";
+        try {
+            closeCoverageWriter();
+        } catch (IOException e) {
+            System.err.println("Failed to close previous coverage file: " + e.getMessage());
+        }
+        synchronized (CucumberCoverageAgent.class) {
+            coverageFileStarted = false;
+            coverageEncoder = new BinaryCoverageFormat.Encoder();
+        }
+        summary = new CoverageSummary();
+        branchCoverage = new BranchCoverage();
+        threadBuffers.clear();
+        bufferGeneration++;
+        currentScenario.remove();
+        ProbeRuntime.clearScenario();
         debugCounter.set(0);
+        ScenarioProfiler.reset();
+        ScenarioResourceProfile.reset();
         
         System.out.println("=== CucumberCoverageAgent initialized ===");
+        if (PROFILING_ENABLED) {
+            System.out.println(String.format("Profiling enabled, overhead per call: %.1f ns",
+                ScenarioProfiler.calibrate()));
+        }
         System.out.println("Current classpath: " + System.getProperty("java.class.path"));
         
         // Try to load a class from the main project to verify classpath
@@ -283,4 +452,60 @@ public class CucumberCoverageAgent {
             System.err.println("This indicates a classpath issue!");
         }
     }
+
+    /**
+     * Coverage recorded by a single thread. Only the owning thread writes to it;
+     * the lock makes the merge on save safe while other threads may still be running.
+     */
+    private static final class CoverageBuffer {
+        private final int generation;
+        private final Map<String, Set<String>> scenarioMethods = new HashMap<>();
+        private final Set<String> discoveredMethods = new HashSet<>();
+
+        CoverageBuffer(int generation) {
+            this.generation = generation;
+        }
+
+        synchronized void startScenario(String scenario) {
+            scenarioMethods.computeIfAbsent(scenario, k -> new HashSet<>());
+        }
+
+        synchronized void record(String scenario, String methodSignature) {
+            discoveredMethods.add(methodSignature);
+            if (scenario != null) {
+                scenarioMethods.computeIfAbsent(scenario, k -> new HashSet<>()).add(methodSignature);
+            }
+        }
+
+        /**
+         * Remove a finished scenario from the buffer
+         * @return its methods, or null if the scenario was not started on this thread
+         */
+        synchronized Set<String> takeScenario(String scenario) {
+            return scenarioMethods.remove(scenario);
+        }
+
+        synchronized Map<String, Set<String>> takeAllScenarios() {
+            Map<String, Set<String>> remaining = new TreeMap<>(scenarioMethods);
+            scenarioMethods.clear();
+            return remaining;
+        }
+
+        synchronized Set<String> getDiscoveredMethods() {
+            return new HashSet<>(discoveredMethods);
+        }
+    }
+
+    /**
+     * Signature formatted for a join point, valid while the target class stays the same
+     */
+    private static final class CachedSignature {
+        private final Class<?> targetClass;
+        private final String signature;
+
+        CachedSignature(Class<?> targetClass, String signature) {
+            this.targetClass = targetClass;
+            this.signature = signature;
+        }
+    }
 }
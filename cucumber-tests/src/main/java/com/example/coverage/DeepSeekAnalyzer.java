@@ -1,31 +1,145 @@
 package com.example.coverage;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Asks the local model for test recommendations on the classes of a source tree, with
+ * their method coverage from the Cucumber run.
+ *
+ * Every class is a separate unit of work: its own input file and model process, run on a
+ * pool of cucumber.analysis.workers processes (default 2). A unit that fails, or runs past
+ * cucumber.analysis.unitTimeoutSeconds (default 600), is retried cucumber.analysis.retries
+ * times (default 1), and progress is printed as units finish. Recommendations of the
+ * units that succeeded are merged into test-recommendations.json; model output of each
+ * unit is kept in units/ next to it.
+ *
+ * Answers are cached in cucumber.analysis.cacheDir (default: recommendation-cache in the
+ * output directory) under a hash of the class's methods, their coverage and the model
+ * version, so only classes that changed since an earlier run reach the model. The cache
+ * keeps the most recently used answers within cucumber.analysis.cacheMaxMegabytes
+ * (default 256).
+ *
+ * Sources are read by a {@link SourceScanner} on cucumber.analysis.scanThreads threads
+ * (default: all cores), and each class is written to its unit as soon as it is parsed,
+ * so method bodies of the whole tree are never held at once. Units are handed to the
+ * model workers as they are written, so the model starts on the first class while the
+ * rest of the tree is still being scanned.
+ *
+ * Model input and output are newline-delimited JSON, one class or recommendation per
+ * line, written and read with Jackson's streaming generator and parser. Output that is
+ * not strict JSON, such as a model's own answer, is read through {@link TolerantJson}.
+ *
+ * Classes are packed by a {@link PromptPacker} into prompts of up to
+ * cucumber.analysis.promptTokens tokens (default 2048; 0 for a prompt per class), so a
+ * unit holds as many classes, or parts of a large class, as fit. Parts of a class are
+ * merged into one recommendation once all of them are answered.
+ *
+ * Classes whose methods are the same but for names and literals, by their
+ * {@link MethodFingerprint}, are sent to the model once: the first of them is analyzed and
+ * its answer copied to the others, with the class, method and other names and the literals
+ * in its scenarios replaced by each class's own, as it is for a class the same as one
+ * answered from the cache. Classes without methods are always sent. Set
+ * cucumber.analysis.dedup to false to send every class.
+ *
+ * With cucumber.analysis.persistentWorkers set above 0 the model script is started that
+ * many times with --worker and kept running, and units are sent to it as requests
+ * through a {@link ModelWorkerPool} instead of starting a process each. The
+ * cucumber.analysis.workers requests in flight are spread over these processes, which
+ * are pinged every cucumber.analysis.healthCheckSeconds (default 30) and restarted if
+ * they crash or stop answering.
+ */
 public class DeepSeekAnalyzer {
 
+    static final String WORKERS_PROPERTY = "cucumber.analysis.workers";
+    static final String UNIT_TIMEOUT_PROPERTY = "cucumber.analysis.unitTimeoutSeconds";
+    static final String RETRIES_PROPERTY = "cucumber.analysis.retries";
+    static final String CACHE_DIR_PROPERTY = "cucumber.analysis.cacheDir";
+    static final String CACHE_SIZE_PROPERTY = "cucumber.analysis.cacheMaxMegabytes";
+    static final String SCAN_THREADS_PROPERTY = "cucumber.analysis.scanThreads";
+    static final String PERSISTENT_WORKERS_PROPERTY = "cucumber.analysis.persistentWorkers";
+    static final String HEALTH_CHECK_PROPERTY = "cucumber.analysis.healthCheckSeconds";
+    static final String PROMPT_TOKENS_PROPERTY = "cucumber.analysis.promptTokens";
+    static final String DEDUP_PROPERTY = "cucumber.analysis.dedup";
+
+    private static final String MODEL = "deepseek-local";
+    // Bump when the prompt or the expected answer changes, so cached answers are not reused
+    static final int PROMPT_VERSION = 1;
+    private static final Duration HEALTH_TIMEOUT = Duration.ofSeconds(10);
+    private static final JsonFactory JSON = new JsonFactory();
+
     private final Path sourceDir;
     private final Path outputDir;
     private final String deepseekPath;
+    private final int workers;
+    private final Duration unitTimeout;
+    private final int retries;
+    private final int persistentWorkers;
+    private final int promptTokens;
+    private final Duration healthInterval = Duration.ofSeconds(Long.getLong(HEALTH_CHECK_PROPERTY, 30));
+    private final int scanThreads = Integer.getInteger(SCAN_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    private final boolean dedup = Boolean.parseBoolean(System.getProperty(DEDUP_PROPERTY, "true"));
     private final ObjectMapper mapper = new ObjectMapper();
     private final Set<String> coveredMethods = new HashSet<>();
     private final Map<String, Set<String>> methodScenarioMap = new HashMap<>();
 
     public DeepSeekAnalyzer(String sourceDirectory, String outputDirectory, String deepseekModelPath) {
+        this(sourceDirectory, outputDirectory, deepseekModelPath,
+                Integer.getInteger(WORKERS_PROPERTY, 2),
+                Duration.ofSeconds(Long.getLong(UNIT_TIMEOUT_PROPERTY, 600)),
+                Integer.getInteger(RETRIES_PROPERTY, 1));
+    }
+
+    public DeepSeekAnalyzer(String sourceDirectory, String outputDirectory, String deepseekModelPath,
+                            int workers, Duration unitTimeout, int retries) {
+        this(sourceDirectory, outputDirectory, deepseekModelPath, workers, unitTimeout, retries,
+                Integer.getInteger(PERSISTENT_WORKERS_PROPERTY, 0));
+    }
+
+    /**
+     * @param persistentWorkers long-lived model processes to send the units to, or 0 to
+     *                          start a process for each unit
+     */
+    public DeepSeekAnalyzer(String sourceDirectory, String outputDirectory, String deepseekModelPath,
+                            int workers, Duration unitTimeout, int retries, int persistentWorkers) {
+        this(sourceDirectory, outputDirectory, deepseekModelPath, workers, unitTimeout, retries, persistentWorkers,
+                Integer.getInteger(PROMPT_TOKENS_PROPERTY, 2048));
+    }
+
+    /**
+     * @param promptTokens token budget of a prompt, or 0 to send every class in a prompt of its own
+     */
+    public DeepSeekAnalyzer(String sourceDirectory, String outputDirectory, String deepseekModelPath,
+                            int workers, Duration unitTimeout, int retries, int persistentWorkers, int promptTokens) {
+        if (workers < 1 || retries < 0 || persistentWorkers < 0) {
+            throw new IllegalArgumentException("Need at least one worker and no negative retries or persistent workers");
+        }
         this.sourceDir = Paths.get(sourceDirectory);
         this.outputDir = Paths.get(outputDirectory);
         this.deepseekPath = deepseekModelPath;
+        this.workers = workers;
+        this.unitTimeout = unitTimeout;
+        this.retries = retries;
+        this.persistentWorkers = persistentWorkers;
+        this.promptTokens = promptTokens;
 
         if (!Files.exists(outputDir)) {
             try {
@@ -38,44 +152,130 @@ public class DeepSeekAnalyzer {
 
     public void analyzeCode() throws IOException {
         loadCoverageData();
-        List<Path> javaFiles = collectJavaFiles();
-        List<ClassInfo> classes = extractClassInfo(javaFiles);
-        Path deepseekInput = prepareDeepSeekInput(classes);
-        Path deepseekOutput = runDeepSeekAnalysis(deepseekInput);
-        Map<String, TestRecommendation> recommendations = processDeepSeekOutput(deepseekOutput);
-        generateRecommendationReport(recommendations);
-    }
+        Path unitDir = Files.createDirectories(outputDir.resolve("units"));
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(unitDir)) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+        RecommendationCache cache = new RecommendationCache(
+                Paths.get(System.getProperty(CACHE_DIR_PROPERTY, outputDir.resolve("recommendation-cache").toString())),
+                Long.getLong(CACHE_SIZE_PROPERTY, 256) * 1_000_000);
+        String modelVersion = modelVersion();
 
-    private List<Path> collectJavaFiles() throws IOException {
-        List<Path> javaFiles = new ArrayList<>();
-        Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                if (file.toString().endsWith(".java")) {
-                    javaFiles.add(file);
+        // Classes arrive from the scanner as they are parsed and are not kept: a cached
+        // answer is merged, a class the same as one seen before waits for its answer, and
+        // anything else is packed into prompts, each started on a worker as soon as it is full
+        Map<String, TestRecommendation> recommendations = new TreeMap<>();
+        Map<Path, ClassProgress> progress = new HashMap<>();
+        Map<Long, ClassGroup> groups = new HashMap<>();
+        int[] duplicates = new int[1];
+        List<String> failed = new ArrayList<>();
+        PromptPacker packer = new PromptPacker(promptTokens);
+        long start = System.nanoTime();
+        long classCount;
+        int unitCount;
+        ModelWorkerPool modelWorkers = persistentWorkers > 0
+                ? new ModelWorkerPool(List.of("bash", deepseekPath, "--model", MODEL, "--worker"), persistentWorkers,
+                        unitDir, healthInterval, HEALTH_TIMEOUT)
+                : null;
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            CompletionService<UnitResult> completion = new ExecutorCompletionService<>(pool);
+            List<AnalysisUnit> submitted = new ArrayList<>();
+            SourceScanner.Sink<PromptPacker.Prompt> submit = prompt -> {
+                AnalysisUnit unit = prepareUnit(prompt, unitDir);
+                completion.submit(() -> analyzeUnit(unit, modelWorkers));
+                submitted.add(unit);
+            };
+            // The whole project in one file, for running the model script by hand
+            try (JsonGenerator allClasses = JSON.createGenerator(
+                    Files.newBufferedWriter(outputDir.resolve("deepseek-input.ndjson")))) {
+                classCount = SourceScanner.scan(sourceDir, scanThreads, this::extractClassInfo, classInfo -> {
+                    writeClass(allClasses, classInfo);
+                    String key = RecommendationCache.key(modelVersion, classInfo);
+                    String className = classInfo.getClassName();
+                    // A class without methods says nothing about what another one does
+                    ClassGroup group = dedup && !classInfo.getMethods().isEmpty()
+                            ? groups.computeIfAbsent(MethodFingerprint.ofMethods(classInfo.getMethods()),
+                                    fingerprint -> new ClassGroup())
+                            : new ClassGroup();
+                    Map<String, TestRecommendation> cached = cachedRecommendations(cache, key);
+                    if (cached != null) {
+                        recommendations.putAll(cached);
+                        if (group.names == null && cached.containsKey(className)) {
+                            group.names = MethodFingerprint.names(className, classInfo.getMethods());
+                            group.answer = cached.get(className);
+                        }
+                    } else if (group.names != null) {
+                        duplicates[0]++;
+                        ClassProgress member = new ClassProgress(className, key);
+                        member.renames = group.names.renamesTo(MethodFingerprint.names(className, classInfo.getMethods()));
+                        if (group.answer != null) {
+                            TestRecommendation copy = group.copyFor(member);
+                            recommendations.put(className, copy);
+                            cacheAnswer(cache, unitDir, key, copy);
+                        } else {
+                            group.waiting.add(member);
+                        }
+                    } else {
+                        if (dedup) {
+                            group.names = MethodFingerprint.names(className, classInfo.getMethods());
+                        }
+                        ClassProgress classProgress = new ClassProgress(className, key);
+                        classProgress.group = group;
+                        progress.put(classInfo.getFilePath(), classProgress);
+                        for (PromptPacker.Prompt prompt : packer.add(classInfo, key)) {
+                            submit.accept(prompt);
+                        }
+                    }
+                });
+                PromptPacker.Prompt last = packer.finish();
+                if (last != null) {
+                    submit.accept(last);
                 }
-                return FileVisitResult.CONTINUE;
             }
-        });
-        return javaFiles;
+            unitCount = submitted.size();
+            System.out.printf("Scanned %d classes in %.1fs with %d threads; analyzing %d in %d prompt(s) of at most "
+                    + "%d tokens with %d model workers, %d answered from the cache, %d the same as another class%n",
+                    classCount, (System.nanoTime() - start) / 1e9, scanThreads, progress.size(), unitCount, promptTokens,
+                    workers, cache.getHits(), duplicates[0]);
+            collectResults(completion, unitCount, progress, cache, unitDir, recommendations, failed);
+        } finally {
+            // Interrupts workers still waiting, which kill their processes
+            pool.shutdownNow();
+            if (modelWorkers != null) {
+                modelWorkers.close();
+            }
+        }
+        System.out.printf("Analyzed %d classes in %d model call(s) in %.1fs, %d failed; %d answer(s) copied to "
+                + "classes with the same methods%n", progress.size(), unitCount, (System.nanoTime() - start) / 1e9,
+                failed.size(), duplicates[0]);
+        if (modelWorkers != null) {
+            System.out.printf("%d persistent model worker(s), %d restart(s)%n", persistentWorkers,
+                    modelWorkers.getRestarts());
+        }
+
+        System.out.println(cache.report(cache.evict()));
+        generateRecommendationReport(recommendations);
+        if (!failed.isEmpty()) {
+            throw new IOException("Analysis failed for " + failed.size() + " of " + classCount
+                    + " classes: " + String.join(", ", failed));
+        }
     }
 
     private void loadCoverageData() throws IOException {
-        Path coverageFile = Paths.get("build/reports/cucumber-method-coverage.csv");
-        if (!Files.exists(coverageFile)) return;
-        try (BufferedReader reader = Files.newBufferedReader(coverageFile)) {
-            reader.readLine(); // skip header
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 3) {
-                    String scenario = parts[0].replace("\"", "").trim();
-                    String className = parts[1].replace("\"", "").trim();
-                    String method = parts[2].replace("\"", "").trim();
-                    String methodKey = className + "#" + method;
-                    coveredMethods.add(methodKey);
-                    methodScenarioMap.computeIfAbsent(methodKey, k -> new HashSet<>()).add(scenario);
-                }
+        CoverageData data = CoverageData.load(
+                Paths.get("build/reports/cucumber-method-coverage.ccov"),
+                Paths.get("build/reports/cucumber-method-coverage.csv"));
+        List<String> methods = data.getMethods();
+        for (int s = 0; s < data.getScenarioCount(); s++) {
+            String scenario = data.getScenarios().get(s);
+            BitSet bits = data.getScenarioMethods(s);
+            for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                String methodKey = methods.get(m);
+                coveredMethods.add(methodKey);
+                methodScenarioMap.computeIfAbsent(methodKey, k -> new HashSet<>()).add(scenario);
             }
         }
     }
@@ -85,120 +285,323 @@ public class DeepSeekAnalyzer {
         return fileName.substring(0, fileName.lastIndexOf("."));
     }
 
-    private List<ClassInfo> extractClassInfo(List<Path> javaFiles) throws IOException {
-        List<ClassInfo> classes = new ArrayList<>();
-        for (Path file : javaFiles) {
-            String content = Files.readString(file);
-            String className = extractClassName(file);
-            List<MethodInfo> methods = extractMethodsWithBodies(content, className);
-            classes.add(new ClassInfo(className, file, methods));
-        }
-        return classes;
+    /**
+     * Called on the scanner's threads, while the file's characters are valid
+     */
+    private ClassInfo extractClassInfo(Path file, CharSequence content) {
+        return new ClassInfo(extractClassName(file), file, extractMethodsWithBodies(content));
     }
 
-    private List<MethodInfo> extractMethodsWithBodies(String content, String className) {
+    private List<MethodInfo> extractMethodsWithBodies(CharSequence content) {
         List<MethodInfo> methods = new ArrayList<>();
-        String[] lines = content.split("\n");
-        StringBuilder methodBuilder = new StringBuilder();
-        boolean inMethod = false;
-        String signature = null;
-
-        for (String line : lines) {
-            line = line.trim();
-            if ((line.startsWith("public") || line.startsWith("private") || line.startsWith("protected")) &&
-                    line.contains("(") && line.contains(")") && line.contains("{") &&
-                    !line.contains("class") && !line.contains("interface")) {
-                inMethod = true;
-                methodBuilder.setLength(0);
-                methodBuilder.append(line);
-                signature = line.substring(0, line.indexOf('(')).trim();
-            } else if (inMethod) {
-                methodBuilder.append("\n").append(line);
-                if (line.contains("}")) {
-                    inMethod = false;
-                    String methodName = signature.substring(signature.lastIndexOf(" ") + 1);
-                    String fullSig = className + "#" + methodName;
-                    boolean isCovered = coveredMethods.contains(fullSig);
-                    List<String> scenarios = new ArrayList<>(methodScenarioMap.getOrDefault(fullSig, Collections.emptySet()));
-                    methods.add(new MethodInfo(methodName, signature, methodBuilder.toString(), isCovered, scenarios));
+        for (MethodBoundaryParser.MethodBoundary method : MethodBoundaryParser.findMethods(content)) {
+            // Coverage is recorded under the full signature, e.g. com.example.Calculator#perform(Operation, double)
+            String key = method.getSignature();
+            String declaration = content.subSequence(method.getStart(), method.getBodyStart()).toString()
+                    .trim().replaceAll("\\s+", " ");
+            List<String> scenarios = new ArrayList<>(methodScenarioMap.getOrDefault(key, Collections.emptySet()));
+            methods.add(new MethodInfo(method.getName(), declaration, content.subSequence(method.getStart(), method.getEnd()).toString(),
+                    coveredMethods.contains(key), scenarios));
+        }
+        return methods;
+    }
+
+    /**
+     * Write a class as one line of newline-delimited JSON: its name, file and methods,
+     * with their signature, body, coverage and covering scenarios
+     */
+    static void writeClass(JsonGenerator json, ClassInfo classInfo) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("className", classInfo.getClassName());
+        json.writeStringField("filePath", classInfo.getFilePath().toString());
+        json.writeArrayFieldStart("methods");
+        for (MethodInfo method : classInfo.getMethods()) {
+            json.writeStartObject();
+            json.writeStringField("name", method.name);
+            json.writeStringField("signature", method.signature);
+            json.writeStringField("body", method.body);
+            json.writeBooleanField("isCovered", method.isCovered);
+            json.writeArrayFieldStart("coveredInScenarios");
+            for (String s : method.coveredInScenarios) json.writeString(s);
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private AnalysisUnit prepareUnit(PromptPacker.Prompt prompt, Path unitDir) throws IOException {
+        // Named after the files too, as classes of different packages can share a name
+        List<PromptPacker.Part> parts = prompt.getParts();
+        StringJoiner files = new StringJoiner("\n");
+        for (PromptPacker.Part part : parts) files.add(part.classInfo.getFilePath().toString());
+        String name = String.format("%s-%08x", parts.get(0).classInfo.getClassName(), files.toString().hashCode());
+        Path input = unitDir.resolve(name + "-input.ndjson");
+        try (JsonGenerator json = JSON.createGenerator(Files.newBufferedWriter(input))) {
+            for (PromptPacker.Part part : parts) {
+                writeClass(json, part.classInfo);
+            }
+        }
+        return new AnalysisUnit(parts, input, unitDir.resolve(name + "-output.ndjson"), unitDir.resolve(name + ".log"));
+    }
+
+    /**
+     * Merge the results of the units as they finish. A class split over several prompts
+     * is done once all of its parts are answered, and failed if any of them failed;
+     * answers of classes that are done are cached.
+     * @param failed receives the classes that still failed after their retries
+     */
+    private void collectResults(CompletionService<UnitResult> completion, int unitCount, Map<Path, ClassProgress> progress,
+                                RecommendationCache cache, Path unitDir, Map<String, TestRecommendation> recommendations,
+                                List<String> failed) throws IOException {
+        try {
+            for (int done = 1; done <= unitCount; done++) {
+                UnitResult result = completion.take().get();
+                AnalysisUnit unit = result.unit;
+                if (result.error == null) {
+                    System.out.printf("[%d/%d] %s: %d recommendation(s) in %.1fs%n", done, unitCount,
+                            unit.describe(), result.recommendations.size(), result.nanos / 1e9);
+                } else {
+                    System.out.printf("[%d/%d] %s FAILED after %d attempt(s): %s (see %s)%n", done, unitCount,
+                            unit.describe(), retries + 1, result.error, unit.log);
+                }
+                for (PromptPacker.Part part : unit.parts) {
+                    ClassProgress classProgress = progress.get(part.classInfo.getFilePath());
+                    if (result.error == null) {
+                        classProgress.answer(result.recommendations.get(classProgress.className));
+                    } else {
+                        classProgress.failed = true;
+                    }
+                    if (++classProgress.partsDone < part.getPartCount()) {
+                        continue;
+                    }
+                    ClassGroup group = classProgress.group;
+                    if (classProgress.failed) {
+                        failed.add(classProgress.className);
+                        group.waiting.forEach(waiting -> failed.add(waiting.className));
+                    } else {
+                        recommendations.put(classProgress.className, classProgress.recommendation);
+                        cacheAnswer(cache, unitDir, classProgress.key, classProgress.recommendation);
+                        group.answer = classProgress.recommendation;
+                        for (ClassProgress waiting : group.waiting) {
+                            TestRecommendation copy = group.copyFor(waiting);
+                            recommendations.put(waiting.className, copy);
+                            cacheAnswer(cache, unitDir, waiting.key, copy);
+                        }
+                    }
+                    group.waiting.clear();
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("DeepSeek analysis interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("DeepSeek analysis failed", e.getCause());
         }
+    }
 
-        return methods;
+    private static void cacheAnswer(RecommendationCache cache, Path unitDir, String key, TestRecommendation answer)
+            throws IOException {
+        Path file = unitDir.resolve(answer.getClassName() + "-" + key.substring(0, 8) + "-answer.ndjson");
+        try (JsonGenerator json = JSON.createGenerator(Files.newBufferedWriter(file))) {
+            writeRecommendation(json, answer);
+        }
+        cache.put(key, file);
     }
 
-    private Path prepareDeepSeekInput(List<ClassInfo> classes) throws IOException {
-        Path inputFile = outputDir.resolve("deepseek-input.json");
-        ObjectNode root = mapper.createObjectNode();
-        ArrayNode classesNode = root.putArray("classes");
-
-        for (ClassInfo classInfo : classes) {
-            ObjectNode classNode = classesNode.addObject();
-            classNode.put("className", classInfo.getClassName());
-            classNode.put("filePath", classInfo.getFilePath().toString());
-            ArrayNode methodsNode = classNode.putArray("methods");
-            for (MethodInfo method : classInfo.getMethods()) {
-                ObjectNode methodNode = methodsNode.addObject();
-                methodNode.put("name", method.name);
-                methodNode.put("signature", method.signature);
-                methodNode.put("body", method.body);
-                methodNode.put("isCovered", method.isCovered);
-                ArrayNode scenariosNode = methodNode.putArray("coveredInScenarios");
-                for (String s : method.coveredInScenarios) scenariosNode.add(s);
-            }
+    /**
+     * @return the cached answer for a class, or null if it has to be sent to the model
+     */
+    private Map<String, TestRecommendation> cachedRecommendations(RecommendationCache cache, String key)
+            throws IOException {
+        Path entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return processDeepSeekOutput(entry);
+        } catch (IOException | RuntimeException e) {
+            // An unreadable entry is dropped and the class analyzed again
+            Files.deleteIfExists(entry);
+            return null;
         }
+    }
 
-        mapper.writerWithDefaultPrettyPrinter().writeValue(inputFile.toFile(), root);
-        return inputFile;
+    /**
+     * Model, prompt version and model script, which together decide the answers
+     */
+    private String modelVersion() throws IOException {
+        Path script = Paths.get(deepseekPath);
+        String scriptHash = Files.isRegularFile(script)
+                ? HexFormat.of().formatHex(RecommendationCache.sha256().digest(Files.readAllBytes(script)))
+                : deepseekPath;
+        return MODEL + "/" + PROMPT_VERSION + "/" + scriptHash;
     }
 
-    private Path runDeepSeekAnalysis(Path inputFile) throws IOException {
-        Path outputFile = outputDir.resolve("deepseek-output.json");
+    /**
+     * Run the model on one unit until it succeeds or runs out of retries
+     */
+    private UnitResult analyzeUnit(AnalysisUnit unit, ModelWorkerPool modelWorkers) throws InterruptedException {
+        long start = System.nanoTime();
+        String error = null;
+        for (int attempt = 1; attempt <= retries + 1; attempt++) {
+            if (attempt > 1) {
+                System.out.printf("Retrying %s (attempt %d/%d): %s%n",
+                        unit.describe(), attempt, retries + 1, error);
+            }
+            try {
+                Map<String, TestRecommendation> recommendations = modelWorkers != null
+                        ? requestModel(unit, modelWorkers) : runModel(unit);
+                for (PromptPacker.Part part : unit.parts) {
+                    if (!recommendations.containsKey(part.classInfo.getClassName())) {
+                        throw new IOException("no recommendation for " + part.classInfo.getClassName());
+                    }
+                }
+                return new UnitResult(unit, recommendations, null, System.nanoTime() - start);
+            } catch (IOException | RuntimeException e) {
+                error = e.getMessage();
+            }
+        }
+        return new UnitResult(unit, null, error, System.nanoTime() - start);
+    }
+
+    private Map<String, TestRecommendation> runModel(AnalysisUnit unit) throws IOException, InterruptedException {
+        Files.deleteIfExists(unit.output);
         String[] command = {
                 "bash",
                 deepseekPath,
-                "--model", "deepseek-local",
-                "--input", inputFile.toString(),
-                "--output", outputFile.toString()
+                "--model", MODEL,
+                "--input", unit.input.toString(),
+                "--output", unit.output.toString(),
+                "--packed"
         };
+        // Output goes to the unit's log, as lines of concurrent units would interleave
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(unit.log.toFile()))
+                .start();
         try {
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-            Process process = pb.start();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) System.out.println("DeepSeek: " + line);
+            if (!process.waitFor(unitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("timed out after " + unitTimeout.toSeconds() + "s");
             }
-            boolean completed = process.waitFor(30, TimeUnit.MINUTES);
-            if (!completed) {
+        } finally {
+            if (process.isAlive()) {
+                process.descendants().forEach(ProcessHandle::destroyForcibly);
                 process.destroyForcibly();
-                throw new IOException("DeepSeek analysis timed out");
             }
-            int exitCode = process.exitValue();
-            if (exitCode != 0) throw new IOException("DeepSeek failed with code " + exitCode);
-            return outputFile;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("DeepSeek analysis interrupted", e);
         }
+        int exitCode = process.exitValue();
+        if (exitCode != 0) throw new IOException("exited with code " + exitCode);
+        if (!Files.exists(unit.output)) throw new IOException("no output written");
+        return processDeepSeekOutput(unit.output);
+    }
+
+    /**
+     * Send a unit to a persistent model worker; the response is kept as the unit's output
+     */
+    private Map<String, TestRecommendation> requestModel(AnalysisUnit unit, ModelWorkerPool modelWorkers)
+            throws IOException, InterruptedException {
+        Files.deleteIfExists(unit.output);
+        Files.write(unit.output, modelWorkers.analyze(Files.readAllLines(unit.input), unitTimeout));
+        return processDeepSeekOutput(unit.output);
     }
 
     private Map<String, TestRecommendation> processDeepSeekOutput(Path outputFile) throws IOException {
         Map<String, TestRecommendation> recommendations = new HashMap<>();
-        Map<String, Object> output = mapper.readValue(outputFile.toFile(), Map.class);
-        List<Map<String, Object>> recList = (List<Map<String, Object>>) output.get("recommendations");
-        for (Map<String, Object> rec : recList) {
-            String className = (String) rec.get("className");
-            double complexity = ((Number) rec.get("complexity")).doubleValue();
-            double testPriority = ((Number) rec.get("testPriority")).doubleValue();
-            List<String> scenarios = (List<String>) rec.get("suggestedTestScenarios");
-            recommendations.put(className, new TestRecommendation(className, complexity, testPriority, scenarios));
+        Consumer<TestRecommendation> put = recommendation -> recommendations.put(recommendation.getClassName(), recommendation);
+        try {
+            readRecommendations(outputFile, put);
+        } catch (JsonProcessingException e) {
+            // Whatever was read before the error is read again, and replaced
+            readTolerantRecommendations(Files.readString(outputFile), put);
         }
+        if (recommendations.isEmpty()) throw new IOException("no recommendations in " + outputFile.getFileName());
         return recommendations;
     }
 
+    /**
+     * Stream the recommendations of a model output file to a consumer as they are read.
+     * The output is newline-delimited JSON with one recommendation per line; a single
+     * object holding a "recommendations" array, as the model script used to write, is
+     * read too.
+     */
+    static void readRecommendations(Path outputFile, Consumer<TestRecommendation> consumer) throws IOException {
+        try (JsonParser json = JSON.createParser(Files.newBufferedReader(outputFile))) {
+            for (JsonToken token = json.nextToken(); token != null; token = json.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected an object in " + outputFile.getFileName() + " at " + json.getCurrentLocation());
+                }
+                readRecommendation(json, consumer);
+            }
+        }
+    }
+
+    /**
+     * Read the recommendations of free text holding JSON that may not be strict: every
+     * object or array found in it is repaired and read, and the recommendations in any of
+     * them are passed to the consumer. Values that are not complete recommendations, as
+     * free text has plenty of, are skipped.
+     */
+    static void readTolerantRecommendations(String text, Consumer<TestRecommendation> consumer) {
+        TolerantJson.extractAll(text, value -> {
+            try (JsonParser json = JSON.createParser(value)) {
+                if (json.nextToken() == JsonToken.START_ARRAY) {
+                    while (json.nextToken() == JsonToken.START_OBJECT) readRecommendation(json, consumer);
+                } else {
+                    readRecommendation(json, consumer);
+                }
+            } catch (IOException e) {
+                // Not a recommendation
+            }
+        });
+    }
+
+    private static void readRecommendation(JsonParser json, Consumer<TestRecommendation> consumer) throws IOException {
+        String className = null;
+        Double complexity = null;
+        Double testPriority = null;
+        List<String> scenarios = new ArrayList<>();
+        while (json.nextToken() == JsonToken.FIELD_NAME) {
+            String field = json.getCurrentName();
+            JsonToken value = json.nextToken();
+            switch (field) {
+                case "className" -> className = json.getValueAsString();
+                case "complexity" -> complexity = json.getValueAsDouble();
+                case "testPriority" -> testPriority = json.getValueAsDouble();
+                case "suggestedTestScenarios" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (json.nextToken() != JsonToken.END_ARRAY) scenarios.add(json.getValueAsString());
+                    }
+                }
+                case "recommendations" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        while (json.nextToken() == JsonToken.START_OBJECT) readRecommendation(json, consumer);
+                    }
+                }
+                default -> json.skipChildren();
+            }
+        }
+        if (className != null) {
+            if (complexity == null || testPriority == null) {
+                throw new IOException("Recommendation for " + className + " has no complexity or test priority");
+            }
+            consumer.accept(new TestRecommendation(className, complexity, testPriority, scenarios));
+        }
+    }
+
+    static void writeRecommendation(JsonGenerator json, TestRecommendation recommendation) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("className", recommendation.getClassName());
+        json.writeNumberField("complexity", recommendation.getComplexity());
+        json.writeNumberField("testPriority", recommendation.getTestPriority());
+        json.writeArrayFieldStart("suggestedTestScenarios");
+        for (String s : recommendation.getSuggestedTestScenarios()) json.writeString(s);
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
     private void generateRecommendationReport(Map<String, TestRecommendation> recommendations) throws IOException {
         Path reportFile = outputDir.resolve("test-recommendations.json");
         mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), recommendations);
@@ -245,6 +648,102 @@ public class DeepSeekAnalyzer {
         public List<MethodInfo> getMethods() { return methods; }
     }
 
+    private static final class AnalysisUnit {
+        final List<PromptPacker.Part> parts;
+        final Path input, output, log;
+        AnalysisUnit(List<PromptPacker.Part> parts, Path input, Path output, Path log) {
+            this.parts = parts;
+            this.input = input;
+            this.output = output;
+            this.log = log;
+        }
+        String describe() {
+            String first = parts.get(0).classInfo.getClassName();
+            return parts.size() == 1 ? first : first + " and " + (parts.size() - 1) + " more";
+        }
+    }
+
+    /**
+     * Answers so far for a class that may be split over several prompts
+     */
+    private static final class ClassProgress {
+        final String className;
+        final String key;
+        int partsDone;
+        boolean failed;
+        TestRecommendation recommendation;
+        ClassGroup group;
+        // For a class waiting for another of its group: that class's names and literals to its own
+        Map<String, String> renames;
+        ClassProgress(String className, String key) {
+            this.className = className;
+            this.key = key;
+        }
+        void answer(TestRecommendation part) {
+            if (recommendation == null) {
+                recommendation = part;
+                return;
+            }
+            Set<String> scenarios = new LinkedHashSet<>(recommendation.getSuggestedTestScenarios());
+            scenarios.addAll(part.getSuggestedTestScenarios());
+            recommendation = new TestRecommendation(className,
+                    Math.max(recommendation.getComplexity(), part.getComplexity()),
+                    Math.max(recommendation.getTestPriority(), part.getTestPriority()), new ArrayList<>(scenarios));
+        }
+    }
+
+    /**
+     * Classes with the same methods: the names of the first one seen, which is the one
+     * analyzed, its answer once there is one, and the classes waiting for it
+     */
+    private static final class ClassGroup {
+        MethodFingerprint.Names names;
+        TestRecommendation answer;
+        final List<ClassProgress> waiting = new ArrayList<>();
+
+        /**
+         * The answer for another class of the group, with the first class's names and
+         * literals in its scenarios replaced by the class's own
+         */
+        TestRecommendation copyFor(ClassProgress member) {
+            return new TestRecommendation(member.className, answer.getComplexity(), answer.getTestPriority(),
+                    renameWords(answer.getSuggestedTestScenarios(), member.renames));
+        }
+    }
+
+    /**
+     * Replace words in texts, where they are not part of a longer name or number:
+     * "Calc" in "Calc.add(1)" but not in "Calculator", "1" in "add(1)" but not in "1.5"
+     */
+    static List<String> renameWords(List<String> texts, Map<String, String> renames) {
+        if (renames.isEmpty()) {
+            return new ArrayList<>(texts);
+        }
+        List<String> alternatives = new ArrayList<>();
+        // Longest first, so a word is not replaced in part by a shorter one
+        renames.keySet().stream().sorted(Comparator.comparingInt(String::length).reversed())
+                .forEach(word -> alternatives.add(Pattern.quote(word)));
+        Pattern words = Pattern.compile("(?<![\\w$]|\\d\\.)(?:" + String.join("|", alternatives) + ")(?![\\w$]|\\.\\d)");
+        List<String> renamed = new ArrayList<>();
+        for (String text : texts) {
+            renamed.add(words.matcher(text).replaceAll(match -> Matcher.quoteReplacement(renames.get(match.group()))));
+        }
+        return renamed;
+    }
+
+    private static final class UnitResult {
+        final AnalysisUnit unit;
+        final Map<String, TestRecommendation> recommendations;
+        final String error;
+        final long nanos;
+        UnitResult(AnalysisUnit unit, Map<String, TestRecommendation> recommendations, String error, long nanos) {
+            this.unit = unit;
+            this.recommendations = recommendations;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+
     static class TestRecommendation {
         private final String className;
         private final double complexity;
@@ -1,41 +1,82 @@
 package com.example.coverage;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 /**
  * Generates a comprehensive HTML report that shows correlations between Cucumber scenarios
- * and the methods they execute.
+ * and the methods they execute. The page is streamed to the file card by card, with the
+ * coverage kept as the agent's bitsets, so the heap does not grow with the report size.
+ * Cards are rendered in blocks of scenarios and of whole classes on a ForkJoin pool
+ * (cucumber.coverage.reportThreads, default all cores) and written in order.
+ * With --incremental, rendered sections are cached by a hash of their input and only
+ * changed ones are rendered again (see {@link ReportFragmentCache}).
+ * With --virtual it writes a {@link VirtualCoverageReport} instead, for suites whose
+ * matrix is too large for the browser to render as one page.
  */
 public class GenerateCoverageReport {
 
     private static final String OUTPUT_FILE = "build/reports/cucumber-method-coverage.html";
+    private static final String VIRTUAL_OUTPUT_DIR = "build/reports/cucumber-method-coverage";
+    private static final String METHOD_COVERAGE_BINARY = "build/reports/cucumber-method-coverage.ccov";
     private static final String METHOD_COVERAGE_CSV = "build/reports/cucumber-method-coverage.csv";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Average section sizes, powers of two; a section never grows past MAX_BLOCK_SIZE
+    private static final int BLOCK_SIZE = 256;
+    private static final int CLASS_BLOCK_SIZE = 16;
+    private static final int MAX_BLOCK_SIZE = 4 * BLOCK_SIZE;
+    private static final long SCENARIO_TAG = 0x5c3e7a1fL;
+    private static final long METHOD_TAG = 0x3e7a1f5cL << 32;
+    private static final String CACHE_DIR = "build/reports/cucumber-method-coverage-cache";
+    static final String THREADS_PROPERTY = "cucumber.coverage.reportThreads";
 
     public static void main(String[] args) {
         try {
             System.out.println("Generating comprehensive coverage report...");
 
-            // Parse coverage data
-            Map<String, Set<String>> scenarioMethods = new HashMap<>();
-            Map<String, Set<String>> methodScenarios = new HashMap<>();
-            Set<String> allMethods = new HashSet<>();
+            // Incremental mode skips unchanged input and reuses the sections that did not change
+            ReportFragmentCache cache = null;
+            Path input = Files.exists(Paths.get(METHOD_COVERAGE_BINARY))
+                    ? Paths.get(METHOD_COVERAGE_BINARY) : Paths.get(METHOD_COVERAGE_CSV);
+            if (Arrays.asList(args).contains("--incremental") && Files.exists(input)) {
+                cache = new ReportFragmentCache(Paths.get(CACHE_DIR));
+                if (cache.isUpToDate(input, Paths.get(OUTPUT_FILE))) {
+                    System.out.println("Coverage unchanged, report is up to date: " + OUTPUT_FILE);
+                    return;
+                }
+            }
 
-            // Read the CSV data
-            parseMethodCoverageData(scenarioMethods, methodScenarios, allMethods);
+            // Binary coverage from the agent, or the CSV export if that is all we have
+            CoverageData data = CoverageData.load(Paths.get(METHOD_COVERAGE_BINARY), Paths.get(METHOD_COVERAGE_CSV));
+
+            // Large suites get the paged viewer instead of one page
+            if (Arrays.asList(args).contains("--virtual")) {
+                int pages = VirtualCoverageReport.write(data, Paths.get(VIRTUAL_OUTPUT_DIR));
+                System.out.println("Virtualized report with " + pages + " data pages generated: " + VIRTUAL_OUTPUT_DIR
+                        + "/index.html (serve the directory over HTTP to view it)");
+                return;
+            }
 
             // Generate HTML report
-            generateHtmlReport(scenarioMethods, methodScenarios, allMethods);
+            writeHtmlReport(data, Paths.get(OUTPUT_FILE), reportThreads(), cache);
+            if (cache != null) {
+                cache.finish(input, Paths.get(OUTPUT_FILE));
+                System.out.println("Sections reused: " + cache.getHits() + ", rendered: " + cache.getMisses());
+            }
 
             System.out.println("Report generated successfully: " + OUTPUT_FILE);
         } catch (Exception e) {
@@ -44,279 +85,457 @@ public class GenerateCoverageReport {
         }
     }
 
-    private static void parseMethodCoverageData(
-            Map<String, Set<String>> scenarioMethods,
-            Map<String, Set<String>> methodScenarios,
-            Set<String> allMethods) throws IOException {
+    /**
+     * Render the report for coverage data straight to a file, one card at a time
+     */
+    static void writeHtmlReport(CoverageData data, Path output) throws IOException {
+        writeHtmlReport(data, output, reportThreads());
+    }
 
-        Path csvPath = Paths.get(METHOD_COVERAGE_CSV);
-        if (!Files.exists(csvPath)) {
-            System.err.println("Coverage CSV file not found: " + METHOD_COVERAGE_CSV);
-            return;
+    /**
+     * Render the report, with the scenario and method cards rendered in blocks on the
+     * given number of threads; the file is the same for any number of threads
+     */
+    static void writeHtmlReport(CoverageData data, Path output, int threads) throws IOException {
+        writeHtmlReport(data, output, threads, null);
+    }
+
+    /**
+     * Render the report, copying the sections found in the cache instead of rendering them
+     * @param cache the cache to read and store sections in, or null to render everything
+     */
+    static void writeHtmlReport(CoverageData data, Path output, int threads, ReportFragmentCache cache)
+            throws IOException {
+        CoverageIndex index = CoverageIndex.build(data);
+        List<String> scenarios = data.getScenarios();
+        List<String> methods = data.getMethods();
+        int[] scenarioOrder = sortedIds(scenarios);
+        int[] methodOrder = sortedIds(methods);
+        int[] methodRanks = ranks(methodOrder);
+        int[] scenarioRanks = ranks(scenarioOrder);
+        long[][] scenarioHashes = cache != null ? nameHashes(scenarios) : null;
+        long[][] methodHashes = cache != null ? nameHashes(methods) : null;
+
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE);
+             Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            out.write("<!DOCTYPE html>\n");
+            out.write("<html lang=\"en\">\n");
+            out.write("<head>\n");
+            out.write("    <meta charset=\"UTF-8\">\n");
+            out.write("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+            out.write("    <title>Cucumber Method Coverage Report</title>\n");
+            out.write("    <style>\n");
+            out.write("        body { font-family: Arial, sans-serif; line-height: 1.6; margin: 0; padding: 20px; color: #333; }\n");
+            out.write("        h1, h2, h3 { color: #2c3e50; }\n");
+            out.write("        .container { max-width: 1200px; margin: 0 auto; }\n");
+            out.write("        .summary { background-color: #f8f9fa; border-radius: 4px; padding: 15px; margin-bottom: 20px; }\n");
+            out.write("        .card { border: 1px solid #ddd; border-radius: 4px; padding: 15px; margin-bottom: 15px; }\n");
+            out.write("        .scenario-card { background-color: #e8f4f8; }\n");
+            out.write("        .method-card { background-color: #f8f1e8; }\n");
+            out.write("        .method-list, .scenario-list { list-style-type: none; padding-left: 0; }\n");
+            out.write("        .method-list li, .scenario-list li { padding: 5px 0; }\n");
+            out.write("        .coverage-good { color: #28a745; }\n");
+            out.write("        .coverage-medium { color: #fd7e14; }\n");
+            out.write("        .coverage-bad { color: #dc3545; }\n");
+            out.write("        .method-name { font-family: monospace; background-color: #f5f5f5; padding: 2px 4px; border-radius: 3px; }\n");
+            out.write("        .tabs { display: flex; margin-bottom: 15px; }\n");
+            out.write("        .tab { padding: 10px 15px; cursor: pointer; background-color: #f8f9fa; border: 1px solid #ddd; }\n");
+            out.write("        .tab.active { background-color: #007bff; color: white; border-color: #007bff; }\n");
+            out.write("        .tab-content { display: none; }\n");
+            out.write("        .tab-content.active { display: block; }\n");
+            out.write("        .search { width: 100%; padding: 8px; margin-bottom: 15px; }\n");
+            out.write("        .hidden { display: none; }\n");
+            out.write("    </style>\n");
+            out.write("</head>\n");
+            out.write("<body>\n");
+            out.write("    <div class=\"container\">\n");
+            out.write("        <h1>Cucumber Method Coverage Report</h1>\n");
+
+            // Generate summary section
+            writeSummarySection(out, index, scenarios, methods, scenarioOrder, methodOrder);
+
+            // Create tabs
+            out.write("        <div class=\"tabs\">\n");
+            out.write("            <div class=\"tab active\" data-tab=\"scenarios\">Scenarios</div>\n");
+            out.write("            <div class=\"tab\" data-tab=\"methods\">Methods</div>\n");
+            out.write("        </div>\n");
+
+            // Search bar
+            out.write("        <input type=\"text\" class=\"search\" id=\"searchInput\" placeholder=\"Search scenarios or methods...\">\n");
+
+            // Scenarios tab
+            out.write("        <div class=\"tab-content active\" id=\"scenarios-tab\">\n");
+            out.write("            <h2>Scenarios and Their Methods</h2>\n");
+
+            renderBlocks(out, stream, pool, cache, blocks(scenarios, scenarioOrder), block -> {
+                ReportFragmentCache.SectionHash hash = new ReportFragmentCache.SectionHash();
+                for (int scenario : block) {
+                    hash.add(scenarioHashes[scenario], SCENARIO_TAG);
+                    for (int method : inOrder(index.methodIds(scenario), methodRanks, methodOrder)) {
+                        hash.add(methodHashes[method], METHOD_TAG);
+                    }
+                }
+                return "scenarios-" + hash.key();
+            }, (writer, block) -> {
+                for (int scenario : block) {
+                    writeScenarioCard(writer, index, scenarios, methods, scenario, methodRanks, methodOrder);
+                }
+            });
+
+            out.write("        </div>\n");
+
+            // Methods tab
+            out.write("        <div class=\"tab-content\" id=\"methods-tab\">\n");
+            out.write("            <h2>Methods and Their Scenarios</h2>\n");
+
+            renderBlocks(out, stream, pool, cache, classBlocks(methods, methodOrder), block -> {
+                ReportFragmentCache.SectionHash hash = new ReportFragmentCache.SectionHash();
+                for (int method : block) {
+                    hash.add(methodHashes[method], METHOD_TAG);
+                    for (int scenario : inOrder(index.scenarioIds(method), scenarioRanks, scenarioOrder)) {
+                        hash.add(scenarioHashes[scenario], SCENARIO_TAG);
+                    }
+                }
+                return "methods-" + hash.key();
+            }, (writer, block) -> {
+                for (int method : block) {
+                    writeMethodCard(writer, index, scenarios, methods, method, scenarioRanks, scenarioOrder);
+                }
+            });
+
+            out.write("        </div>\n");
+
+            // Add JavaScript for interactivity
+            out.write("        <script>\n");
+            out.write("            // Tab functionality\n");
+            out.write("            document.querySelectorAll('.tab').forEach(tab => {\n");
+            out.write("                tab.addEventListener('click', () => {\n");
+            out.write("                    document.querySelectorAll('.tab').forEach(t => t.classList.remove('active'));\n");
+            out.write("                    document.querySelectorAll('.tab-content').forEach(c => c.classList.remove('active'));\n");
+            out.write("                    \n");
+            out.write("                    tab.classList.add('active');\n");
+            out.write("                    document.getElementById(tab.dataset.tab + '-tab').classList.add('active');\n");
+            out.write("                });\n");
+            out.write("            });\n");
+            out.write("            \n");
+            out.write("            // Search functionality\n");
+            out.write("            document.getElementById('searchInput').addEventListener('input', (e) => {\n");
+            out.write("                const searchTerm = e.target.value.toLowerCase();\n");
+            out.write("                \n");
+            out.write("                if (document.getElementById('scenarios-tab').classList.contains('active')) {\n");
+            out.write("                    document.querySelectorAll('.scenario-item').forEach(item => {\n");
+            out.write("                        const scenarioName = item.querySelector('h3').textContent.toLowerCase();\n");
+            out.write("                        const methodsText = Array.from(item.querySelectorAll('.method-name'))\n");
+            out.write("                            .map(el => el.textContent.toLowerCase()).join(' ');\n");
+            out.write("                        \n");
+            out.write("                        if (scenarioName.includes(searchTerm) || methodsText.includes(searchTerm)) {\n");
+            out.write("                            item.classList.remove('hidden');\n");
+            out.write("                        } else {\n");
+            out.write("                            item.classList.add('hidden');\n");
+            out.write("                        }\n");
+            out.write("                    });\n");
+            out.write("                } else {\n");
+            out.write("                    document.querySelectorAll('.method-item').forEach(item => {\n");
+            out.write("                        const methodName = item.querySelector('h3').textContent.toLowerCase();\n");
+            out.write("                        const scenariosText = Array.from(item.querySelectorAll('.scenario-list li'))\n");
+            out.write("                            .map(el => el.textContent.toLowerCase()).join(' ');\n");
+            out.write("                        \n");
+            out.write("                        if (methodName.includes(searchTerm) || scenariosText.includes(searchTerm)) {\n");
+            out.write("                            item.classList.remove('hidden');\n");
+            out.write("                        } else {\n");
+            out.write("                            item.classList.add('hidden');\n");
+            out.write("                        }\n");
+            out.write("                    });\n");
+            out.write("                }\n");
+            out.write("            });\n");
+            out.write("        </script>\n");
+
+            out.write("    </div>\n");
+            out.write("</body>\n");
+            out.write("</html>\n");
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
         }
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(csvPath.toFile()))) {
-            // Skip header
-            String line = reader.readLine();
+    private static void writeScenarioCard(Writer writer, CoverageIndex index, List<String> scenarios, List<String> methods,
+            int scenario, int[] methodRanks, int[] methodOrder) throws IOException {
+        writer.write("            <div class=\"card scenario-card scenario-item\">\n");
+        writer.write("                <h3>");
+        writeEscaped(writer, scenarios.get(scenario));
+        writer.write("</h3>\n");
+        writer.write("                <p>Methods called: " + index.methodCount(scenario) + "</p>\n");
+        writer.write("                <ul class=\"method-list\">\n");
+
+        for (int method : inOrder(index.methodIds(scenario), methodRanks, methodOrder)) {
+            writer.write("                    <li><span class=\"method-name\">");
+            writeEscaped(writer, methods.get(method));
+            writer.write("</span></li>\n");
+        }
 
-            while ((line = reader.readLine()) != null) {
-                // Simple CSV parsing - handles quoted fields with commas
-                String[] parts = parseCSVLine(line);
-                if (parts.length >= 3) {
-                    String scenario = parts[0];
-                    String className = parts[1];
-                    String methodName = parts[2];
+        writer.write("                </ul>\n");
+        writer.write("            </div>\n");
+    }
 
-                    // Create full method signature
-                    String methodSignature = className + "#" + methodName;
+    private static void writeMethodCard(Writer writer, CoverageIndex index, List<String> scenarios, List<String> methods,
+            int method, int[] scenarioRanks, int[] scenarioOrder) throws IOException {
+        int scenarioCount = index.scenarioCount(method);
+        if (scenarioCount == 0) {
+            return;
+        }
 
-                    // Track all methods
-                    allMethods.add(methodSignature);
+        writer.write("            <div class=\"card method-card method-item\">\n");
+        writer.write("                <h3 class=\"" + getCoverageClass(scenarioCount) + "\">");
+        writeEscaped(writer, methods.get(method));
+        writer.write("</h3>\n");
+        writer.write("                <p>Called in " + scenarioCount + " scenario(s)</p>\n");
+        writer.write("                <ul class=\"scenario-list\">\n");
+
+        for (int scenario : inOrder(index.scenarioIds(method), scenarioRanks, scenarioOrder)) {
+            writer.write("                    <li>");
+            writeEscaped(writer, scenarios.get(scenario));
+            writer.write("</li>\n");
+        }
 
-                    // Add to scenario -> methods map
-                    scenarioMethods.computeIfAbsent(scenario, k -> new HashSet<>()).add(methodSignature);
+        writer.write("                </ul>\n");
+        writer.write("            </div>\n");
+    }
 
-                    // Add to method -> scenarios map
-                    methodScenarios.computeIfAbsent(methodSignature, k -> new HashSet<>()).add(scenario);
+    /**
+     * Write the blocks in order. With a pool, blocks are rendered and encoded concurrently,
+     * a bounded number ahead of the one being written, and their bytes are written to the
+     * stream under the writer, so the output is the same as rendering them one by one.
+     * With a cache, blocks found under their key are copied instead of rendered.
+     */
+    private static void renderBlocks(Writer out, OutputStream stream, ForkJoinPool pool, ReportFragmentCache cache,
+            List<int[]> blocks, BlockKey key, BlockRenderer renderer) throws IOException {
+        if (pool == null && cache == null) {
+            for (int[] block : blocks) {
+                renderer.render(out, block);
+            }
+            return;
+        }
+        out.flush();
+        if (pool == null) {
+            for (int[] block : blocks) {
+                stream.write(renderSection(cache, block, key, renderer));
+            }
+            return;
+        }
+        Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while (next < blocks.size() || !pending.isEmpty()) {
+                while (next < blocks.size() && pending.size() < pool.getParallelism() * 2) {
+                    int[] block = blocks.get(next++);
+                    pending.add(pool.submit(() -> renderSection(cache, block, key, renderer)));
                 }
+                stream.write(pending.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering the report", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException("Error rendering the report", e.getCause());
+        } finally {
+            pending.forEach(task -> task.cancel(true));
         }
     }
 
-    private static String[] parseCSVLine(String line) {
-        List<String> result = new ArrayList<>();
-        boolean inQuotes = false;
-        StringBuilder current = new StringBuilder();
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                result.add(current.toString().replace("\"\"", "\""));
-                current = new StringBuilder();
-            } else {
-                current.append(c);
+    /**
+     * The UTF-8 bytes of a block, from the cache if it has them
+     */
+    private static byte[] renderSection(ReportFragmentCache cache, int[] block, BlockKey key, BlockRenderer renderer)
+            throws IOException {
+        String sectionKey = cache != null ? key.key(block) : null;
+        if (sectionKey != null) {
+            byte[] cached = cache.get(sectionKey);
+            if (cached != null) {
+                return cached;
             }
         }
-
-        result.add(current.toString().replace("\"\"", "\""));
-        return result.toArray(new String[0]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+            renderer.render(writer, block);
+        }
+        byte[] section = bytes.toByteArray();
+        if (sectionKey != null) {
+            cache.put(sectionKey, section);
+        }
+        return section;
     }
 
-    private static void generateHtmlReport(
-            Map<String, Set<String>> scenarioMethods,
-            Map<String, Set<String>> methodScenarios,
-            Set<String> allMethods) throws IOException {
-
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html lang=\"en\">\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"UTF-8\">\n");
-        html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
-        html.append("    <title>Cucumber Method Coverage Report</title>\n");
-        html.append("    <style>\n");
-        html.append("        body { font-family: Arial, sans-serif; line-height: 1.6; margin: 0; padding: 20px; color: #333; }\n");
-        html.append("        h1, h2, h3 { color: #2c3e50; }\n");
-        html.append("        .container { max-width: 1200px; margin: 0 auto; }\n");
-        html.append("        .summary { background-color: #f8f9fa; border-radius: 4px; padding: 15px; margin-bottom: 20px; }\n");
-        html.append("        .card { border: 1px solid #ddd; border-radius: 4px; padding: 15px; margin-bottom: 15px; }\n");
-        html.append("        .scenario-card { background-color: #e8f4f8; }\n");
-        html.append("        .method-card { background-color: #f8f1e8; }\n");
-        html.append("        .method-list, .scenario-list { list-style-type: none; padding-left: 0; }\n");
-        html.append("        .method-list li, .scenario-list li { padding: 5px 0; }\n");
-        html.append("        .coverage-good { color: #28a745; }\n");
-        html.append("        .coverage-medium { color: #fd7e14; }\n");
-        html.append("        .coverage-bad { color: #dc3545; }\n");
-        html.append("        .method-name { font-family: monospace; background-color: #f5f5f5; padding: 2px 4px; border-radius: 3px; }\n");
-        html.append("        .tabs { display: flex; margin-bottom: 15px; }\n");
-        html.append("        .tab { padding: 10px 15px; cursor: pointer; background-color: #f8f9fa; border: 1px solid #ddd; }\n");
-        html.append("        .tab.active { background-color: #007bff; color: white; border-color: #007bff; }\n");
-        html.append("        .tab-content { display: none; }\n");
-        html.append("        .tab-content.active { display: block; }\n");
-        html.append("        .search { width: 100%; padding: 8px; margin-bottom: 15px; }\n");
-        html.append("        .hidden { display: none; }\n");
-        html.append("    </style>\n");
-        html.append("</head>\n");
-        html.append("<body>\n");
-        html.append("    <div class=\"container\">\n");
-        html.append("        <h1>Cucumber Method Coverage Report</h1>\n");
-
-        // Generate summary section
-        generateSummarySection(html, scenarioMethods, methodScenarios, allMethods);
-
-        // Create tabs
-        html.append("        <div class=\"tabs\">\n");
-        html.append("            <div class=\"tab active\" data-tab=\"scenarios\">Scenarios</div>\n");
-        html.append("            <div class=\"tab\" data-tab=\"methods\">Methods</div>\n");
-        html.append("        </div>\n");
-
-        // Search bar
-        html.append("        <input type=\"text\" class=\"search\" id=\"searchInput\" placeholder=\"Search scenarios or methods...\">\n");
-
-        // Scenarios tab
-        html.append("        <div class=\"tab-content active\" id=\"scenarios-tab\">\n");
-        html.append("            <h2>Scenarios and Their Methods</h2>\n");
-
-        List<String> sortedScenarios = new ArrayList<>(scenarioMethods.keySet());
-        Collections.sort(sortedScenarios);
-
-        for (String scenario : sortedScenarios) {
-            Set<String> methods = scenarioMethods.get(scenario);
-
-            html.append("            <div class=\"card scenario-card scenario-item\">\n");
-            html.append("                <h3>").append(escapeHtml(scenario)).append("</h3>\n");
-            html.append("                <p>Methods called: ").append(methods.size()).append("</p>\n");
-            html.append("                <ul class=\"method-list\">\n");
-
-            List<String> sortedMethods = new ArrayList<>(methods);
-            Collections.sort(sortedMethods);
-
-            for (String method : sortedMethods) {
-                html.append("                    <li><span class=\"method-name\">").append(escapeHtml(method)).append("</span></li>\n");
+    /**
+     * Blocks of sorted scenarios, about BLOCK_SIZE long. A block ends after a scenario
+     * whose name hash has its low bits clear, so adding or removing a scenario changes
+     * only its own block and the others keep their cached sections.
+     */
+    static List<int[]> blocks(List<String> names, int[] ids) {
+        List<int[]> blocks = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i + 1 == ids.length || i + 1 - start >= MAX_BLOCK_SIZE
+                    || (boundaryHash(names.get(ids[i])) & (BLOCK_SIZE - 1)) == 0) {
+                blocks.add(Arrays.copyOfRange(ids, start, i + 1));
+                start = i + 1;
             }
-
-            html.append("                </ul>\n");
-            html.append("            </div>\n");
         }
+        return blocks;
+    }
 
-        html.append("        </div>\n");
-
-        // Methods tab
-        html.append("        <div class=\"tab-content\" id=\"methods-tab\">\n");
-        html.append("            <h2>Methods and Their Scenarios</h2>\n");
-
-        List<String> sortedMethods = new ArrayList<>(methodScenarios.keySet());
-        Collections.sort(sortedMethods);
+    /**
+     * Blocks of sorted methods made of whole classes, about BLOCK_SIZE methods long, ending
+     * after classes picked by name hash like the scenario blocks
+     */
+    static List<int[]> classBlocks(List<String> methods, int[] methodOrder) {
+        List<int[]> blocks = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < methodOrder.length; i++) {
+            String className = className(methods.get(methodOrder[i]));
+            boolean classEnds = i + 1 == methodOrder.length
+                    || !className.equals(className(methods.get(methodOrder[i + 1])));
+            if (i + 1 == methodOrder.length || (classEnds && (i + 1 - start >= MAX_BLOCK_SIZE
+                    || (boundaryHash(className) & (CLASS_BLOCK_SIZE - 1)) == 0))) {
+                blocks.add(Arrays.copyOfRange(methodOrder, start, i + 1));
+                start = i + 1;
+            }
+        }
+        return blocks;
+    }
 
-        for (String method : sortedMethods) {
-            Set<String> scenarios = methodScenarios.get(method);
+    private static int boundaryHash(String name) {
+        int hash = name.hashCode() * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
 
-            String coverageClass = getCoverageClass(scenarios.size());
+    private static String className(String methodSignature) {
+        int separator = methodSignature.indexOf('#');
+        return separator < 0 ? methodSignature : methodSignature.substring(0, separator);
+    }
 
-            html.append("            <div class=\"card method-card method-item\">\n");
-            html.append("                <h3 class=\"").append(coverageClass).append("\">").append(escapeHtml(method)).append("</h3>\n");
-            html.append("                <p>Called in ").append(scenarios.size()).append(" scenario(s)</p>\n");
-            html.append("                <ul class=\"scenario-list\">\n");
+    private static long[][] nameHashes(List<String> names) {
+        long[][] hashes = new long[names.size()][];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = ReportFragmentCache.nameHash(names.get(i));
+        }
+        return hashes;
+    }
 
-            List<String> scenariosSorted = new ArrayList<>(scenarios);
-            Collections.sort(scenariosSorted);
+    /**
+     * Threads used to render the report, from cucumber.coverage.reportThreads (default: all cores)
+     */
+    static int reportThreads() {
+        return Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    }
 
-            for (String scenario : scenariosSorted) {
-                html.append("                    <li>").append(escapeHtml(scenario)).append("</li>\n");
-            }
+    /**
+     * Ids of the names in alphabetical order
+     */
+    static int[] sortedIds(List<String> names) {
+        return IntStream.range(0, names.size()).boxed()
+                .sorted(Comparator.comparing(names::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
 
-            html.append("                </ul>\n");
-            html.append("            </div>\n");
+    static int[] ranks(int[] order) {
+        int[] ranks = new int[order.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            ranks[order[rank]] = rank;
         }
+        return ranks;
+    }
 
-        html.append("        </div>\n");
-
-        // Add JavaScript for interactivity
-        html.append("        <script>\n");
-        html.append("            // Tab functionality\n");
-        html.append("            document.querySelectorAll('.tab').forEach(tab => {\n");
-        html.append("                tab.addEventListener('click', () => {\n");
-        html.append("                    document.querySelectorAll('.tab').forEach(t => t.classList.remove('active'));\n");
-        html.append("                    document.querySelectorAll('.tab-content').forEach(c => c.classList.remove('active'));\n");
-        html.append("                    \n");
-        html.append("                    tab.classList.add('active');\n");
-        html.append("                    document.getElementById(tab.dataset.tab + '-tab').classList.add('active');\n");
-        html.append("                });\n");
-        html.append("            });\n");
-        html.append("            \n");
-        html.append("            // Search functionality\n");
-        html.append("            document.getElementById('searchInput').addEventListener('input', (e) => {\n");
-        html.append("                const searchTerm = e.target.value.toLowerCase();\n");
-        html.append("                \n");
-        html.append("                if (document.getElementById('scenarios-tab').classList.contains('active')) {\n");
-        html.append("                    document.querySelectorAll('.scenario-item').forEach(item => {\n");
-        html.append("                        const scenarioName = item.querySelector('h3').textContent.toLowerCase();\n");
-        html.append("                        const methodsText = Array.from(item.querySelectorAll('.method-name'))\n");
-        html.append("                            .map(el => el.textContent.toLowerCase()).join(' ');\n");
-        html.append("                        \n");
-        html.append("                        if (scenarioName.includes(searchTerm) || methodsText.includes(searchTerm)) {\n");
-        html.append("                            item.classList.remove('hidden');\n");
-        html.append("                        } else {\n");
-        html.append("                            item.classList.add('hidden');\n");
-        html.append("                        }\n");
-        html.append("                    });\n");
-        html.append("                } else {\n");
-        html.append("                    document.querySelectorAll('.method-item').forEach(item => {\n");
-        html.append("                        const methodName = item.querySelector('h3').textContent.toLowerCase();\n");
-        html.append("                        const scenariosText = Array.from(item.querySelectorAll('.scenario-list li'))\n");
-        html.append("                            .map(el => el.textContent.toLowerCase()).join(' ');\n");
-        html.append("                        \n");
-        html.append("                        if (methodName.includes(searchTerm) || scenariosText.includes(searchTerm)) {\n");
-        html.append("                            item.classList.remove('hidden');\n");
-        html.append("                        } else {\n");
-        html.append("                            item.classList.add('hidden');\n");
-        html.append("                        }\n");
-        html.append("                    });\n");
-        html.append("                }\n");
-        html.append("            });\n");
-        html.append("        </script>\n");
-
-        html.append("    </div>\n");
-        html.append("</body>\n");
-        html.append("</html>\n");
-
-        // Write the HTML to file
-        try (FileWriter writer = new FileWriter(OUTPUT_FILE)) {
-            writer.write(html.toString());
+    /**
+     * Reorder ids by their names through the precomputed ranks
+     */
+    static int[] inOrder(int[] ids, int[] ranks, int[] order) {
+        int[] sorted = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            sorted[i] = ranks[ids[i]];
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = order[sorted[i]];
         }
+        return sorted;
     }
 
-    private static void generateSummarySection(
-            StringBuilder html,
-            Map<String, Set<String>> scenarioMethods,
-            Map<String, Set<String>> methodScenarios,
-            Set<String> allMethods) {
-
-        int totalScenarios = scenarioMethods.size();
-        int totalMethods = allMethods.size();
-        int coveredMethods = methodScenarios.size();
+    private static void writeSummarySection(
+            Writer out,
+            CoverageIndex index,
+            List<String> scenarios,
+            List<String> methods,
+            int[] scenarioOrder,
+            int[] methodOrder) throws IOException {
+
+        int totalScenarios = scenarios.size();
+        int coveredMethods = 0;
+        int mostUsedMethod = -1;
+        for (int method : methodOrder) {
+            int scenarioCount = index.scenarioCount(method);
+            if (scenarioCount > 0) {
+                coveredMethods++;
+                if (mostUsedMethod < 0 || scenarioCount > index.scenarioCount(mostUsedMethod)) {
+                    mostUsedMethod = method;
+                }
+            }
+        }
+        // Only executed methods are recorded, so every known method is a covered one
+        int totalMethods = coveredMethods;
 
         double coveragePercent = totalMethods > 0 ?
                 (double) coveredMethods / totalMethods * 100 : 0;
 
         String coverageClass = getCoverageClass(coveragePercent);
 
-        html.append("        <div class=\"summary\">\n");
-        html.append("            <h2>Coverage Summary</h2>\n");
-        html.append("            <p>Total Scenarios: ").append(totalScenarios).append("</p>\n");
-        html.append("            <p>Total Methods: ").append(totalMethods).append("</p>\n");
-        html.append("            <p>Methods Covered: ").append(coveredMethods).append("</p>\n");
-        html.append("            <p>Coverage: <span class=\"").append(coverageClass).append("\">")
-                .append(String.format("%.2f%%", coveragePercent)).append("</span></p>\n");
+        out.write("        <div class=\"summary\">\n");
+        out.write("            <h2>Coverage Summary</h2>\n");
+        out.write("            <p>Total Scenarios: " + totalScenarios + "</p>\n");
+        out.write("            <p>Total Methods: " + totalMethods + "</p>\n");
+        out.write("            <p>Methods Covered: " + coveredMethods + "</p>\n");
+        out.write("            <p>Coverage: <span class=\"" + coverageClass + "\">"
+                + String.format("%.2f%%", coveragePercent) + "</span></p>\n");
 
         // Find scenarios with most and least method coverage
-        if (!scenarioMethods.isEmpty()) {
-            String mostCoveredScenario = Collections.max(scenarioMethods.entrySet(),
-                    Comparator.comparingInt(e -> e.getValue().size())).getKey();
-
-            String leastCoveredScenario = Collections.min(scenarioMethods.entrySet(),
-                    Comparator.comparingInt(e -> e.getValue().size())).getKey();
+        if (totalScenarios > 0) {
+            int mostCoveredScenario = scenarioOrder[0];
+            int leastCoveredScenario = scenarioOrder[0];
+            for (int scenario : scenarioOrder) {
+                if (index.methodCount(scenario) > index.methodCount(mostCoveredScenario)) {
+                    mostCoveredScenario = scenario;
+                }
+                if (index.methodCount(scenario) < index.methodCount(leastCoveredScenario)) {
+                    leastCoveredScenario = scenario;
+                }
+            }
 
-            html.append("            <p>Most Methods Covered: \"").append(escapeHtml(mostCoveredScenario))
-                    .append("\" (").append(scenarioMethods.get(mostCoveredScenario).size()).append(" methods)</p>\n");
+            out.write("            <p>Most Methods Covered: \"");
+            writeEscaped(out, scenarios.get(mostCoveredScenario));
+            out.write("\" (" + index.methodCount(mostCoveredScenario) + " methods)</p>\n");
 
-            html.append("            <p>Least Methods Covered: \"").append(escapeHtml(leastCoveredScenario))
-                    .append("\" (").append(scenarioMethods.get(leastCoveredScenario).size()).append(" methods)</p>\n");
+            out.write("            <p>Least Methods Covered: \"");
+            writeEscaped(out, scenarios.get(leastCoveredScenario));
+            out.write("\" (" + index.methodCount(leastCoveredScenario) + " methods)</p>\n");
         }
 
         // Find methods called by most scenarios
-        if (!methodScenarios.isEmpty()) {
-            String mostUsedMethod = Collections.max(methodScenarios.entrySet(),
-                    Comparator.comparingInt(e -> e.getValue().size())).getKey();
-
-            html.append("            <p>Most Called Method: <span class=\"method-name\">").append(escapeHtml(mostUsedMethod))
-                    .append("</span> (").append(methodScenarios.get(mostUsedMethod).size()).append(" scenarios)</p>\n");
+        if (mostUsedMethod >= 0) {
+            out.write("            <p>Most Called Method: <span class=\"method-name\">");
+            writeEscaped(out, methods.get(mostUsedMethod));
+            out.write("</span> (" + index.scenarioCount(mostUsedMethod) + " scenarios)</p>\n");
         }
 
-        html.append("        </div>\n");
+        out.write("        </div>\n");
     }
 
     private static String getCoverageClass(double coverage) {
@@ -329,7 +548,7 @@ public class GenerateCoverageReport {
         }
     }
 
-    private static String getCoverageClass(int scenarioCount) {
+    static String getCoverageClass(int scenarioCount) {
         if (scenarioCount >= 3) {
             return "coverage-good";
         } else if (scenarioCount >= 1) {
@@ -339,11 +558,33 @@ public class GenerateCoverageReport {
         }
     }
 
-    private static String escapeHtml(String input) {
-        return input.replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&#39;");
+    /**
+     * Write text HTML-escaped, copying the runs between special characters as they are
+     */
+    static void writeEscaped(Writer out, String text) throws IOException {
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity;
+            switch (text.charAt(i)) {
+                case '&': entity = "&amp;"; break;
+                case '<': entity = "&lt;"; break;
+                case '>': entity = "&gt;"; break;
+                case '"': entity = "&quot;"; break;
+                case '\'': entity = "&#39;"; break;
+                default: continue;
+            }
+            out.write(text, run, i - run);
+            out.write(entity);
+            run = i + 1;
+        }
+        out.write(text, run, text.length() - run);
+    }
+
+    private interface BlockKey {
+        String key(int[] block);
+    }
+
+    private interface BlockRenderer {
+        void render(Writer writer, int[] block) throws IOException;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,166 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Per-scenario JaCoCo execution data from the same run as the method coverage. When the
+ * JaCoCo agent is attached, the Cucumber hooks dump and reset its probes around every
+ * scenario through the agent's runtime API, tagging each dump with the scenario name as
+ * JaCoCo session id. The dumps are appended to the agent's own execution data file, so
+ * the JaCoCo reports read the run as usual and {@link JacocoScenarioReport} can split it
+ * into line and branch coverage per scenario.
+ *
+ * JaCoCo probes are shared by all threads, so with parallel scenario execution the
+ * probes are left alone and only the run as a whole is reported. Parallel execution is
+ * read from the Cucumber configuration in system properties and junit-platform.properties;
+ * if it is configured elsewhere, e.g. by launcher parameters, the first scenario that
+ * starts while another is running stops the per-scenario dumps for the rest of the run.
+ */
+public final class JacocoScenarioCoverage {
+
+    public static final String EXEC_FILE_PROPERTY = "cucumber.coverage.jacocoExec";
+    static final String PARALLEL_PROPERTY = "cucumber.execution.parallel.enabled";
+    private static final String JUNIT_PLATFORM_PROPERTIES = "junit-platform.properties";
+    static final String DEFAULT_EXEC_FILE = "build/jacoco/cucumber.exec";
+
+    // Session of the code executed between scenarios, e.g. by BeforeAll hooks
+    public static final String OUTSIDE_SCENARIOS = "(outside scenarios)";
+
+    private static final Object AGENT = findAgent();
+    private static final Method SET_SESSION_ID = agentMethod("setSessionId", String.class);
+    private static final Method GET_EXECUTION_DATA = agentMethod("getExecutionData", boolean.class);
+    private static final boolean ENABLED = AGENT != null && !parallelConfigured();
+
+    // Scenarios between startScenario and endScenario, guarded by the class lock
+    private static int runningScenarios;
+    private static boolean concurrent;
+
+    private JacocoScenarioCoverage() {
+    }
+
+    private static Object findAgent() {
+        try {
+            return Class.forName("org.jacoco.agent.rt.RT").getMethod("getAgent").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // No JaCoCo agent attached
+            return null;
+        }
+    }
+
+    /**
+     * Whether Cucumber is configured to run scenarios in parallel, by a system property or
+     * by junit-platform.properties, in the order the JUnit Platform reads them
+     */
+    static boolean parallelConfigured() {
+        String value = System.getProperty(PARALLEL_PROPERTY);
+        if (value == null) {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            URL resource = (loader != null ? loader : JacocoScenarioCoverage.class.getClassLoader())
+                .getResource(JUNIT_PLATFORM_PROPERTIES);
+            if (resource != null) {
+                Properties properties = new Properties();
+                try (InputStream in = resource.openStream()) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    System.err.println("Failed to read " + resource + ": " + e.getMessage());
+                }
+                value = properties.getProperty(PARALLEL_PROPERTY);
+            }
+        }
+        return Boolean.parseBoolean(value == null ? null : value.trim());
+    }
+
+    private static Method agentMethod(String name, Class<?> parameter) {
+        if (AGENT == null) {
+            return null;
+        }
+        try {
+            Method method = Class.forName("org.jacoco.agent.rt.IAgent", false, AGENT.getClass().getClassLoader())
+                .getMethod(name, parameter);
+            method.setAccessible(true);
+            return method;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unsupported JaCoCo agent: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether execution data is collected per scenario in this JVM
+     */
+    public static synchronized boolean isEnabled() {
+        return ENABLED && !concurrent;
+    }
+
+    /**
+     * Get the execution data file the dumps are appended to
+     */
+    public static Path getExecFile() {
+        return Paths.get(System.getProperty(EXEC_FILE_PROPERTY, DEFAULT_EXEC_FILE));
+    }
+
+    /**
+     * Before a scenario: dump what ran since the last scenario, so it is not charged to this one
+     */
+    public static synchronized void startScenario() {
+        if (runningScenarios++ > 0 && ENABLED && !concurrent) {
+            concurrent = true;
+            System.out.println("Scenarios run concurrently: JaCoCo data is no longer split per scenario");
+        }
+        dump(OUTSIDE_SCENARIOS);
+    }
+
+    /**
+     * After a scenario: dump and reset the probes it hit
+     */
+    public static synchronized void endScenario(String scenario) {
+        runningScenarios = Math.max(0, runningScenarios - 1);
+        dump(scenario);
+    }
+
+    /**
+     * After the last scenario: dump the rest and leave the agent's session for its own dump at exit
+     */
+    public static synchronized void finish() {
+        dump(OUTSIDE_SCENARIOS);
+    }
+
+    private static void dump(String session) {
+        if (!ENABLED || concurrent) {
+            return;
+        }
+        try {
+            SET_SESSION_ID.invoke(AGENT, session);
+            byte[] data = (byte[]) GET_EXECUTION_DATA.invoke(AGENT, true);
+            Path execFile = getExecFile();
+            if (execFile.getParent() != null) {
+                Files.createDirectories(execFile.getParent());
+            }
+            // The agent and other forks append to the same file, under the same lock
+            try (FileChannel channel = FileChannel.open(execFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                FileLock lock = channel.lock();
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(data);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (ReflectiveOperationException | IOException e) {
+            System.err.println("Failed to dump JaCoCo execution data for " + session + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.coverage;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ILine;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.objectweb.asm.Type;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Splits the JaCoCo execution data recorded by {@link JacocoScenarioCoverage} into line
+ * and branch coverage per scenario, written next to the method coverage as CSV with the
+ * columns Scenario, Class, Method, Line, CoveredBranches, TotalBranches (one row per
+ * executed line). Only the classes a scenario executed are analyzed.
+ *
+ * Usage: JacocoScenarioReport execFile classesDir... [--output file]
+ * (default output: build/reports/cucumber-line-coverage.csv)
+ */
+public class JacocoScenarioReport {
+
+    private static final String OUTPUT_FILE = "build/reports/cucumber-line-coverage.csv";
+    private static final String HEADER = "Scenario,Class,Method,Line,CoveredBranches,TotalBranches";
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: JacocoScenarioReport <execFile> <classesDir>... [--output file]");
+            return;
+        }
+        Path execFile = Paths.get(args[0]);
+        Path output = Paths.get(OUTPUT_FILE);
+        List<Path> classDirs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--output") && i + 1 < args.length) {
+                output = Paths.get(args[++i]);
+            } else {
+                classDirs.add(Paths.get(args[i]));
+            }
+        }
+
+        try {
+            if (!Files.exists(execFile)) {
+                System.err.println("JaCoCo execution data not found: " + execFile);
+                return;
+            }
+            Map<String, ExecutionDataStore> scenarios = readScenarios(execFile);
+            write(scenarios, classDirs, output);
+            System.out.println("Per-scenario line coverage for " + scenarios.size() + " scenarios written to " + output);
+        } catch (IOException e) {
+            System.err.println("Error generating per-scenario line coverage: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read the execution data of each scenario session; repeated sessions are merged
+     */
+    static Map<String, ExecutionDataStore> readScenarios(Path execFile) throws IOException {
+        Map<String, ExecutionDataStore> scenarios = new LinkedHashMap<>();
+        ExecutionDataStore[] current = new ExecutionDataStore[1];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(execFile))) {
+            ExecutionDataReader reader = new ExecutionDataReader(in);
+            reader.setSessionInfoVisitor(info -> current[0] = info.getId().equals(JacocoScenarioCoverage.OUTSIDE_SCENARIOS)
+                ? null : scenarios.computeIfAbsent(info.getId(), k -> new ExecutionDataStore()));
+            reader.setExecutionDataVisitor(data -> {
+                if (current[0] != null) {
+                    current[0].put(data);
+                }
+            });
+            while (reader.read()) {
+                // Visitors collect the data
+            }
+        }
+        return scenarios;
+    }
+
+    /**
+     * Analyze the classes each scenario executed and write its covered lines
+     */
+    static void write(Map<String, ExecutionDataStore> scenarios, List<Path> classDirs, Path output) throws IOException {
+        Map<String, Optional<byte[]>> classFiles = new HashMap<>();
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(output)) {
+            writer.write(HEADER + "\n");
+            for (Map.Entry<String, ExecutionDataStore> scenario : scenarios.entrySet()) {
+                CoverageBuilder builder = new CoverageBuilder();
+                Analyzer analyzer = new Analyzer(scenario.getValue(), builder);
+                for (ExecutionData data : scenario.getValue().getContents()) {
+                    if (!data.hasHits()) {
+                        continue;
+                    }
+                    Optional<byte[]> classFile = classFiles.computeIfAbsent(data.getName(), name -> findClass(classDirs, name));
+                    if (classFile.isPresent()) {
+                        analyzer.analyzeClass(classFile.get(), data.getName());
+                    }
+                }
+
+                for (IClassCoverage classCoverage : builder.getClasses()) {
+                    // Class files that differ from the executed classes have no matching probes
+                    if (classCoverage.isNoMatch()) {
+                        System.err.println("Execution data does not match class file: " + classCoverage.getName());
+                        continue;
+                    }
+                    for (IMethodCoverage method : classCoverage.getMethods()) {
+                        writeLines(writer, scenario.getKey(), classCoverage.getName().replace('/', '.'), method);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeLines(Writer writer, String scenario, String className, IMethodCoverage method)
+            throws IOException {
+        String methodName = methodName(method.getName(), method.getDesc());
+        for (int line = method.getFirstLine(); line > 0 && line <= method.getLastLine(); line++) {
+            ILine coverage = method.getLine(line);
+            if (coverage.getInstructionCounter().getCoveredCount() == 0) {
+                continue;
+            }
+            ICounter branches = coverage.getBranchCounter();
+            writer.write(String.format("\"%s\",\"%s\",\"%s\",%d,%d,%d\n", scenario.replace("\"", "\"\""),
+                className, methodName, line, branches.getCoveredCount(), branches.getTotalCount()));
+        }
+    }
+
+    /**
+     * Format a method like the method coverage does, e.g. "perform(Operation, double)"
+     */
+    static String methodName(String name, String descriptor) {
+        StringBuilder sb = new StringBuilder(name).append("(");
+        Type[] parameters = Type.getArgumentTypes(descriptor);
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) sb.append(", ");
+            String type = parameters[i].getClassName();
+            sb.append(type.substring(Math.max(type.lastIndexOf('.'), type.lastIndexOf('$')) + 1));
+        }
+        return sb.append(")").toString();
+    }
+
+    private static Optional<byte[]> findClass(List<Path> classDirs, String vmName) {
+        for (Path dir : classDirs) {
+            Path file = dir.resolve(vmName + ".class");
+            if (Files.exists(file)) {
+                try {
+                    return Optional.of(Files.readAllBytes(file));
+                } catch (IOException e) {
+                    System.err.println("Failed to read class file " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        return Optional.empty();
+    }
+}
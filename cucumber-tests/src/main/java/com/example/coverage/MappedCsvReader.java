@@ -0,0 +1,316 @@
+package com.example.coverage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * RFC 4180 CSV reader over a memory-mapped file, shared by the coverage, profile and
+ * timing readers. Records are scanned in place in the mapped buffer: quoted fields may
+ * hold commas, doubled quotes and line breaks, and CRLF line ends are accepted. Text
+ * fields are decoded through a dictionary, so a scenario or class repeated on millions
+ * of rows becomes one String; numeric fields are parsed straight from the buffer.
+ *
+ * Files larger than one mapping are read through consecutive windows, each starting at
+ * the first record the previous one did not hold completely. Blank lines are skipped.
+ * The file itself is only ever mapped for reading.
+ */
+public final class MappedCsvReader implements Closeable {
+
+    static final long DEFAULT_WINDOW = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long window;
+    private MappedByteBuffer buffer;
+    private long bufferStart;
+    private int position;
+
+    // Current record: field byte ranges in the buffer, and whether they hold doubled quotes
+    private int fieldCount;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private boolean[] escaped = new boolean[8];
+
+    private byte[] scratch = new byte[256];
+    private final Dictionary dictionary = new Dictionary();
+    private byte[][] lastKeys = new byte[8][];
+    private String[] lastValues = new String[8];
+
+    private MappedCsvReader(Path file, long window, boolean skipTornTail) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        long fileSize = channel.size();
+        this.size = skipTornTail ? CoverageStreamWriter.lastLineEnd(channel) : fileSize;
+        if (size < fileSize) {
+            System.out.println("Reading " + file + " up to its last line break: skipping " + (fileSize - size)
+                    + " bytes of a torn last record");
+        }
+        this.window = Math.min(window, Integer.MAX_VALUE);
+        map(0);
+    }
+
+    public static MappedCsvReader open(Path file) throws IOException {
+        return new MappedCsvReader(file, DEFAULT_WINDOW, false);
+    }
+
+    /**
+     * Open a file a {@link CoverageStreamWriter} appends to, reading it only up to its
+     * last newline: anything after it is a record torn by an interrupted run
+     */
+    public static MappedCsvReader openSkippingTornTail(Path file) throws IOException {
+        return new MappedCsvReader(file, DEFAULT_WINDOW, true);
+    }
+
+    /**
+     * Open with a smaller mapping window, to exercise records spanning windows
+     */
+    static MappedCsvReader open(Path file, long window) throws IOException {
+        return new MappedCsvReader(file, window, false);
+    }
+
+    private void map(long offset) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+        bufferStart = offset;
+        position = 0;
+    }
+
+    /**
+     * Advance to the next record
+     * @return false at the end of the file
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (position >= buffer.limit()) {
+                if (bufferStart + buffer.limit() >= size) {
+                    return false;
+                }
+                map(bufferStart + position);
+            }
+            int next = scanRecord();
+            if (next < 0) {
+                // The record continues past this window
+                if (position == 0 && buffer.limit() == window) {
+                    throw new IOException("CSV record at offset " + bufferStart + " is longer than " + window + " bytes");
+                }
+                map(bufferStart + position);
+                continue;
+            }
+            // A blank line is one empty unquoted field starting at the record
+            boolean blank = fieldCount == 1 && starts[0] == position && ends[0] == position;
+            position = next;
+            if (!blank) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Find the fields of the record at the current position
+     * @return the position after the record, or -1 if it does not end in this window
+     */
+    private int scanRecord() {
+        int limit = buffer.limit();
+        boolean lastWindow = bufferStart + limit >= size;
+        int i = position;
+        fieldCount = 0;
+        while (true) {
+            if (i < limit && buffer.get(i) == '"') {
+                int start = ++i;
+                boolean doubled = false;
+                while (true) {
+                    if (i >= limit) {
+                        if (!lastWindow) {
+                            return -1;
+                        }
+                        break;
+                    }
+                    if (buffer.get(i) == '"') {
+                        if (i + 1 >= limit && !lastWindow) {
+                            return -1;
+                        }
+                        if (i + 1 < limit && buffer.get(i + 1) == '"') {
+                            doubled = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                addField(start, Math.min(i, limit), doubled);
+                // Skip the closing quote and anything up to the delimiter
+                while (i < limit && buffer.get(i) != ',' && buffer.get(i) != '\n') {
+                    i++;
+                }
+            } else {
+                int start = i;
+                while (i < limit && buffer.get(i) != ',' && buffer.get(i) != '\n') {
+                    i++;
+                }
+                int end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                addField(start, end, false);
+            }
+            if (i >= limit) {
+                return lastWindow ? limit : -1;
+            }
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+            i++;
+        }
+    }
+
+    private void addField(int start, int end, boolean doubled) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            escaped = Arrays.copyOf(escaped, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = doubled;
+        fieldCount++;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Get a field of the current record, unquoted; equal fields give the same String
+     */
+    public String field(int index) {
+        checkIndex(index);
+        int length = ends[index] - starts[index];
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(starts[index], scratch, 0, length);
+        if (escaped[index]) {
+            int out = 0;
+            for (int i = 0; i < length; i++) {
+                scratch[out++] = scratch[i];
+                if (scratch[i] == '"') {
+                    i++;
+                }
+            }
+            length = out;
+        }
+        // Sorted files repeat a scenario or class on consecutive rows, so check the last value first
+        if (index < lastKeys.length && lastKeys[index] != null
+                && Arrays.equals(lastKeys[index], 0, lastKeys[index].length, scratch, 0, length)) {
+            return lastValues[index];
+        }
+        int slot = dictionary.intern(scratch, length);
+        if (index >= lastKeys.length) {
+            lastKeys = Arrays.copyOf(lastKeys, Math.max(index + 1, lastKeys.length * 2));
+            lastValues = Arrays.copyOf(lastValues, lastKeys.length);
+        }
+        lastKeys[index] = dictionary.keys[slot];
+        lastValues[index] = dictionary.values[slot];
+        return lastValues[index];
+    }
+
+    /**
+     * Parse a field of the current record as a decimal number, without decoding it
+     */
+    public long longField(int index) {
+        checkIndex(index);
+        int i = starts[index];
+        int end = ends[index];
+        boolean negative = i < end && buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("Not a number in field " + index);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a number in field " + index + ": " + field(index));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    public int intField(int index) {
+        return Math.toIntExact(longField(index));
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + index + " of a record with " + fieldCount + " fields");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself is released when the buffer is collected
+        buffer = null;
+        channel.close();
+    }
+
+    /**
+     * Open-addressing table from UTF-8 bytes to their decoded String
+     */
+    private static final class Dictionary {
+        private byte[][] keys = new byte[1024][];
+        private String[] values = new String[1024];
+        private int count;
+
+        /**
+         * @return the slot holding the bytes and their String
+         */
+        int intern(byte[] bytes, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (Arrays.equals(keys[slot], 0, keys[slot].length, bytes, 0, length)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = Arrays.copyOf(bytes, length);
+            values[slot] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (++count * 2 > keys.length) {
+                grow();
+                return intern(bytes, length);
+            }
+            return slot;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int hash = 1;
+                    for (byte b : oldKeys[i]) {
+                        hash = 31 * hash + b;
+                    }
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
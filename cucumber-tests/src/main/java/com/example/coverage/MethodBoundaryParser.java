@@ -0,0 +1,552 @@
+package com.example.coverage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Lightweight parser that splits a Java source file at method boundaries, without a
+ * full Java grammar. Comments are dropped and whitespace outside literals is
+ * normalized, so reformatting or editing comments does not count as a change.
+ *
+ * Methods are keyed by the signature format of the coverage data, e.g.
+ * "com.example.calculator.Calculator#perform(Operation, double)"; everything that is
+ * not inside a method (package, imports, fields, initializers, abstract methods) is
+ * kept as the file's outside text.
+ *
+ * {@link #findMethods} locates methods without copying the source, as offsets into it;
+ * {@link #parse} is built on the same boundaries.
+ */
+public final class MethodBoundaryParser {
+
+    private static final Pattern ANNOTATION = Pattern.compile("@[\\w.]+(?:\\s*\\([^)]*\\))?");
+
+    private MethodBoundaryParser() {
+    }
+
+    /**
+     * A parsed source file
+     */
+    public static final class ParsedSource {
+        private final Map<String, String> methods;
+        private final String outside;
+
+        ParsedSource(Map<String, String> methods, String outside) {
+            this.methods = methods;
+            this.outside = outside;
+        }
+
+        /**
+         * Get the normalized declaration and body of each method, by signature
+         */
+        public Map<String, String> getMethods() {
+            return methods;
+        }
+
+        /**
+         * Get the normalized text outside of method bodies
+         */
+        public String getOutside() {
+            return outside;
+        }
+    }
+
+    /**
+     * Where a method is in its source file
+     */
+    public static final class MethodBoundary {
+        private final String signature;
+        private final String name;
+        private final int start;
+        private final int bodyStart;
+        private final int end;
+
+        MethodBoundary(String signature, String name, int start, int bodyStart, int end) {
+            this.signature = signature;
+            this.name = name;
+            this.start = start;
+            this.bodyStart = bodyStart;
+            this.end = end;
+        }
+
+        /**
+         * Get the signature in the format of the coverage data
+         */
+        public String getSignature() {
+            return signature;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the offset of the declaration, its annotations included and doc comment excluded
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Get the offset of the opening brace of the body
+         */
+        public int getBodyStart() {
+            return bodyStart;
+        }
+
+        /**
+         * Get the offset after the closing brace of the body
+         */
+        public int getEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * Find the methods of a source file in one pass over it. Braces in comments, strings,
+     * text blocks and character literals are skipped, declarations may span lines, and
+     * nested blocks only end a method at its own closing brace. Runs in time linear in
+     * the length of the source.
+     */
+    public static List<MethodBoundary> findMethods(CharSequence source) {
+        return new MethodScanner(source).scan();
+    }
+
+    /**
+     * Split a source file into its methods and the text outside of them, both normalized
+     */
+    public static ParsedSource parse(String source) {
+        Map<String, String> methods = new LinkedHashMap<>();
+        StringBuilder outside = new StringBuilder();
+        int outsideStart = 0;
+        for (MethodBoundary method : findMethods(source)) {
+            normalize(source, outsideStart, method.getStart(), outside);
+            outside.append('\n');
+            StringBuilder body = new StringBuilder(method.getEnd() - method.getStart());
+            normalize(source, method.getStart(), method.getEnd(), body);
+            methods.put(method.getSignature(), body.toString());
+            outsideStart = method.getEnd();
+        }
+        normalize(source, outsideStart, source.length(), outside);
+        return new ParsedSource(methods, outside.toString().trim());
+    }
+
+    private static String methodSignature(String className, String name, String parameters) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(className).append("#").append(name).append("(");
+        List<String> params = splitParameters(parameters);
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(parameterType(params.get(i)));
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    /**
+     * Simple name of a parameter's type as Class.getSimpleName() prints it, e.g. "Entry" or "String[]"
+     */
+    private static String parameterType(String parameter) {
+        String simple = simpleParameterType(parameter);
+        if (simple != null) {
+            return simple;
+        }
+        String declaration = ANNOTATION.matcher(parameter).replaceAll(" ")
+            .replaceAll("\\bfinal\\b", " ")
+            .trim();
+        // Drop type arguments, innermost first
+        String previous;
+        do {
+            previous = declaration;
+            declaration = declaration.replaceAll("<[^<>]*>", "");
+        } while (!declaration.equals(previous));
+
+        declaration = declaration.replaceAll("\\s*(\\[\\s*]|\\.\\.\\.)", "$1 ").trim();
+        int nameStart = declaration.lastIndexOf(' ');
+        String type = nameStart > 0 ? declaration.substring(0, nameStart).trim() : declaration;
+        type = type.replace("...", "[]").replaceAll("\\s+", "");
+        return type.substring(type.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Type of a parameter declared as just "Type name", or null for anything else
+     */
+    private static String simpleParameterType(String parameter) {
+        int start = 0;
+        int end = parameter.length();
+        while (start < end && Character.isWhitespace(parameter.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(parameter.charAt(end - 1))) {
+            end--;
+        }
+        int space = -1;
+        for (int i = start; i < end; i++) {
+            char c = parameter.charAt(i);
+            if (c == ' ' && space < 0) {
+                space = i;
+            } else if (!Character.isJavaIdentifierPart(c)) {
+                return null;
+            }
+        }
+        if (space < 0 || parameter.startsWith("final", start) && space - start == 5) {
+            return null;
+        }
+        return parameter.substring(start, space);
+    }
+
+    private static List<String> splitParameters(String params) {
+        List<String> result = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < params.length(); i++) {
+            char c = params.charAt(i);
+            if (c == '<' || c == '(') {
+                depth++;
+            } else if (c == '>' || c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                result.add(params.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (!params.isBlank()) {
+            result.add(params.substring(start));
+        }
+        return result;
+    }
+
+    /**
+     * Append a range of the source without comments, collapsing whitespace outside of
+     * literals and keeping one space only between two word characters
+     */
+    private static void normalize(CharSequence source, int start, int end, StringBuilder out) {
+        boolean pendingSpace = false;
+        int i = start;
+        while (i < end) {
+            char c = source.charAt(i);
+            char next = i + 1 < end ? source.charAt(i + 1) : 0;
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                i++;
+                continue;
+            }
+            if (c == '/' && next == '/') {
+                while (i < end && source.charAt(i) != '\n') {
+                    i++;
+                }
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                i = Math.min(end, commentEnd(source, i));
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && out.length() > 0 && isWordChar(out.charAt(out.length() - 1)) && isWordChar(c)) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            if (c == '"' || c == '\'') {
+                // String, text block or character literal, copied verbatim
+                int literalEnd = Math.min(end, literalEnd(source, i));
+                out.append(source, i, literalEnd);
+                i = literalEnd;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the offset after the block comment starting at i
+     */
+    private static int commentEnd(CharSequence source, int i) {
+        int length = source.length();
+        i += 2;
+        while (i < length && !(source.charAt(i) == '*' && i + 1 < length && source.charAt(i + 1) == '/')) {
+            i++;
+        }
+        return Math.min(length, i + 2);
+    }
+
+    /**
+     * @return the offset after the string, text block or character literal at i
+     */
+    private static int literalEnd(CharSequence source, int i) {
+        int length = source.length();
+        char quote = source.charAt(i);
+        boolean textBlock = quote == '"' && i + 2 < length && source.charAt(i + 1) == '"' && source.charAt(i + 2) == '"';
+        int j = i + (textBlock ? 3 : 1);
+        while (j < length) {
+            char c = source.charAt(j);
+            if (c == '\\') {
+                j += 2;
+            } else if (c == quote && (!textBlock
+                    || (j + 2 < length && source.charAt(j + 1) == '"' && source.charAt(j + 2) == '"'))) {
+                return j + (textBlock ? 3 : 1);
+            } else if (c == '\n' && !textBlock) {
+                // Unterminated literal
+                return j;
+            } else {
+                j++;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isJavaIdentifierPart(c);
+    }
+
+    /**
+     * Single pass over a source file, tracking the declaration being read at type level
+     * until the brace or semicolon that ends it
+     */
+    private static final class MethodScanner {
+        private static final int TYPE = 0;
+        private static final int BLOCK = 1;
+
+        private final CharSequence source;
+        private final int length;
+        private final List<MethodBoundary> methods = new ArrayList<>();
+        private String packagePrefix = "";
+
+        // Open blocks outside of methods: their kind and, for types, the binary name
+        private int depth;
+        private int[] kinds = new int[8];
+        private String[] typeNames = new String[8];
+
+        // Declaration being read
+        private int declarationStart;
+        private int firstWordStart;
+        private int firstWordEnd;
+        private int lastWordStart;
+        private int lastWordEnd;
+        private char previous;
+        private int parenDepth;
+        private boolean assignment;
+        private boolean typeKeyword;
+        private String typeName;
+        private int nameStart;
+        private int nameEnd;
+        private int paramsStart;
+        private int paramsEnd;
+        // Whether the declaration so far ends in a parameter list and possibly a throws clause
+        private boolean endsInParams;
+        private boolean inThrows;
+
+        // Method being skipped
+        private int methodDepth;
+        private String methodClass;
+        private int methodBodyStart;
+
+        MethodScanner(CharSequence source) {
+            this.source = source;
+            this.length = source.length();
+            resetDeclaration();
+        }
+
+        List<MethodBoundary> scan() {
+            int i = 0;
+            while (i < length) {
+                char c = source.charAt(i);
+                char next = i + 1 < length ? source.charAt(i + 1) : 0;
+                if (c == '/' && next == '/') {
+                    while (i < length && source.charAt(i) != '\n') {
+                        i++;
+                    }
+                    continue;
+                }
+                if (c == '/' && next == '*') {
+                    i = commentEnd(source, i);
+                    continue;
+                }
+                if (c == '"' || c == '\'') {
+                    if (methodDepth == 0) {
+                        other(i, c);
+                    }
+                    i = literalEnd(source, i);
+                    continue;
+                }
+                if (methodDepth > 0) {
+                    if (c == '{') {
+                        methodDepth++;
+                    } else if (c == '}' && --methodDepth == 0) {
+                        methods.add(new MethodBoundary(
+                                methodSignature(methodClass, text(nameStart, nameEnd), parameters()),
+                                text(nameStart, nameEnd), declarationStart, methodBodyStart, i + 1));
+                        resetDeclaration();
+                    }
+                    i++;
+                    continue;
+                }
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    int start = i;
+                    while (i < length && Character.isJavaIdentifierPart(source.charAt(i))) {
+                        i++;
+                    }
+                    word(start, i);
+                } else {
+                    punctuation(i, c);
+                    i++;
+                }
+            }
+            return methods;
+        }
+
+        private void word(int start, int end) {
+            if (declarationStart < 0) {
+                declarationStart = start;
+                firstWordStart = start;
+                firstWordEnd = end;
+            }
+            if (typeKeyword) {
+                typeName = text(start, end);
+                typeKeyword = false;
+            } else if (parenDepth == 0 && typeName == null && previous != '.'
+                    && (is(start, end, "class") || is(start, end, "interface")
+                        || is(start, end, "enum") || is(start, end, "record"))) {
+                typeKeyword = true;
+            }
+            if (parenDepth == 0 && endsInParams) {
+                if (is(start, end, "throws")) {
+                    inThrows = true;
+                } else if (!inThrows) {
+                    endsInParams = false;
+                }
+            }
+            lastWordStart = start;
+            lastWordEnd = end;
+            previous = 'a';
+        }
+
+        private void punctuation(int i, char c) {
+            if (parenDepth > 0 && c != '(' && c != ')') {
+                // Annotation arguments and parameter lists
+                other(i, c);
+                return;
+            }
+            switch (c) {
+                case '(':
+                    if (parenDepth++ == 0) {
+                        nameStart = previous == 'a' ? lastWordStart : -1;
+                        nameEnd = lastWordEnd;
+                        paramsStart = i + 1;
+                    }
+                    other(i, c);
+                    break;
+                case ')':
+                    other(i, c);
+                    if (parenDepth > 0 && --parenDepth == 0) {
+                        paramsEnd = i;
+                        endsInParams = nameStart >= 0;
+                        inThrows = false;
+                    }
+                    break;
+                case ';':
+                    if (depth == 0 && firstWordStart >= 0 && is(firstWordStart, firstWordEnd, "package")) {
+                        packagePrefix = text(firstWordEnd, i).replaceAll("\\s+", "") + ".";
+                    }
+                    resetDeclaration();
+                    break;
+                case '{':
+                    openBlock(i);
+                    break;
+                case '}':
+                    if (depth > 0) {
+                        depth--;
+                    }
+                    resetDeclaration();
+                    break;
+                default:
+                    if (c == '=') {
+                        assignment = true;
+                    }
+                    other(i, c);
+            }
+        }
+
+        private void openBlock(int i) {
+            boolean inTypeBody = depth > 0 && kinds[depth - 1] == TYPE;
+            if ((depth == 0 || inTypeBody) && typeName != null && !assignment) {
+                push(TYPE, depth == 0 ? packagePrefix + typeName : typeNames[depth - 1] + "$" + typeName);
+            } else if (inTypeBody && !assignment && endsInParams) {
+                methodClass = typeNames[depth - 1];
+                methodBodyStart = i;
+                methodDepth = 1;
+                if (declarationStart < 0) {
+                    declarationStart = i;
+                }
+                return;
+            } else {
+                push(BLOCK, null);
+            }
+            resetDeclaration();
+        }
+
+        /**
+         * Any token but a word or a structural brace
+         */
+        private void other(int i, char c) {
+            if (declarationStart < 0) {
+                declarationStart = i;
+            }
+            if (parenDepth == 0 && c != ')' && endsInParams
+                    && !(inThrows && (c == '.' || c == ',' || c == '<' || c == '>' || c == '?'))) {
+                endsInParams = false;
+            }
+            previous = c;
+        }
+
+        private void push(int kind, String typeName) {
+            if (depth == kinds.length) {
+                kinds = Arrays.copyOf(kinds, depth * 2);
+                typeNames = Arrays.copyOf(typeNames, depth * 2);
+            }
+            kinds[depth] = kind;
+            typeNames[depth] = typeName;
+            depth++;
+        }
+
+        private void resetDeclaration() {
+            declarationStart = -1;
+            firstWordStart = -1;
+            previous = 0;
+            parenDepth = 0;
+            assignment = false;
+            typeKeyword = false;
+            typeName = null;
+            nameStart = -1;
+            endsInParams = false;
+            inThrows = false;
+        }
+
+        private String parameters() {
+            String parameters = text(paramsStart, paramsEnd);
+            return parameters.indexOf('/') >= 0 ? parameters.replaceAll("//[^\n]*|/\\*[\\s\\S]*?\\*/", " ") : parameters;
+        }
+
+        private boolean is(int start, int end, String word) {
+            if (end - start != word.length()) {
+                return false;
+            }
+            for (int i = 0; i < word.length(); i++) {
+                if (source.charAt(start + i) != word.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String text(int start, int end) {
+            return source.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.coverage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fingerprints of method bodies that ignore what does not change their structure, so
+ * that getters, builders and delegating overloads of different names come out the same.
+ * A body is read as Java tokens in one pass: whitespace and comments are skipped, every
+ * identifier counts as the same token and so does every literal of a kind, while
+ * keywords, operators and punctuation count as themselves. The tokens are hashed with
+ * 64-bit FNV-1a as they are read, without building any string.
+ *
+ *   public String getName() { return name; }    both read as
+ *   public Money getTotal() { return total; }   public I I ( ) { return I ; }
+ *
+ * Two classes of the same fingerprint have the same tokens in the same places, so the
+ * {@link Names} of one pair up with the other's: String with Money, getName with getTotal.
+ */
+final class MethodFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Stand-ins for identifiers and literals, none of them a character Java code has as a token
+    private static final char IDENTIFIER = '\u0001';
+    private static final char NUMBER = '\u0002';
+    private static final char STRING = '\u0003';
+    private static final char CHARACTER = '\u0004';
+
+    private static final String[] KEYWORDS = {
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "false", "final", "finally",
+            "float", "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long",
+            "native", "new", "null", "package", "private", "protected", "public", "return", "short", "static",
+            "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "true", "try",
+            "var", "void", "volatile", "while", "yield"};
+    // Hashes of the keywords, sorted, and the keyword of each
+    private static final long[] KEYWORD_HASHES = new long[KEYWORDS.length];
+    private static final String[] KEYWORDS_BY_HASH = new String[KEYWORDS.length];
+
+    static {
+        long[][] pairs = new long[KEYWORDS.length][];
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            pairs[i] = new long[]{hash(KEYWORDS[i], 0, KEYWORDS[i].length()), i};
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        for (int i = 0; i < pairs.length; i++) {
+            KEYWORD_HASHES[i] = pairs[i][0];
+            KEYWORDS_BY_HASH[i] = KEYWORDS[(int) pairs[i][1]];
+        }
+    }
+
+    private MethodFingerprint() {
+    }
+
+    // Names shorter than this, such as i or x, are too likely to stand for a word in prose
+    private static final int MIN_RENAMED_LENGTH = 3;
+
+    /**
+     * Fingerprint of a method body, including its declaration
+     */
+    static long of(CharSequence body) {
+        return scan(body, null);
+    }
+
+    /**
+     * Hash the tokens of a body, collecting its identifiers and literals if names is not null
+     */
+    private static long scan(CharSequence body, List<String> names) {
+        long hash = FNV_OFFSET;
+        int length = body.length();
+        int i = 0;
+        while (i < length) {
+            char c = body.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < length && body.charAt(i + 1) == '/') {
+                while (i < length && body.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && body.charAt(i + 1) == '*') {
+                i += 3;
+                while (i < length && !(body.charAt(i - 1) == '*' && body.charAt(i) == '/')) {
+                    i++;
+                }
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(body.charAt(i))) {
+                    i++;
+                }
+                String keyword = keyword(body, start, i);
+                hash = keyword != null ? mix(hash, keyword, 0, keyword.length()) : mix(hash, IDENTIFIER);
+                if (keyword == null && names != null) {
+                    names.add(body.subSequence(start, i).toString());
+                }
+            } else if ((c >= '0' && c <= '9') || (c == '.' && i + 1 < length && Character.isDigit(body.charAt(i + 1)))) {
+                // 0x1F, 1_000L, 1.5e-3f: digits, letters, underscores and points, with a sign after an exponent
+                int start = i;
+                boolean hex = c == '0' && i + 1 < length && (body.charAt(i + 1) == 'x' || body.charAt(i + 1) == 'X');
+                char previous = c;
+                i++;
+                while (i < length) {
+                    char next = body.charAt(i);
+                    boolean exponentSign = (next == '+' || next == '-') && (hex
+                            ? previous == 'p' || previous == 'P'
+                            : previous == 'e' || previous == 'E');
+                    if (!(Character.isLetterOrDigit(next) || next == '_' || next == '.' || exponentSign)) {
+                        break;
+                    }
+                    previous = next;
+                    i++;
+                }
+                hash = mix(hash, NUMBER);
+                if (names != null) {
+                    names.add(body.subSequence(start, i).toString());
+                }
+            } else if (c == '"') {
+                int start = i;
+                i = skipString(body, i);
+                hash = mix(hash, STRING);
+                if (names != null) {
+                    names.add(unquote(body, start, i));
+                }
+            } else if (c == '\'') {
+                int start = i;
+                i = skipQuoted(body, i + 1, '\'');
+                hash = mix(hash, CHARACTER);
+                if (names != null) {
+                    names.add(unquote(body, start, i));
+                }
+            } else {
+                hash = mix(hash, c);
+                i++;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Fingerprint of a class by its methods, in any order: the same methods with the same
+     * coverage give the same fingerprint, whatever the class and its methods are called
+     */
+    static long ofMethods(List<DeepSeekAnalyzer.MethodInfo> methods) {
+        long[] fingerprints = new long[methods.size()];
+        for (int m = 0; m < fingerprints.length; m++) {
+            DeepSeekAnalyzer.MethodInfo method = methods.get(m);
+            fingerprints[m] = of(method.body) ^ (method.isCovered ? 0x9e3779b97f4a7c15L : 0);
+        }
+        Arrays.sort(fingerprints);
+        long hash = FNV_OFFSET ^ fingerprints.length;
+        for (long fingerprint : fingerprints) {
+            hash = (hash ^ fingerprint) * FNV_PRIME;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    /**
+     * The names and literals of a class's methods, with the methods in fingerprint order
+     */
+    static Names names(String className, List<DeepSeekAnalyzer.MethodInfo> methods) {
+        List<long[]> order = new ArrayList<>();
+        List<List<String>> tokens = new ArrayList<>();
+        List<String> methodNames = new ArrayList<>();
+        for (int m = 0; m < methods.size(); m++) {
+            List<String> methodTokens = new ArrayList<>();
+            order.add(new long[]{scan(methods.get(m).body, methodTokens), m});
+            tokens.add(methodTokens);
+            methodNames.add(methods.get(m).name);
+        }
+        // Stable, so methods of the same fingerprint pair up in declaration order
+        order.sort(Comparator.comparingLong(entry -> entry[0]));
+        Names names = new Names(className);
+        for (long[] entry : order) {
+            names.methodNames.add(methodNames.get((int) entry[1]));
+            names.tokens.add(tokens.get((int) entry[1]));
+        }
+        return names;
+    }
+
+    /**
+     * The class name, method names, other identifiers and literals of a class, in the
+     * order the fingerprint reads them
+     */
+    static final class Names {
+        private final String className;
+        private final List<String> methodNames = new ArrayList<>();
+        private final List<List<String>> tokens = new ArrayList<>();
+
+        private Names(String className) {
+            this.className = className;
+        }
+
+        /**
+         * What each name or literal of this class is in another class of the same
+         * fingerprint. One that is paired with different ones in different places is
+         * left out, and so are short names other than the methods'.
+         */
+        Map<String, String> renamesTo(Names other) {
+            Map<String, String> renames = new HashMap<>();
+            Set<String> ambiguous = new HashSet<>();
+            pair(className, other.className, renames, ambiguous);
+            for (int m = 0; m < Math.min(tokens.size(), other.tokens.size()); m++) {
+                pair(methodNames.get(m), other.methodNames.get(m), renames, ambiguous);
+                List<String> from = tokens.get(m);
+                List<String> to = other.tokens.get(m);
+                for (int t = 0; t < Math.min(from.size(), to.size()); t++) {
+                    String name = from.get(t);
+                    boolean literal = !name.isEmpty() && !Character.isJavaIdentifierStart(name.charAt(0));
+                    if (literal || name.length() >= MIN_RENAMED_LENGTH || methodNames.contains(name)) {
+                        pair(name, to.get(t), renames, ambiguous);
+                    }
+                }
+            }
+            renames.keySet().removeAll(ambiguous);
+            renames.entrySet().removeIf(rename -> rename.getKey().equals(rename.getValue()));
+            return renames;
+        }
+
+        private static void pair(String from, String to, Map<String, String> renames, Set<String> ambiguous) {
+            if (from.isEmpty()) {
+                return;
+            }
+            String previous = renames.putIfAbsent(from, to);
+            if (previous != null && !previous.equals(to)) {
+                ambiguous.add(from);
+            }
+        }
+    }
+
+    private static String unquote(CharSequence text, int start, int end) {
+        int quotes = end - start >= 6 && text.charAt(start + 1) == '"' && text.charAt(start + 2) == '"' ? 3 : 1;
+        boolean closed = end - start >= 2 * quotes && text.charAt(end - 1) == text.charAt(start);
+        return text.subSequence(start + quotes, closed ? end - quotes : end).toString().trim();
+    }
+
+    private static String keyword(CharSequence text, int start, int end) {
+        if (end - start < 2 || end - start > 12 || !Character.isLowerCase(text.charAt(start))) {
+            return null;
+        }
+        int index = Arrays.binarySearch(KEYWORD_HASHES, hash(text, start, end));
+        if (index < 0) {
+            return null;
+        }
+        String keyword = KEYWORDS_BY_HASH[index];
+        if (keyword.length() != end - start) {
+            return null;
+        }
+        for (int k = 0; k < keyword.length(); k++) {
+            if (keyword.charAt(k) != text.charAt(start + k)) {
+                return null;
+            }
+        }
+        return keyword;
+    }
+
+    private static long hash(CharSequence text, int start, int end) {
+        return mix(FNV_OFFSET, text, start, end);
+    }
+
+    private static long mix(long hash, CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        // Ends the token, so that "do" "uble" differs from "double"
+        return (hash ^ ' ') * FNV_PRIME;
+    }
+
+    private static long mix(long hash, char token) {
+        return ((hash ^ token) * FNV_PRIME ^ ' ') * FNV_PRIME;
+    }
+
+    private static int skipString(CharSequence text, int i) {
+        if (i + 2 < text.length() && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+            // Text block, up to the next unescaped """
+            for (i += 3; i + 2 < text.length(); i++) {
+                if (text.charAt(i) == '\\') {
+                    i++;
+                } else if (text.charAt(i) == '"' && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                    return i + 3;
+                }
+            }
+            return text.length();
+        }
+        return skipQuoted(text, i + 1, '"');
+    }
+
+    /**
+     * @return the index after the closing quote, or the end of the line if it has none
+     */
+    private static int skipQuoted(CharSequence text, int i, char quote) {
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return text.length();
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived model processes for {@link DeepSeekAnalyzer}, so the model is started and
+ * loaded once per run rather than once per class.
+ *
+ * Requests and responses are frames on a worker's stdin and stdout: a 4-byte big-endian
+ * length, then that many bytes of UTF-8 JSON. Each request has an id its response
+ * repeats, so a worker can have several requests in flight and answer them in any order:
+ *
+ *   {"id":7,"type":"analyze","classes":[...]}  ->  {"id":7,"recommendations":[...]}
+ *                                                  or {"id":7,"error":"..."}
+ *   {"id":8,"type":"ping"}                     ->  {"id":8,"pong":true}
+ *
+ * A request goes to the live worker with the fewest requests in flight. A worker that
+ * exits fails its requests in flight and is restarted, and so is one that leaves a
+ * request or a health check unanswered past its timeout. Workers that have answered
+ * once are pinged every health interval. What a worker writes to stderr goes to
+ * worker-N.log in the log directory.
+ */
+final class ModelWorkerPool implements Closeable {
+
+    static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final List<String> command;
+    private final Path logDir;
+    private final Duration healthTimeout;
+    private final Worker[] workers;
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicInteger restarts = new AtomicInteger();
+    private final ScheduledExecutorService healthCheck;
+    private boolean closed;
+
+    ModelWorkerPool(List<String> command, int size, Path logDir, Duration healthInterval, Duration healthTimeout)
+            throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Need at least one model worker");
+        }
+        this.command = List.copyOf(command);
+        this.logDir = Files.createDirectories(logDir);
+        this.healthTimeout = healthTimeout;
+        this.workers = new Worker[size];
+        for (int i = 0; i < size; i++) {
+            workers[i] = new Worker(i);
+        }
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-worker-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheck.scheduleWithFixedDelay(this::checkHealth, healthInterval.toMillis(), healthInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ask a worker for the recommendations of the classes of one prompt
+     * @param classRecords the classes as lines of JSON, see {@link DeepSeekAnalyzer#writeClass}
+     * @return the response frame, holding a "recommendations" array
+     */
+    byte[] analyze(List<String> classRecords, Duration timeout) throws IOException, InterruptedException {
+        Worker worker = pick();
+        try {
+            long id = nextId.incrementAndGet();
+            StringJoiner classes = new StringJoiner(",", "[", "]");
+            for (String record : classRecords) {
+                if (!record.isBlank()) {
+                    classes.add(record.strip());
+                }
+            }
+            String request = "{\"id\":" + id + ",\"type\":\"analyze\",\"classes\":" + classes + "}";
+            return worker.call(id, request, timeout);
+        } finally {
+            worker.inFlight.decrementAndGet();
+        }
+    }
+
+    int getRestarts() {
+        return restarts.get();
+    }
+
+    private synchronized Worker pick() throws IOException {
+        if (closed) {
+            throw new IOException("Model workers are closed");
+        }
+        replaceDeadWorkers();
+        Worker best = workers[0];
+        for (Worker worker : workers) {
+            if (worker.inFlight.get() < best.inFlight.get()) {
+                best = worker;
+            }
+        }
+        best.inFlight.incrementAndGet();
+        return best;
+    }
+
+    private synchronized void replaceDeadWorkers() throws IOException {
+        for (int i = 0; i < workers.length; i++) {
+            if (!workers[i].alive) {
+                workers[i] = new Worker(i);
+                restarts.incrementAndGet();
+            }
+        }
+    }
+
+    private synchronized Worker[] snapshot() {
+        return workers.clone();
+    }
+
+    private void checkHealth() {
+        for (Worker worker : snapshot()) {
+            if (worker.alive && worker.ready) {
+                long id = nextId.incrementAndGet();
+                try {
+                    worker.call(id, "{\"id\":" + id + ",\"type\":\"ping\"}", healthTimeout);
+                } catch (IOException e) {
+                    // call() killed the worker if it did not answer; it is replaced below
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        synchronized (this) {
+            if (!closed) {
+                try {
+                    // Restarted now rather than on the next request, so the model loads in the meantime
+                    replaceDeadWorkers();
+                } catch (IOException e) {
+                    System.err.println("Failed to restart model worker: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the workers: their stdin is closed so they can finish, and any still running
+     * after a grace period are killed
+     */
+    @Override
+    public void close() {
+        Worker[] stopping;
+        synchronized (this) {
+            closed = true;
+            stopping = workers.clone();
+        }
+        healthCheck.shutdownNow();
+        for (Worker worker : stopping) {
+            try {
+                worker.stdin.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+        for (Worker worker : stopping) {
+            try {
+                worker.process.waitFor(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker.kill("stopped");
+        }
+    }
+
+    private final class Worker {
+        final int index;
+        final Process process;
+        final DataOutputStream stdin;
+        final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile boolean ready;
+        volatile boolean alive = true;
+
+        Worker(int index) throws IOException {
+            this.index = index;
+            this.process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.appendTo(logDir.resolve("worker-" + index + ".log").toFile()))
+                    .start();
+            this.stdin = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            Thread reader = new Thread(this::readResponses, "model-worker-" + index);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        byte[] call(long id, String request, Duration timeout) throws IOException, InterruptedException {
+            CompletableFuture<byte[]> response = new CompletableFuture<>();
+            pending.put(id, response);
+            try {
+                if (!alive) {
+                    throw new IOException("model worker " + index + " is not running");
+                }
+                byte[] frame = request.getBytes(StandardCharsets.UTF_8);
+                synchronized (stdin) {
+                    stdin.writeInt(frame.length);
+                    stdin.write(frame);
+                    stdin.flush();
+                }
+                return response.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                kill("did not answer within " + timeout.toSeconds() + "s");
+                throw new IOException("timed out after " + timeout.toSeconds() + "s");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (IOException e) {
+                kill("could not be written to: " + e.getMessage());
+                throw e;
+            } finally {
+                pending.remove(id);
+            }
+        }
+
+        private void readResponses() {
+            String reason;
+            try (DataInputStream stdout = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+                while (true) {
+                    int length = stdout.readInt();
+                    if (length < 0 || length > MAX_FRAME_BYTES) {
+                        throw new IOException("sent a frame of " + length + " bytes");
+                    }
+                    byte[] frame = new byte[length];
+                    stdout.readFully(frame);
+                    ready = true;
+                    complete(frame);
+                }
+            } catch (EOFException e) {
+                try {
+                    reason = process.waitFor(1, TimeUnit.SECONDS) ? "exited with code " + process.exitValue() : "closed stdout";
+                } catch (InterruptedException interrupted) {
+                    reason = "closed stdout";
+                }
+            } catch (IOException e) {
+                reason = e.getMessage();
+            }
+            kill(reason);
+        }
+
+        private void complete(byte[] frame) throws IOException {
+            long id = -1;
+            String error = null;
+            try (JsonParser json = JSON.createParser(frame)) {
+                if (json.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("sent a frame that is not a JSON object");
+                }
+                while (json.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = json.getCurrentName();
+                    json.nextToken();
+                    if (field.equals("id")) {
+                        id = json.getValueAsLong(-1);
+                    } else if (field.equals("error")) {
+                        error = json.getValueAsString();
+                    } else {
+                        json.skipChildren();
+                    }
+                }
+            }
+            CompletableFuture<byte[]> response = pending.get(id);
+            if (response == null) {
+                // Its caller has already given up on it
+                return;
+            }
+            if (error != null) {
+                response.completeExceptionally(new IOException(error));
+            } else {
+                response.complete(frame);
+            }
+        }
+
+        synchronized void kill(String reason) {
+            if (!alive) {
+                return;
+            }
+            alive = false;
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+            IOException failure = new IOException("model worker " + index + " " + reason);
+            pending.values().forEach(response -> response.completeExceptionally(failure));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Standalone coverage agent, an alternative to load-time weaving with the AspectJ
+ * weaver. It instruments the classes included by the weaver section of
+ * META-INF/aop.xml with boolean probes, which gives branch coverage per scenario
+ * on top of the method coverage.
+ *
+ * Usage: -javaagent:cucumber-tests-probe-agent.jar[=path/to/aop.xml]
+ * The agent jar bundles ASM, so the agent only relies on the JDK until it is running.
+ */
+public final class ProbeAgent {
+
+    private static final String AOP_XML = "META-INF/aop.xml";
+
+    private ProbeAgent() {
+    }
+
+    public static void premain(String agentArgs, Instrumentation instrumentation) {
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        try {
+            if (agentArgs != null && !agentArgs.isBlank()) {
+                readWeaverPatterns(Paths.get(agentArgs.trim()).toUri().toURL(), includes, excludes);
+            } else {
+                for (URL url : Collections.list(ClassLoader.getSystemResources(AOP_XML))) {
+                    readWeaverPatterns(url, includes, excludes);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("ProbeAgent failed to read " + AOP_XML + ": " + e.getMessage());
+        }
+
+        if (includes.isEmpty()) {
+            System.err.println("ProbeAgent: no <include within=...> patterns found, nothing will be instrumented");
+            return;
+        }
+        instrumentation.addTransformer(new ProbeClassTransformer(includes, excludes));
+        System.out.println("=== ProbeAgent loaded: instrumenting " + includes + ", excluding " + excludes + " ===");
+    }
+
+    /**
+     * Collect the include and exclude type patterns of an aop.xml weaver section
+     */
+    static void readWeaverPatterns(URL aopXml, List<String> includes, List<String> excludes) throws IOException {
+        try (InputStream in = aopXml.openStream()) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            Document document = factory.newDocumentBuilder().parse(in);
+            addWithin(document.getElementsByTagName("include"), includes);
+            addWithin(document.getElementsByTagName("exclude"), excludes);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Invalid " + aopXml + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void addWithin(NodeList elements, List<String> patterns) {
+        for (int i = 0; i < elements.getLength(); i++) {
+            String within = ((Element) elements.item(i)).getAttribute("within");
+            if (!within.isBlank() && !patterns.contains(within.trim())) {
+                patterns.add(within.trim());
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.example.coverage;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+/**
+ * Inserts boolean probes into the classes selected by the aop.xml include and exclude
+ * patterns. A method fetches its class's probe array from {@link ProbeRuntime} once on
+ * entry and keeps it in a new local; then it sets one element for the entry and one for
+ * each outcome of every conditional jump and switch it executes. A taken jump or switch
+ * arm goes through a small trampoline at the end of the method, which sets the probe and
+ * jumps on to the original target. Like the aspect's execution join points, constructors
+ * and static initializers are not instrumented.
+ */
+class ProbeClassTransformer implements ClassFileTransformer {
+
+    private static final String RUNTIME = "com/example/coverage/ProbeRuntime";
+    private static final String PROBE_ARRAY = "[Z";
+
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+
+    /**
+     * @param includes AspectJ type patterns of the classes to instrument, e.g. "com.example.calculator.*"
+     * @param excludes AspectJ type patterns of the classes to leave alone, e.g. "com.example.coverage..*"
+     */
+    ProbeClassTransformer(List<String> includes, List<String> excludes) {
+        for (String pattern : includes) {
+            this.includes.add(compileTypePattern(pattern));
+        }
+        for (String pattern : excludes) {
+            this.excludes.add(compileTypePattern(pattern));
+        }
+    }
+
+    /**
+     * Check whether a class (binary name, e.g. "com.example.calculator.Calculator") is instrumented
+     */
+    boolean matches(String className) {
+        if (className.startsWith("com.example.coverage.")) {
+            return false;
+        }
+        for (Pattern exclude : excludes) {
+            if (exclude.matcher(className).matches()) {
+                return false;
+            }
+        }
+        for (Pattern include : includes) {
+            if (include.matcher(className).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translate an AspectJ type pattern: "*" matches within a package level and ".."
+     * matches any number of package levels
+     */
+    static Pattern compileTypePattern(String typePattern) {
+        StringBuilder regex = new StringBuilder();
+        String pattern = typePattern.trim();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '.' && pattern.startsWith("..", i)) {
+                regex.append("\\.(?:.*\\.)?");
+                i++;
+            } else if (c == '.') {
+                regex.append("\\.");
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else if (c == '$') {
+                regex.append("\\$");
+            } else {
+                regex.append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (loader == null || className == null || classBeingRedefined != null
+                || !matches(className.replace('/', '.'))) {
+            return null;
+        }
+        try {
+            return instrument(classfileBuffer);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to instrument " + className + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Insert probes into a class and register its probe layout with {@link ProbeRuntime}
+     * @return the instrumented class, or null if the class cannot be instrumented
+     */
+    static byte[] instrument(byte[] classBytes) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, ClassReader.EXPAND_FRAMES);
+
+        // Inserted code needs stack map frames, which are mandatory from Java 7 class files on
+        if ((classNode.access & (Opcodes.ACC_INTERFACE | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_MODULE)) != 0
+                || (classNode.version & 0xFFFF) < Opcodes.V1_7) {
+            return null;
+        }
+
+        // A class defined again from already instrumented bytes keeps its probes
+        for (MethodNode method : classNode.methods) {
+            for (AbstractInsnNode insn : method.instructions) {
+                if (insn instanceof MethodInsnNode && ((MethodInsnNode) insn).owner.equals(RUNTIME)) {
+                    return null;
+                }
+            }
+        }
+
+        String className = classNode.name.replace('/', '.');
+        ProbeRuntime.ClassProbes probes = new ProbeRuntime.ClassProbes(className);
+        List<LdcInsnNode> classIdRefs = new ArrayList<>();
+        for (MethodNode method : classNode.methods) {
+            if ((method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE
+                    | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0
+                    || method.name.startsWith("<")) {
+                continue;
+            }
+            classIdRefs.add(instrumentMethod(method, formatMethodSignature(className, method), probes));
+        }
+        if (classIdRefs.isEmpty()) {
+            return null;
+        }
+
+        int classId = ProbeRuntime.reserveClassId();
+        for (LdcInsnNode classIdRef : classIdRefs) {
+            classIdRef.cst = classId;
+        }
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classNode.accept(writer);
+        byte[] instrumented = writer.toByteArray();
+        ProbeRuntime.defineClass(classId, probes);
+        return instrumented;
+    }
+
+    /**
+     * Insert the probes of one method
+     * @return the constant holding the class id, to be filled in once the class is registered
+     */
+    private static LdcInsnNode instrumentMethod(MethodNode method, String signature,
+                                                ProbeRuntime.ClassProbes probes) {
+        int probesLocal = method.maxLocals;
+        method.maxLocals++;
+        addProbesLocalToFrames(method, probesLocal);
+
+        AbstractInsnNode[] original = method.instructions.toArray();
+        int methodIndex = probes.addMethod(signature);
+        int line = firstLine(original);
+
+        // Entry: fetch the probe array and mark the method as executed. This goes before
+        // the first label so no exception handler range covers the uninitialized local.
+        InsnList entry = new InsnList();
+        LdcInsnNode classIdRef = new LdcInsnNode(0);
+        entry.add(classIdRef);
+        entry.add(new MethodInsnNode(Opcodes.INVOKESTATIC, RUNTIME, "probes", "(I)" + PROBE_ARRAY, false));
+        entry.add(new VarInsnNode(Opcodes.ASTORE, probesLocal));
+        entry.add(probe(probesLocal, probes.addProbe(methodIndex, line, null)));
+        method.instructions.insert(entry);
+
+        for (AbstractInsnNode insn : original) {
+            if (insn instanceof LineNumberNode) {
+                line = ((LineNumberNode) insn).line;
+            } else if (insn instanceof JumpInsnNode
+                    && insn.getOpcode() != Opcodes.GOTO && insn.getOpcode() != Opcodes.JSR) {
+                JumpInsnNode jump = (JumpInsnNode) insn;
+                int taken = probes.addProbe(methodIndex, line, "jump taken");
+                jump.label = trampoline(method, jump.label, probe(probesLocal, taken));
+                int notTaken = probes.addProbe(methodIndex, line, "jump not taken");
+                method.instructions.insert(jump, probe(probesLocal, notTaken));
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+                List<Integer> keys = new ArrayList<>();
+                for (int key = tableSwitch.min; key <= tableSwitch.max; key++) {
+                    keys.add(key);
+                }
+                tableSwitch.dflt = instrumentSwitch(method, probes, methodIndex, line, probesLocal,
+                        keys, tableSwitch.labels, tableSwitch.dflt);
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+                lookupSwitch.dflt = instrumentSwitch(method, probes, methodIndex, line, probesLocal,
+                        lookupSwitch.keys, lookupSwitch.labels, lookupSwitch.dflt);
+            }
+        }
+        return classIdRef;
+    }
+
+    /**
+     * Route every distinct target of a switch through a probe trampoline
+     * @return the new default target
+     */
+    private static LabelNode instrumentSwitch(MethodNode method, ProbeRuntime.ClassProbes probes,
+                                              int methodIndex, int line, int probesLocal,
+                                              List<Integer> keys, List<LabelNode> labels, LabelNode dflt) {
+        // Cases sharing a target are one arm
+        Map<LabelNode, List<Integer>> arms = new LinkedHashMap<>();
+        for (int i = 0; i < labels.size(); i++) {
+            if (labels.get(i) != dflt) {
+                arms.computeIfAbsent(labels.get(i), k -> new ArrayList<>()).add(keys.get(i));
+            }
+        }
+
+        Map<LabelNode, LabelNode> trampolines = new LinkedHashMap<>();
+        for (Map.Entry<LabelNode, List<Integer>> arm : arms.entrySet()) {
+            String branch = "case " + arm.getValue().toString().replaceAll("[\\[\\]]", "");
+            int probe = probes.addProbe(methodIndex, line, branch);
+            trampolines.put(arm.getKey(), trampoline(method, arm.getKey(), probe(probesLocal, probe)));
+        }
+        int defaultProbe = probes.addProbe(methodIndex, line, "default");
+        LabelNode defaultTrampoline = trampoline(method, dflt, probe(probesLocal, defaultProbe));
+
+        for (int i = 0; i < labels.size(); i++) {
+            labels.set(i, labels.get(i) == dflt ? defaultTrampoline : trampolines.get(labels.get(i)));
+        }
+        return defaultTrampoline;
+    }
+
+    /**
+     * Append code that sets a probe and continues at the target
+     * @return the label of the appended code
+     */
+    private static LabelNode trampoline(MethodNode method, LabelNode target, InsnList probe) {
+        FrameNode frame = frameAt(target);
+        LabelNode label = new LabelNode();
+        method.instructions.add(label);
+        method.instructions.add(new FrameNode(Opcodes.F_NEW,
+                frame.local.size(), frame.local.toArray(),
+                frame.stack.size(), frame.stack.toArray()));
+        method.instructions.add(probe);
+        method.instructions.add(new JumpInsnNode(Opcodes.GOTO, target));
+        return label;
+    }
+
+    /**
+     * Find the stack map frame of a jump target
+     */
+    private static FrameNode frameAt(LabelNode target) {
+        AbstractInsnNode node = target.getNext();
+        while (node instanceof LabelNode || node instanceof LineNumberNode) {
+            node = node.getNext();
+        }
+        if (!(node instanceof FrameNode)) {
+            throw new IllegalStateException("No stack map frame at jump target");
+        }
+        return (FrameNode) node;
+    }
+
+    /**
+     * Declare the probe array local in every frame of the method
+     */
+    private static void addProbesLocalToFrames(MethodNode method, int probesLocal) {
+        for (AbstractInsnNode insn : method.instructions) {
+            if (insn instanceof FrameNode) {
+                FrameNode frame = (FrameNode) insn;
+                List<Object> locals = frame.local != null ? new ArrayList<>(frame.local) : new ArrayList<>();
+                int slots = 0;
+                for (Object type : locals) {
+                    slots += type == Opcodes.LONG || type == Opcodes.DOUBLE ? 2 : 1;
+                }
+                for (; slots < probesLocal; slots++) {
+                    locals.add(Opcodes.TOP);
+                }
+                locals.add(PROBE_ARRAY);
+                frame.local = locals;
+                if (frame.stack == null) {
+                    frame.stack = new ArrayList<>();
+                }
+            }
+        }
+    }
+
+    private static InsnList probe(int probesLocal, int probe) {
+        InsnList code = new InsnList();
+        code.add(new VarInsnNode(Opcodes.ALOAD, probesLocal));
+        if (probe <= 5) {
+            code.add(new InsnNode(Opcodes.ICONST_0 + probe));
+        } else if (probe <= Byte.MAX_VALUE) {
+            code.add(new IntInsnNode(Opcodes.BIPUSH, probe));
+        } else if (probe <= Short.MAX_VALUE) {
+            code.add(new IntInsnNode(Opcodes.SIPUSH, probe));
+        } else {
+            code.add(new LdcInsnNode(probe));
+        }
+        code.add(new InsnNode(Opcodes.ICONST_1));
+        code.add(new InsnNode(Opcodes.BASTORE));
+        return code;
+    }
+
+    private static int firstLine(AbstractInsnNode[] instructions) {
+        for (AbstractInsnNode insn : instructions) {
+            if (insn instanceof LineNumberNode) {
+                return ((LineNumberNode) insn).line;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Format a method signature like the aspect does, e.g. "com.example.Class#method(String, int)"
+     */
+    private static String formatMethodSignature(String className, MethodNode method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(className).append("#").append(method.name).append("(");
+        Type[] paramTypes = Type.getArgumentTypes(method.desc);
+        for (int i = 0; i < paramTypes.length; i++) {
+            if (i > 0) sb.append(", ");
+            String name = paramTypes[i].getClassName();
+            name = name.substring(name.lastIndexOf('.') + 1);
+            sb.append(name.substring(name.lastIndexOf('$') + 1));
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.coverage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runtime side of the probe agent. Classes instrumented by {@link ProbeClassTransformer}
+ * fetch a boolean probe array on method entry and set one element per executed probe.
+ * Each thread gets the arrays of the scenario it is running, so hits are attributed to
+ * the active scenario even when scenarios run in parallel.
+ */
+public final class ProbeRuntime {
+
+    // Probe layout of every instrumented class, indexed by class id (null while being instrumented)
+    private static final List<ClassProbes> classes = new CopyOnWriteArrayList<>();
+
+    // Scenario being executed on the current thread (null outside of a scenario)
+    private static final ThreadLocal<ScenarioProbes> currentScenario = new ThreadLocal<>();
+
+    // Probes hit outside of any scenario, shared by all threads
+    private static final ScenarioProbes unattributed = new ScenarioProbes(null);
+
+    private ProbeRuntime() {
+    }
+
+    /**
+     * Get the probe array of a class for the calling thread's scenario.
+     * Called by instrumented code on every method entry.
+     */
+    public static boolean[] probes(int classId) {
+        ScenarioProbes scenario = currentScenario.get();
+        if (scenario != null) {
+            return scenario.probes(classId);
+        }
+        synchronized (unattributed) {
+            return unattributed.probes(classId);
+        }
+    }
+
+    /**
+     * Attribute the probes hit by the calling thread to a scenario
+     */
+    static void startScenario(String scenario) {
+        currentScenario.set(new ScenarioProbes(scenario));
+    }
+
+    /**
+     * Detach the calling thread from its scenario
+     * @return the probes it hit, or null if the scenario was not started on this thread
+     */
+    static ScenarioProbes endScenario(String scenario) {
+        ScenarioProbes probes = currentScenario.get();
+        if (probes == null || !probes.getScenario().equals(scenario)) {
+            return null;
+        }
+        currentScenario.remove();
+        return probes;
+    }
+
+    static void clearScenario() {
+        currentScenario.remove();
+    }
+
+    /**
+     * Reserve an id for a class about to be instrumented
+     */
+    static int reserveClassId() {
+        synchronized (classes) {
+            classes.add(null);
+            return classes.size() - 1;
+        }
+    }
+
+    /**
+     * Publish the probe layout of a class once its instrumented bytecode is ready
+     */
+    static void defineClass(int classId, ClassProbes probes) {
+        classes.set(classId, probes);
+    }
+
+    static int getClassCount() {
+        return classes.size();
+    }
+
+    /**
+     * Get the probe layout of a class, or null if it was never successfully instrumented
+     */
+    static ClassProbes getClassProbes(int classId) {
+        return classes.get(classId);
+    }
+
+    /**
+     * Get the methods executed outside of any scenario
+     */
+    static Set<String> getUnattributedMethods() {
+        synchronized (unattributed) {
+            return unattributed.getCoveredMethods();
+        }
+    }
+
+    /**
+     * Probe layout of an instrumented class: every method has an entry probe and every
+     * outcome of a conditional jump or switch has a branch probe
+     */
+    static final class ClassProbes {
+        private final String className;
+        private final List<String> methods = new ArrayList<>();
+        private final List<Integer> probeMethods = new ArrayList<>();
+        private final List<Integer> probeLines = new ArrayList<>();
+        private final List<String> probeBranches = new ArrayList<>();
+
+        ClassProbes(String className) {
+            this.className = className;
+        }
+
+        /**
+         * Add a method
+         * @param signature The method signature, formatted as in the coverage data
+         * @return the method index
+         */
+        int addMethod(String signature) {
+            methods.add(signature);
+            return methods.size() - 1;
+        }
+
+        /**
+         * Add a probe
+         * @param method The method index
+         * @param line The source line, or -1 if unknown
+         * @param branch Description of the branch outcome, or null for the method entry probe
+         * @return the probe id
+         */
+        int addProbe(int method, int line, String branch) {
+            probeMethods.add(method);
+            probeLines.add(line);
+            probeBranches.add(branch);
+            return probeMethods.size() - 1;
+        }
+
+        String getClassName() {
+            return className;
+        }
+
+        int getProbeCount() {
+            return probeMethods.size();
+        }
+
+        int getMethodIndex(int probe) {
+            return probeMethods.get(probe);
+        }
+
+        String getMethod(int probe) {
+            return methods.get(probeMethods.get(probe));
+        }
+
+        int getLine(int probe) {
+            return probeLines.get(probe);
+        }
+
+        String getBranch(int probe) {
+            return probeBranches.get(probe);
+        }
+
+        boolean isBranch(int probe) {
+            return probeBranches.get(probe) != null;
+        }
+    }
+
+    /**
+     * Probe arrays of one scenario, only written by the thread running it
+     */
+    static final class ScenarioProbes {
+        private final String scenario;
+        private boolean[][] arrays = new boolean[0][];
+
+        ScenarioProbes(String scenario) {
+            this.scenario = scenario;
+        }
+
+        boolean[] probes(int classId) {
+            if (classId < arrays.length && arrays[classId] != null) {
+                return arrays[classId];
+            }
+            if (classId >= arrays.length) {
+                arrays = Arrays.copyOf(arrays, Math.max(classId + 1, arrays.length * 2));
+            }
+            ClassProbes layout = classes.get(classId);
+            arrays[classId] = new boolean[layout != null ? layout.getProbeCount() : 0];
+            return arrays[classId];
+        }
+
+        String getScenario() {
+            return scenario;
+        }
+
+        int getClassCount() {
+            return arrays.length;
+        }
+
+        /**
+         * Get the probes hit in a class, or null if the scenario never entered it
+         */
+        boolean[] getHits(int classId) {
+            return classId < arrays.length ? arrays[classId] : null;
+        }
+
+        /**
+         * Get the signatures of the methods whose entry probe was hit
+         */
+        Set<String> getCoveredMethods() {
+            Set<String> methods = new TreeSet<>();
+            for (int classId = 0; classId < arrays.length; classId++) {
+                ClassProbes layout = classes.get(classId);
+                boolean[] hits = arrays[classId];
+                if (layout == null || hits == null) {
+                    continue;
+                }
+                for (int probe = 0; probe < hits.length; probe++) {
+                    if (hits[probe] && !layout.isBranch(probe)) {
+                        methods.add(layout.getMethod(probe));
+                    }
+                }
+            }
+            return methods;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.coverage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Packs the classes sent to the model into prompts of at most a token budget, so small
+ * classes share a model call instead of costing one each. Classes are added as they are
+ * scanned and fill one open prompt, which is handed back once the next class does not
+ * fit. A class too large for what is left of the prompt continues in the next one; a
+ * method too large for any prompt is split at line boundaries into parts sent one after
+ * the other. Uncovered methods of a class come first, so they are never the part of a
+ * class left for a later prompt.
+ *
+ * Tokens are estimated locally, see {@link #estimateTokens}. A budget of 0 sends every
+ * class in a prompt of its own, whatever its size.
+ */
+final class PromptPacker {
+
+    // Instructions around the classes, and the fields of each class and method record
+    static final int PROMPT_OVERHEAD_TOKENS = 300;
+    static final int CLASS_OVERHEAD_TOKENS = 12;
+    static final int METHOD_OVERHEAD_TOKENS = 16;
+
+    private final int budget;
+    private Prompt open = new Prompt();
+
+    /**
+     * One class, or the part of it that went into one prompt
+     */
+    static final class Part {
+        final DeepSeekAnalyzer.ClassInfo classInfo;
+        final String key;
+        private int partCount;
+
+        Part(DeepSeekAnalyzer.ClassInfo classInfo, String key) {
+            this.classInfo = classInfo;
+            this.key = key;
+        }
+
+        /**
+         * Number of parts the class was split into
+         */
+        int getPartCount() {
+            return partCount;
+        }
+    }
+
+    static final class Prompt {
+        final List<Part> parts = new ArrayList<>();
+        final Set<String> classNames = new HashSet<>();
+        int tokens = PROMPT_OVERHEAD_TOKENS;
+
+        List<Part> getParts() {
+            return parts;
+        }
+
+        int getTokens() {
+            return tokens;
+        }
+    }
+
+    /**
+     * @param budget most tokens of a prompt, or 0 for a prompt per class
+     */
+    PromptPacker(int budget) {
+        if (budget < 0 || (budget > 0 && budget < PROMPT_OVERHEAD_TOKENS + CLASS_OVERHEAD_TOKENS + METHOD_OVERHEAD_TOKENS + 64)) {
+            throw new IllegalArgumentException("Prompt budget of " + budget + " tokens leaves no room for methods");
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Estimate the tokens of text in one pass: a run of letters and digits costs a token
+     * per 4 characters, any other character but whitespace a token of its own. Close to
+     * what code costs with common BPE vocabularies, and rather over than under.
+     */
+    static int estimateTokens(CharSequence text) {
+        int tokens = 0;
+        int length = text.length();
+        for (int i = 0; i < length; ) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_' || text.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens += (i - start + 3) / 4;
+            } else {
+                if (!Character.isWhitespace(c)) {
+                    tokens++;
+                }
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    static int methodTokens(DeepSeekAnalyzer.MethodInfo method) {
+        int tokens = METHOD_OVERHEAD_TOKENS + estimateTokens(method.name) + estimateTokens(method.signature)
+                + estimateTokens(method.body);
+        for (String scenario : method.coveredInScenarios) {
+            tokens += estimateTokens(scenario) + 1;
+        }
+        return tokens;
+    }
+
+    /**
+     * Add a class
+     * @param key identifies the class in the parts it is split into
+     * @return prompts filled up by the class, in the order to send them
+     */
+    List<Prompt> add(DeepSeekAnalyzer.ClassInfo classInfo, String key) {
+        List<Prompt> full = new ArrayList<>();
+        List<Part> parts = new ArrayList<>();
+        if (budget == 0) {
+            Prompt prompt = new Prompt();
+            Part part = new Part(classInfo, key);
+            prompt.parts.add(part);
+            prompt.tokens += classTokens(classInfo);
+            for (DeepSeekAnalyzer.MethodInfo method : classInfo.getMethods()) prompt.tokens += methodTokens(method);
+            parts.add(part);
+            full.add(prompt);
+        } else {
+            // Two classes of the same name in one prompt could not be told apart in the answer
+            if (open.classNames.contains(classInfo.getClassName())) {
+                full.add(close());
+            }
+            List<DeepSeekAnalyzer.MethodInfo> methods = new ArrayList<>(classInfo.getMethods());
+            methods.sort(Comparator.comparing(method -> method.isCovered));
+            int classTokens = classTokens(classInfo);
+            List<DeepSeekAnalyzer.MethodInfo> partMethods = new ArrayList<>();
+            int partTokens = classTokens;
+            for (DeepSeekAnalyzer.MethodInfo method : methods) {
+                for (DeepSeekAnalyzer.MethodInfo piece : split(method, budget - PROMPT_OVERHEAD_TOKENS - classTokens)) {
+                    int tokens = methodTokens(piece);
+                    if (open.tokens + partTokens + tokens > budget) {
+                        // The class continues in the next prompt
+                        if (!partMethods.isEmpty()) {
+                            parts.add(addPart(classInfo, key, partMethods, partTokens));
+                            partMethods = new ArrayList<>();
+                            partTokens = classTokens;
+                        }
+                        full.add(close());
+                    }
+                    partMethods.add(piece);
+                    partTokens += tokens;
+                }
+            }
+            if (open.tokens + partTokens > budget && !open.parts.isEmpty()) {
+                full.add(close());
+            }
+            parts.add(addPart(classInfo, key, partMethods, partTokens));
+        }
+        for (Part part : parts) {
+            part.partCount = parts.size();
+        }
+        return full;
+    }
+
+    /**
+     * @return the last prompt, or null if no class is left unsent
+     */
+    Prompt finish() {
+        return open.parts.isEmpty() ? null : close();
+    }
+
+    private Part addPart(DeepSeekAnalyzer.ClassInfo classInfo, String key, List<DeepSeekAnalyzer.MethodInfo> methods,
+                         int tokens) {
+        Part part = new Part(new DeepSeekAnalyzer.ClassInfo(classInfo.getClassName(), classInfo.getFilePath(), methods), key);
+        open.parts.add(part);
+        open.classNames.add(classInfo.getClassName());
+        open.tokens += tokens;
+        return part;
+    }
+
+    private Prompt close() {
+        Prompt full = open;
+        open = new Prompt();
+        return full;
+    }
+
+    private static int classTokens(DeepSeekAnalyzer.ClassInfo classInfo) {
+        return CLASS_OVERHEAD_TOKENS + estimateTokens(classInfo.getClassName())
+                + estimateTokens(classInfo.getFilePath().toString());
+    }
+
+    /**
+     * Split a method whose record is larger than a limit into parts of its body, each
+     * named "name (part i of n)" and repeating the signature
+     */
+    static List<DeepSeekAnalyzer.MethodInfo> split(DeepSeekAnalyzer.MethodInfo method, int limit) {
+        if (methodTokens(method) <= limit) {
+            return List.of(method);
+        }
+        int bodyLimit = limit - methodTokens(new DeepSeekAnalyzer.MethodInfo(method.name + " (part 99 of 99)",
+                method.signature, "", method.isCovered, method.coveredInScenarios));
+        if (bodyLimit < 16) {
+            throw new IllegalArgumentException("Prompt budget too small for the signature of " + method.signature);
+        }
+        List<String> chunks = new ArrayList<>();
+        String body = method.body;
+        int chunkStart = 0;
+        int chunkTokens = 0;
+        for (int lineStart = 0; lineStart < body.length(); ) {
+            int newline = body.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? body.length() : newline + 1;
+            int lineTokens = estimateTokens(body.subSequence(lineStart, lineEnd));
+            if (chunkTokens + lineTokens > bodyLimit && lineStart > chunkStart) {
+                chunks.add(body.substring(chunkStart, lineStart));
+                chunkStart = lineStart;
+                chunkTokens = 0;
+            }
+            if (lineTokens > bodyLimit) {
+                // A line no prompt can hold is cut; no character costs more than a token
+                for (int cut = lineStart; cut < lineEnd; cut += bodyLimit) {
+                    chunks.add(body.substring(cut, Math.min(lineEnd, cut + bodyLimit)));
+                }
+                chunkStart = lineEnd;
+            } else {
+                chunkTokens += lineTokens;
+            }
+            lineStart = lineEnd;
+        }
+        if (chunkStart < body.length()) {
+            chunks.add(body.substring(chunkStart));
+        }
+        List<DeepSeekAnalyzer.MethodInfo> parts = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            parts.add(new DeepSeekAnalyzer.MethodInfo(method.name + " (part " + (i + 1) + " of " + chunks.size() + ")",
+                    method.signature, chunks.get(i), method.isCovered, method.coveredInScenarios));
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of model answers for {@link DeepSeekAnalyzer}. An answer is stored under a
+ * hash of the model version and everything sent about the class: its name, and the
+ * signature, body and coverage status of each method. A class whose methods and coverage
+ * did not change is answered from the cache instead of the model.
+ *
+ * Entries are touched when read, and the least recently used ones are deleted once the
+ * cache grows past its size bound.
+ */
+final class RecommendationCache {
+
+    private static final String ENTRY_SUFFIX = ".json";
+
+    private final Path dir;
+    private final long maxBytes;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private int evicted;
+
+    RecommendationCache(Path dir, long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Hash of a class as the model would see it
+     * @param modelVersion identifies the model and prompt the answer came from
+     */
+    static String key(String modelVersion, DeepSeekAnalyzer.ClassInfo classInfo) {
+        MessageDigest digest = sha256();
+        update(digest, modelVersion);
+        update(digest, classInfo.getClassName());
+        for (DeepSeekAnalyzer.MethodInfo method : classInfo.getMethods()) {
+            update(digest, method.name);
+            update(digest, method.signature);
+            update(digest, method.body);
+            digest.update((byte) (method.isCovered ? 1 : 0));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Length-prefixed, so moving text between fields changes the hash
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    /**
+     * Get a cached answer
+     * @return its file, or null if the class has to be sent to the model
+     */
+    Path get(String key) throws IOException {
+        Path entry = dir.resolve(key + ENTRY_SUFFIX);
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return entry;
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    void put(String key, Path answer) throws IOException {
+        // Copied aside and moved, so a killed run never leaves a partial entry
+        Path temp = Files.createTempFile(dir, key, ".tmp");
+        Files.copy(answer, temp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(temp, dir.resolve(key + ENTRY_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    int getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Delete the least recently used entries until the cache fits its size bound
+     * @return bytes the cache holds afterwards
+     */
+    long evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (file.getFileName().toString().endsWith(ENTRY_SUFFIX)) {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    entries.add(file);
+                    attributes.add(attrs);
+                    size += attrs.size();
+                }
+            }
+        }
+        if (size <= maxBytes) {
+            return size;
+        }
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        for (int i = 0; i < order.length && size > maxBytes; i++) {
+            Files.deleteIfExists(entries.get(order[i]));
+            size -= attributes.get(order[i]).size();
+            evicted++;
+        }
+        return size;
+    }
+
+    /**
+     * One line on how well the cache did in this run
+     */
+    String report(long bytes) {
+        int lookups = getHits() + getMisses();
+        return String.format("Recommendation cache: %d hit(s), %d miss(es), %.1f%% hit rate, %.1f MB of %.1f MB, %d evicted",
+                getHits(), getMisses(), lookups > 0 ? 100.0 * getHits() / lookups : 0,
+                bytes / 1e6, maxBytes / 1e6, evicted);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
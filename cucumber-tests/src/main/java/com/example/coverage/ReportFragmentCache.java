@@ -0,0 +1,153 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of rendered report sections for incremental regeneration. A section is
+ * stored under a hash of everything it is rendered from, so a section whose scenarios
+ * and methods did not change is copied instead of rendered, and the result is the same
+ * file a full rebuild writes. After each report, fragments it did not use are deleted.
+ *
+ * The cache also remembers the hash of the coverage input and the report it produced,
+ * so regenerating from unchanged input only compares a file hash.
+ */
+final class ReportFragmentCache {
+
+    // Bump when the markup of a section changes, so older fragments are not reused
+    static final int RENDER_VERSION = 1;
+
+    private static final String FRAGMENT_SUFFIX = ".html";
+    private static final String REPORT_KEY_FILE = "report.key";
+
+    private final Path dir;
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    ReportFragmentCache(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    /**
+     * Get a cached section
+     * @return its bytes, or null if the section has to be rendered
+     */
+    byte[] get(String key) throws IOException {
+        used.add(key);
+        try {
+            byte[] fragment = Files.readAllBytes(dir.resolve(key + FRAGMENT_SUFFIX));
+            hits.incrementAndGet();
+            return fragment;
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    void put(String key, byte[] fragment) throws IOException {
+        // Written aside and moved, so a killed build never leaves a partial fragment
+        Path temp = Files.createTempFile(dir, key, ".tmp");
+        Files.write(temp, fragment);
+        Files.move(temp, dir.resolve(key + FRAGMENT_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Whether the report was produced from this input by the current renderer and has
+     * not been touched since
+     */
+    boolean isUpToDate(Path input, Path report) throws IOException {
+        Path keyFile = dir.resolve(REPORT_KEY_FILE);
+        return Files.exists(keyFile) && Files.exists(report)
+                && Files.readString(keyFile).equals(reportKey(input, report));
+    }
+
+    /**
+     * Record the report produced from the input and delete the fragments it did not use
+     */
+    void finish(Path input, Path report) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp") || (name.endsWith(FRAGMENT_SUFFIX)
+                        && !used.contains(name.substring(0, name.length() - FRAGMENT_SUFFIX.length())))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.writeString(dir.resolve(REPORT_KEY_FILE), reportKey(input, report));
+    }
+
+    private static String reportKey(Path input, Path report) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(input)) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return String.join(",", List.of(HexFormat.of().formatHex(digest.digest()), String.valueOf(RENDER_VERSION),
+                String.valueOf(Files.size(report)), String.valueOf(Files.getLastModifiedTime(report).toMillis())));
+    }
+
+    /**
+     * 128-bit hash of a name, stable across runs
+     */
+    static long[] nameHash(String name) {
+        byte[] digest = sha256().digest(name.getBytes(StandardCharsets.UTF_8));
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = high << 8 | (digest[i] & 0xff);
+            low = low << 8 | (digest[8 + i] & 0xff);
+        }
+        return new long[]{high, low};
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Order-sensitive 128-bit hash over a sequence of name hashes
+     */
+    static final class SectionHash {
+        private long high = 0x6a09e667f3bcc908L;
+        private long low = 0xbb67ae8584caa73bL ^ RENDER_VERSION;
+
+        SectionHash add(long[] hash, long tag) {
+            high = Long.rotateLeft((high ^ hash[0] ^ tag) * 0x9e3779b97f4a7c15L, 31);
+            low = Long.rotateLeft((low ^ hash[1] ^ tag) * 0xc2b2ae3d27d4eb4fL, 29) + high;
+            return this;
+        }
+
+        String key() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.coverage;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts and self-time per (scenario, method), collected by the profiling advice
+ * of {@link CucumberCoverageAgent} when {@code cucumber.coverage.profiling=true}.
+ *
+ * Counters are {@link LongAdder}s so threads running scenarios in parallel update them
+ * without contending; self-time is the time spent in a method minus the time spent in
+ * tracked methods it called, using a per-thread stack of child durations.
+ */
+public final class ScenarioProfiler {
+
+    public static final String PROFILING_PROPERTY = "cucumber.coverage.profiling";
+
+    private static final int CALIBRATION_CALLS = 200_000;
+
+    // scenario -> method signature -> counters
+    private static final Map<String, Map<String, MethodStats>> scenarioStats = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<CallStack> callStack = ThreadLocal.withInitial(CallStack::new);
+
+    // Measured cost of the profiler's own bookkeeping per profiled call
+    private static volatile double overheadNanosPerCall = -1;
+
+    private ScenarioProfiler() {
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(PROFILING_PROPERTY);
+    }
+
+    /**
+     * Mark the start of a profiled call on the current thread
+     * @return the start timestamp to pass to {@link #exit}
+     */
+    public static long enter() {
+        callStack.get().push();
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a profiled call and charge its self-time to the scenario
+     * @param scenario The scenario running on this thread, or null if none
+     * @param methodSignature The method that returned
+     * @param startNanos The value returned by {@link #enter}
+     */
+    public static void exit(String scenario, String methodSignature, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        long selfNanos = elapsed - callStack.get().pop(elapsed);
+        if (scenario == null || methodSignature == null) {
+            return;
+        }
+        scenarioStats
+                .computeIfAbsent(scenario, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(methodSignature, k -> new MethodStats())
+                .add(selfNanos);
+    }
+
+    /**
+     * Remove and return the counters of a finished scenario
+     */
+    public static Map<String, MethodStats> removeScenario(String scenario) {
+        Map<String, MethodStats> methods = scenarioStats.remove(scenario);
+        return methods != null ? methods : Collections.emptyMap();
+    }
+
+    public static void reset() {
+        scenarioStats.clear();
+    }
+
+    /**
+     * Measure the bookkeeping cost of one profiled call (timestamps, stack and counter
+     * updates) on a throw-away counter, so the summary can report the profiler's own share
+     */
+    public static double calibrate() {
+        Map<String, Map<String, MethodStats>> scratch = new ConcurrentHashMap<>();
+        CallStack stack = new CallStack();
+        // Warm up so the measurement reflects compiled code
+        for (int round = 0; round < 2; round++) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < CALIBRATION_CALLS; i++) {
+                stack.push();
+                long start = System.nanoTime();
+                long elapsed = System.nanoTime() - start;
+                scratch.computeIfAbsent("calibration", k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent("calibration#call()", k -> new MethodStats())
+                        .add(elapsed - stack.pop(elapsed));
+            }
+            overheadNanosPerCall = (double) (System.nanoTime() - begin) / CALIBRATION_CALLS;
+        }
+        return overheadNanosPerCall;
+    }
+
+    /**
+     * @return the calibrated overhead per profiled call in nanoseconds, or -1 if not calibrated
+     */
+    public static double getOverheadNanosPerCall() {
+        return overheadNanosPerCall;
+    }
+
+    /**
+     * Call count and accumulated self-time of one method within one scenario
+     */
+    public static final class MethodStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder selfNanos = new LongAdder();
+
+        void add(long nanos) {
+            calls.increment();
+            selfNanos.add(nanos);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getSelfNanos() {
+            return selfNanos.sum();
+        }
+    }
+
+    /**
+     * Per-thread stack of the time spent in child calls of each active frame
+     */
+    private static final class CallStack {
+        private long[] childNanos = new long[32];
+        private int depth = -1;
+
+        void push() {
+            if (++depth == childNanos.length) {
+                long[] grown = new long[childNanos.length * 2];
+                System.arraycopy(childNanos, 0, grown, 0, childNanos.length);
+                childNanos = grown;
+            }
+            childNanos[depth] = 0;
+        }
+
+        /**
+         * Pop the current frame, charging its elapsed time to the parent frame
+         * @return the time spent in child calls of the popped frame
+         */
+        long pop(long elapsed) {
+            long children = childNanos[depth--];
+            if (depth >= 0) {
+                childNanos[depth] += elapsed;
+            }
+            return children;
+        }
+    }
+}
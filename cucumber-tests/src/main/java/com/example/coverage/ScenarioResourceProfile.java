@@ -0,0 +1,273 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wall time, thread CPU time and allocated bytes per scenario, measured by the Cucumber
+ * hooks around each scenario on the thread that runs it. Written by
+ * {@link CucumberCoverageAgent#saveCoverageData()} as a CSV and as a report ranked by
+ * wall time, with regressions flagged against a baseline CSV from an earlier run.
+ */
+public final class ScenarioResourceProfile {
+
+    public static final String BASELINE_PROPERTY = "cucumber.coverage.profileBaseline";
+    static final String DEFAULT_BASELINE = "scenario-profile-baseline.csv";
+
+    private static final String HEADER = "Scenario,Runs,WallNanos,CpuNanos,AllocatedBytes";
+
+    // A scenario regresses when a per-run measurement grows by this factor and by more than
+    // the minimum difference, so scheduling noise on short scenarios is not flagged
+    static final double REGRESSION_FACTOR = 1.5;
+    static final long MIN_TIME_REGRESSION_NANOS = 20_000_000L;
+    static final long MIN_ALLOCATION_REGRESSION_BYTES = 4L * 1024 * 1024;
+
+    private static final double MILLIS = 1_000_000.0;
+    private static final double MEGABYTES = 1024.0 * 1024;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    // scenario -> accumulated resources over its runs (examples of an outline share a name)
+    private static final Map<String, Resources> scenarios = new ConcurrentHashMap<>();
+
+    // Counters at the start of the scenario running on this thread
+    private static final ThreadLocal<long[]> started = new ThreadLocal<>();
+
+    static {
+        if (CPU_TIME && !THREADS.isThreadCpuTimeEnabled()) {
+            THREADS.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    private ScenarioResourceProfile() {
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start measuring the scenario about to run on the calling thread
+     */
+    public static void start() {
+        started.set(new long[]{System.nanoTime(), cpuNanos(), allocatedBytes()});
+    }
+
+    /**
+     * Stop measuring the scenario running on the calling thread and record it
+     */
+    public static void stop(String scenario) {
+        long[] start = started.get();
+        if (start == null || scenario == null) {
+            return;
+        }
+        started.remove();
+        long wall = System.nanoTime() - start[0];
+        long cpu = start[1] < 0 ? -1 : cpuNanos() - start[1];
+        long allocated = start[2] < 0 ? -1 : allocatedBytes() - start[2];
+        scenarios.computeIfAbsent(scenario, k -> new Resources()).add(1, wall, cpu, allocated);
+    }
+
+    public static void reset() {
+        scenarios.clear();
+        started.remove();
+    }
+
+    public static boolean isEmpty() {
+        return scenarios.isEmpty();
+    }
+
+    /**
+     * Get the baseline file to compare against
+     */
+    public static Path getBaselineFile() {
+        return Path.of(System.getProperty(BASELINE_PROPERTY, DEFAULT_BASELINE));
+    }
+
+    private static long cpuNanos() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS != null ? ALLOCATIONS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Write the measurements as CSV and the ranked report, comparing with the baseline if it exists
+     */
+    public static void write(Path csvFile, Path reportFile, Path baselineFile) throws IOException {
+        Map<String, Resources> current = new TreeMap<>(scenarios);
+        writeCsv(current, csvFile);
+        Map<String, Resources> baseline = Files.exists(baselineFile) ? read(baselineFile) : null;
+        try (Writer writer = Files.newBufferedWriter(reportFile)) {
+            writeReport(current, baseline, baselineFile, writer);
+        }
+    }
+
+    static void writeCsv(Map<String, Resources> profile, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write(HEADER + "\n");
+            for (Map.Entry<String, Resources> entry : profile.entrySet()) {
+                Resources r = entry.getValue();
+                writer.write(String.format("\"%s\",%d,%d,%d,%d\n", entry.getKey().replace("\"", "\"\""),
+                    r.runs, r.wallNanos, r.cpuNanos, r.allocatedBytes));
+            }
+        }
+    }
+
+    /**
+     * Read a profile CSV, e.g. a baseline
+     */
+    static Map<String, Resources> read(Path file) throws IOException {
+        Map<String, Resources> profile = new TreeMap<>();
+        try (MappedCsvReader reader = MappedCsvReader.open(file)) {
+            reader.next();
+            while (reader.next()) {
+                if (reader.fieldCount() >= 5) {
+                    profile.computeIfAbsent(reader.field(0), k -> new Resources()).add(reader.intField(1),
+                        reader.longField(2), reader.longField(3), reader.longField(4));
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Write scenarios ranked by wall time, followed by the regressions against the baseline
+     * @param baseline the baseline profile, or null if there is none
+     */
+    static void writeReport(Map<String, Resources> profile, Map<String, Resources> baseline, Path baselineFile,
+                            Writer writer) throws IOException {
+        List<Map.Entry<String, Resources>> ranked = new ArrayList<>(profile.entrySet());
+        ranked.sort(Comparator.comparingLong((Map.Entry<String, Resources> e) -> e.getValue().wallNanos).reversed());
+
+        Resources total = new Resources();
+        profile.values().forEach(r -> total.add(r.runs, r.wallNanos, r.cpuNanos, r.allocatedBytes));
+
+        writer.write("Cucumber Scenario Resource Profile\n");
+        writer.write("==================================\n\n");
+        writer.write(String.format("Generated: %s\n", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        writer.write(String.format("Scenarios: %d (%d runs)\n", profile.size(), total.runs));
+        writer.write(String.format("Total Wall Time (ms): %.3f\n", total.wallNanos / MILLIS));
+        writer.write(String.format("Total CPU Time (ms): %s\n", format(total.cpuNanos, MILLIS)));
+        writer.write(String.format("Total Allocated (MB): %s\n", format(total.allocatedBytes, MEGABYTES)));
+        writer.write(String.format("Baseline: %s\n", baseline != null
+            ? baselineFile + " (" + baseline.size() + " scenarios)" : "none (" + baselineFile + " not found)"));
+        writer.write("\n");
+
+        writer.write("Scenarios by Wall Time\n");
+        writer.write("----------------------\n");
+        writer.write(String.format("%4s %12s %12s %14s %5s  %s\n", "Rank", "Wall (ms)", "CPU (ms)", "Alloc (MB)", "Runs", "Scenario"));
+        List<String> regressions = new ArrayList<>();
+        int rank = 0;
+        for (Map.Entry<String, Resources> entry : ranked) {
+            Resources r = entry.getValue();
+            List<String> regressed = baseline != null ? regressions(r, baseline.get(entry.getKey())) : List.of();
+            writer.write(String.format("%4d %12.3f %12s %14s %5d  %s%s\n", ++rank, r.wallNanos / MILLIS,
+                format(r.cpuNanos, MILLIS), format(r.allocatedBytes, MEGABYTES), r.runs, entry.getKey(), regressed.isEmpty() ? "" : "  [REGRESSION]"));
+            for (String regression : regressed) {
+                regressions.add(entry.getKey() + ": " + regression);
+            }
+        }
+
+        if (baseline != null) {
+            writer.write("\n");
+            writer.write("Regressions Against Baseline\n");
+            writer.write("----------------------------\n");
+            if (regressions.isEmpty()) {
+                writer.write("None\n");
+            }
+            for (String regression : regressions) {
+                writer.write(regression + "\n");
+            }
+        }
+    }
+
+    /**
+     * Describe the per-run measurements of a scenario that regressed against its baseline
+     */
+    static List<String> regressions(Resources current, Resources baseline) {
+        List<String> regressions = new ArrayList<>();
+        if (baseline == null || baseline.runs == 0 || current.runs == 0) {
+            return regressions;
+        }
+        checkRegression(regressions, "wall time", current.wallNanos / current.runs, baseline.wallNanos / baseline.runs,
+            MIN_TIME_REGRESSION_NANOS, MILLIS, "ms");
+        if (current.cpuNanos >= 0 && baseline.cpuNanos >= 0) {
+            checkRegression(regressions, "CPU time", current.cpuNanos / current.runs, baseline.cpuNanos / baseline.runs,
+                MIN_TIME_REGRESSION_NANOS, MILLIS, "ms");
+        }
+        if (current.allocatedBytes >= 0 && baseline.allocatedBytes >= 0) {
+            checkRegression(regressions, "allocated", current.allocatedBytes / current.runs,
+                baseline.allocatedBytes / baseline.runs, MIN_ALLOCATION_REGRESSION_BYTES, MEGABYTES, "MB");
+        }
+        return regressions;
+    }
+
+    private static void checkRegression(List<String> regressions, String metric, long current, long baseline,
+                                        long minimumIncrease, double unit, String unitName) {
+        if (current > baseline * REGRESSION_FACTOR && current - baseline > minimumIncrease) {
+            regressions.add(String.format("%s %.3f -> %.3f %s per run (+%.0f%%)", metric, baseline / unit,
+                current / unit, unitName, baseline > 0 ? (current - baseline) * 100.0 / baseline : 100.0));
+        }
+    }
+
+    private static String format(long value, double unit) {
+        return value < 0 ? "n/a" : String.format("%.3f", value / unit);
+    }
+
+    /**
+     * Resources used by the runs of one scenario; -1 where the JVM cannot measure them
+     */
+    static final class Resources {
+        private int runs;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+
+        synchronized void add(int runs, long wallNanos, long cpuNanos, long allocatedBytes) {
+            boolean first = this.runs == 0;
+            this.runs += runs;
+            this.wallNanos += wallNanos;
+            this.cpuNanos = cpuNanos < 0 || (!first && this.cpuNanos < 0) ? -1 : this.cpuNanos + cpuNanos;
+            this.allocatedBytes = allocatedBytes < 0 || (!first && this.allocatedBytes < 0) ? -1 : this.allocatedBytes + allocatedBytes;
+        }
+
+        int getRuns() {
+            return runs;
+        }
+
+        long getWallNanos() {
+            return wallNanos;
+        }
+
+        long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
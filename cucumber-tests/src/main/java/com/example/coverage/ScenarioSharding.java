@@ -0,0 +1,333 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Splits the Cucumber scenarios across test forks so each fork gets about the same
+ * run time. Scenarios are assigned longest first, each to the fork with the least
+ * estimated time so far (longest-processing-time-first bin packing), using the wall
+ * times recorded by earlier runs. Scenarios without history are estimated at the
+ * average recorded time, which spreads them evenly. Ties are broken by scenario name
+ * and fork index, so a plan is deterministic for the same features and timings.
+ *
+ * Usage:
+ *   ScenarioSharding plan forks [featuresDir] [timingsFile] [outputDir]
+ *   ScenarioSharding update [timingsFile] [reportsDir] [shards]
+ * (defaults: src/test/resources/features, scenario-timings.csv, build/cucumber-shards, build/reports, 0)
+ *
+ * plan writes shard-&lt;i&gt;.properties with a cucumber.filter.name for each fork;
+ * update folds the wall times of the last run's scenario profiles into the timings file:
+ * those of shards 0 to shards - 1, or the unsharded profile when shards is 0.
+ *
+ * Scenario outlines are expanded against their Examples tables, as Cucumber names the
+ * scenarios it runs with the placeholders filled in.
+ */
+public class ScenarioSharding {
+
+    static final String DEFAULT_FEATURES_DIR = "src/test/resources/features";
+    static final String DEFAULT_TIMINGS_FILE = "scenario-timings.csv";
+    static final String DEFAULT_SHARDS_DIR = "build/cucumber-shards";
+    private static final String REPORTS_DIR = "build/reports";
+    private static final String PROFILE_PREFIX = "cucumber-scenario-profile";
+    private static final String HEADER = "Scenario,WallNanos";
+
+    // Weight of the latest run when updating a recorded time, smoothing out noisy runs
+    static final double SMOOTHING = 0.5;
+
+    private static final Pattern SCENARIO = Pattern.compile(
+        "^\\s*(?:Scenario|Scenario Outline|Scenario Template|Example):\\s*(.*?)\\s*$");
+    private static final Pattern EXAMPLES = Pattern.compile("^\\s*(?:Examples|Scenarios):.*$");
+    // Keywords that end the scenario before them
+    private static final Pattern SECTION = Pattern.compile("^\\s*(?:Feature|Rule|Background):.*$");
+    private static final Pattern PLACEHOLDER = Pattern.compile("<([^<>]*)>");
+
+    public static void main(String[] args) {
+        try {
+            if (args.length >= 2 && args[0].equals("plan")) {
+                int forks = Integer.parseInt(args[1]);
+                Path featuresDir = Paths.get(args.length > 2 ? args[2] : DEFAULT_FEATURES_DIR);
+                Path timingsFile = Paths.get(args.length > 3 ? args[3] : DEFAULT_TIMINGS_FILE);
+                Path outputDir = Paths.get(args.length > 4 ? args[4] : DEFAULT_SHARDS_DIR);
+
+                Map<String, Long> timings = readTimings(timingsFile);
+                List<Shard> shards = plan(findScenarios(featuresDir), timings, forks);
+                writeShards(shards, outputDir);
+
+                System.out.println("Planned " + forks + " shards from " + timings.size() + " recorded timings in " + timingsFile);
+                for (int i = 0; i < shards.size(); i++) {
+                    System.out.println(String.format("  shard %d: %d scenarios, estimated %.3f ms",
+                        i, shards.get(i).getScenarios().size(), shards.get(i).getEstimatedNanos() / 1_000_000.0));
+                }
+                System.out.println("Shard filters written to " + outputDir);
+            } else if (args.length >= 1 && args[0].equals("update")) {
+                Path timingsFile = Paths.get(args.length > 1 ? args[1] : DEFAULT_TIMINGS_FILE);
+                Path reportsDir = Paths.get(args.length > 2 ? args[2] : REPORTS_DIR);
+                int shards = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+                Map<String, Long> timings = readTimings(timingsFile);
+                int updated = updateTimings(timings, reportsDir, shards);
+                writeTimings(timings, timingsFile);
+                System.out.println("Updated " + updated + " scenario timings in " + timingsFile);
+            } else {
+                System.err.println("Usage: ScenarioSharding plan <forks> [featuresDir] [timingsFile] [outputDir]"
+                    + " | update [timingsFile] [reportsDir] [shards]");
+            }
+        } catch (IOException e) {
+            System.err.println("Error sharding scenarios: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Scenarios assigned to one fork
+     */
+    public static final class Shard {
+        private final Set<String> scenarios = new TreeSet<>();
+        private long estimatedNanos;
+
+        public Set<String> getScenarios() {
+            return scenarios;
+        }
+
+        public long getEstimatedNanos() {
+            return estimatedNanos;
+        }
+    }
+
+    /**
+     * Assign scenarios to forks, longest first, each to the least loaded fork
+     * @param scenarios scenario names
+     * @param timings recorded wall time per scenario name
+     */
+    public static List<Shard> plan(Set<String> scenarios, Map<String, Long> timings, int forks) {
+        if (forks < 1) {
+            throw new IllegalArgumentException("At least one fork is required: " + forks);
+        }
+        long known = 0;
+        int knownCount = 0;
+        for (String scenario : scenarios) {
+            Long time = timings.get(scenario);
+            if (time != null) {
+                known += time;
+                knownCount++;
+            }
+        }
+        long estimate = knownCount > 0 ? Math.max(1, known / knownCount) : 1;
+
+        List<String> ordered = new ArrayList<>(scenarios);
+        ordered.sort(Comparator.comparingLong((String s) -> timings.getOrDefault(s, estimate)).reversed()
+            .thenComparing(Comparator.naturalOrder()));
+
+        List<Shard> shards = new ArrayList<>();
+        for (int i = 0; i < forks; i++) {
+            shards.add(new Shard());
+        }
+        for (String scenario : ordered) {
+            Shard target = shards.get(0);
+            for (Shard shard : shards) {
+                if (shard.estimatedNanos < target.estimatedNanos) {
+                    target = shard;
+                }
+            }
+            target.scenarios.add(scenario);
+            target.estimatedNanos += timings.getOrDefault(scenario, estimate);
+        }
+        return shards;
+    }
+
+    /**
+     * Names of the scenarios Cucumber runs from the feature files under a directory, with
+     * one name per Examples row of an outline
+     */
+    static Set<String> findScenarios(Path featuresDir) throws IOException {
+        Set<String> scenarios = new TreeSet<>();
+        try (Stream<Path> files = Files.walk(featuresDir)) {
+            for (Path file : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".feature"))::iterator) {
+                findScenarios(Files.readAllLines(file, StandardCharsets.UTF_8), scenarios);
+            }
+        }
+        return scenarios;
+    }
+
+    private static void findScenarios(List<String> lines, Set<String> scenarios) {
+        String scenario = null;
+        boolean hasExamples = false;
+        boolean inExamples = false;
+        List<String> header = null;
+        String docString = null;
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (docString != null) {
+                if (trimmed.startsWith(docString)) {
+                    docString = null;
+                }
+                continue;
+            }
+            if (trimmed.startsWith("\"\"\"") || trimmed.startsWith("```")) {
+                docString = trimmed.substring(0, 3);
+                inExamples = false;
+                continue;
+            }
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("@")) {
+                continue;
+            }
+            Matcher matcher = SCENARIO.matcher(line);
+            if (matcher.matches() || SECTION.matcher(line).matches()) {
+                if (scenario != null && !hasExamples) {
+                    scenarios.add(scenario);
+                }
+                scenario = matcher.matches() ? matcher.group(1) : null;
+                hasExamples = false;
+                inExamples = false;
+            } else if (scenario != null && EXAMPLES.matcher(line).matches()) {
+                hasExamples = true;
+                inExamples = true;
+                header = null;
+            } else if (inExamples && trimmed.startsWith("|")) {
+                List<String> cells = tableCells(trimmed);
+                if (header == null) {
+                    header = cells;
+                } else {
+                    scenarios.add(fillPlaceholders(scenario, header, cells));
+                }
+            } else {
+                inExamples = false;
+            }
+        }
+        if (scenario != null && !hasExamples) {
+            scenarios.add(scenario);
+        }
+    }
+
+    /**
+     * The cells of a Gherkin table row, unescaped and trimmed
+     */
+    static List<String> tableCells(String row) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = null;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '|') {
+                if (cell != null) {
+                    cells.add(cell.toString().trim());
+                }
+                cell = new StringBuilder();
+            } else if (cell == null) {
+                continue;
+            } else if (c == '\\' && i + 1 < row.length()) {
+                char next = row.charAt(++i);
+                cell.append(next == 'n' ? '\n' : next);
+            } else {
+                cell.append(c);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * An outline name with each &lt;placeholder&gt; of the header replaced by the row's value
+     */
+    static String fillPlaceholders(String name, List<String> header, List<String> row) {
+        Matcher matcher = PLACEHOLDER.matcher(name);
+        StringBuilder filled = new StringBuilder();
+        while (matcher.find()) {
+            int column = header.indexOf(matcher.group(1));
+            String value = column >= 0 && column < row.size() ? row.get(column) : matcher.group();
+            matcher.appendReplacement(filled, Matcher.quoteReplacement(value));
+        }
+        return matcher.appendTail(filled).toString();
+    }
+
+    /**
+     * Write one properties file per fork with the name filter of its scenarios
+     */
+    static void writeShards(List<Shard> shards, Path outputDir) throws IOException {
+        Files.createDirectories(outputDir);
+        for (int i = 0; i < shards.size(); i++) {
+            Properties properties = new Properties();
+            properties.setProperty(TestImpactAnalysis.NAME_FILTER_PROPERTY,
+                TestImpactAnalysis.nameFilter(shards.get(i).getScenarios()));
+            try (Writer writer = Files.newBufferedWriter(outputDir.resolve("shard-" + i + ".properties"))) {
+                properties.store(writer, String.format("Shard %d of %d: %d scenarios, estimated %.3f ms", i, shards.size(),
+                    shards.get(i).getScenarios().size(), shards.get(i).getEstimatedNanos() / 1_000_000.0));
+            }
+        }
+    }
+
+    /**
+     * Fold the per-run wall times from the scenario profiles of a run into the recorded
+     * timings. Only the profiles of the given run are read, so the files that earlier runs
+     * with another shard count left behind do not count.
+     * @param shards the number of shards of the run, or 0 if it was not sharded
+     * @return the number of scenarios updated
+     */
+    static int updateTimings(Map<String, Long> timings, Path reportsDir, int shards) throws IOException {
+        List<Path> profiles = new ArrayList<>();
+        if (shards == 0) {
+            profiles.add(reportsDir.resolve(PROFILE_PREFIX + ".csv"));
+        }
+        for (int i = 0; i < shards; i++) {
+            profiles.add(reportsDir.resolve(PROFILE_PREFIX + "-" + i + ".csv"));
+        }
+        Map<String, Long> measured = new TreeMap<>();
+        for (Path file : profiles) {
+            if (!Files.exists(file)) {
+                System.out.println("No scenario profile " + file + ", its scenarios keep their recorded times");
+                continue;
+            }
+            for (Map.Entry<String, ScenarioResourceProfile.Resources> entry : ScenarioResourceProfile.read(file).entrySet()) {
+                measured.put(entry.getKey(), entry.getValue().getWallNanos());
+            }
+        }
+        for (Map.Entry<String, Long> entry : measured.entrySet()) {
+            Long previous = timings.get(entry.getKey());
+            timings.put(entry.getKey(), previous == null ? entry.getValue()
+                : Math.round(SMOOTHING * entry.getValue() + (1 - SMOOTHING) * previous));
+        }
+        return measured.size();
+    }
+
+    /**
+     * Read recorded wall times per scenario name; empty if there are none yet
+     */
+    static Map<String, Long> readTimings(Path file) throws IOException {
+        Map<String, Long> timings = new TreeMap<>();
+        if (!Files.exists(file)) {
+            return timings;
+        }
+        try (MappedCsvReader reader = MappedCsvReader.open(file)) {
+            reader.next();
+            while (reader.next()) {
+                if (reader.fieldCount() >= 2) {
+                    timings.put(reader.field(0), reader.longField(1));
+                }
+            }
+        }
+        return timings;
+    }
+
+    static void writeTimings(Map<String, Long> timings, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write(HEADER + "\n");
+            for (Map.Entry<String, Long> entry : timings.entrySet()) {
+                writer.write(String.format("\"%s\",%d\n", entry.getKey().replace("\"", "\"\""), entry.getValue()));
+            }
+        }
+    }
+}
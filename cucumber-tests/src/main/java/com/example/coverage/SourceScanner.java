@@ -0,0 +1,250 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipelined scan of the Java sources under a directory:
+ *
+ *   walkers   list directories concurrently and queue the .java files they find
+ *   parsers   read each file and turn it into a record, e.g. its classes and methods
+ *   caller    receives the records as they are ready
+ *
+ * Both queues are bounded, so a slow stage holds the ones before it back instead of
+ * letting files or records pile up, and the heap in use does not grow with the tree.
+ *
+ * Files are parsed in place as characters: files of MAP_THRESHOLD bytes or more are
+ * memory-mapped, smaller ones read into a buffer each parser reuses, as mapping many
+ * small files costs more than reading them and each mapping is only released by the
+ * garbage collector. ASCII files are viewed byte for byte; others are decoded as UTF-8.
+ */
+public final class SourceScanner {
+
+    static final int MAP_THRESHOLD = 64 * 1024;
+    private static final int QUEUE_CAPACITY_PER_THREAD = 64;
+
+    // Marks the end of the files, and the end of a parser's records
+    private static final Path END_OF_FILES = Path.of("");
+    private static final Object END_OF_RECORDS = new Object();
+
+    /**
+     * Turns a source file into a record; the characters are only valid during the call
+     */
+    public interface Parser<T> {
+        T parse(Path file, CharSequence source) throws IOException;
+    }
+
+    /**
+     * Receives the records on the thread that started the scan
+     */
+    public interface Sink<T> {
+        void accept(T record) throws IOException;
+    }
+
+    private SourceScanner() {
+    }
+
+    /**
+     * Parse every .java file under a directory, passing the records to the sink on the
+     * calling thread in the order they are ready
+     * @return number of files parsed
+     */
+    public static <T> long scan(Path root, int threads, Parser<T> parser, Sink<? super T> sink) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        BlockingQueue<Path> files = new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD);
+        BlockingQueue<Object> records = new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService walkers = Executors.newFixedThreadPool(threads);
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        try {
+            // Directories listed or waiting to be; the last walker to finish ends the files
+            AtomicInteger pendingDirectories = new AtomicInteger(1);
+            walkers.execute(new Walk(root, walkers, files, pendingDirectories, threads, failure));
+            for (int i = 0; i < threads; i++) {
+                parsers.execute(() -> parseFiles(files, records, parser, failure));
+            }
+
+            long parsed = 0;
+            for (int running = threads; running > 0; ) {
+                Object record = records.take();
+                if (record == END_OF_RECORDS) {
+                    running--;
+                } else {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) record;
+                    sink.accept(value);
+                    parsed++;
+                }
+            }
+            if (failure.get() != null) {
+                throw failure.get() instanceof IOException ? (IOException) failure.get()
+                        : new IOException("Source scan failed", failure.get());
+            }
+            return parsed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Source scan interrupted", e);
+        } finally {
+            walkers.shutdownNow();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * List one directory, queueing its sources and walking its subdirectories
+     */
+    private static final class Walk implements Runnable {
+        private final Path dir;
+        private final ExecutorService walkers;
+        private final BlockingQueue<Path> files;
+        private final AtomicInteger pendingDirectories;
+        private final int parserCount;
+        private final AtomicReference<Throwable> failure;
+
+        Walk(Path dir, ExecutorService walkers, BlockingQueue<Path> files, AtomicInteger pendingDirectories,
+             int parserCount, AtomicReference<Throwable> failure) {
+            this.dir = dir;
+            this.walkers = walkers;
+            this.files = files;
+            this.pendingDirectories = pendingDirectories;
+            this.parserCount = parserCount;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (failure.get() == null) {
+                    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                        for (Path entry : entries) {
+                            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                                pendingDirectories.incrementAndGet();
+                                walkers.execute(new Walk(entry, walkers, files, pendingDirectories, parserCount, failure));
+                            } else if (entry.getFileName().toString().endsWith(".java")) {
+                                files.put(entry);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (pendingDirectories.decrementAndGet() == 0) {
+                try {
+                    for (int i = 0; i < parserCount; i++) {
+                        files.put(END_OF_FILES);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private static <T> void parseFiles(BlockingQueue<Path> files, BlockingQueue<Object> records,
+                                       Parser<T> parser, AtomicReference<Throwable> failure) {
+        ByteBuffer buffer = ByteBuffer.allocate(MAP_THRESHOLD);
+        try {
+            for (Path file = files.take(); file != END_OF_FILES; file = files.take()) {
+                // After a failure the remaining files are only drained
+                if (failure.get() != null) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    ByteBuffer bytes;
+                    if (size >= MAP_THRESHOLD) {
+                        bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    } else {
+                        // A file growing past the threshold while it is read is cut at it
+                        buffer.clear();
+                        int read;
+                        do {
+                            read = channel.read(buffer);
+                        } while (read >= 0 && buffer.hasRemaining());
+                        bytes = buffer.flip();
+                    }
+                    T record = parser.parse(file, characters(bytes));
+                    if (record != null) {
+                        records.put(record);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failure.compareAndSet(null, new IOException("Failed to scan " + file + ": " + e.getMessage(), e));
+                }
+            }
+            records.put(END_OF_RECORDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The file's bytes as characters, without copying them if they are all ASCII
+     */
+    static CharSequence characters(ByteBuffer bytes) {
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            if (bytes.get(i) < 0) {
+                return StandardCharsets.UTF_8.decode(bytes);
+            }
+        }
+        return new AsciiSequence(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int offset;
+        private final int length;
+
+        AsciiSequence(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) bytes.get(offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("Range " + start + "-" + end + " of " + length);
+            }
+            return new AsciiSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[length];
+            bytes.get(offset, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
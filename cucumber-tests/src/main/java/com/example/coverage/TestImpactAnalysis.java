@@ -0,0 +1,343 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test impact analysis: diffs the methods of two versions of the application sources
+ * with {@link MethodBoundaryParser} and selects the scenarios whose recorded coverage
+ * includes a changed or removed method. The selection is written as a Cucumber name
+ * filter that cucumberTests -PimpactedOnly passes on to RunCucumberTest.
+ *
+ * Any change that cannot be mapped to covered methods (added methods, methods missing
+ * from the coverage data such as constructors, edits outside method bodies, or no
+ * coverage data at all) selects every scenario instead.
+ *
+ * Usage: TestImpactAnalysis [--base-commit rev | --base-dir dir] [--head-commit rev | --head-dir dir]
+ *        [--source-root dir] [--output file]
+ * (defaults: base HEAD, head the working tree, source root ../src/main/java)
+ */
+public class TestImpactAnalysis {
+
+    private static final String REPORTS_DIR = "build/reports";
+    private static final String OUTPUT_FILE = REPORTS_DIR + "/cucumber-impact.properties";
+    static final String NAME_FILTER_PROPERTY = "cucumber.filter.name";
+    // Matches no scenario name, for a change that affects no scenario
+    static final String NO_SCENARIOS = "(?!)";
+
+    /**
+     * Outcome of an impact analysis
+     */
+    public static final class Selection {
+        private final Set<String> changedMethods = new TreeSet<>();
+        private final List<String> unmappedChanges = new ArrayList<>();
+        private final Set<String> scenarios = new TreeSet<>();
+        private int totalScenarios;
+
+        /**
+         * Get the changed or removed methods, by signature
+         */
+        public Set<String> getChangedMethods() {
+            return changedMethods;
+        }
+
+        /**
+         * Get the changes that could not be mapped to scenarios
+         */
+        public List<String> getUnmappedChanges() {
+            return unmappedChanges;
+        }
+
+        /**
+         * Get the affected scenarios
+         */
+        public Set<String> getScenarios() {
+            return scenarios;
+        }
+
+        /**
+         * Whether every scenario has to run because a change could not be mapped
+         */
+        public boolean runsAll() {
+            return !unmappedChanges.isEmpty();
+        }
+
+        /**
+         * Get the Cucumber name filter for the affected scenarios
+         * @return the filter, or null if every scenario has to run
+         */
+        public String getNameFilter() {
+            if (runsAll()) {
+                return null;
+            }
+            return nameFilter(scenarios);
+        }
+    }
+
+    /**
+     * Build a Cucumber name filter that matches exactly the given scenario names
+     */
+    static String nameFilter(Collection<String> scenarios) {
+        if (scenarios.isEmpty()) {
+            return NO_SCENARIOS;
+        }
+        return scenarios.stream().map(Pattern::quote).collect(Collectors.joining("|", "^(?:", ")$"));
+    }
+
+    public static void main(String[] args) {
+        String baseCommit = "HEAD";
+        String baseDir = null;
+        String headCommit = null;
+        String headDir = null;
+        String sourceRoot = Files.isDirectory(Paths.get("../src/main/java")) ? "../src/main/java" : "src/main/java";
+        String output = OUTPUT_FILE;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--base-commit": baseCommit = args[i + 1]; break;
+                case "--base-dir": baseDir = args[i + 1]; break;
+                case "--head-commit": headCommit = args[i + 1]; break;
+                case "--head-dir": headDir = args[i + 1]; break;
+                case "--source-root": sourceRoot = args[i + 1]; break;
+                case "--output": output = args[i + 1]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        try {
+            Map<String, String[]> changedFiles;
+            if (baseDir != null) {
+                changedFiles = diffTrees(Paths.get(baseDir), Paths.get(headDir != null ? headDir : sourceRoot));
+                System.out.println("Comparing " + baseDir + " with " + (headDir != null ? headDir : sourceRoot));
+            } else {
+                changedFiles = diffCommits(Paths.get(sourceRoot), baseCommit, headCommit);
+                System.out.println("Comparing " + baseCommit + " with " + (headCommit != null ? headCommit : "the working tree")
+                    + " in " + sourceRoot);
+            }
+
+            Path reportsDir = Paths.get(REPORTS_DIR);
+            CoverageData coverage = CoverageData.load(reportsDir.resolve("cucumber-method-coverage.ccov"),
+                reportsDir.resolve("cucumber-method-coverage.csv"));
+            Selection selection = select(coverage, changedFiles);
+
+            Path outputFile = Paths.get(output);
+            write(selection, outputFile);
+
+            System.out.println("Changed methods: " + selection.getChangedMethods().size()
+                + " in " + changedFiles.size() + " changed files");
+            if (selection.runsAll()) {
+                System.out.println("Running all scenarios:");
+                selection.getUnmappedChanges().forEach(change -> System.out.println("  " + change));
+            } else {
+                System.out.println(String.format("Selected %d of %d scenarios", selection.getScenarios().size(),
+                    selection.totalScenarios));
+                selection.getScenarios().forEach(scenario -> System.out.println("  " + scenario));
+            }
+            System.out.println("Scenario filter written to " + outputFile);
+        } catch (IOException e) {
+            System.err.println("Error analyzing test impact: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Select the scenarios affected by changed source files
+     * @param coverage the recorded coverage
+     * @param changedFiles path -> {base source, head source}, null where the file does not exist
+     */
+    public static Selection select(CoverageData coverage, Map<String, String[]> changedFiles) {
+        Selection selection = new Selection();
+        if (coverage.getScenarioCount() == 0) {
+            selection.unmappedChanges.add("no coverage data recorded");
+            return selection;
+        }
+        selection.totalScenarios = coverage.getScenarioCount();
+
+        for (Map.Entry<String, String[]> file : changedFiles.entrySet()) {
+            MethodBoundaryParser.ParsedSource base = parse(file.getValue()[0]);
+            MethodBoundaryParser.ParsedSource head = parse(file.getValue()[1]);
+            if (!base.getOutside().equals(head.getOutside())) {
+                selection.unmappedChanges.add("change outside method bodies in " + file.getKey());
+            }
+
+            Set<String> signatures = new LinkedHashSet<>(base.getMethods().keySet());
+            signatures.addAll(head.getMethods().keySet());
+            for (String signature : signatures) {
+                String before = base.getMethods().get(signature);
+                String after = head.getMethods().get(signature);
+                if (before == null) {
+                    selection.unmappedChanges.add("added method " + signature);
+                } else if (!before.equals(after)) {
+                    selection.changedMethods.add(signature);
+                }
+            }
+        }
+
+        for (String method : selection.changedMethods) {
+            int methodId = coverage.findMethodId(method);
+            if (methodId < 0) {
+                selection.unmappedChanges.add("no coverage recorded for " + method);
+                continue;
+            }
+            for (int scenario = 0; scenario < coverage.getScenarioCount(); scenario++) {
+                BitSet methods = coverage.getScenarioMethods(scenario);
+                if (methods.get(methodId)) {
+                    selection.scenarios.add(coverage.getScenarios().get(scenario));
+                }
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Write the selection as JUnit Platform configuration parameters
+     */
+    static void write(Selection selection, Path file) throws IOException {
+        StringBuilder comments = new StringBuilder("Scenarios affected by changed methods");
+        for (String method : selection.getChangedMethods()) {
+            comments.append("\nchanged: ").append(method);
+        }
+        for (String change : selection.getUnmappedChanges()) {
+            comments.append("\nrunning all scenarios, ").append(change);
+        }
+
+        Properties properties = new Properties();
+        String filter = selection.getNameFilter();
+        if (filter != null) {
+            properties.setProperty(NAME_FILTER_PROPERTY, filter);
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, comments.toString());
+        }
+    }
+
+    private static MethodBoundaryParser.ParsedSource parse(String source) {
+        return MethodBoundaryParser.parse(source != null ? source : "");
+    }
+
+    /**
+     * Java files that differ between two source trees
+     */
+    static Map<String, String[]> diffTrees(Path base, Path head) throws IOException {
+        Map<String, String> baseFiles = readTree(base);
+        Map<String, String> headFiles = readTree(head);
+        Set<String> paths = new TreeSet<>(baseFiles.keySet());
+        paths.addAll(headFiles.keySet());
+
+        Map<String, String[]> changed = new TreeMap<>();
+        for (String path : paths) {
+            String before = baseFiles.get(path);
+            String after = headFiles.get(path);
+            if (before == null || !before.equals(after)) {
+                changed.put(path, new String[]{before, after});
+            }
+        }
+        return changed;
+    }
+
+    private static Map<String, String> readTree(Path root) throws IOException {
+        Map<String, String> files = new TreeMap<>();
+        if (!Files.isDirectory(root)) {
+            return files;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".java"))::iterator) {
+                files.put(root.relativize(path).toString().replace('\\', '/'), Files.readString(path));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Java files that differ between a commit and another commit or the working tree,
+     * read with git from the source root
+     */
+    static Map<String, String[]> diffCommits(Path sourceRoot, String base, String head) throws IOException {
+        List<String> paths = new ArrayList<>(
+            git(sourceRoot, "diff", "--name-only", "--relative", base, head, "--", ".").lines().toList());
+        if (head == null) {
+            // New files are not in the diff until they are added
+            git(sourceRoot, "ls-files", "--others", "--exclude-standard", ".").lines().forEach(paths::add);
+        }
+
+        Map<String, String[]> changed = new TreeMap<>();
+        for (String path : paths) {
+            if (!path.endsWith(".java")) {
+                continue;
+            }
+            String before = gitShow(sourceRoot, base, path);
+            String after;
+            if (head != null) {
+                after = gitShow(sourceRoot, head, path);
+            } else {
+                Path file = sourceRoot.resolve(path);
+                after = Files.exists(file) ? Files.readString(file) : null;
+            }
+            changed.put(path, new String[]{before, after});
+        }
+        return changed;
+    }
+
+    /**
+     * Content of a file at a commit, or null if the file does not exist there
+     */
+    private static String gitShow(Path dir, String rev, String path) throws IOException {
+        try {
+            return git(dir, "show", rev + ":./" + path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Run git in a directory, skipping null arguments
+     */
+    private static String git(Path dir, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        for (String arg : args) {
+            if (arg != null) {
+                command.add(arg);
+            }
+        }
+        Process process = new ProcessBuilder(command)
+            .directory(dir.toFile())
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("Command failed: " + String.join(" ", command));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted: " + String.join(" ", command), e);
+        }
+        return output;
+    }
+}
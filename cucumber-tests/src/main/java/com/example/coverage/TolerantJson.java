@@ -0,0 +1,427 @@
+package com.example.coverage;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Finds the JSON in a model response and repairs it in the same single pass. The
+ * response is free text: prose, code blocks and terminal escapes around or inside one
+ * or more JSON values. The JSON itself may use smart or single quotes, trailing commas,
+ * unquoted keys and // or block comments; what comes out is strict, compact JSON.
+ *
+ * Every '{' or '[' outside a value already found starts a candidate, which is parsed
+ * until it closes or turns out not to be JSON. A failed candidate is not retried from
+ * the next character: the scan resumes where it failed, and the values completed
+ * inside it are kept, such as the recommendations of a response cut short. No
+ * character is looked at more than a few times, so responses of any size take linear
+ * time, and nesting is tracked on a stack of its own rather than the call stack.
+ */
+final class TolerantJson {
+
+    private static final char ESC = '\u001b';
+
+    // Parser states: what the next token of a candidate may be
+    private static final int KEY = 0;
+    private static final int COLON = 1;
+    private static final int VALUE = 2;
+    private static final int ELEMENT = 3;
+    private static final int AFTER_VALUE = 4;
+
+    private final CharSequence text;
+    private final int length;
+    private final StringBuilder out = new StringBuilder();
+    // Open containers, and where each starts in out
+    private char[] containers = new char[16];
+    private int[] containerStarts = new int[16];
+    private int depth;
+    // Containers completed in the current candidate and not yet part of a larger one
+    private int[] completed = new int[32];
+    private int completedCount;
+    private int failure;
+
+    private TolerantJson(CharSequence text) {
+        this.text = text;
+        this.length = text.length();
+    }
+
+    /**
+     * @return the longest JSON object or array in a text, repaired, or null if there is none
+     */
+    static String extract(CharSequence text) {
+        String[] longest = new String[1];
+        extractAll(text, value -> {
+            if (longest[0] == null || value.length() > longest[0].length()) {
+                longest[0] = value;
+            }
+        });
+        return longest[0];
+    }
+
+    /**
+     * Pass every outermost JSON object or array of a text to a consumer, repaired, in
+     * the order they appear
+     */
+    static void extractAll(CharSequence text, Consumer<String> values) {
+        TolerantJson scanner = new TolerantJson(text);
+        int i = 0;
+        while (i < scanner.length) {
+            char c = text.charAt(i);
+            if (c != '{' && c != '[') {
+                i++;
+                continue;
+            }
+            int end = scanner.parse(i);
+            if (end >= 0) {
+                values.accept(scanner.out.toString());
+                i = end;
+            } else {
+                for (int k = 0; k < scanner.completedCount; k += 2) {
+                    values.accept(scanner.out.substring(scanner.completed[k], scanner.completed[k + 1]));
+                }
+                i = Math.max(scanner.failure, i + 1);
+            }
+        }
+    }
+
+    /**
+     * Parse the candidate starting at a '{' or '[' into out
+     * @return the index after it, or -1 with the index it failed at in failure
+     */
+    private int parse(int start) {
+        out.setLength(0);
+        depth = 0;
+        completedCount = 0;
+        int state = VALUE;
+        int i = start;
+        while (true) {
+            i = skipSpace(i);
+            if (i >= length) {
+                return fail(i);
+            }
+            char c = text.charAt(i);
+            switch (state) {
+                case KEY, ELEMENT -> {
+                    if (c == ',') {
+                        // Doubled comma
+                        i++;
+                        continue;
+                    }
+                    if (c == (state == KEY ? '}' : ']')) {
+                        if (out.charAt(out.length() - 1) == ',') {
+                            // Trailing comma
+                            out.setLength(out.length() - 1);
+                        }
+                        if (close(c)) {
+                            return i + 1;
+                        }
+                        state = AFTER_VALUE;
+                        i++;
+                        continue;
+                    }
+                    if (state == ELEMENT) {
+                        state = VALUE;
+                        continue;
+                    }
+                    if (isQuote(c)) {
+                        i = string(i);
+                    } else if (isIdentifierStart(c)) {
+                        // Unquoted key
+                        int end = i + 1;
+                        while (end < length && isIdentifierPart(text.charAt(end))) {
+                            end++;
+                        }
+                        out.append('"').append(text, i, end).append('"');
+                        i = end;
+                    } else {
+                        return fail(i);
+                    }
+                    if (i < 0) {
+                        return -1;
+                    }
+                    state = COLON;
+                }
+                case COLON -> {
+                    if (c != ':') {
+                        return fail(i);
+                    }
+                    out.append(':');
+                    state = VALUE;
+                    i++;
+                }
+                case VALUE -> {
+                    if (c == '{' || c == '[') {
+                        open(c);
+                        state = c == '{' ? KEY : ELEMENT;
+                        i++;
+                        continue;
+                    }
+                    if (isQuote(c)) {
+                        i = string(i);
+                    } else if (c == '-' || (c >= '0' && c <= '9')) {
+                        i = number(i);
+                    } else {
+                        i = literal(i);
+                    }
+                    if (i < 0) {
+                        return -1;
+                    }
+                    state = AFTER_VALUE;
+                }
+                case AFTER_VALUE -> {
+                    char open = containers[depth - 1];
+                    if (c == ',') {
+                        out.append(',');
+                        state = open == '{' ? KEY : ELEMENT;
+                        i++;
+                    } else if (c == (open == '{' ? '}' : ']')) {
+                        if (close(c)) {
+                            return i + 1;
+                        }
+                        i++;
+                    } else {
+                        return fail(i);
+                    }
+                }
+                default -> throw new IllegalStateException("state " + state);
+            }
+        }
+    }
+
+    private int fail(int at) {
+        failure = at;
+        return -1;
+    }
+
+    private void open(char c) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            containerStarts = Arrays.copyOf(containerStarts, depth * 2);
+        }
+        containers[depth] = c;
+        containerStarts[depth++] = out.length();
+        out.append(c);
+    }
+
+    /**
+     * @return whether the outermost container of the candidate was closed
+     */
+    private boolean close(char c) {
+        out.append(c);
+        int start = containerStarts[--depth];
+        // The containers completed inside this one are now part of it
+        while (completedCount > 0 && completed[completedCount - 2] >= start) {
+            completedCount -= 2;
+        }
+        if (completedCount == completed.length) {
+            completed = Arrays.copyOf(completed, completedCount * 2);
+        }
+        completed[completedCount++] = start;
+        completed[completedCount++] = out.length();
+        return depth == 0;
+    }
+
+    /**
+     * Copy a string in any of the quotes models use as a double-quoted JSON string
+     * @return the index after its closing quote, or -1 if it is not closed on its line
+     */
+    private int string(int i) {
+        char quote = text.charAt(i);
+        out.append('"');
+        for (i++; i < length; ) {
+            char c = text.charAt(i);
+            if (closes(quote, c, i + 1)) {
+                out.append('"');
+                return i + 1;
+            }
+            if (c == ESC) {
+                i = skipEscape(i);
+                continue;
+            }
+            if (c == '\n') {
+                return fail(i);
+            }
+            if (c == '\\' && i + 1 < length) {
+                char next = text.charAt(i + 1);
+                if (next == 'u' && i + 5 < length && isHex(text, i + 2, i + 6)) {
+                    out.append(text, i, i + 6);
+                    i += 6;
+                    continue;
+                }
+                if ("\"\\/bfnrt".indexOf(next) >= 0) {
+                    out.append(c).append(next);
+                } else {
+                    // \' and escapes JSON does not have stand for the character itself
+                    appendStringChar(next);
+                }
+                i += 2;
+                continue;
+            }
+            appendStringChar(c);
+            i++;
+        }
+        return fail(i);
+    }
+
+    /**
+     * Whether a character closes a string opened by a quote. A single quote followed by
+     * a letter is an apostrophe, as in 'doesn't'.
+     */
+    private boolean closes(char quote, char c, int next) {
+        return switch (quote) {
+            case '"' -> c == '"';
+            case '\u201c' -> c == '\u201d' || c == '\u201c' || c == '"';
+            default -> (c == '\'' || c == '\u2019')
+                    && (next >= length || !Character.isLetter(text.charAt(next)));
+        };
+    }
+
+    private void appendStringChar(char c) {
+        if (c == '"' || c == '\\') {
+            out.append('\\').append(c);
+        } else if (c < 0x20) {
+            switch (c) {
+                case '\t' -> out.append("\\t");
+                case '\r' -> out.append("\\r");
+                case '\n' -> out.append("\\n");
+                case '\b' -> out.append("\\b");
+                case '\f' -> out.append("\\f");
+                default -> out.append(String.format("\\u%04x", (int) c));
+            }
+        } else {
+            out.append(c);
+        }
+    }
+
+    /**
+     * Copy a number, which must be one JSON allows
+     */
+    private int number(int i) {
+        int start = i;
+        if (i < length && text.charAt(i) == '-') {
+            i++;
+        }
+        int digits = digits(i);
+        if (digits == i || (text.charAt(i) == '0' && digits > i + 1)) {
+            return fail(i);
+        }
+        i = digits;
+        if (i < length && text.charAt(i) == '.') {
+            digits = digits(i + 1);
+            if (digits == i + 1) {
+                return fail(i);
+            }
+            i = digits;
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                i++;
+            }
+            digits = digits(i);
+            if (digits == i) {
+                return fail(i);
+            }
+            i = digits;
+        }
+        out.append(text, start, i);
+        return i;
+    }
+
+    private int digits(int i) {
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private int literal(int i) {
+        int end = i;
+        while (end < length && isIdentifierPart(text.charAt(end))) {
+            end++;
+        }
+        String word = text.subSequence(i, end).toString();
+        if (!word.equals("true") && !word.equals("false") && !word.equals("null")) {
+            return fail(i);
+        }
+        out.append(word);
+        return end;
+    }
+
+    /**
+     * Skip whitespace, terminal escapes and comments
+     */
+    private int skipSpace(int i) {
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00a0' || c == '\ufeff') {
+                i++;
+            } else if (c == ESC) {
+                i = skipEscape(i);
+            } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/') {
+                while (i < length && text.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+                i += 3;
+                while (i < length && !(text.charAt(i - 1) == '*' && text.charAt(i) == '/')) {
+                    i++;
+                }
+                i++;
+            } else {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Skip a terminal escape, such as the cursor and spinner control a model runner
+     * writes between tokens
+     */
+    private int skipEscape(int i) {
+        i++;
+        if (i >= length) {
+            return i;
+        }
+        char c = text.charAt(i++);
+        if (c == '[') {
+            // Parameters and intermediates, then one final byte
+            while (i < length && text.charAt(i) >= 0x20 && text.charAt(i) <= 0x3f) {
+                i++;
+            }
+            return Math.min(length, i + 1);
+        }
+        if (c == ']') {
+            // Operating system command, up to BEL or ESC \
+            while (i < length && text.charAt(i) != '\u0007' && text.charAt(i) != ESC) {
+                i++;
+            }
+            if (i < length && text.charAt(i) == ESC) {
+                i++;
+            }
+            return Math.min(length, i + 1);
+        }
+        return i;
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '\'' || c == '\u201c' || c == '\u2018';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '-';
+    }
+
+    private static boolean isHex(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Scenario by method coverage matrix for suites too large for one HTML page. Writes a
+ * small HTML shell and gzip-compressed JSON data next to it:
+ *
+ *   index.html              canvas viewer drawing only the visible rows and columns
+ *   data/manifest.json.gz   scenario and method names (sorted), counts and coverage classes
+ *   data/page-N.json.gz     for each page of PAGE_SIZE scenarios, the method columns each executed
+ *
+ * The viewer loads the manifest, then fetches pages as their rows scroll into view, and
+ * filters columns by the method coverage classes of {@link GenerateCoverageReport}. It
+ * decompresses with the browser's DecompressionStream, so the directory has to be
+ * served over HTTP, e.g. {@code python3 -m http.server -d build/reports/cucumber-method-coverage}.
+ */
+public final class VirtualCoverageReport {
+
+    static final int PAGE_SIZE = 500;
+    private static final String SHELL_RESOURCE = "virtual-coverage-report.html";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private VirtualCoverageReport() {
+    }
+
+    /**
+     * Write the shell and its data files into a directory, replacing an earlier report
+     * @return number of data pages written
+     */
+    public static int write(CoverageData data, Path dir) throws IOException {
+        CoverageIndex index = CoverageIndex.build(data);
+        List<String> scenarios = data.getScenarios();
+        List<String> methods = data.getMethods();
+        int[] scenarioOrder = GenerateCoverageReport.sortedIds(scenarios);
+        int[] methodOrder = GenerateCoverageReport.sortedIds(methods);
+        int[] methodRanks = GenerateCoverageReport.ranks(methodOrder);
+
+        Path dataDir = Files.createDirectories(dir.resolve("data"));
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(dataDir, "page-*.json.gz")) {
+            for (Path page : stale) {
+                Files.delete(page);
+            }
+        }
+
+        int pageCount = (scenarios.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        JsonFactory factory = new JsonFactory();
+        try (JsonGenerator json = createGenerator(factory, dataDir.resolve("manifest.json.gz"))) {
+            json.writeStartObject();
+            json.writeNumberField("pageSize", PAGE_SIZE);
+            json.writeNumberField("pageCount", pageCount);
+            json.writeArrayFieldStart("scenarios");
+            for (int scenario : scenarioOrder) {
+                json.writeString(scenarios.get(scenario));
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("scenarioMethodCounts");
+            for (int scenario : scenarioOrder) {
+                json.writeNumber(index.methodCount(scenario));
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("methods");
+            for (int method : methodOrder) {
+                json.writeString(methods.get(method));
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("methodScenarioCounts");
+            for (int method : methodOrder) {
+                json.writeNumber(index.scenarioCount(method));
+            }
+            json.writeEndArray();
+            json.writeArrayFieldStart("coverageClasses");
+            for (int method : methodOrder) {
+                json.writeString(GenerateCoverageReport.getCoverageClass(index.scenarioCount(method)));
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+
+        // Rows hold method positions in the manifest's sorted method list
+        for (int page = 0; page < pageCount; page++) {
+            try (JsonGenerator json = createGenerator(factory, dataDir.resolve("page-" + page + ".json.gz"))) {
+                json.writeStartArray();
+                for (int row = page * PAGE_SIZE; row < Math.min(scenarios.size(), (page + 1) * PAGE_SIZE); row++) {
+                    int[] ranks = index.methodIds(scenarioOrder[row]).clone();
+                    for (int i = 0; i < ranks.length; i++) {
+                        ranks[i] = methodRanks[ranks[i]];
+                    }
+                    Arrays.sort(ranks);
+                    json.writeArray(ranks, 0, ranks.length);
+                }
+                json.writeEndArray();
+            }
+        }
+
+        try (InputStream shell = VirtualCoverageReport.class.getResourceAsStream(SHELL_RESOURCE)) {
+            if (shell == null) {
+                throw new IOException("Report shell not found: " + SHELL_RESOURCE);
+            }
+            Files.copy(shell, dir.resolve("index.html"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return pageCount;
+    }
+
+    private static JsonGenerator createGenerator(JsonFactory factory, Path file) throws IOException {
+        return factory.createGenerator(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+    }
+}
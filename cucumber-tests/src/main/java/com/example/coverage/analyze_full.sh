@@ -13,9 +13,9 @@ java -cp build/libs/* com.example.coverage.DeepSeekAnalyzer "$SRC_DIR" "$OUT_DIR
 # Step 2: Run the enhanced DeepSeek Python analysis
 echo "=== Running DeepSeek model analysis ==="
 ./run_deepseek.sh --model "$MODEL" \
-  --input "$OUT_DIR/deepseek-input.json" \
-  --output "$OUT_DIR/results.json"
+  --input "$OUT_DIR/deepseek-input.ndjson" \
+  --output "$OUT_DIR/results.ndjson"
 
 echo "✅ Analysis complete. See:"
-echo " - $OUT_DIR/results.json (structured)"
+echo " - $OUT_DIR/results.ndjson (one recommendation per line)"
 echo " - $OUT_DIR/test-recommendations.html (visual report)"
@@ -1,6 +1,8 @@
 package com.example.calculatorT;
 
 import com.example.coverage.CucumberCoverageAgent;
+import com.example.coverage.JacocoScenarioCoverage;
+import com.example.coverage.ScenarioResourceProfile;
 import io.cucumber.java.After;
 import io.cucumber.java.AfterAll;
 import io.cucumber.java.Before;
@@ -25,31 +27,37 @@ public class CoverageHooks {
     }
 
     /**
-     * Before each scenario, set the current scenario name for tracking
+     * Before each scenario, set the current scenario name for tracking, set aside the
+     * JaCoCo data recorded since the last scenario and start measuring its wall time,
+     * CPU time and allocations
      */
     @Before
     public void beforeScenario(Scenario scenario) {
-        String scenarioName = scenario.getName();
         System.out.println("----------------------------------");
-        System.out.println("Before hook called for scenario: " + scenarioName);
+        System.out.println("Before hook called for scenario: " + scenario.getName());
 
-        if (scenarioName == null || scenarioName.isEmpty()) {
-            // Fallback to ID if name is empty
-            scenarioName = "Scenario-" + scenario.getId();
-        }
+        String scenarioName = coverageName(scenario);
         CucumberCoverageAgent.setCurrentScenario(scenarioName);
         System.out.println("Current scenario set to: " + scenarioName);
         System.out.println("----------------------------------");
+        JacocoScenarioCoverage.startScenario();
+        ScenarioResourceProfile.start();
     }
 
     /**
-     * After each scenario, print some status info
+     * After each scenario, record its resource usage and JaCoCo data, print some status
+     * info, append the scenario's coverage to the coverage file and release the scenario
+     * bound to this thread, so a parallel worker picking up the next scenario starts clean
      */
     @After
     public void afterScenario(Scenario scenario) {
+        ScenarioResourceProfile.stop(coverageName(scenario));
+        JacocoScenarioCoverage.endScenario(coverageName(scenario));
         System.out.println("----------------------------------");
         System.out.println("After hook called for scenario: " + scenario.getName());
         System.out.println("Scenario status: " + (scenario.isFailed() ? "FAILED" : "PASSED"));
+        CucumberCoverageAgent.flushScenario(coverageName(scenario));
+        CucumberCoverageAgent.clearCurrentScenario();
         System.out.println("----------------------------------");
     }
 
@@ -60,8 +68,21 @@ public class CoverageHooks {
     public static void afterAllScenarios() {
         System.out.println("==================================");
         System.out.println("AfterAll hook called - Saving coverage data");
+        JacocoScenarioCoverage.finish();
         CucumberCoverageAgent.saveCoverageData();
         System.out.println("Coverage data saved");
         System.out.println("==================================");
     }
-}
\ No newline at end of file
+
+    /**
+     * Name under which a scenario's coverage is recorded
+     */
+    private static String coverageName(Scenario scenario) {
+        String scenarioName = scenario.getName();
+        if (scenarioName == null || scenarioName.isEmpty()) {
+            // Fallback to ID if name is empty
+            scenarioName = "Scenario-" + scenario.getId();
+        }
+        return scenarioName;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.coverage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures how DeepSeekAnalyzer scales with the size of its pool of model processes. The
+ * model is {@link StubModelWorker} started for every class, as DeepSeekAnalyzer does by
+ * default, with a fixed latency per call; every pool size must produce the same report.
+ *
+ * Usage: AnalyzerPoolBenchmark [classes] [latency-millis] [max-workers] (default: 16 300 8)
+ */
+public class AnalyzerPoolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        String latencyMillis = args.length > 1 ? args[1] : "300";
+        int maxWorkers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        System.out.println("=== Analyzer Pool Benchmark ===");
+        System.out.printf("%d classes, %s ms per model call, one process per class%n", classes, latencyMillis);
+        System.out.printf("%-10s %12s %10s %10s%n", "Workers", "Wall (s)", "Speedup", "Report");
+        Path dir = Files.createTempDirectory("analyzer-pool-benchmark");
+        try {
+            Path sources = Files.createDirectories(dir.resolve("src"));
+            for (int c = 0; c < classes; c++) {
+                // Methods of their own structure, so no two classes share an analysis
+                Files.writeString(sources.resolve("Service" + c + ".java"), "public class Service" + c + " {\n"
+                        + "    public int handle(int value) {\n        return value" + " + 1".repeat(c + 1) + ";\n    }\n}\n");
+            }
+
+            String baseline = null;
+            double serialSeconds = 0;
+            for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+                Path run = Files.createDirectories(dir.resolve("workers-" + workers));
+                List<String> command = new ArrayList<>();
+                for (String part : StubModelWorker.command(run)) {
+                    command.add("'" + part + "'");
+                }
+                Path stub = run.resolve("stub-model.sh");
+                Files.writeString(stub, "exec " + String.join(" ", command) + " --latency-millis " + latencyMillis
+                        + " \"$@\"\n");
+
+                long start = System.nanoTime();
+                new DeepSeekAnalyzer(sources.toString(), run.resolve("output").toString(), stub.toString(), workers,
+                        Duration.ofSeconds(120), 0, 0, 0).analyzeCode();
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                String report = Files.readString(run.resolve("output/test-recommendations.json"));
+                if (baseline == null) {
+                    baseline = report;
+                    serialSeconds = seconds;
+                }
+                System.out.printf("%-10d %12.2f %9.2fx %10s%n", workers, seconds, serialSeconds / seconds,
+                        report.equals(baseline) ? "same" : "DIFFERS");
+            }
+        } finally {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the binary coverage format and its CSV export
+ */
+public class BinaryCoverageFormatTest {
+
+    private static final String PERFORM = "com.example.calculator.Calculator#perform(Operation, double)";
+    private static final String CLEAR = "com.example.calculator.Calculator#clear()";
+    private static final String GET_RESULT = "com.example.calculator.Calculator#getResult()";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Coverage should survive a write and read round trip")
+    void shouldRoundTripCoverage() throws IOException {
+        CoverageData data = new CoverageData();
+        data.addScenario("Adding numbers", List.of(PERFORM, GET_RESULT));
+        data.addScenario("Clearing the calculator", List.of(PERFORM, CLEAR, GET_RESULT));
+        data.addScenario("Empty scenario", List.of());
+        data.addProfile(data.scenarioId("Adding numbers"), data.methodId(PERFORM), 2, 1500);
+
+        Path file = tempDir.resolve("coverage.ccov");
+        BinaryCoverageFormat.write(data, file);
+        CoverageData read = BinaryCoverageFormat.read(file);
+
+        assertEquals(data.toScenarioMethodMap(), read.toScenarioMethodMap());
+        assertArrayEquals(new long[]{2, 1500},
+                read.getProfile(read.scenarioId("Adding numbers"), read.methodId(PERFORM)));
+    }
+
+    @Test
+    @DisplayName("Streamed records should merge repeated scenarios")
+    void shouldMergeStreamedScenarios() throws IOException {
+        BinaryCoverageFormat.Encoder encoder = new BinaryCoverageFormat.Encoder();
+        Path file = tempDir.resolve("coverage.ccov");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(BinaryCoverageFormat.header());
+            out.write(encoder.encode("Outline", Set.of(PERFORM), Map.of()));
+            out.write(encoder.encode("Other", Set.of(CLEAR), Map.of()));
+            out.write(encoder.encode("Outline", Set.of(GET_RESULT), Map.of()));
+        }
+
+        Map<String, Set<String>> coverage = BinaryCoverageFormat.read(file).toScenarioMethodMap();
+        assertEquals(Set.of(PERFORM, GET_RESULT), coverage.get("Outline"));
+        assertEquals(Set.of(CLEAR), coverage.get("Other"));
+    }
+
+    @Test
+    @DisplayName("A torn last record should be ignored and recoverable")
+    void shouldRecoverTornTail() throws IOException {
+        BinaryCoverageFormat.Encoder encoder = new BinaryCoverageFormat.Encoder();
+        Path file = tempDir.resolve("coverage.ccov");
+        byte[] last = encoder.encode("Second", Set.of(CLEAR), Map.of());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(BinaryCoverageFormat.header());
+            out.write(new BinaryCoverageFormat.Encoder().encode("First", Set.of(PERFORM), Map.of()));
+        }
+        long intactSize = Files.size(file);
+        Files.write(file, Arrays.copyOf(last, last.length / 2), StandardOpenOption.APPEND);
+
+        CoverageData read = BinaryCoverageFormat.read(file);
+        assertEquals(Set.of("First"), read.toScenarioMethodMap().keySet());
+        assertEquals(List.of(PERFORM), read.getMethods(), "Dangling definitions should not be added");
+
+        assertTrue(BinaryCoverageFormat.recoverTail(file) > 0, "The torn record should be cut off");
+        assertTrue(Files.size(file) >= intactSize);
+        assertEquals(0, BinaryCoverageFormat.recoverTail(file), "A recovered file should not change");
+        assertEquals(read.toScenarioMethodMap(), BinaryCoverageFormat.read(file).toScenarioMethodMap());
+    }
+
+    @Test
+    @DisplayName("CSV export should quote signatures and read back identically")
+    void shouldExportAndImportCsv() throws IOException {
+        CoverageData data = new CoverageData();
+        data.addScenario("Say \"hello\", then divide", List.of(PERFORM, GET_RESULT));
+
+        Path csv = tempDir.resolve("coverage.csv");
+        CoverageCsv.write(data, csv);
+
+        assertEquals(List.of(
+                CoverageCsv.HEADER,
+                "\"Say \"\"hello\"\", then divide\",\"com.example.calculator.Calculator\",\"getResult()\",0",
+                "\"Say \"\"hello\"\", then divide\",\"com.example.calculator.Calculator\",\"perform(Operation, double)\",2"),
+                Files.readAllLines(csv));
+        assertEquals(data.toScenarioMethodMap(), CoverageCsv.read(csv).toScenarioMethodMap());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares size and parse time of the binary coverage format with the CSV export on
+ * synthetic coverage data.
+ *
+ * Usage: CoverageFormatBenchmark [scenarios] [methods] [methodsPerScenario]
+ * (defaults: 10000 scenarios x 5000 methods, 100 methods per scenario on average)
+ */
+public class CoverageFormatBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int scenarioCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int methodCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int methodsPerScenario = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("=== Coverage Format Benchmark ===");
+        System.out.printf("%d scenarios x %d methods, ~%d methods per scenario%n",
+                scenarioCount, methodCount, methodsPerScenario);
+
+        CoverageData data = generate(scenarioCount, methodCount, methodsPerScenario);
+        Path dir = Files.createTempDirectory("coverage-format-benchmark");
+        Path binary = dir.resolve("coverage.ccov");
+        Path csv = dir.resolve("coverage.csv");
+
+        try {
+            long binaryWrite = bestOf(() -> BinaryCoverageFormat.write(data, binary));
+            long csvWrite = bestOf(() -> CoverageCsv.write(data, csv));
+            long binaryRead = bestOf(() -> BinaryCoverageFormat.read(binary));
+            long csvRead = bestOf(() -> CoverageCsv.read(csv));
+
+            long binarySize = Files.size(binary);
+            long csvSize = Files.size(csv);
+            System.out.printf("%-8s %14s %12s %12s%n", "Format", "Size (bytes)", "Write (ms)", "Parse (ms)");
+            System.out.printf("%-8s %14d %12d %12d%n", "CSV", csvSize, csvWrite, csvRead);
+            System.out.printf("%-8s %14d %12d %12d%n", "Binary", binarySize, binaryWrite, binaryRead);
+            System.out.printf("Binary is %.1fx smaller and parses %.1fx faster%n",
+                    (double) csvSize / binarySize, (double) csvRead / Math.max(1, binaryRead));
+        } finally {
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Build coverage where most scenarios hit a few hot methods and a random spread of others
+     */
+    static CoverageData generate(int scenarioCount, int methodCount, int methodsPerScenario) {
+        Random random = new Random(42);
+        CoverageData data = new CoverageData();
+        List<String> methods = new ArrayList<>(methodCount);
+        for (int m = 0; m < methodCount; m++) {
+            methods.add("com.example.generated.pkg" + (m % 50) + ".Class" + (m / 20)
+                    + "#method" + m + "(String, int)");
+            data.methodId(methods.get(m));
+        }
+        for (int s = 0; s < scenarioCount; s++) {
+            int scenario = data.scenarioId("Feature " + (s / 25) + ": generated scenario number " + s);
+            int hits = 1 + random.nextInt(2 * methodsPerScenario);
+            for (int i = 0; i < hits; i++) {
+                int method = random.nextInt(4) == 0
+                        ? random.nextInt(Math.min(20, methodCount))
+                        : random.nextInt(methodCount);
+                data.addCoverage(scenario, method);
+            }
+        }
+        return data;
+    }
+
+    private static long bestOf(IoAction action) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            action.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1_000_000);
+        }
+        return best;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.coverage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures building the {@link CoverageIndex} and answering its queries on synthetic
+ * coverage data.
+ *
+ * Usage: CoverageIndexBenchmark [scenarios] [methods] [methodsPerScenario]
+ * (defaults: 50000 scenarios, 20000 methods, 100 methods per scenario on average)
+ */
+public class CoverageIndexBenchmark {
+
+    private static final int ROUNDS = 3;
+    private static final int QUERIES = 100_000;
+
+    public static void main(String[] args) {
+        int scenarioCount = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int methodCount = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int methodsPerScenario = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("=== Coverage Index Benchmark ===");
+        System.out.printf("%d scenarios, %d methods, ~%d methods per scenario%n",
+                scenarioCount, methodCount, methodsPerScenario);
+
+        CoverageData data = CoverageFormatBenchmark.generate(scenarioCount, methodCount, methodsPerScenario);
+
+        long buildTime = Long.MAX_VALUE;
+        CoverageIndex index = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            index = null;
+            long start = System.nanoTime();
+            index = CoverageIndex.build(data);
+            buildTime = Math.min(buildTime, System.nanoTime() - start);
+        }
+        index = null;
+        long baseline = usedHeap();
+        index = CoverageIndex.build(data);
+        long indexHeap = usedHeap() - baseline;
+
+        // Methods picked at random, so hot and cold posting lists are both queried
+        Random random = new Random(7);
+        List<String> methods = data.getMethods();
+        long coveringTime = Long.MAX_VALUE;
+        long hits = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                hits += index.scenariosCovering(methods.get(random.nextInt(methods.size()))).size();
+            }
+            coveringTime = Math.min(coveringTime, System.nanoTime() - start);
+        }
+
+        List<String> universe = new ArrayList<>(methods);
+        for (int i = 0; i < methodCount / 10; i++) {
+            universe.add("generated.Uncovered#method" + i + "()");
+        }
+        long start = System.nanoTime();
+        int uncovered = index.uncoveredMethods(universe).size();
+        long uncoveredTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int redundant = index.redundantScenarios().size();
+        long redundantTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int cover = index.minimalCover().size();
+        long coverTime = System.nanoTime() - start;
+
+        System.out.printf("%-28s %14s %12s%n", "Operation", "Time", "Result");
+        System.out.printf("%-28s %11.1f ms %12s%n", "Build index", buildTime / 1e6, String.format("%.1f MB", indexHeap / 1e6));
+        System.out.printf("%-28s %11.2f us %12.1f%n", "Scenarios covering a method", coveringTime / 1e3 / QUERIES,
+                (double) hits / QUERIES / ROUNDS);
+        System.out.printf("%-28s %11.2f us %12d%n", "Uncovered methods (per method)", uncoveredTime / 1e3 / universe.size(), uncovered);
+        System.out.printf("%-28s %11.1f ms %12d%n", "Redundant scenarios", redundantTime / 1e6, redundant);
+        System.out.printf("%-28s %11.1f ms %12d%n", "Greedy minimal cover", coverTime / 1e6, cover);
+    }
+
+    /**
+     * Heap in use after a full collection
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the scenario/method coverage index and its suite minimization queries
+ */
+public class CoverageIndexTest {
+
+    private static CoverageData coverage(String[][] scenarios) {
+        CoverageData data = new CoverageData();
+        for (String[] scenario : scenarios) {
+            int id = data.scenarioId(scenario[0]);
+            for (int i = 1; i < scenario.length; i++) {
+                data.addCoverage(id, data.methodId(scenario[i]));
+            }
+        }
+        return data;
+    }
+
+    @Test
+    @DisplayName("Lookups should answer which scenarios cover a method and which methods none do")
+    void shouldLookUpCoverage() {
+        CoverageIndex index = CoverageIndex.build(coverage(new String[][]{
+            {"Adding", "Calculator#add(double)", "Calculator#getResult()"},
+            {"Clearing", "Calculator#clear()", "Calculator#getResult()"}
+        }));
+
+        assertEquals(List.of("Adding", "Clearing"), index.scenariosCovering("Calculator#getResult()"));
+        assertEquals(List.of("Clearing"), index.scenariosCovering("Calculator#clear()"));
+        assertEquals(List.of(), index.scenariosCovering("Calculator#divide(double)"));
+        assertEquals(List.of("Calculator#divide(double)"), index.uncoveredMethods(
+            List.of("Calculator#add(double)", "Calculator#clear()", "Calculator#divide(double)")));
+    }
+
+    @Test
+    @DisplayName("Scenarios contained in another one should be redundant, keeping one of identical scenarios")
+    void shouldFindRedundantScenarios() {
+        CoverageIndex index = CoverageIndex.build(coverage(new String[][]{
+            {"Chained operations", "Calculator#add(double)", "Calculator#multiply(double)", "Calculator#getResult()"},
+            {"Adding", "Calculator#add(double)", "Calculator#getResult()"},
+            {"Multiplying", "Calculator#multiply(double)", "Calculator#clear()"},
+            {"Adding again", "Calculator#add(double)", "Calculator#getResult()"}
+        }));
+
+        assertEquals(List.of("Adding", "Adding again"), index.redundantScenarios());
+    }
+
+    @Test
+    @DisplayName("The minimal cover should execute every covered method with few scenarios")
+    void shouldMinimizeSuite() {
+        String[][] scenarios = new String[300][];
+        for (int s = 0; s < scenarios.length; s++) {
+            // Every fourth scenario spans a whole block of methods the others only touch parts of
+            scenarios[s] = s % 4 == 0
+                ? new String[]{"Scenario " + s, "m" + s, "m" + (s + 1), "m" + (s + 2), "m" + (s + 3)}
+                : new String[]{"Scenario " + s, "m" + s, "shared"};
+        }
+        CoverageData data = coverage(scenarios);
+        CoverageIndex index = CoverageIndex.build(data);
+
+        List<String> cover = index.minimalCover();
+
+        assertEquals(76, cover.size());
+        assertEquals("Scenario 0", cover.get(0));
+        Set<String> covered = new HashSet<>();
+        for (String scenario : cover) {
+            covered.addAll(data.toScenarioMethodMap().get(scenario));
+        }
+        assertEquals(Set.copyOf(data.getMethods()), covered);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures merging coverage shards with {@link CoverageMerge} (bitset unions into shared
+ * dictionaries) against unioning each shard's scenario to method-name sets.
+ *
+ * Usage: CoverageMergeBenchmark [shards] [scenariosPerShard] [methods] [methodsPerScenario]
+ * (defaults: 100 shards x 200 scenarios, 5000 methods, 100 methods per scenario on average)
+ */
+public class CoverageMergeBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int scenariosPerShard = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int methodCount = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+        int methodsPerScenario = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        System.out.println("=== Coverage Merge Benchmark ===");
+        System.out.printf("%d shards x %d scenarios, %d methods, ~%d methods per scenario%n",
+                shardCount, scenariosPerShard, methodCount, methodsPerScenario);
+
+        Path dir = Files.createTempDirectory("coverage-merge-benchmark");
+        List<Path> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                // Each shard reruns a fifth of its scenarios from the previous shard, like retried tests
+                CoverageData shard = CoverageFormatBenchmark.generate(scenariosPerShard, methodCount, methodsPerScenario);
+                CoverageData renamed = new CoverageData();
+                for (int s = 0; s < shard.getScenarioCount(); s++) {
+                    int scenarioNumber = (s < scenariosPerShard / 5 ? Math.max(0, i - 1) : i) * scenariosPerShard + s;
+                    int scenario = renamed.scenarioId("Generated scenario " + scenarioNumber);
+                    BitSet bits = shard.getScenarioMethods(s);
+                    for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                        renamed.addCoverage(scenario, renamed.methodId(shard.getMethods().get(m)));
+                    }
+                }
+                Path file = dir.resolve("cucumber-method-coverage-" + i + ".ccov");
+                BinaryCoverageFormat.write(renamed, file);
+                shards.add(file);
+            }
+
+            long bitsetTime = bestOf(() -> CoverageMerge.merge(shards));
+            long stringTime = bestOf(() -> mergeStringSets(shards));
+
+            // Heap held by each merged result, measured while both are reachable
+            long baseline = usedHeap();
+            CoverageData bitsetMerged = CoverageMerge.merge(shards);
+            long bitsetHeap = usedHeap() - baseline;
+            Map<String, Set<String>> stringMerged = mergeStringSets(shards);
+            long stringHeap = usedHeap() - baseline - bitsetHeap;
+
+            System.out.printf("%-12s %10s %12s %14s%n", "Merge", "Scenarios", "Time (ms)", "Heap (MB)");
+            System.out.printf("%-12s %10d %12d %14.1f%n", "Bitsets", bitsetMerged.getScenarioCount(), bitsetTime, bitsetHeap / 1e6);
+            System.out.printf("%-12s %10d %12d %14.1f%n", "String sets", stringMerged.size(), stringTime, stringHeap / 1e6);
+            System.out.printf("Bitset merge is %.1fx faster and holds %.1fx less heap%n",
+                    (double) stringTime / Math.max(1, bitsetTime), (double) stringHeap / Math.max(1, bitsetHeap));
+        } finally {
+            for (Path shard : shards) {
+                Files.deleteIfExists(shard);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * Union the shards as scenario to method signature sets, the way the report used to
+     */
+    private static Map<String, Set<String>> mergeStringSets(List<Path> shards) throws IOException {
+        Map<String, Set<String>> merged = new HashMap<>();
+        for (Path shard : shards) {
+            for (Map.Entry<String, Set<String>> entry : BinaryCoverageFormat.read(shard).toScenarioMethodMap().entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).addAll(entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Heap in use after a full collection, while the merged result is still reachable
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long bestOf(IoAction action) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            action.run();
+            best = Math.min(best, (System.nanoTime() - start) / 1_000_000);
+        }
+        return best;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for merging coverage shards
+ */
+public class CoverageMergeTest {
+
+    private static final String PERFORM = "com.example.calculator.Calculator#perform(Operation, double)";
+    private static final String CLEAR = "com.example.calculator.Calculator#clear()";
+    private static final String GET_RESULT = "com.example.calculator.Calculator#getResult()";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Shards should be unioned per scenario")
+    void shouldUnionShards() throws IOException {
+        CoverageData first = new CoverageData();
+        first.addScenario("Adding numbers", List.of(PERFORM));
+        first.addScenario("Clearing the calculator", List.of(CLEAR));
+        CoverageData second = new CoverageData();
+        second.addScenario("Adding numbers", List.of(GET_RESULT));
+        second.addScenario("Dividing numbers", List.of(PERFORM, GET_RESULT));
+
+        BinaryCoverageFormat.write(first, tempDir.resolve("cucumber-method-coverage-1.ccov"));
+        CoverageCsv.write(second, tempDir.resolve("cucumber-method-coverage-2.csv"));
+
+        List<Path> shards = CoverageMerge.findShards(tempDir.toString());
+        Map<String, Set<String>> merged = CoverageMerge.merge(shards).toScenarioMethodMap();
+
+        assertEquals(2, shards.size());
+        assertEquals(Set.of(PERFORM, GET_RESULT), merged.get("Adding numbers"));
+        assertEquals(Set.of(CLEAR), merged.get("Clearing the calculator"));
+        assertEquals(Set.of(PERFORM, GET_RESULT), merged.get("Dividing numbers"));
+    }
+
+    @Test
+    @DisplayName("A shard's binary file should be preferred over its CSV export")
+    void shouldPreferBinaryShardFiles() throws IOException {
+        CoverageData data = new CoverageData();
+        data.addScenario("Adding numbers", List.of(PERFORM));
+        CoverageCsv.write(data, tempDir.resolve("cucumber-method-coverage-a.csv"));
+        BinaryCoverageFormat.write(data, tempDir.resolve("cucumber-method-coverage-a.ccov"));
+        CoverageCsv.write(data, tempDir.resolve("cucumber-method-coverage.csv"));
+
+        assertEquals(List.of(tempDir.resolve("cucumber-method-coverage-a.ccov")),
+            CoverageMerge.findShards(tempDir.toString()));
+    }
+
+    @Test
+    @DisplayName("Shard ids should be safe file name parts and unique per process when automatic")
+    void shouldResolveShardIds() {
+        assertNull(CucumberCoverageAgent.resolveShard(null));
+        assertNull(CucumberCoverageAgent.resolveShard(" "));
+        assertEquals("ci_node-3", CucumberCoverageAgent.resolveShard("ci/node-3"));
+        assertTrue(CucumberCoverageAgent.resolveShard("auto").endsWith("-" + ProcessHandle.current().pid()));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.coverage;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Measures time and peak heap of the streamed HTML report against rendering the whole
+ * page into a StringBuilder first, the way the report used to, and of the virtualized
+ * report. For the virtualized report the viewer only needs the shell and the manifest
+ * before it becomes interactive, so their size is shown separately.
+ *
+ * Usage: CoverageReportBenchmark [scenarios] [methods] [methodsPerScenario]
+ * (defaults: 10000 scenarios, 5000 methods, 100 methods per scenario on average)
+ */
+public class CoverageReportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int scenarioCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int methodCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int methodsPerScenario = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("=== Coverage Report Benchmark ===");
+        System.out.printf("%d scenarios, %d methods, ~%d methods per scenario%n",
+                scenarioCount, methodCount, methodsPerScenario);
+
+        CoverageData data = CoverageFormatBenchmark.generate(scenarioCount, methodCount, methodsPerScenario);
+        Path dir = Files.createTempDirectory("coverage-report-benchmark");
+        Path streamed = dir.resolve("streamed.html");
+        Path buffered = dir.resolve("buffered.html");
+        Path virtual = dir.resolve("virtual");
+        try {
+            System.out.printf("%-14s %12s %16s %12s%n", "Report", "Time (ms)", "Peak heap (MB)", "Size (MB)");
+            measure("Streamed", streamed, () -> GenerateCoverageReport.writeHtmlReport(data, streamed));
+            measure("StringBuilder", buffered, () -> writeBuffered(data, buffered));
+            measure("Virtualized", virtual, () -> VirtualCoverageReport.write(data, virtual));
+
+            long shell = Files.size(virtual.resolve("index.html")) + Files.size(virtual.resolve("data/manifest.json.gz"));
+            System.out.printf("Virtualized: %.2f MB shell and manifest to interactive, %d pages of %.1f KB on average%n",
+                    shell / 1e6, (data.getScenarioCount() + VirtualCoverageReport.PAGE_SIZE - 1) / VirtualCoverageReport.PAGE_SIZE,
+                    (size(virtual) - shell) / 1e3 / Math.max(1, data.getScenarioCount() / VirtualCoverageReport.PAGE_SIZE));
+        } finally {
+            Files.deleteIfExists(streamed);
+            Files.deleteIfExists(buffered);
+            if (Files.exists(virtual)) {
+                try (Stream<Path> files = Files.walk(virtual)) {
+                    for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void measure(String name, Path output, IoAction action) throws IOException {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (OutOfMemoryError e) {
+            System.out.printf("%-14s %12s%n", name, "out of memory");
+            return;
+        }
+        long time = (System.nanoTime() - start) / 1_000_000;
+        // Pools peak at different moments, so the sum overstates the peak a little
+        long peak = pools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum() - baseline;
+
+        System.out.printf("%-14s %12d %16.1f %12.1f%n", name, time, Math.max(0, peak) / 1e6, size(output) / 1e6);
+    }
+
+    /**
+     * Size of a file, or of all files under a directory
+     */
+    private static long size(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * The scenario and method cards as the report used to render them: string sets per
+     * scenario and method, the whole page in one StringBuilder, then a single write
+     */
+    private static void writeBuffered(CoverageData data, Path output) throws IOException {
+        Map<String, Set<String>> scenarioMethods = new HashMap<>();
+        Map<String, Set<String>> methodScenarios = new HashMap<>();
+        for (int s = 0; s < data.getScenarioCount(); s++) {
+            String scenario = data.getScenarios().get(s);
+            Set<String> scenarioSet = scenarioMethods.computeIfAbsent(scenario, k -> new HashSet<>());
+            BitSet bits = data.getScenarioMethods(s);
+            for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                String method = data.getMethods().get(m);
+                scenarioSet.add(method);
+                methodScenarios.computeIfAbsent(method, k -> new HashSet<>()).add(scenario);
+            }
+        }
+
+        StringBuilder html = new StringBuilder();
+        appendCards(html, scenarioMethods, "scenario-card", "method-list");
+        appendCards(html, methodScenarios, "method-card", "scenario-list");
+        try (FileWriter writer = new FileWriter(output.toFile())) {
+            writer.write(html.toString());
+        }
+    }
+
+    private static void appendCards(StringBuilder html, Map<String, Set<String>> entries, String cardClass, String listClass) {
+        List<String> keys = new ArrayList<>(entries.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            html.append("            <div class=\"card ").append(cardClass).append("\">\n");
+            html.append("                <h3>").append(escapeHtml(key)).append("</h3>\n");
+            html.append("                <ul class=\"").append(listClass).append("\">\n");
+            List<String> values = new ArrayList<>(entries.get(key));
+            Collections.sort(values);
+            for (String value : values) {
+                html.append("                    <li>").append(escapeHtml(value)).append("</li>\n");
+            }
+            html.append("                </ul>\n");
+            html.append("            </div>\n");
+        }
+    }
+
+    private static String escapeHtml(String input) {
+        return input.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;")
+                .replace("'", "&#39;");
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for CoverageStreamWriter
+ */
+public class CoverageStreamWriterTest {
+
+    private static final String HEADER = "Scenario,Class,Method,ParameterCount";
+    private static final byte[] HEADER_LINE = (HEADER + "\n").getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Records should be readable before the writer is closed")
+    void recordsShouldReachFileBeforeClose() throws Exception {
+        Path file = tempDir.resolve("coverage.csv");
+        CoverageStreamWriter writer = new CoverageStreamWriter(file, HEADER_LINE, false);
+        writer.append(bytes("\"A\",\"com.example.X\",\"run()\",0\n"));
+
+        // The background thread flushes as soon as the queue is drained
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Files.readAllLines(file).size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(HEADER, "\"A\",\"com.example.X\",\"run()\",0"), Files.readAllLines(file));
+        writer.close();
+    }
+
+    @Test
+    @DisplayName("Tail recovery should drop a torn last record")
+    void recoverTailShouldDropTornRecord() throws IOException {
+        Path file = tempDir.resolve("coverage.csv");
+        try (CoverageStreamWriter writer = new CoverageStreamWriter(file, HEADER_LINE, false)) {
+            writer.append(bytes("\"A\",\"com.example.X\",\"run()\",0\n"));
+        }
+        // Simulate a crash in the middle of the next record
+        Files.write(file, "\"B\",\"com.exa".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertEquals(12, CoverageStreamWriter.recoverTail(file));
+        assertEquals(List.of(HEADER, "\"A\",\"com.example.X\",\"run()\",0"), Files.readAllLines(file));
+        assertEquals(0, CoverageStreamWriter.recoverTail(file), "An intact file should not change");
+    }
+
+    @Test
+    @DisplayName("Appending writer should resume after the last intact record")
+    void appendShouldResumeAfterRecovery() throws IOException {
+        Path file = tempDir.resolve("coverage.csv");
+        try (CoverageStreamWriter writer = new CoverageStreamWriter(file, HEADER_LINE, false)) {
+            writer.append(bytes("\"A\",\"com.example.X\",\"run()\",0\n"));
+        }
+        Files.write(file, "\"torn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        CoverageStreamWriter.recoverTail(file);
+
+        try (CoverageStreamWriter writer = new CoverageStreamWriter(file, HEADER_LINE, true)) {
+            writer.append(bytes("\"B\",\"com.example.X\",\"run()\",0\n"));
+        }
+        assertEquals(List.of(HEADER,
+                "\"A\",\"com.example.X\",\"run()\",0",
+                "\"B\",\"com.example.X\",\"run()\",0"), Files.readAllLines(file));
+    }
+
+    @Test
+    @DisplayName("A failed writer should never block producers or close")
+    void failedWriterShouldNotBlockProducers() {
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full), "needs /dev/full to fail writes");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            CoverageStreamWriter writer = new CoverageStreamWriter(full, new byte[0], false);
+            byte[] record = bytes("\"A\",\"com.example.X\",\"run()\",0\n");
+            Thread[] producers = new Thread[4];
+            for (int p = 0; p < producers.length; p++) {
+                // More records than the queue holds, queued until the failure shows
+                producers[p] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 10_000; i++) {
+                            writer.append(record);
+                        }
+                    } catch (IOException expected) {
+                        // The writer failed
+                    }
+                });
+                producers[p].start();
+            }
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            IOException failure = assertThrows(IOException.class, writer::close);
+            assertEquals("Coverage writer failed", failure.getMessage());
+            assertThrows(IOException.class, () -> writer.append(record));
+        });
+    }
+
+    private static byte[] bytes(String records) {
+        return records.getBytes(StandardCharsets.UTF_8);
+    }
+}
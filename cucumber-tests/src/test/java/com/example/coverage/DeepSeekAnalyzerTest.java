@@ -0,0 +1,297 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for per-class analysis on a pool of model processes, with a stub script in
+ * place of the model
+ */
+public class DeepSeekAnalyzerTest {
+
+    // Answers every class of its input after a fixed delay; "Broken" always fails,
+    // "Hanging" hangs on its first attempt and "Chatty" is answered in loose JSON in prose.
+    // running.log gets the number of calls running when a call starts and ends its delay.
+    private static final String STUB_MODEL = String.join("\n",
+            "while [ $# -gt 0 ]; do",
+            "  case \"$1\" in --input) in=\"$2\"; shift;; --output) out=\"$2\"; shift;; esac",
+            "  shift",
+            "done",
+            "state=$(dirname \"$0\")",
+            "classes=$(grep -o '\"className\" *: *\"[^\"]*\"' \"$in\" | sed 's/.*: *\"\\(.*\\)\"/\\1/')",
+            "echo analyzing $classes",
+            "echo $classes >> \"$state/calls.log\"",
+            "for class in $classes; do",
+            "  case \"$class\" in",
+            "    Broken) exit 3;;",
+            "    Hanging) if [ ! -e \"$in.seen\" ]; then touch \"$in.seen\"; sleep 30; fi;;",
+            "  esac",
+            "done",
+            "touch \"$state/running.$$\"",
+            "ls \"$state\" | grep -c '^running\\.[0-9]' >> \"$state/running.log\"",
+            "sleep 0.3",
+            "ls \"$state\" | grep -c '^running\\.[0-9]' >> \"$state/running.log\"",
+            "rm -f \"$state/running.$$\"",
+            ": > \"$out\"",
+            "for class in $classes; do",
+            "  case \"$class\" in",
+            "    Chatty) printf \"Sure! {className: '%s', complexity: 2, testPriority: 4,"
+                    + " suggestedTestScenarios: [\u201cTest %s\u201d,],}\\n\" \"$class\" \"$class\" >> \"$out\";;",
+            "    *) printf '{\"className\":\"%s\",\"complexity\":2,\"testPriority\":4,"
+                    + "\"suggestedTestScenarios\":[\"Test %s\"]}\\n' \"$class\" \"$class\" >> \"$out\";;",
+            "  esac",
+            "done",
+            "");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Classes should be analyzed concurrently and merged into one report")
+    void shouldAnalyzeConcurrently() throws IOException {
+        List<String> classes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            classes.add("Service" + i);
+        }
+        Path sources = writeSources(classes);
+
+        Path running = tempDir.resolve("running.log");
+        analyze(sources, tempDir.resolve("serial"), 1, Duration.ofSeconds(30), 0);
+        assertEquals(1, maxRunning(running), "One worker should run one call at a time");
+        Files.delete(running);
+        analyze(sources, tempDir.resolve("parallel"), 4, Duration.ofSeconds(30), 0);
+        int parallel = maxRunning(running);
+        assertTrue(parallel > 1 && parallel <= 4, parallel + " calls ran at once on 4 workers");
+
+        JsonNode report = new ObjectMapper().readTree(tempDir.resolve("parallel/test-recommendations.json").toFile());
+        assertEquals(8, report.size());
+        assertEquals("Test Service3", report.get("Service3").get("suggestedTestScenarios").get(0).asText());
+        assertEquals(Files.readString(tempDir.resolve("serial/test-recommendations.json")),
+                Files.readString(tempDir.resolve("parallel/test-recommendations.json")));
+    }
+
+    @Test
+    @DisplayName("A unit past its timeout should be killed and retried, and a failing unit reported")
+    void shouldRetryAndReportFailedUnits() throws IOException {
+        Path sources = writeSources(List.of("Hanging", "Broken", "Healthy"));
+        Path output = tempDir.resolve("output");
+
+        IOException failure = assertThrows(IOException.class, () ->
+                analyze(sources, output, 2, Duration.ofSeconds(2), 1));
+
+        assertTrue(failure.getMessage().contains("1 of 3 classes: Broken"), failure.getMessage());
+        JsonNode report = new ObjectMapper().readTree(output.resolve("test-recommendations.json").toFile());
+        assertTrue(report.has("Hanging"));
+        assertTrue(report.has("Healthy"));
+        assertFalse(report.has("Broken"));
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(output.resolve("units"), "Broken-*.log")) {
+            assertTrue(Files.readString(logs.iterator().next()).contains("analyzing Broken"));
+        }
+    }
+
+    @Test
+    @DisplayName("A rerun should send only the classes that changed to the model")
+    void shouldAnswerUnchangedClassesFromCache() throws IOException {
+        Path sources = writeSources(List.of("Alpha", "Beta", "Gamma"));
+        Path output = tempDir.resolve("output");
+        Path calls = tempDir.resolve("calls.log");
+
+        analyze(sources, output, 2, Duration.ofSeconds(30), 0);
+        assertEquals(3, Files.readAllLines(calls).size());
+
+        analyze(sources, output, 2, Duration.ofSeconds(30), 0);
+        assertEquals(3, Files.readAllLines(calls).size(), "An unchanged rerun should not call the model");
+
+        Files.writeString(sources.resolve("Beta.java"), Files.readString(sources.resolve("Beta.java"))
+                .replace("value + 1", "value + 2"));
+        analyze(sources, output, 2, Duration.ofSeconds(30), 0);
+        assertEquals(List.of("Beta"), Files.readAllLines(calls).subList(3, 4));
+        assertEquals(4, Files.readAllLines(calls).size());
+        assertEquals(3, new ObjectMapper().readTree(output.resolve("test-recommendations.json").toFile()).size());
+    }
+
+    @Test
+    @DisplayName("Persistent workers should be started once and restarted after a crash")
+    void shouldSendUnitsToPersistentWorkers() throws IOException {
+        Path sources = writeSources(List.of("Alpha", "Beta", "Gamma", "Delta", "Crashing"));
+        Path output = tempDir.resolve("output");
+        Path stub = tempDir.resolve("stub-worker.sh");
+        List<String> command = new ArrayList<>();
+        for (String part : StubModelWorker.command(tempDir)) {
+            command.add("'" + part + "'");
+        }
+        Files.writeString(stub, "exec " + String.join(" ", command) + " --latency-millis 300 \"$@\"\n");
+
+        new DeepSeekAnalyzer(sources.toString(), output.toString(), stub.toString(), 4, Duration.ofSeconds(30), 1, 1)
+                .analyzeCode();
+
+        JsonNode report = new ObjectMapper().readTree(output.resolve("test-recommendations.json").toFile());
+        assertEquals(5, report.size());
+        assertEquals("Test Crashing", report.get("Crashing").get("suggestedTestScenarios").get(0).asText());
+        assertEquals(2, Files.readAllLines(tempDir.resolve("starts.log")).size());
+        // All five classes fit one prompt, sent again after the crash
+        List<String> calls = Files.readAllLines(tempDir.resolve("calls.log"));
+        assertEquals(2, calls.size());
+        assertTrue(calls.get(1).contains("Crashing"));
+    }
+
+    @Test
+    @DisplayName("Small classes should share prompts, giving the same report in fewer model calls")
+    void shouldPackClassesIntoPrompts() throws IOException {
+        List<String> classes = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            classes.add("Service" + i);
+        }
+        Path sources = writeSources(classes);
+        Path calls = tempDir.resolve("calls.log");
+
+        analyze(sources, tempDir.resolve("single"), 1, Duration.ofSeconds(30), 0, 0);
+        assertEquals(8, Files.readAllLines(calls).size());
+        Files.delete(calls);
+        analyze(sources, tempDir.resolve("packed"), 1, Duration.ofSeconds(30), 0, 2048);
+        assertEquals(1, Files.readAllLines(calls).size(), "All eight classes should share one prompt");
+
+        assertEquals(Files.readString(tempDir.resolve("single/test-recommendations.json")),
+                Files.readString(tempDir.resolve("packed/test-recommendations.json")));
+    }
+
+    @Test
+    @DisplayName("Recommendations should stream from NDJSON and from the former single-object output")
+    void shouldReadNdjsonAndLegacyOutput() throws IOException {
+        Path ndjson = tempDir.resolve("output.ndjson");
+        Files.writeString(ndjson, String.join("\n",
+                "{\"className\":\"Alpha\",\"complexity\":3,\"testPriority\":5,\"notes\":{\"a\":[1,2]},"
+                        + "\"suggestedTestScenarios\":[\"Test alpha\"]}",
+                "{\"className\":\"Beta\",\"complexity\":1.5,\"testPriority\":2,\"suggestedTestScenarios\":[]}",
+                ""));
+        Path legacy = tempDir.resolve("output.json");
+        Files.writeString(legacy, "{\n  \"model\": \"deepseek-local\",\n  \"recommendations\": [\n"
+                + "    {\"className\": \"Gamma\", \"complexity\": 7, \"testPriority\": 8,"
+                + " \"suggestedTestScenarios\": [\"Test gamma\", \"Test gamma again\"]}\n  ]\n}\n");
+
+        List<DeepSeekAnalyzer.TestRecommendation> read = new ArrayList<>();
+        DeepSeekAnalyzer.readRecommendations(ndjson, read::add);
+        DeepSeekAnalyzer.readRecommendations(legacy, read::add);
+
+        assertEquals(List.of("Alpha", "Beta", "Gamma"),
+                read.stream().map(DeepSeekAnalyzer.TestRecommendation::getClassName).toList());
+        assertEquals(List.of("Test alpha"), read.get(0).getSuggestedTestScenarios());
+        assertEquals(1.5, read.get(1).getComplexity());
+        assertEquals(2, read.get(2).getSuggestedTestScenarios().size());
+        assertEquals(8, read.get(2).getTestPriority());
+    }
+
+    @Test
+    @DisplayName("Output that is not strict JSON should be repaired rather than fail its unit")
+    void shouldReadLooseModelOutput() throws IOException {
+        Path sources = writeSources(List.of("Alpha", "Chatty", "Gamma"));
+        Path output = tempDir.resolve("output");
+        analyze(sources, output, 1, Duration.ofSeconds(30), 0, 2048);
+
+        JsonNode report = new ObjectMapper().readTree(output.resolve("test-recommendations.json").toFile());
+        assertEquals(3, report.size());
+        assertEquals("Test Chatty", report.get("Chatty").get("suggestedTestScenarios").get(0).asText());
+        assertEquals("Test Gamma", report.get("Gamma").get("suggestedTestScenarios").get(0).asText());
+    }
+
+    @Test
+    @DisplayName("Classes with the same methods but for names and literals should be analyzed once")
+    void shouldAnalyzeClassesWithTheSameMethodsOnce() throws IOException {
+        Path sources = Files.createDirectories(tempDir.resolve("src"));
+        for (String[] bean : new String[][]{{"Customer", "name", "String"}, {"Invoice", "total", "Money"},
+                {"Order", "reference", "String"}}) {
+            Files.writeString(sources.resolve(bean[0] + ".java"), String.join("\n",
+                    "public class " + bean[0] + " {",
+                    "    private " + bean[2] + " " + bean[1] + ";",
+                    "    public " + bean[2] + " get() {",
+                    "        return " + bean[1] + ";",
+                    "    }",
+                    "    // Sets the " + bean[1],
+                    "    public void set(" + bean[2] + " value) { this." + bean[1] + " = value; }",
+                    "}",
+                    ""));
+        }
+        writeSources(List.of("Alpha"));
+        Path output = tempDir.resolve("output");
+        Path calls = tempDir.resolve("calls.log");
+
+        analyze(sources, output, 2, Duration.ofSeconds(30), 0);
+        assertEquals(2, Files.readAllLines(calls).size());
+        JsonNode report = new ObjectMapper().readTree(output.resolve("test-recommendations.json").toFile());
+        assertEquals(4, report.size());
+        for (String bean : List.of("Customer", "Invoice", "Order")) {
+            assertEquals("Test " + bean, report.get(bean).get("suggestedTestScenarios").get(0).asText());
+        }
+
+        // Each copied answer is cached under its own class
+        analyze(sources, output, 2, Duration.ofSeconds(30), 0);
+        assertEquals(2, Files.readAllLines(calls).size());
+
+        // Classes without methods have nothing in common
+        Files.writeString(sources.resolve("Marker.java"), "public interface Marker {\n}\n");
+        Files.writeString(sources.resolve("Tag.java"), "public interface Tag {\n}\n");
+        analyze(sources, output, 2, Duration.ofSeconds(30), 0);
+        assertEquals(4, Files.readAllLines(calls).size());
+    }
+
+    @Test
+    @DisplayName("Names should be replaced in copied scenarios as whole words only")
+    void shouldRenameWholeWords() {
+        assertEquals(List.of("X.add(2) on a Calculator gives 2.5", "getTotal returns total, not total.length",
+                "rename a Calculator"),
+                DeepSeekAnalyzer.renameWords(List.of("Calc.add(1) on a Calculator gives 1.5",
+                        "getName returns name, not name.length", "rename a Calculator"),
+                        Map.of("Calc", "X", "1", "2", "1.5", "2.5", "getName", "getTotal", "name", "total")));
+    }
+
+    /**
+     * One class per name, each with a method of its own structure
+     */
+    private Path writeSources(List<String> classes) throws IOException {
+        Path sources = Files.createDirectories(tempDir.resolve("src"));
+        for (int i = 0; i < classes.size(); i++) {
+            String name = classes.get(i);
+            Files.writeString(sources.resolve(name + ".java"), String.join("\n",
+                    "public class " + name + " {",
+                    "    public int handle(int value) {",
+                    "        return value" + " + 1".repeat(i + 1) + ";",
+                    "    }",
+                    "}",
+                    ""));
+        }
+        return sources;
+    }
+
+    /**
+     * The most model calls the stub saw running at once
+     */
+    private static int maxRunning(Path runningLog) throws IOException {
+        return Files.readAllLines(runningLog).stream().mapToInt(line -> Integer.parseInt(line.trim())).max().orElse(0);
+    }
+
+    private void analyze(Path sources, Path output, int workers, Duration timeout, int retries) throws IOException {
+        analyze(sources, output, workers, timeout, retries, 0);
+    }
+
+    private void analyze(Path sources, Path output, int workers, Duration timeout, int retries, int promptTokens)
+            throws IOException {
+        Path stub = tempDir.resolve("stub-model.sh");
+        Files.writeString(stub, STUB_MODEL);
+        new DeepSeekAnalyzer(sources.toString(), output.toString(), stub.toString(), workers, timeout, retries, 0,
+                promptTokens).analyzeCode();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the streamed HTML coverage report
+ */
+public class GenerateCoverageReportTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Text should be escaped while it is written")
+    void shouldEscapeWhileWriting() throws IOException {
+        StringWriter out = new StringWriter();
+
+        GenerateCoverageReport.writeEscaped(out, "Map<String, List<?>> & \"quotes\" 'n' plain");
+
+        assertEquals("Map&lt;String, List&lt;?&gt;&gt; &amp; &quot;quotes&quot; &#39;n&#39; plain", out.toString());
+    }
+
+    @Test
+    @DisplayName("Scenarios and methods should be listed alphabetically with their coverage")
+    void shouldWriteSortedCards() throws IOException {
+        CoverageData data = new CoverageData();
+        data.addCoverage(data.scenarioId("Subtracting <numbers>"), data.methodId("Calculator#subtract(double)"));
+        int adding = data.scenarioId("Adding numbers");
+        data.addCoverage(adding, data.methodId("Calculator#getResult()"));
+        data.addCoverage(adding, data.methodId("Calculator#add(double)"));
+        Path output = tempDir.resolve("reports/coverage.html");
+
+        GenerateCoverageReport.writeHtmlReport(data, output);
+        String html = Files.readString(output);
+
+        assertTrue(html.contains("<p>Total Scenarios: 2</p>"));
+        assertTrue(html.contains("<h3>Subtracting &lt;numbers&gt;</h3>"));
+        assertTrue(html.indexOf("<h3>Adding numbers</h3>") < html.indexOf("<h3>Subtracting &lt;numbers&gt;</h3>"));
+        assertTrue(html.indexOf(">Calculator#add(double)</span></li>") < html.indexOf(">Calculator#getResult()</span></li>"));
+        assertTrue(html.contains("<p>Most Methods Covered: \"Adding numbers\" (2 methods)</p>"));
+        assertTrue(html.endsWith("        </script>\n    </div>\n</body>\n</html>\n"));
+        assertEquals(html.lastIndexOf("</html>"), html.indexOf("</html>"), "The page should be closed once");
+    }
+
+    @Test
+    @DisplayName("Rendering on several threads should write the same file as one thread")
+    void shouldRenderInParallelDeterministically() throws IOException {
+        CoverageData data = CoverageFormatBenchmark.generate(1_000, 700, 20);
+        Path sequential = tempDir.resolve("sequential.html");
+        Path parallel = tempDir.resolve("parallel.html");
+
+        GenerateCoverageReport.writeHtmlReport(data, sequential, 1);
+        GenerateCoverageReport.writeHtmlReport(data, parallel, 4);
+
+        assertTrue(GenerateCoverageReport.classBlocks(data.getMethods(), GenerateCoverageReport.sortedIds(data.getMethods())).size() > 1);
+        assertEquals(-1, Files.mismatch(sequential, parallel));
+    }
+
+    @Test
+    @DisplayName("Incremental regeneration should render only changed sections and match a full rebuild")
+    void shouldRegenerateIncrementally() throws IOException {
+        CoverageData data = CoverageFormatBenchmark.generate(1_000, 700, 20);
+        ReportFragmentCache cache = new ReportFragmentCache(tempDir.resolve("cache"));
+        Path full = tempDir.resolve("full.html");
+        Path incremental = tempDir.resolve("incremental.html");
+
+        GenerateCoverageReport.writeHtmlReport(data, full, 1);
+        GenerateCoverageReport.writeHtmlReport(data, incremental, 2, cache);
+        assertEquals(-1, Files.mismatch(full, incremental));
+        int sections = cache.getMisses();
+
+        ReportFragmentCache unchanged = new ReportFragmentCache(tempDir.resolve("cache"));
+        GenerateCoverageReport.writeHtmlReport(data, incremental, 1, unchanged);
+        assertEquals(0, unchanged.getMisses());
+        assertEquals(-1, Files.mismatch(full, incremental));
+
+        // One new scenario touches its own section and those of the methods it calls
+        data.addCoverage(data.scenarioId("Feature 7: added scenario"), data.findMethodId(data.getMethods().get(300)));
+        ReportFragmentCache changed = new ReportFragmentCache(tempDir.resolve("cache"));
+        GenerateCoverageReport.writeHtmlReport(data, full, 1);
+        GenerateCoverageReport.writeHtmlReport(data, incremental, 1, changed);
+        assertEquals(-1, Files.mismatch(full, incremental));
+        assertEquals(2, changed.getMisses());
+        assertEquals(sections - 2, changed.getHits());
+    }
+
+    @Test
+    @DisplayName("A report from unchanged input should be up to date until the input or report changes")
+    void shouldDetectUpToDateReport() throws IOException {
+        Path input = Files.writeString(tempDir.resolve("coverage.csv"), CoverageCsv.HEADER + "\n");
+        Path report = Files.writeString(tempDir.resolve("report.html"), "<html></html>");
+        ReportFragmentCache cache = new ReportFragmentCache(tempDir.resolve("cache"));
+
+        assertFalse(cache.isUpToDate(input, report));
+        cache.finish(input, report);
+        assertTrue(cache.isUpToDate(input, report));
+
+        Files.writeString(input, "\"Adding\",\"Calculator\",\"add(double)\",1\n", StandardOpenOption.APPEND);
+        assertFalse(cache.isUpToDate(input, report));
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Measures incremental report regeneration against a full rebuild: the up-to-date check
+ * for unchanged input, and re-rendering after one scenario was added.
+ *
+ * Usage: IncrementalReportBenchmark [scenarios] [methods] [methodsPerScenario]
+ * (defaults: 20000 scenarios, 10000 methods, 100 methods per scenario on average)
+ */
+public class IncrementalReportBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int scenarioCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int methodCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int methodsPerScenario = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        System.out.println("=== Incremental Report Benchmark ===");
+        System.out.printf("%d scenarios, %d methods, ~%d methods per scenario%n",
+                scenarioCount, methodCount, methodsPerScenario);
+
+        CoverageData data = CoverageFormatBenchmark.generate(scenarioCount, methodCount, methodsPerScenario);
+        Path dir = Files.createTempDirectory("incremental-report-benchmark");
+        Path input = dir.resolve("cucumber-method-coverage.ccov");
+        Path report = dir.resolve("report.html");
+        Path cacheDir = dir.resolve("cache");
+        try {
+            System.out.printf("%-30s %12s %10s %10s%n", "Regeneration", "Time (ms)", "Rendered", "Reused");
+
+            long start = System.nanoTime();
+            GenerateCoverageReport.writeHtmlReport(data, report, 1);
+            print("Full rebuild", start, -1, -1);
+
+            BinaryCoverageFormat.write(data, input);
+            ReportFragmentCache cache = new ReportFragmentCache(cacheDir);
+            start = System.nanoTime();
+            GenerateCoverageReport.writeHtmlReport(data, report, 1, cache);
+            cache.finish(input, report);
+            print("Incremental, empty cache", start, cache.getMisses(), cache.getHits());
+
+            start = System.nanoTime();
+            boolean upToDate = new ReportFragmentCache(cacheDir).isUpToDate(input, report);
+            print("Unchanged input" + (upToDate ? "" : " (NOT up to date)"), start, 0, 0);
+
+            data.addCoverage(data.scenarioId("Feature 0: added scenario"), 0);
+            BinaryCoverageFormat.write(data, input);
+            cache = new ReportFragmentCache(cacheDir);
+            start = System.nanoTime();
+            GenerateCoverageReport.writeHtmlReport(data, report, 1, cache);
+            cache.finish(input, report);
+            print("One scenario added", start, cache.getMisses(), cache.getHits());
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static void print(String name, long start, int rendered, int reused) {
+        System.out.printf("%-30s %12.1f %10s %10s%n", name, (System.nanoTime() - start) / 1e6,
+                rendered < 0 ? "all" : String.valueOf(rendered), reused < 0 ? "-" : String.valueOf(reused));
+    }
+}
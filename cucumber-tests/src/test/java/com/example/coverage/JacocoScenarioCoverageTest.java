@@ -0,0 +1,59 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for detecting parallel Cucumber runs in JacocoScenarioCoverage
+ */
+public class JacocoScenarioCoverageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void clearProperty() {
+        System.clearProperty(JacocoScenarioCoverage.PARALLEL_PROPERTY);
+    }
+
+    @Test
+    @DisplayName("Parallel execution should be read from junit-platform.properties")
+    void shouldReadParallelExecutionFromPlatformProperties() throws Exception {
+        Files.writeString(tempDir.resolve("junit-platform.properties"),
+                "cucumber.glue=com.example\n" + JacocoScenarioCoverage.PARALLEL_PROPERTY + " = true \n");
+
+        assertTrue(withResources(tempDir), "junit-platform.properties enables parallel execution");
+        System.setProperty(JacocoScenarioCoverage.PARALLEL_PROPERTY, "false");
+        assertFalse(withResources(tempDir), "A system property overrides junit-platform.properties");
+    }
+
+    @Test
+    @DisplayName("Parallel execution should be read from a system property")
+    void shouldReadParallelExecutionFromSystemProperty() throws Exception {
+        Path empty = Files.createDirectories(tempDir.resolve("empty"));
+        assertFalse(withResources(empty));
+        System.setProperty(JacocoScenarioCoverage.PARALLEL_PROPERTY, "true");
+        assertTrue(withResources(empty));
+    }
+
+    private static boolean withResources(Path dir) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        // No parent, so only the given directory's properties are seen
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{dir.toUri().toURL()}, null)) {
+            thread.setContextClassLoader(loader);
+            return JacocoScenarioCoverage.parallelConfigured();
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+}
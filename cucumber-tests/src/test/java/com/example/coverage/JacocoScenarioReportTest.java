@@ -0,0 +1,113 @@
+package com.example.coverage;
+
+import com.example.calculator.Calculator;
+import com.example.calculator.Operation;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for splitting JaCoCo execution data into line coverage per scenario
+ */
+public class JacocoScenarioReportTest {
+
+    private static final String CALCULATOR = "com.example.calculator.Calculator";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Each scenario session should get the lines and branches it executed")
+    void shouldSplitSessionsIntoScenarios() throws Exception {
+        LoggerRuntime runtime = new LoggerRuntime();
+        RuntimeData data = new RuntimeData();
+        runtime.startup(data);
+        Path execFile = tempDir.resolve("cucumber.exec");
+        try (OutputStream out = Files.newOutputStream(execFile)) {
+            ExecutionDataWriter writer = new ExecutionDataWriter(out);
+            Class<?> calculatorClass = loadInstrumented(new Instrumenter(runtime).instrument(readClass(CALCULATOR), CALCULATOR));
+            Object calculator = calculatorClass.getConstructor().newInstance();
+
+            // Sessions as written by JacocoScenarioCoverage around each scenario
+            data.setSessionId(JacocoScenarioCoverage.OUTSIDE_SCENARIOS);
+            data.collect(writer, writer, true);
+            calculatorClass.getMethod("clear").invoke(calculator);
+            data.setSessionId("Clearing the calculator");
+            data.collect(writer, writer, true);
+            calculatorClass.getMethod("perform", Operation.class, double.class).invoke(calculator, Operation.ADD, 2.0);
+            data.setSessionId("Adding numbers");
+            data.collect(writer, writer, true);
+        } finally {
+            runtime.shutdown();
+        }
+
+        Path classesDir = Path.of(Calculator.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path output = tempDir.resolve("lines.csv");
+        JacocoScenarioReport.write(JacocoScenarioReport.readScenarios(execFile), List.of(classesDir), output);
+        List<String> lines = Files.readAllLines(output);
+
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("\"Clearing the calculator\",\"" + CALCULATOR + "\",\"clear()\"")));
+        assertTrue(lines.stream().noneMatch(l -> l.startsWith("\"Clearing the calculator\"") && l.contains("perform(")));
+        // The switch has five branches, of which adding takes one
+        assertTrue(lines.stream().anyMatch(l ->
+            l.startsWith("\"Adding numbers\",\"" + CALCULATOR + "\",\"perform(Operation, double)\",") && l.endsWith(",1,5")));
+        assertTrue(lines.stream().noneMatch(l -> l.startsWith("\"" + JacocoScenarioCoverage.OUTSIDE_SCENARIOS)));
+    }
+
+    @Test
+    @DisplayName("Method names should match the method coverage format")
+    void shouldFormatMethodNames() {
+        assertEquals("perform(Operation, double)",
+            JacocoScenarioReport.methodName("perform", "(Lcom/example/calculator/Operation;D)Lcom/example/calculator/Calculator;"));
+        assertEquals("put(Entry, String[])", JacocoScenarioReport.methodName("put", "(Ljava/util/Map$Entry;[Ljava/lang/String;)V"));
+    }
+
+    /**
+     * Define the instrumented calculator in its own class loader, together with its nested
+     * classes so package-private access keeps working
+     */
+    private static Class<?> loadInstrumented(byte[] instrumented) throws ClassNotFoundException {
+        ClassLoader loader = new ClassLoader(JacocoScenarioReportTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(CALCULATOR) && !name.startsWith(CALCULATOR + "$")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    if (loaded == null) {
+                        byte[] bytes = name.equals(CALCULATOR) ? instrumented : readClass(name);
+                        loaded = defineClass(name, bytes, 0, bytes.length);
+                    }
+                    return loaded;
+                }
+            }
+        };
+        return loader.loadClass(CALCULATOR);
+    }
+
+    private static byte[] readClass(String className) throws ClassNotFoundException {
+        String resource = className.replace('.', '/') + ".class";
+        try (InputStream in = JacocoScenarioReportTest.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new ClassNotFoundException(className);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(className, e);
+        }
+    }
+}
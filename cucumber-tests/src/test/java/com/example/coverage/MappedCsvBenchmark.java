@@ -0,0 +1,128 @@
+package com.example.coverage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Measures reading a multi-GB coverage CSV with {@link MappedCsvReader} against a
+ * BufferedReader splitting each line with a StringBuilder per field, the way the
+ * coverage CSV used to be read. The file is written first, so both read it from the
+ * page cache.
+ *
+ * Usage: MappedCsvBenchmark [sizeMB] (default: 3072)
+ */
+public class MappedCsvBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        long sizeMb = args.length > 0 ? Long.parseLong(args[0]) : 3072;
+
+        System.out.println("=== Mapped CSV Benchmark ===");
+        Path file = Files.createTempFile("mapped-csv-benchmark", ".csv");
+        try {
+            long records = generate(file, sizeMb * 1024 * 1024);
+            System.out.printf("%.2f GB coverage CSV, %d records%n", Files.size(file) / 1e9, records);
+
+            System.out.printf("%-22s %12s %14s%n", "Reader", "Time (ms)", "Throughput");
+            measure("BufferedReader split", file, () -> scanLines(file));
+            measure("Memory-mapped", file, () -> scanMapped(file));
+            measure("CoverageCsv.read", file, () -> CoverageCsv.read(file).getScenarioCount());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Repeat a synthetic suite's rows, renaming scenarios per repetition, up to the size
+     */
+    private static long generate(Path file, long size) throws IOException {
+        CoverageData data = CoverageFormatBenchmark.generate(2_000, 5_000, 100);
+        long records = 0;
+        long written = 0;
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write(CoverageCsv.HEADER + "\n");
+            for (int round = 0; written < size; round++) {
+                for (int s = 0; s < data.getScenarioCount() && written < size; s++) {
+                    String scenario = "Run " + round + ", " + data.getScenarios().get(s);
+                    BitSet bits = data.getScenarioMethods(s);
+                    for (int m = bits.nextSetBit(0); m >= 0; m = bits.nextSetBit(m + 1)) {
+                        String record = CoverageCsv.formatRecord(scenario, data.getMethods().get(m)) + "\n";
+                        writer.write(record);
+                        written += record.length();
+                        records++;
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    private static long scanMapped(Path file) throws IOException {
+        long fields = 0;
+        try (MappedCsvReader reader = MappedCsvReader.open(file)) {
+            while (reader.next()) {
+                for (int i = 0; i < 3 && i < reader.fieldCount(); i++) {
+                    fields += reader.field(i).length();
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static long scanLines(Path file) throws IOException {
+        long fields = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                List<String> parts = splitLine(line);
+                for (int i = 0; i < 3 && i < parts.size(); i++) {
+                    fields += parts.get(i).length();
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * The former line splitter: a StringBuilder per line, a String per field
+     */
+    private static List<String> splitLine(String line) {
+        List<String> result = new ArrayList<>();
+        boolean inQuotes = false;
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (c == ',' && !inQuotes) {
+                result.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        result.add(current.toString());
+        return result;
+    }
+
+    private static void measure(String name, Path file, IoTask task) throws IOException {
+        long start = System.nanoTime();
+        task.run();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%-22s %12d %11.0f MB/s%n", name, millis, Files.size(file) / 1e6 / Math.max(1, millis) * 1000);
+    }
+
+    private interface IoTask {
+        long run() throws IOException;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the memory-mapped RFC 4180 CSV reader
+ */
+public class MappedCsvReaderTest {
+
+    private static final String CSV = "Scenario,Class,Method,ParameterCount\r\n"
+            + "\"Adding, then \"\"clearing\"\"\",\"com.example.calculator.Calculator\",\"perform(Operation, double)\",2\r\n"
+            + "\n"
+            + "\"Multi-line\nscenario\",com.example.calculator.Calculator,clear(),0\n"
+            + "Empty fields,,\"\",-7";
+
+    @TempDir
+    Path tempDir;
+
+    private List<List<String>> readAll(Path file, long window) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (MappedCsvReader reader = MappedCsvReader.open(file, window)) {
+            while (reader.next()) {
+                List<String> fields = new ArrayList<>();
+                for (int i = 0; i < reader.fieldCount(); i++) {
+                    fields.add(reader.field(i));
+                }
+                records.add(fields);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    @DisplayName("Quoted fields should keep embedded commas, quotes and line breaks")
+    void shouldReadQuotedFields() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("coverage.csv"), CSV);
+
+        List<List<String>> records = readAll(file, MappedCsvReader.DEFAULT_WINDOW);
+
+        assertEquals(4, records.size());
+        assertEquals(List.of("Scenario", "Class", "Method", "ParameterCount"), records.get(0));
+        assertEquals(List.of("Adding, then \"clearing\"", "com.example.calculator.Calculator", "perform(Operation, double)", "2"),
+                records.get(1));
+        assertEquals(List.of("Multi-line\nscenario", "com.example.calculator.Calculator", "clear()", "0"), records.get(2));
+        assertEquals(List.of("Empty fields", "", "", "-7"), records.get(3));
+        // Repeated values come from the dictionary
+        assertSame(records.get(1).get(1), records.get(2).get(1));
+    }
+
+    @Test
+    @DisplayName("Records spanning mapping windows should read the same as with one window")
+    void shouldReadAcrossWindows() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("coverage.csv"), CSV);
+        List<List<String>> expected = readAll(file, MappedCsvReader.DEFAULT_WINDOW);
+
+        for (long window = 96; window <= CSV.length(); window += 5) {
+            assertEquals(expected, readAll(file, window), "window " + window);
+        }
+        assertThrows(IOException.class, () -> readAll(file, 16));
+    }
+
+    @Test
+    @DisplayName("Numbers should be parsed from the buffer")
+    void shouldParseNumbers() throws IOException {
+        Path file = Files.writeString(tempDir.resolve("timings.csv"), "Scenario,WallNanos\n\"Adding\",1234567890123\n\"Clearing\",x\n");
+
+        try (MappedCsvReader reader = MappedCsvReader.open(file)) {
+            assertTrue(reader.next());
+            assertTrue(reader.next());
+            assertEquals(1234567890123L, reader.longField(1));
+            assertTrue(reader.next());
+            assertThrows(NumberFormatException.class, () -> reader.longField(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> reader.field(2));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    @DisplayName("A torn last record of a coverage file should be skipped without changing the file")
+    void shouldSkipTornTailWithoutChangingFile() throws IOException {
+        String intact = "Scenario,Class,Method,ParameterCount\n\"Adding\",\"com.example.X\",\"run()\",0\n";
+        Path file = Files.writeString(tempDir.resolve("coverage.csv"), intact + "\"Clearing\",\"com.exa");
+        assertTrue(file.toFile().setReadOnly());
+
+        CoverageData data = CoverageCsv.read(file);
+
+        assertEquals(1, data.getScenarioCount());
+        assertEquals(intact + "\"Clearing\",\"com.exa", Files.readString(file));
+        try (MappedCsvReader reader = MappedCsvReader.open(file)) {
+            int records = 0;
+            while (reader.next()) {
+                records++;
+            }
+            assertEquals(3, records, "A plain reader should read up to the end of the file");
+        }
+    }
+}
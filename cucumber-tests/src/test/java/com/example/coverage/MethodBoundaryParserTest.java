@@ -0,0 +1,133 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the method boundary parser
+ */
+public class MethodBoundaryParserTest {
+
+    static final String PERFORM = "com.example.calculator.Calculator#perform(Operation, double)";
+    static final String CLEAR = "com.example.calculator.Calculator#clear()";
+    static final String GET_RESULT = "com.example.calculator.Calculator#getResult()";
+
+    static final String CALCULATOR = String.join("\n",
+        "package com.example.calculator;",
+        "",
+        "import java.util.List;",
+        "",
+        "/** A calculator { with braces in comments } */",
+        "public class Calculator {",
+        "    private double result;",
+        "",
+        "    public Calculator perform(Operation operation, double value) {",
+        "        // Apply the operation }",
+        "        result = operation.apply(result, value);",
+        "        return this;",
+        "    }",
+        "",
+        "    public double getResult() {",
+        "        return result;",
+        "    }",
+        "",
+        "    public void clear() {",
+        "        result = 0;",
+        "    }",
+        "",
+        "    static class Memory {",
+        "        String describe(List<Map.Entry<String, Double>> entries, final int... slots) throws Exception {",
+        "            return \"}{\" + entries;",
+        "        }",
+        "    }",
+        "}");
+
+    @Test
+    @DisplayName("Methods should be keyed by coverage signature, including nested classes")
+    void shouldParseMethodSignatures() {
+        MethodBoundaryParser.ParsedSource source = MethodBoundaryParser.parse(CALCULATOR);
+
+        assertEquals(List.of(PERFORM, GET_RESULT, CLEAR,
+                "com.example.calculator.Calculator$Memory#describe(List, int[])"),
+            List.copyOf(source.getMethods().keySet()));
+        assertTrue(source.getOutside().contains("private double result;"));
+        assertFalse(source.getOutside().contains("return"));
+    }
+
+    @Test
+    @DisplayName("Method boundaries should span nested blocks, multi-line declarations and braces in literals")
+    void shouldFindMethodBoundaries() {
+        String source = String.join("\n",
+            "package com.example.calculator;",
+            "",
+            "public class Calculator {",
+            "    private final Runnable reset = new Runnable() { public void run() { } };",
+            "",
+            "    /** Applies { an operation */",
+            "    @Deprecated(since = \"1.0\")",
+            "    public Calculator perform(",
+            "            Operation operation,",
+            "            double value) throws ArithmeticException, IllegalStateException {",
+            "        switch (operation) {",
+            "            case DIVIDE:",
+            "                if (value == 0) {",
+            "                    throw new ArithmeticException(\"Cannot divide by zero }\");",
+            "                }",
+            "                break;",
+            "            default:",
+            "                char open = '{';",
+            "        }",
+            "        String block = \"\"\"",
+            "            } \\\"\"\" }",
+            "            \"\"\";",
+            "        return this; // }",
+            "    }",
+            "",
+            "    static { }",
+            "",
+            "    enum Mode { ON, OFF; Mode flip() { return this == ON ? OFF : ON; } }",
+            "}");
+
+        List<MethodBoundaryParser.MethodBoundary> methods = MethodBoundaryParser.findMethods(source);
+
+        assertEquals(List.of(PERFORM, "com.example.calculator.Calculator$Mode#flip()"),
+            methods.stream().map(MethodBoundaryParser.MethodBoundary::getSignature).toList());
+        MethodBoundaryParser.MethodBoundary perform = methods.get(0);
+        assertEquals("perform", perform.getName());
+        assertEquals(source.indexOf("@Deprecated"), perform.getStart());
+        assertEquals(source.indexOf("{\n        switch"), perform.getBodyStart());
+        assertEquals(source.indexOf("    }\n\n    static") + 5, perform.getEnd());
+
+        // parse splits at the same boundaries, dropping comments and keeping literals as they are
+        MethodBoundaryParser.ParsedSource parsed = MethodBoundaryParser.parse(source);
+        assertEquals(List.of(PERFORM, "com.example.calculator.Calculator$Mode#flip()"),
+            List.copyOf(parsed.getMethods().keySet()));
+        String body = parsed.getMethods().get(PERFORM);
+        assertTrue(body.startsWith("@Deprecated(since=\"1.0\")public Calculator perform(Operation operation,double value)"
+            + "throws ArithmeticException,IllegalStateException{switch(operation){"), body);
+        assertTrue(body.contains("throw new ArithmeticException(\"Cannot divide by zero }\");"), body);
+        assertTrue(body.contains("char open='{';"), body);
+        assertTrue(body.endsWith("return this;}"), body);
+        assertFalse(parsed.getOutside().contains("Applies"));
+        assertTrue(parsed.getOutside().contains("enum Mode{ON,OFF;"), parsed.getOutside());
+    }
+
+    @Test
+    @DisplayName("Comment and formatting changes should not change any method")
+    void shouldIgnoreCommentsAndFormatting() {
+        String reformatted = CALCULATOR
+            .replace("// Apply the operation }", "// Combine with the running result")
+            .replace("return this;", "return   this ;")
+            .replace("public double getResult() {", "public double getResult()\n    {");
+
+        MethodBoundaryParser.ParsedSource before = MethodBoundaryParser.parse(CALCULATOR);
+        MethodBoundaryParser.ParsedSource after = MethodBoundaryParser.parse(reformatted);
+
+        assertEquals(before.getMethods(), after.getMethods());
+        assertEquals(before.getOutside(), after.getOutside());
+    }
+}
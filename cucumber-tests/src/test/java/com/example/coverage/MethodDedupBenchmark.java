@@ -0,0 +1,246 @@
+package com.example.coverage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@link MethodFingerprint} on a generated source tree shaped like a business
+ * application: data classes of getters and setters, exception subclasses, builders,
+ * services of delegating overloads and services of their own. It reports fingerprinting
+ * throughput, how many methods and classes are distinct, and model calls and wall time
+ * of a full DeepSeekAnalyzer run with and without grouping classes of the same methods.
+ * The model is one persistent {@link StubModelWorker} with a fixed latency per call;
+ * both runs must produce the same report.
+ *
+ * Usage: MethodDedupBenchmark [classes] [latency-millis] [prompt-tokens] (default: 600 20 0)
+ */
+public class MethodDedupBenchmark {
+
+    private static final String[] FIELD_TYPES = {"String", "Long", "int", "boolean", "BigDecimal", "LocalDate"};
+    private static final String[] WORDS = {"customer", "order", "invoice", "account", "payment", "address",
+            "product", "shipment", "ledger", "tenant", "quote", "refund", "stock", "voucher", "contract"};
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        String latencyMillis = args.length > 1 ? args[1] : "20";
+        int promptTokens = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        System.out.println("=== Method Deduplication Benchmark ===");
+        Path dir = Files.createTempDirectory("method-dedup-benchmark");
+        try {
+            Path sources = writeSources(Files.createDirectories(dir.resolve("src")), classes, new Random(42));
+            fingerprint(sources);
+
+            System.out.printf("%n%d classes, %s ms per model call, prompts of %s%n", classes, latencyMillis,
+                    promptTokens == 0 ? "one class" : "at most " + promptTokens + " tokens");
+            System.out.printf("%-10s %12s %12s %14s %10s%n", "Dedup", "Model calls", "Wall (s)", "Classes/s", "Report");
+            String baseline = null;
+            for (boolean dedup : new boolean[]{false, true}) {
+                Path run = Files.createDirectories(dir.resolve("dedup-" + dedup));
+                List<String> command = new ArrayList<>();
+                for (String part : StubModelWorker.command(run)) {
+                    command.add("'" + part + "'");
+                }
+                Path stub = run.resolve("stub-worker.sh");
+                Files.writeString(stub, "exec " + String.join(" ", command) + " --latency-millis " + latencyMillis
+                        + " \"$@\"\n");
+
+                System.setProperty(DeepSeekAnalyzer.DEDUP_PROPERTY, String.valueOf(dedup));
+                long start = System.nanoTime();
+                new DeepSeekAnalyzer(sources.toString(), run.resolve("output").toString(), stub.toString(), 2,
+                        Duration.ofSeconds(120), 0, 1, promptTokens).analyzeCode();
+                long nanos = System.nanoTime() - start;
+
+                String report = Files.readString(run.resolve("output/test-recommendations.json"));
+                if (baseline == null) {
+                    baseline = report;
+                }
+                System.out.printf("%-10s %12d %12.2f %14.1f %10s%n", dedup ? "on" : "off",
+                        Files.readAllLines(run.resolve("calls.log")).size(), nanos / 1e9, classes / (nanos / 1e9),
+                        report.equals(baseline) ? "same" : "DIFFERS");
+            }
+        } finally {
+            System.clearProperty(DeepSeekAnalyzer.DEDUP_PROPERTY);
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fingerprint every method of the tree, as the analyzer extracts them, and count the
+     * distinct methods and classes
+     */
+    private static void fingerprint(Path sources) throws Exception {
+        List<List<DeepSeekAnalyzer.MethodInfo>> classes = new ArrayList<>();
+        long characters = 0;
+        int methods = 0;
+        try (Stream<Path> files = Files.list(sources)) {
+            for (Path file : files.sorted().toList()) {
+                String content = Files.readString(file);
+                List<DeepSeekAnalyzer.MethodInfo> classMethods = new ArrayList<>();
+                for (MethodBoundaryParser.MethodBoundary method : MethodBoundaryParser.findMethods(content)) {
+                    String body = content.substring(method.getStart(), method.getEnd());
+                    classMethods.add(new DeepSeekAnalyzer.MethodInfo(method.getName(), "", body, false, List.of()));
+                    characters += body.length();
+                }
+                methods += classMethods.size();
+                classes.add(classMethods);
+            }
+        }
+
+        Set<Long> distinctMethods = new HashSet<>();
+        Set<Long> distinctClasses = new HashSet<>();
+        long nanos = 0;
+        for (int round = 0; round < 20; round++) {
+            // Warm-up rounds, reported only once the JIT has settled
+            distinctMethods.clear();
+            distinctClasses.clear();
+            long start = System.nanoTime();
+            for (List<DeepSeekAnalyzer.MethodInfo> classMethods : classes) {
+                for (DeepSeekAnalyzer.MethodInfo method : classMethods) {
+                    distinctMethods.add(MethodFingerprint.of(method.body));
+                }
+                distinctClasses.add(MethodFingerprint.ofMethods(classMethods));
+            }
+            nanos = System.nanoTime() - start;
+        }
+        System.out.printf("%d classes, %d methods, %.1f MB of method source%n", classes.size(), methods,
+                characters / 1e6);
+        System.out.printf("Fingerprinting (methods and classes): %.1f ms, %.0f methods/s, %.1f MB/s%n", nanos / 1e6,
+                methods / (nanos / 1e9), characters / 1e6 / (nanos / 1e9));
+        System.out.printf("Distinct method fingerprints: %d of %d (%.0f%%)%n", distinctMethods.size(), methods,
+                100.0 * distinctMethods.size() / methods);
+        System.out.printf("Distinct class fingerprints: %d of %d (%.0f%%)%n", distinctClasses.size(), classes.size(),
+                100.0 * distinctClasses.size() / classes.size());
+    }
+
+    /**
+     * A tree of classes, about two in five of them data classes and one in four services
+     * of their own
+     */
+    private static Path writeSources(Path sources, int classes, Random random) throws Exception {
+        for (int c = 0; c < classes; c++) {
+            String word = WORDS[c % WORDS.length];
+            String type = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+            int kind = random.nextInt(20);
+            String name;
+            StringBuilder source;
+            if (kind < 8) {
+                name = type + "Dto" + c;
+                source = dataClass(name, random);
+            } else if (kind < 10) {
+                name = type + "Exception" + c;
+                source = exception(name, random.nextBoolean());
+            } else if (kind < 12) {
+                name = type + "Builder" + c;
+                source = builder(name, type, 2 + random.nextInt(3));
+            } else if (kind < 15) {
+                name = type + "Facade" + c;
+                source = facade(name, type, word);
+            } else {
+                name = type + "Service" + c;
+                source = service(name, type, random);
+            }
+            Files.writeString(sources.resolve(name + ".java"), source.append("}\n"));
+        }
+        return sources;
+    }
+
+    private static StringBuilder dataClass(String name, Random random) {
+        StringBuilder source = new StringBuilder("import java.math.BigDecimal;\nimport java.time.LocalDate;\n\n")
+                .append("/**\n * ").append(name).append(" as stored\n */\npublic class ").append(name).append(" {\n");
+        List<String[]> fields = new ArrayList<>();
+        int count = 2 + random.nextInt(4);
+        for (int f = 0; f < count; f++) {
+            // Types from a short list, as most data classes have
+            fields.add(new String[]{FIELD_TYPES[random.nextInt(f == 0 ? 2 : FIELD_TYPES.length)],
+                    WORDS[random.nextInt(WORDS.length)] + (f == 0 ? "Id" : "Value" + f)});
+        }
+        for (String[] field : fields) {
+            source.append("    private ").append(field[0]).append(' ').append(field[1]).append(";\n");
+        }
+        for (String[] field : fields) {
+            String property = Character.toUpperCase(field[1].charAt(0)) + field[1].substring(1);
+            source.append("\n    public ").append(field[0]).append(field[0].equals("boolean") ? " is" : " get")
+                    .append(property).append("() {\n        return ").append(field[1]).append(";\n    }\n")
+                    .append("\n    /** Sets the ").append(field[1]).append(" */\n    public void set").append(property)
+                    .append('(').append(field[0]).append(' ').append(field[1]).append(") {\n        this.")
+                    .append(field[1]).append(" = ").append(field[1]).append(";\n    }\n");
+        }
+        return source;
+    }
+
+    private static StringBuilder exception(String name, boolean withCause) {
+        StringBuilder source = new StringBuilder("public class ").append(name).append(" extends RuntimeException {\n")
+                .append("    public ").append(name).append("(String message) {\n        super(message);\n    }\n");
+        if (withCause) {
+            source.append("\n    public ").append(name).append("(String message, Throwable cause) {\n")
+                    .append("        super(message, cause);\n    }\n");
+        }
+        return source;
+    }
+
+    private static StringBuilder builder(String name, String type, int steps) {
+        StringBuilder source = new StringBuilder("public class ").append(name).append(" {\n")
+                .append("    private final java.util.Map<String, Object> values = new java.util.HashMap<>();\n");
+        for (int s = 0; s < steps; s++) {
+            source.append("\n    public ").append(name).append(" with").append(type).append("Part").append(s)
+                    .append("(Object value) {\n        values.put(\"").append(type.toLowerCase()).append(s)
+                    .append("\", value);\n        return this;\n    }\n");
+        }
+        return source.append("\n    public java.util.Map<String, Object> build() {\n")
+                .append("        return java.util.Collections.unmodifiableMap(values);\n    }\n");
+    }
+
+    private static StringBuilder facade(String name, String type, String word) {
+        return new StringBuilder("public class ").append(name).append(" {\n")
+                .append("    private final ").append(type).append("Repository repository;\n\n")
+                .append("    public ").append(name).append('(').append(type).append("Repository repository) {\n")
+                .append("        this.repository = repository;\n    }\n\n")
+                .append("    public ").append(type).append(" find(String id) {\n")
+                .append("        return find(id, false);\n    }\n\n")
+                .append("    public ").append(type).append(" find(String id, boolean refresh) {\n")
+                .append("        if (id == null || id.isBlank()) {\n")
+                .append("            throw new IllegalArgumentException(\"").append(word).append(" id is required\");\n")
+                .append("        }\n        return repository.load(id, refresh);\n    }\n");
+    }
+
+    private static StringBuilder service(String name, String type, Random random) {
+        StringBuilder source = new StringBuilder("import java.util.List;\n\npublic class ").append(name).append(" {\n");
+        int methods = 2 + random.nextInt(4);
+        for (int m = 0; m < methods; m++) {
+            // Logic of its own: a random mix of branches, loops and arithmetic
+            source.append("\n    public double compute").append(type).append(m).append("(List<Double> values, double limit) {\n")
+                    .append("        double total = ").append(random.nextInt(100)).append(";\n")
+                    .append("        for (double value : values) {\n");
+            int statements = 1 + random.nextInt(4);
+            for (int s = 0; s < statements; s++) {
+                switch (random.nextInt(5)) {
+                    case 0 -> source.append("            total += value * ").append(random.nextInt(9) + 1).append(";\n");
+                    case 1 -> source.append("            if (value > limit) {\n                total -= limit;\n            }\n");
+                    case 2 -> source.append("            total = Math.max(total, value / 2);\n");
+                    case 3 -> source.append("            if (total < 0) {\n                break;\n            }\n");
+                    default -> source.append("            total %= limit + 1;\n");
+                }
+            }
+            source.append("        }\n");
+            if (random.nextBoolean()) {
+                source.append("        if (total > limit) {\n            throw new IllegalStateException(\"")
+                        .append(type).append(" over limit\");\n        }\n");
+            }
+            source.append("        return total;\n    }\n");
+        }
+        return source;
+    }
+}
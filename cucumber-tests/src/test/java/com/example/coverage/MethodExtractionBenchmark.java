@@ -0,0 +1,162 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures extracting methods from a synthetic source tree with
+ * {@link MethodBoundaryParser#findMethods}, against the line-based extraction
+ * DeepSeekAnalyzer used before and the normalizing {@link MethodBoundaryParser#parse}.
+ * Each generated class has nested blocks, a multi-line declaration and braces in
+ * strings, characters and comments, which the line-based extraction misses or cuts
+ * short. Linearity is checked on single files of growing size.
+ *
+ * Usage: MethodExtractionBenchmark [files] (default: 100000)
+ */
+public class MethodExtractionBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 1_000;
+
+    public static void main(String[] args) throws IOException {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        System.out.println("=== Method Extraction Benchmark ===");
+        Path root = Files.createTempDirectory("method-extraction-benchmark");
+        try {
+            long bytes = generate(root, fileCount);
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(Files::isRegularFile).sorted().toList();
+            }
+            System.out.printf("%d files, %.1f MB, %d methods each%n", files.size(), bytes / 1e6, 4);
+
+            System.out.printf("%-22s %12s %14s %12s%n", "Extractor", "Time (ms)", "Throughput", "Methods");
+            measure("Read only", bytes, files, source -> 0);
+            measure("Line-based", bytes, files, source -> lineBased(source));
+            measure("parse", bytes, files, source -> MethodBoundaryParser.parse(source).getMethods().size());
+            measure("findMethods", bytes, files, source -> MethodBoundaryParser.findMethods(source).size());
+        } finally {
+            try (Stream<Path> walk = Files.walk(root)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+
+        System.out.printf("%n%-22s %12s %14s%n", "Single file", "Time (ms)", "ns per char");
+        for (int classes = 2_500; classes <= 40_000; classes *= 4) {
+            StringBuilder source = new StringBuilder("package com.example.generated;\n\n");
+            for (int i = 0; i < classes; i++) {
+                source.append(classSource("Generated" + i).replace("package com.example.generated;\n", ""));
+            }
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                MethodBoundaryParser.findMethods(source);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-22s %12d %14.2f%n", String.format("%.1f MB", source.length() / 1e6),
+                    best / 1_000_000, (double) best / source.length());
+        }
+    }
+
+    private static long generate(Path root, int fileCount) throws IOException {
+        long bytes = 0;
+        for (int i = 0; i < fileCount; i++) {
+            Path dir = root.resolve("pkg" + i / FILES_PER_DIRECTORY);
+            if (i % FILES_PER_DIRECTORY == 0) {
+                Files.createDirectories(dir);
+            }
+            String source = classSource("Service" + i);
+            Files.writeString(dir.resolve("Service" + i + ".java"), source);
+            bytes += source.length();
+        }
+        return bytes;
+    }
+
+    private static String classSource(String name) {
+        return String.join("\n",
+                "package com.example.generated;",
+                "",
+                "/** Generated { service } */",
+                "public class " + name + " {",
+                "    private final java.util.Map<String, Integer> counts = new java.util.HashMap<>();",
+                "",
+                "    public int handle(String command, int value) {",
+                "        switch (command) {",
+                "            case \"add\":",
+                "                if (value > 0) {",
+                "                    counts.merge(command, value, Integer::sum);",
+                "                }",
+                "                break;",
+                "            default:",
+                "                throw new IllegalArgumentException(\"Unknown command }\" + command);",
+                "        }",
+                "        return counts.getOrDefault(command, 0);",
+                "    }",
+                "",
+                "    public String describe(",
+                "            String prefix,",
+                "            char separator) {",
+                "        char open = '{'; // }",
+                "        return prefix + separator + open + counts;",
+                "    }",
+                "",
+                "    public void reset() {",
+                "        for (String key : counts.keySet()) {",
+                "            counts.put(key, 0);",
+                "        }",
+                "    }",
+                "",
+                "    static class Entry {",
+                "        int weight(int base) { return base * 2; }",
+                "    }",
+                "}",
+                "");
+    }
+
+    /**
+     * The former extraction: a declaration line opens a method, the next line with a brace ends it
+     */
+    private static int lineBased(String content) {
+        List<String> methods = new ArrayList<>();
+        StringBuilder methodBuilder = new StringBuilder();
+        boolean inMethod = false;
+        for (String line : content.split("\n")) {
+            line = line.trim();
+            if ((line.startsWith("public") || line.startsWith("private") || line.startsWith("protected")) &&
+                    line.contains("(") && line.contains(")") && line.contains("{") &&
+                    !line.contains("class") && !line.contains("interface")) {
+                inMethod = true;
+                methodBuilder.setLength(0);
+                methodBuilder.append(line);
+            } else if (inMethod) {
+                methodBuilder.append("\n").append(line);
+                if (line.contains("}")) {
+                    inMethod = false;
+                    methods.add(methodBuilder.toString());
+                }
+            }
+        }
+        return methods.size();
+    }
+
+    private static void measure(String name, long bytes, List<Path> files, Extractor extractor) throws IOException {
+        long start = System.nanoTime();
+        long methods = 0;
+        for (Path file : files) {
+            methods += extractor.extract(Files.readString(file));
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%-22s %12d %11.0f MB/s %12d%n", name, millis, bytes / 1e6 / Math.max(1, millis) * 1000, methods);
+    }
+
+    private interface Extractor {
+        int extract(String source);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for fingerprinting methods by their structure
+ */
+public class MethodFingerprintTest {
+
+    @Test
+    @DisplayName("Methods differing only in names, literals, whitespace and comments should match")
+    void shouldIgnoreNamesLiteralsAndLayout() {
+        assertEquals(MethodFingerprint.of("public String getName() { return name; }"),
+                MethodFingerprint.of("public Money getTotal() {\n    // the total\n    return total;\n}"));
+        assertEquals(MethodFingerprint.of("void check(int v) { if (v > 10) throw new E(\"too big\"); }"),
+                MethodFingerprint.of("void verify(int x) {\n  /* limit */ if (x > 0x1F) throw new Oops(\"\"\"\n"
+                        + "      out of \"range\"\n      \"\"\");\n}"));
+        assertEquals(MethodFingerprint.of("double f() { return 1.5e-3f + 'a'; }"),
+                MethodFingerprint.of("double g() { return 1_000L + '\\n'; }"));
+    }
+
+    @Test
+    @DisplayName("Keywords, operators and structure should change the fingerprint")
+    void shouldKeepStructure() {
+        long getter = MethodFingerprint.of("public String getName() { return name; }");
+        assertNotEquals(getter, MethodFingerprint.of("public long getName() { return name; }"));
+        assertNotEquals(getter, MethodFingerprint.of("private String getName() { return name; }"));
+        assertNotEquals(getter, MethodFingerprint.of("public String getName() { return this.name; }"));
+        assertNotEquals(MethodFingerprint.of("int f(int a) { return a + 1; }"),
+                MethodFingerprint.of("int f(int a) { return a - 1; }"));
+        assertNotEquals(MethodFingerprint.of("int f(int a) { return a + 1; }"),
+                MethodFingerprint.of("int f(int a) { return a + b; }"));
+        // An identifier that starts like a keyword is still an identifier
+        assertEquals(MethodFingerprint.of("void f() { doubled(); }"), MethodFingerprint.of("void f() { x(); }"));
+        assertNotEquals(MethodFingerprint.of("void f() { do {} while (x); }"),
+                MethodFingerprint.of("void f() { y {} while (x); }"));
+    }
+
+    @Test
+    @DisplayName("A class fingerprint should not depend on method order but on coverage")
+    void shouldFingerprintClassesByTheirMethods() {
+        DeepSeekAnalyzer.MethodInfo getter = method("public String getName() { return name; }", false);
+        DeepSeekAnalyzer.MethodInfo setter = method("public void setName(String n) { this.name = n; }", false);
+        DeepSeekAnalyzer.MethodInfo otherGetter = method("public Money getTotal() { return total; }", false);
+        DeepSeekAnalyzer.MethodInfo otherSetter = method("public void setTotal(Money t) { this.total = t; }", false);
+
+        assertEquals(MethodFingerprint.ofMethods(List.of(getter, setter)),
+                MethodFingerprint.ofMethods(List.of(otherSetter, otherGetter)));
+        assertNotEquals(MethodFingerprint.ofMethods(List.of(getter, setter)),
+                MethodFingerprint.ofMethods(List.of(getter)));
+        assertNotEquals(MethodFingerprint.ofMethods(List.of(getter, setter)),
+                MethodFingerprint.ofMethods(List.of(getter, setter, otherGetter)));
+        assertNotEquals(MethodFingerprint.ofMethods(List.of(getter, setter)),
+                MethodFingerprint.ofMethods(List.of(getter, method(setter.body, true))));
+    }
+
+    @Test
+    @DisplayName("The names and literals of one class should pair up with another's of the same fingerprint")
+    void shouldPairNamesOfClassesWithTheSameFingerprint() {
+        List<DeepSeekAnalyzer.MethodInfo> account = List.of(
+                method("getBalance", "public Money getBalance() { return balance; }"),
+                method("withdraw", "public void withdraw(Money x) { if (x.compareTo(LIMIT) > 500) throw new E(\"over 500\"); }"));
+        List<DeepSeekAnalyzer.MethodInfo> wallet = List.of(
+                method("spend", "public void spend(Credit y) { if (y.compareTo(CAP) > 20) throw new E(\"over 20\"); }"),
+                method("getCredit", "public Credit getCredit() { return credit; }"));
+
+        Map<String, String> renames = MethodFingerprint.names("Account", account)
+                .renamesTo(MethodFingerprint.names("Wallet", wallet));
+
+        assertEquals("Wallet", renames.get("Account"));
+        assertEquals("getCredit", renames.get("getBalance"));
+        assertEquals("spend", renames.get("withdraw"));
+        assertEquals("Credit", renames.get("Money"));
+        assertEquals("credit", renames.get("balance"));
+        assertEquals("20", renames.get("500"));
+        assertEquals("over 20", renames.get("over 500"));
+        // Short names are left alone, and so are the ones that do not change
+        assertFalse(renames.containsKey("x"));
+        assertFalse(renames.containsKey("compareTo"));
+    }
+
+    private static DeepSeekAnalyzer.MethodInfo method(String body, boolean covered) {
+        return new DeepSeekAnalyzer.MethodInfo("m", "m()", body, covered, List.of());
+    }
+
+    private static DeepSeekAnalyzer.MethodInfo method(String name, String body) {
+        return new DeepSeekAnalyzer.MethodInfo(name, name + "()", body, false, List.of());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.coverage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures per-request latency of a model started for every class, as DeepSeekAnalyzer
+ * does by default, against one {@link ModelWorkerPool} worker kept running. The model is
+ * {@link StubModelWorker} in its own JVM, with a simulated load time at startup and a
+ * fixed latency per class; requests are sent one at a time.
+ *
+ * Usage: ModelWorkerBenchmark [requests] [load-millis] [latency-millis] (default: 50 1000 50)
+ */
+public class ModelWorkerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        String loadMillis = args.length > 1 ? args[1] : "1000";
+        String latencyMillis = args.length > 2 ? args[2] : "50";
+
+        System.out.println("=== Model Worker Benchmark ===");
+        System.out.printf("%d requests, %s ms model load, %s ms per class%n", requests, loadMillis, latencyMillis);
+        System.out.printf("%-18s %12s %10s %10s %10s %12s%n",
+                "Mode", "First (ms)", "Mean (ms)", "p50 (ms)", "p95 (ms)", "Total (s)");
+        Path dir = Files.createTempDirectory("model-worker-benchmark");
+        try {
+            List<String> command = new ArrayList<>(StubModelWorker.command(dir));
+            command.addAll(List.of("--load-millis", loadMillis, "--latency-millis", latencyMillis));
+
+            long[] spawned = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                Path input = dir.resolve("Service" + i + "-input.ndjson");
+                Path output = dir.resolve("Service" + i + "-output.ndjson");
+                Files.writeString(input, classRecord("Service" + i));
+                List<String> call = new ArrayList<>(command);
+                call.addAll(List.of("--input", input.toString(), "--output", output.toString()));
+                long start = System.nanoTime();
+                Process process = new ProcessBuilder(call).redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+                if (process.waitFor() != 0 || !Files.exists(output)) {
+                    throw new IllegalStateException("Stub model failed on Service" + i);
+                }
+                spawned[i] = System.nanoTime() - start;
+            }
+            report("Spawn per call", spawned);
+
+            long[] persistent = new long[requests];
+            command.add("--worker");
+            try (ModelWorkerPool pool = new ModelWorkerPool(command, 1, dir.resolve("logs"),
+                    Duration.ofSeconds(30), Duration.ofSeconds(10))) {
+                for (int i = 0; i < requests; i++) {
+                    long start = System.nanoTime();
+                    pool.analyze(List.of(classRecord("Service" + i)), Duration.ofSeconds(60));
+                    persistent[i] = System.nanoTime() - start;
+                }
+            }
+            report("Persistent worker", persistent);
+        } finally {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static String classRecord(String className) {
+        return "{\"className\":\"" + className + "\",\"filePath\":\"" + className + ".java\",\"methods\":[]}\n";
+    }
+
+    private static void report(String mode, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = Arrays.stream(nanos).sum();
+        System.out.printf("%-18s %12d %10d %10d %10d %12.1f%n", mode, nanos[0] / 1_000_000,
+                total / nanos.length / 1_000_000, sorted[sorted.length / 2] / 1_000_000,
+                sorted[(int) Math.ceil(sorted.length * 0.95) - 1] / 1_000_000, total / 1e9);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the persistent model workers, with {@link StubModelWorker} as the model
+ */
+public class ModelWorkerPoolTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Concurrent requests to one worker should be answered in parallel and matched by id")
+    void shouldMultiplexRequests() throws Exception {
+        try (ModelWorkerPool pool = pool(1, Duration.ofSeconds(30), "--latency-millis", "500")) {
+            pool.analyze(List.of(classRecord("Warmup")), TIMEOUT);
+
+            ExecutorService callers = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<String>> answers = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    String className = "Service" + i;
+                    answers.add(callers.submit(() ->
+                            new String(pool.analyze(List.of(classRecord(className)), TIMEOUT), StandardCharsets.UTF_8)));
+                }
+                for (int i = 0; i < 4; i++) {
+                    assertTrue(answers.get(i).get().contains("\"className\":\"Service" + i + "\""));
+                }
+            } finally {
+                callers.shutdownNow();
+            }
+        }
+        assertEquals(1, Files.readAllLines(tempDir.resolve("starts.log")).size());
+        int mostRunning = Files.readAllLines(tempDir.resolve("running.log")).stream().mapToInt(Integer::parseInt).max().orElse(0);
+        assertTrue(mostRunning > 1, "The worker should be answering several requests at once, at most " + mostRunning);
+    }
+
+    @Test
+    @DisplayName("A crashed worker should fail its request and be restarted for the next one")
+    void shouldRestartCrashedWorker() throws Exception {
+        try (ModelWorkerPool pool = pool(1, Duration.ofSeconds(30))) {
+            IOException crash = assertThrows(IOException.class, () ->
+                    pool.analyze(List.of(classRecord("Crashing")), TIMEOUT));
+            assertTrue(crash.getMessage().contains("exited with code 1"), crash.getMessage());
+
+            assertTrue(new String(pool.analyze(List.of(classRecord("Crashing")), TIMEOUT), StandardCharsets.UTF_8)
+                    .contains("Test Crashing"));
+            assertEquals(1, pool.getRestarts());
+        }
+        assertEquals(2, Files.readAllLines(tempDir.resolve("starts.log")).size());
+    }
+
+    @Test
+    @DisplayName("A worker that stops answering health checks should be killed long before the request timeout")
+    void shouldRestartUnresponsiveWorker() throws Exception {
+        try (ModelWorkerPool pool = pool(1, Duration.ofMillis(200))) {
+            pool.analyze(List.of(classRecord("Warmup")), TIMEOUT);
+
+            IOException frozen = assertThrows(IOException.class, () -> pool.analyze(List.of(classRecord("Freezing")), TIMEOUT));
+            // Killed by the health check's 1s ping, not by the request's own timeout
+            assertEquals("model worker 0 did not answer within 1s", frozen.getMessage());
+
+            assertTrue(new String(pool.analyze(List.of(classRecord("Freezing")), TIMEOUT), StandardCharsets.UTF_8)
+                    .contains("Test Freezing"));
+            assertEquals(1, pool.getRestarts());
+        }
+    }
+
+    @Test
+    @DisplayName("An error answer should fail only its request")
+    void shouldReportErrorAnswers() throws Exception {
+        try (ModelWorkerPool pool = pool(1, Duration.ofSeconds(30))) {
+            IOException error = assertThrows(IOException.class, () -> pool.analyze(List.of(classRecord("Broken")), TIMEOUT));
+            assertEquals("cannot analyze Broken", error.getMessage());
+            pool.analyze(List.of(classRecord("Healthy")), TIMEOUT);
+            assertEquals(0, pool.getRestarts());
+        }
+    }
+
+    private ModelWorkerPool pool(int size, Duration healthInterval, String... options) throws IOException {
+        List<String> command = new ArrayList<>(StubModelWorker.command(tempDir));
+        command.add("--worker");
+        command.addAll(List.of(options));
+        return new ModelWorkerPool(command, size, tempDir.resolve("logs"), healthInterval, Duration.ofSeconds(1));
+    }
+
+    private static String classRecord(String className) {
+        return "{\"className\":\"" + className + "\",\"filePath\":\"" + className + ".java\",\"methods\":[]}\n";
+    }
+}
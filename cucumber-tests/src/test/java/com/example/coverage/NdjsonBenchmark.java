@@ -0,0 +1,199 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the model input and output of DeepSeekAnalyzer written and read with Jackson's
+ * streaming generator and parser, one class or recommendation per line, against the tree
+ * model it used before: every class held, built into one ObjectNode and pretty-printed,
+ * and the output read whole into Maps. Classes are generated as they are written, as they
+ * arrive from the source scanner. Peak heap is measured by {@link PeakHeap}.
+ *
+ * Usage: NdjsonBenchmark [classes...] (default: 10000 100000)
+ */
+public class NdjsonBenchmark {
+
+    private static final int METHODS_PER_CLASS = 4;
+    private static final int SCENARIOS_PER_CLASS = 5;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        for (String arg : args) {
+            sizes.add(Integer.parseInt(arg));
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(10_000, 100_000);
+        }
+
+        System.out.println("=== NDJSON Benchmark ===");
+        System.out.printf("%-10s %-28s %10s %12s %14s%n", "Classes", "Step", "Time (ms)", "File (MB)", "Peak heap (MB)");
+        for (int classCount : sizes) {
+            Path dir = Files.createTempDirectory("ndjson-benchmark");
+            try {
+                Path treeInput = dir.resolve("deepseek-input.json");
+                Path streamInput = dir.resolve("deepseek-input.ndjson");
+                report(classCount, "Write input, tree", treeInput, () -> writeTree(classCount, treeInput));
+                report(classCount, "Write input, streaming", streamInput, () -> writeStreaming(classCount, streamInput));
+
+                Path treeOutput = dir.resolve("output.json");
+                Path streamOutput = dir.resolve("output.ndjson");
+                writeOutputs(classCount, treeOutput, streamOutput);
+                report(classCount, "Read output, tree", treeOutput, () -> readTree(treeOutput));
+                report(classCount, "Read output, streaming", streamOutput, () -> readStreaming(streamOutput));
+            } finally {
+                try (var files = Files.list(dir)) {
+                    for (Path file : files.toList()) {
+                        Files.delete(file);
+                    }
+                }
+                Files.delete(dir);
+            }
+        }
+    }
+
+    private static DeepSeekAnalyzer.ClassInfo classInfo(int i) {
+        List<DeepSeekAnalyzer.MethodInfo> methods = new ArrayList<>();
+        for (int m = 0; m < METHODS_PER_CLASS; m++) {
+            String signature = "public int handle" + m + "(String command, int value)";
+            String body = signature + " {\n"
+                    + "        if (\"add\".equals(command)) {\n"
+                    + "            count += value * " + m + ";\n"
+                    + "        } else {\n"
+                    + "            throw new IllegalArgumentException(\"Unknown command \" + command);\n"
+                    + "        }\n"
+                    + "        return count;\n"
+                    + "    }";
+            methods.add(new DeepSeekAnalyzer.MethodInfo("handle" + m, signature, body, m % 2 == 0,
+                    m % 2 == 0 ? List.of("Scenario " + i) : List.of()));
+        }
+        return new DeepSeekAnalyzer.ClassInfo("Service" + i, Path.of("src/main/java/Service" + i + ".java"), methods);
+    }
+
+    /**
+     * The former input: all classes collected, then one tree pretty-printed
+     */
+    private static long writeTree(int classCount, Path file) throws IOException {
+        List<DeepSeekAnalyzer.ClassInfo> classes = new ArrayList<>();
+        for (int i = 0; i < classCount; i++) {
+            classes.add(classInfo(i));
+        }
+        ObjectNode root = MAPPER.createObjectNode();
+        ArrayNode classesArray = root.putArray("classes");
+        for (DeepSeekAnalyzer.ClassInfo classInfo : classes) {
+            ObjectNode classNode = classesArray.addObject();
+            classNode.put("className", classInfo.getClassName());
+            classNode.put("filePath", classInfo.getFilePath().toString());
+            ArrayNode methodsArray = classNode.putArray("methods");
+            for (DeepSeekAnalyzer.MethodInfo method : classInfo.getMethods()) {
+                ObjectNode methodNode = methodsArray.addObject();
+                methodNode.put("name", method.name);
+                methodNode.put("signature", method.signature);
+                methodNode.put("body", method.body);
+                methodNode.put("isCovered", method.isCovered);
+                ArrayNode scenarios = methodNode.putArray("coveredInScenarios");
+                method.coveredInScenarios.forEach(scenarios::add);
+            }
+        }
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), root);
+        return classesArray.size();
+    }
+
+    private static long writeStreaming(int classCount, Path file) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(Files.newBufferedWriter(file))) {
+            for (int i = 0; i < classCount; i++) {
+                DeepSeekAnalyzer.writeClass(json, classInfo(i));
+            }
+        }
+        return classCount;
+    }
+
+    private static void writeOutputs(int classCount, Path treeOutput, Path streamOutput) throws IOException {
+        try (JsonGenerator tree = JSON.createGenerator(Files.newBufferedWriter(treeOutput));
+             JsonGenerator stream = JSON.createGenerator(Files.newBufferedWriter(streamOutput))) {
+            tree.useDefaultPrettyPrinter();
+            tree.writeStartObject();
+            tree.writeStringField("model", "deepseek-local");
+            tree.writeArrayFieldStart("recommendations");
+            for (int i = 0; i < classCount; i++) {
+                writeRecommendation(tree, i);
+                writeRecommendation(stream, i);
+                stream.writeRaw('\n');
+            }
+            tree.writeEndArray();
+            tree.writeEndObject();
+        }
+    }
+
+    private static void writeRecommendation(JsonGenerator json, int i) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("className", "Service" + i);
+        json.writeNumberField("complexity", i % 10);
+        json.writeNumberField("testPriority", (i * 7) % 10);
+        json.writeArrayFieldStart("suggestedTestScenarios");
+        for (int s = 0; s < SCENARIOS_PER_CLASS; s++) {
+            json.writeString("Given command " + s + " for Service" + i + ", verify handle" + s + " returns the sum");
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    /**
+     * The former output handling: the whole file read into Maps, then converted
+     */
+    @SuppressWarnings("unchecked")
+    private static long readTree(Path file) throws IOException {
+        Map<String, Object> output = MAPPER.readValue(file.toFile(), Map.class);
+        List<Map<String, Object>> recommendationsList = (List<Map<String, Object>>) output.get("recommendations");
+        Map<String, DeepSeekAnalyzer.TestRecommendation> recommendations = new HashMap<>();
+        for (Map<String, Object> rec : recommendationsList) {
+            String className = (String) rec.get("className");
+            recommendations.put(className, new DeepSeekAnalyzer.TestRecommendation(className,
+                    ((Number) rec.get("complexity")).doubleValue(), ((Number) rec.get("testPriority")).doubleValue(),
+                    (List<String>) rec.get("suggestedTestScenarios")));
+        }
+        return recommendations.size();
+    }
+
+    private static long readStreaming(Path file) throws IOException {
+        AtomicLong count = new AtomicLong();
+        DeepSeekAnalyzer.readRecommendations(file, recommendation -> count.incrementAndGet());
+        return count.get();
+    }
+
+    private static void report(int classCount, String name, Path file, Step step) throws IOException {
+        long records;
+        long nanos;
+        long peak;
+        try (PeakHeap heap = new PeakHeap()) {
+            long start = System.nanoTime();
+            records = step.run();
+            nanos = System.nanoTime() - start;
+            peak = heap.bytes();
+        }
+        if (records != classCount) {
+            throw new IllegalStateException(name + " handled " + records + " of " + classCount + " classes");
+        }
+        System.out.printf("%-10d %-28s %10d %12.1f %14.1f%n", classCount, name, nanos / 1_000_000,
+                Files.size(file) / 1e6, peak / 1e6);
+    }
+
+    private interface Step {
+        long run() throws IOException;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static io.cucumber.junit.platform.engine.Constants.GLUE_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PARALLEL_CONFIG_FIXED_MAX_POOL_SIZE_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PARALLEL_CONFIG_FIXED_PARALLELISM_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PARALLEL_CONFIG_STRATEGY_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PLUGIN_PROPERTY_NAME;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClasspathResource;
+import static org.junit.platform.launcher.EngineFilter.includeEngines;
+
+/**
+ * Verifies that scenario coverage does not depend on how many threads run the suite.
+ * It runs the feature suite itself, so it is skipped unless the calculator classes are
+ * woven or instrumented, and it is run by the parallelCoverageTest task rather than
+ * by the tasks that run the suite.
+ */
+public class ParallelCoverageTest {
+
+    private static final int PARALLEL_THREADS = 8;
+
+    @Test
+    @DisplayName("Coverage of a suite run on 8 threads should match a serial run")
+    void parallelRunShouldMatchSerialRun() throws IOException, ClassNotFoundException {
+        assumeTrue(coverageRecorded(), "The calculator classes are neither woven nor instrumented");
+        List<String> serial = runSuite(false);
+        assertFalse(serial.isEmpty(), "Serial run should record coverage (is the weaver agent active?)");
+
+        List<String> parallel = runSuite(true);
+        assertEquals(serial, parallel, "Parallel coverage should be identical to serial coverage");
+    }
+
+    /**
+     * Whether calls to the calculator classes are recorded: the weaver adds its join point
+     * fields to the classes it weaves, and the probe agent registers the classes it instruments
+     */
+    private static boolean coverageRecorded() throws ClassNotFoundException {
+        Class<?> calculator = Class.forName("com.example.calculator.Calculator");
+        return Arrays.stream(calculator.getDeclaredFields()).anyMatch(field -> field.getName().startsWith("ajc$"))
+                || ProbeRuntime.getClassCount() > 0;
+    }
+
+    /**
+     * Run the feature suite and return its coverage records, sorted since scenarios are
+     * appended in completion order, without the timing columns written in profiling mode
+     */
+    private static List<String> runSuite(boolean parallel) throws IOException {
+        LauncherDiscoveryRequestBuilder builder = LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectClasspathResource("features"))
+                .filters(includeEngines("cucumber"))
+                .configurationParameter(GLUE_PROPERTY_NAME, "com.example.calculatorT")
+                .configurationParameter(PLUGIN_PROPERTY_NAME, "summary")
+                .configurationParameter(PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME, String.valueOf(parallel));
+        if (parallel) {
+            builder.configurationParameter(PARALLEL_CONFIG_STRATEGY_PROPERTY_NAME, "fixed")
+                    .configurationParameter(PARALLEL_CONFIG_FIXED_PARALLELISM_PROPERTY_NAME,
+                            String.valueOf(PARALLEL_THREADS))
+                    .configurationParameter(PARALLEL_CONFIG_FIXED_MAX_POOL_SIZE_PROPERTY_NAME,
+                            String.valueOf(PARALLEL_THREADS));
+        }
+        LauncherDiscoveryRequest request = builder.build();
+
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
+        Launcher launcher = LauncherFactory.create();
+        launcher.execute(request, listener);
+
+        assertEquals(0, listener.getSummary().getTotalFailureCount(),
+                "All scenarios should pass when run " + (parallel ? "in parallel" : "serially"));
+        return Files.readAllLines(CucumberCoverageAgent.getCoverageFile()).stream()
+                .skip(1)
+                .map(line -> line.substring(0, line.lastIndexOf("\",") + 1))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
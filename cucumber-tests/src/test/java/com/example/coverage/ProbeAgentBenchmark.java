@@ -0,0 +1,126 @@
+package com.example.coverage;
+
+import com.example.calculator.Calculator;
+import com.example.calculator.Operation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares JVM startup time and per-call overhead of the probe agent with the AspectJ
+ * aspect (load-time weaving with the options from aop.xml) and with no agent at all.
+ * Each configuration runs the calculator workload in fresh JVMs on the current classpath.
+ *
+ * Usage: ProbeAgentBenchmark [launches] [calls]
+ * (defaults: 5 launches per configuration, 2000000 calls)
+ * The agent jars are passed as system properties benchmark.aspectjweaver and benchmark.probeagent.
+ */
+public class ProbeAgentBenchmark {
+
+    private static final String RESULT = "RESULT ";
+
+    public static void main(String[] args) throws Exception {
+        int launches = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        String weaver = System.getProperty("benchmark.aspectjweaver");
+        String probeAgent = System.getProperty("benchmark.probeagent");
+
+        System.out.println("=== Probe Agent Benchmark ===");
+        System.out.printf("%d launches per configuration, %d calls per launch%n", launches, calls);
+
+        List<String[]> configurations = new ArrayList<>();
+        configurations.add(new String[]{"None"});
+        if (weaver != null) {
+            // The weaver defines its closure classes through reflection, as set up by cucumberTests
+            configurations.add(new String[]{"AspectJ", "-javaagent:" + weaver,
+                "--add-opens=java.base/java.lang=ALL-UNNAMED"});
+        }
+        if (probeAgent != null) {
+            configurations.add(new String[]{"Probes", "-javaagent:" + probeAgent});
+        }
+
+        System.out.printf("%-8s %14s %16s%n", "Agent", "Startup (ms)", "Per call (ns)");
+        double baselinePerCall = -1;
+        for (String[] configuration : configurations) {
+            long startup = Long.MAX_VALUE;
+            double perCall = Double.MAX_VALUE;
+            for (int i = 0; i < launches; i++) {
+                // Startup: a JVM that loads the instrumented classes and makes a single call
+                long start = System.nanoTime();
+                launch(configuration, 1);
+                startup = Math.min(startup, (System.nanoTime() - start) / 1_000_000);
+                perCall = Math.min(perCall, launch(configuration, calls));
+            }
+            if (baselinePerCall < 0) {
+                baselinePerCall = perCall;
+            }
+            System.out.printf("%-8s %14d %16.1f  (+%.1f ns per call)%n",
+                configuration[0], startup, perCall, perCall - baselinePerCall);
+        }
+    }
+
+    /**
+     * Run the workload in a new JVM with the JVM options of a configuration
+     * @return the measured time per call in nanoseconds
+     */
+    private static double launch(String[] configuration, int calls) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (int i = 1; i < configuration.length; i++) {
+            command.add(configuration[i]);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Workload.class.getName());
+        command.add(String.valueOf(calls));
+
+        Process process = new ProcessBuilder(command)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        double perCall = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    perCall = Double.parseDouble(line.substring(RESULT.length()));
+                }
+            }
+        }
+        if (process.waitFor() != 0 || perCall < 0) {
+            throw new IllegalStateException("Benchmark workload failed: " + command);
+        }
+        return perCall;
+    }
+
+    /**
+     * Calculator calls within a scenario, as made by the step definitions
+     */
+    public static class Workload {
+        public static void main(String[] args) {
+            int calls = Integer.parseInt(args[0]);
+            CucumberCoverageAgent.setCurrentScenario("Benchmark");
+            Calculator calculator = new Calculator();
+
+            // Warm up before measuring, so the JIT has compiled the instrumented code
+            run(calculator, Math.min(calls, 100_000));
+            long start = System.nanoTime();
+            double result = run(calculator, calls);
+            long elapsed = System.nanoTime() - start;
+
+            CucumberCoverageAgent.clearCurrentScenario();
+            System.out.println("Checksum: " + result);
+            System.out.println(RESULT + (double) elapsed / (calls * 2L));
+        }
+
+        private static double run(Calculator calculator, int calls) {
+            for (int i = 0; i < calls; i++) {
+                calculator.perform(Operation.ADD, 3).perform(Operation.SUBTRACT, 1);
+            }
+            return calculator.getResult();
+        }
+    }
+}
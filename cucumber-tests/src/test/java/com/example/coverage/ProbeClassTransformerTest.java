@@ -0,0 +1,141 @@
+package com.example.coverage;
+
+import com.example.calculator.Operation;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the probe agent's instrumentation
+ */
+public class ProbeClassTransformerTest {
+
+    private static final String CALCULATOR = "com.example.calculator.Calculator";
+    private static final String PERFORM = CALCULATOR + "#perform(Operation, double)";
+
+    @Test
+    @DisplayName("Probes should record the executed switch arm and branches per scenario")
+    void shouldRecordBranchesPerScenario() throws Exception {
+        Class<?> calculatorClass = loadInstrumented(CALCULATOR);
+        Method perform = calculatorClass.getMethod("perform", Operation.class, double.class);
+        Object calculator = calculatorClass.getConstructor().newInstance();
+
+        ProbeRuntime.startScenario("Adding");
+        perform.invoke(calculator, Operation.ADD, 2.0);
+        ProbeRuntime.ScenarioProbes adding = ProbeRuntime.endScenario("Adding");
+
+        ProbeRuntime.startScenario("Dividing");
+        perform.invoke(calculator, Operation.DIVIDE, 2.0);
+        ProbeRuntime.ScenarioProbes dividing = ProbeRuntime.endScenario("Dividing");
+
+        assertEquals(2.0 / 2, calculatorClass.getMethod("getResult").invoke(calculator));
+        assertTrue(adding.getCoveredMethods().contains(PERFORM));
+        assertFalse(adding.getCoveredMethods().contains(CALCULATOR + "#getResult()"));
+
+        // Four cases plus default, and both outcomes of the divide by zero check
+        assertEquals(5, countBranches(adding, "switch", false));
+        assertEquals(1, countBranches(adding, "switch", true));
+        assertEquals(0, countBranches(adding, "jump", true));
+        assertEquals(1, countBranches(dividing, "switch", true));
+        assertEquals(1, countBranches(dividing, "jump", true));
+        assertNotEquals(hitBranches(adding), hitBranches(dividing), "Scenarios should hit different arms");
+    }
+
+    @Test
+    @DisplayName("Include and exclude patterns should follow AspectJ type pattern rules")
+    void shouldMatchAspectJTypePatterns() {
+        ProbeClassTransformer transformer = new ProbeClassTransformer(
+            List.of("com.example.calculator.*", "com.example.other..*"),
+            List.of("*.test.*", "com.example.calculatorT.*"));
+
+        assertTrue(transformer.matches("com.example.calculator.Calculator"));
+        assertFalse(transformer.matches("com.example.calculator.sub.Helper"));
+        assertTrue(transformer.matches("com.example.other.deep.nested.Type"));
+        assertFalse(transformer.matches("com.example.calculatorT.CalculatorStepDefs"));
+        assertFalse(transformer.matches("com.example.coverage.ProbeRuntime"));
+    }
+
+    private static int countBranches(ProbeRuntime.ScenarioProbes probes, String kind, boolean hitOnly) {
+        int count = 0;
+        for (int classId = 0; classId < probes.getClassCount(); classId++) {
+            boolean[] hits = probes.getHits(classId);
+            ProbeRuntime.ClassProbes layout = ProbeRuntime.getClassProbes(classId);
+            if (hits == null || !layout.getClassName().equals(CALCULATOR)) {
+                continue;
+            }
+            for (int probe = 0; probe < hits.length; probe++) {
+                if (layout.isBranch(probe) && layout.getMethod(probe).equals(PERFORM)
+                        && isKind(layout.getBranch(probe), kind)
+                        && (hits[probe] || !hitOnly)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean isKind(String branch, String kind) {
+        return kind.equals("switch")
+            ? branch.startsWith("case") || branch.equals("default")
+            : branch.startsWith(kind);
+    }
+
+    private static String hitBranches(ProbeRuntime.ScenarioProbes probes) {
+        StringBuilder sb = new StringBuilder();
+        for (int classId = 0; classId < probes.getClassCount(); classId++) {
+            boolean[] hits = probes.getHits(classId);
+            ProbeRuntime.ClassProbes layout = ProbeRuntime.getClassProbes(classId);
+            for (int probe = 0; hits != null && probe < hits.length; probe++) {
+                if (hits[probe] && layout.isBranch(probe)) {
+                    sb.append(layout.getBranch(probe)).append(';');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Define an instrumented copy of a class in its own class loader, together with
+     * its nested classes so package-private access keeps working
+     */
+    private static Class<?> loadInstrumented(String className) throws ClassNotFoundException {
+        byte[] instrumented = ProbeClassTransformer.instrument(readClass(className));
+        assertNotNull(instrumented);
+
+        ClassLoader loader = new ClassLoader(ProbeClassTransformerTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.equals(className) && !name.startsWith(className + "$")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    if (loaded == null) {
+                        byte[] bytes = name.equals(className) ? instrumented : readClass(name);
+                        loaded = defineClass(name, bytes, 0, bytes.length);
+                    }
+                    return loaded;
+                }
+            }
+        };
+        return loader.loadClass(className);
+    }
+
+    private static byte[] readClass(String className) throws ClassNotFoundException {
+        String resource = className.replace('.', '/') + ".class";
+        try (InputStream in = ProbeClassTransformerTest.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new ClassNotFoundException(className);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new ClassNotFoundException(className, e);
+        }
+    }
+}
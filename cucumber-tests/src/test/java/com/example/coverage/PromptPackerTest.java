@@ -0,0 +1,122 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for packing classes into token-budgeted prompts
+ */
+public class PromptPackerTest {
+
+    @Test
+    @DisplayName("Tokens should be estimated per word piece and symbol")
+    void shouldEstimateTokens() {
+        assertEquals(0, PromptPacker.estimateTokens("  \n\t "));
+        // return(2) a b + ;
+        assertEquals(6, PromptPacker.estimateTokens("return a + b;"));
+        // calculateResult(4) ( ) { }
+        assertEquals(8, PromptPacker.estimateTokens("calculateResult() {\n}"));
+    }
+
+    @Test
+    @DisplayName("Small classes should share a prompt until the budget is reached")
+    void shouldPackSmallClasses() {
+        PromptPacker packer = new PromptPacker(4096);
+        List<PromptPacker.Prompt> prompts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            prompts.addAll(packer.add(classInfo("Service" + i, method("clear", 3, false), method("getResult", 3, true)),
+                    "key" + i));
+        }
+        prompts.add(packer.finish());
+        assertNull(packer.finish());
+
+        assertTrue(prompts.size() > 1 && prompts.size() < 10, prompts.size() + " prompts");
+        int classes = 0;
+        for (PromptPacker.Prompt prompt : prompts) {
+            assertTrue(prompt.getTokens() <= 4096, prompt.getTokens() + " tokens");
+            for (PromptPacker.Part part : prompt.getParts()) {
+                assertEquals(1, part.getPartCount());
+                classes++;
+            }
+        }
+        assertEquals(40, classes);
+    }
+
+    @Test
+    @DisplayName("A class larger than a prompt should be split with its uncovered methods first")
+    void shouldSplitLargeClassUncoveredFirst() {
+        PromptPacker packer = new PromptPacker(1024);
+        List<DeepSeekAnalyzer.MethodInfo> methods = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            methods.add(method("method" + i, 20, i % 2 == 0));
+        }
+        List<PromptPacker.Prompt> prompts = new ArrayList<>(packer.add(new DeepSeekAnalyzer.ClassInfo(
+                "Large", Path.of("Large.java"), methods), "large"));
+        prompts.add(packer.finish());
+
+        assertTrue(prompts.size() > 1);
+        List<DeepSeekAnalyzer.MethodInfo> sent = new ArrayList<>();
+        for (PromptPacker.Prompt prompt : prompts) {
+            assertTrue(prompt.getTokens() <= 1024, prompt.getTokens() + " tokens");
+            assertEquals(1, prompt.getParts().size());
+            assertEquals(prompts.size(), prompt.getParts().get(0).getPartCount());
+            sent.addAll(prompt.getParts().get(0).classInfo.getMethods());
+        }
+        assertEquals(10, sent.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i >= 5, sent.get(i).isCovered, "method " + i + " is " + sent.get(i).name);
+        }
+    }
+
+    @Test
+    @DisplayName("A method larger than any prompt should be sent in parts that rebuild its body")
+    void shouldSplitOversizedMethod() {
+        DeepSeekAnalyzer.MethodInfo huge = method("compute", 400, false);
+        PromptPacker packer = new PromptPacker(1024);
+        List<PromptPacker.Prompt> prompts = new ArrayList<>(packer.add(classInfo("Huge", huge), "huge"));
+        prompts.add(packer.finish());
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < prompts.size(); i++) {
+            PromptPacker.Prompt prompt = prompts.get(i);
+            assertTrue(prompt.getTokens() <= 1024, prompt.getTokens() + " tokens");
+            DeepSeekAnalyzer.MethodInfo part = prompt.getParts().get(0).classInfo.getMethods().get(0);
+            assertEquals("compute (part " + (i + 1) + " of " + prompts.size() + ")", part.name);
+            assertEquals(huge.signature, part.signature);
+            body.append(part.body);
+        }
+        assertTrue(prompts.size() > 1);
+        assertEquals(huge.body, body.toString());
+    }
+
+    @Test
+    @DisplayName("A budget of 0 should send every class in a prompt of its own")
+    void shouldSendEachClassAloneWithoutBudget() {
+        PromptPacker packer = new PromptPacker(0);
+        assertEquals(1, packer.add(classInfo("Small", method("clear", 1, false)), "small").size());
+        assertEquals(1, packer.add(classInfo("Huge", method("compute", 400, false)), "huge").size());
+        assertNull(packer.finish());
+    }
+
+    private static DeepSeekAnalyzer.ClassInfo classInfo(String name, DeepSeekAnalyzer.MethodInfo... methods) {
+        return new DeepSeekAnalyzer.ClassInfo(name, Path.of("src/main/java/com/example/" + name + ".java"),
+                List.of(methods));
+    }
+
+    private static DeepSeekAnalyzer.MethodInfo method(String name, int lines, boolean covered) {
+        String signature = "public double " + name + "(double value)";
+        StringBuilder body = new StringBuilder(signature).append(" {\n");
+        for (int i = 0; i < lines; i++) {
+            body.append("        value = Math.max(value * ").append(i).append(", result + offset);\n");
+        }
+        body.append("        return value;\n    }");
+        return new DeepSeekAnalyzer.MethodInfo(name, signature, body.toString(), covered,
+                covered ? List.of("Scenario: " + name) : List.of());
+    }
+}
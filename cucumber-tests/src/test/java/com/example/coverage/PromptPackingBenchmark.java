@@ -0,0 +1,90 @@
+package com.example.coverage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures model calls and wall time of a full DeepSeekAnalyzer run with a prompt per
+ * class against prompts packed up to a token budget. The model is one persistent
+ * {@link StubModelWorker} with a fixed latency per call, whatever its size, so the
+ * difference is the calls saved; every run must produce the same report. The classes
+ * differ only in literals, so grouping classes of the same methods is turned off.
+ *
+ * Usage: PromptPackingBenchmark [classes] [methods-per-class] [latency-millis] [budgets...]
+ * (default: 200 4 50 0 2048 8192)
+ */
+public class PromptPackingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int classes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int methods = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        String latencyMillis = args.length > 2 ? args[2] : "50";
+        List<Integer> budgets = new ArrayList<>();
+        for (int i = 3; i < args.length; i++) {
+            budgets.add(Integer.parseInt(args[i]));
+        }
+        if (budgets.isEmpty()) {
+            budgets = List.of(0, 2048, 8192);
+        }
+
+        System.out.println("=== Prompt Packing Benchmark ===");
+        System.out.printf("%d classes of %d methods, %s ms per model call%n", classes, methods, latencyMillis);
+        System.out.printf("%-14s %12s %12s %14s %10s%n", "Budget", "Model calls", "Wall (s)", "Classes/s", "Report");
+        System.setProperty(DeepSeekAnalyzer.DEDUP_PROPERTY, "false");
+        Path dir = Files.createTempDirectory("prompt-packing-benchmark");
+        try {
+            Path sources = writeSources(Files.createDirectories(dir.resolve("src")), classes, methods);
+            String baseline = null;
+            for (int budget : budgets) {
+                Path run = Files.createDirectories(dir.resolve("budget-" + budget));
+                List<String> command = new ArrayList<>();
+                for (String part : StubModelWorker.command(run)) {
+                    command.add("'" + part + "'");
+                }
+                Path stub = run.resolve("stub-worker.sh");
+                Files.writeString(stub, "exec " + String.join(" ", command) + " --latency-millis " + latencyMillis
+                        + " \"$@\"\n");
+
+                long start = System.nanoTime();
+                new DeepSeekAnalyzer(sources.toString(), run.resolve("output").toString(), stub.toString(), 2,
+                        Duration.ofSeconds(120), 0, 1, budget).analyzeCode();
+                long nanos = System.nanoTime() - start;
+
+                String report = Files.readString(run.resolve("output/test-recommendations.json"));
+                if (baseline == null) {
+                    baseline = report;
+                }
+                System.out.printf("%-14s %12d %12.2f %14.1f %10s%n", budget == 0 ? "per class" : budget + " tokens",
+                        Files.readAllLines(run.resolve("calls.log")).size(), nanos / 1e9, classes / (nanos / 1e9),
+                        report.equals(baseline) ? "same" : "DIFFERS");
+            }
+        } finally {
+            try (Stream<Path> walk = Files.walk(dir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static Path writeSources(Path sources, int classes, int methods) throws Exception {
+        for (int c = 0; c < classes; c++) {
+            StringBuilder source = new StringBuilder("public class Service" + c + " {\n");
+            for (int m = 0; m < methods; m++) {
+                source.append("    public double step").append(m).append("(double value) {\n")
+                        .append("        if (value < ").append(m).append(") {\n")
+                        .append("            throw new IllegalArgumentException(\"value below ").append(m).append("\");\n")
+                        .append("        }\n")
+                        .append("        return Math.sqrt(value * ").append(c + 1).append(");\n")
+                        .append("    }\n");
+            }
+            Files.writeString(sources.resolve("Service" + c + ".java"), source.append("}\n"));
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the content-addressed cache of model answers
+ */
+public class RecommendationCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Keys should change with method bodies, coverage and model version only")
+    void shouldKeyOnWhatTheModelSees() {
+        DeepSeekAnalyzer.ClassInfo original = classInfo("return a + b;", true);
+
+        String key = RecommendationCache.key("model/1", original);
+
+        assertEquals(key, RecommendationCache.key("model/1", classInfo("return a + b;", true)));
+        assertNotEquals(key, RecommendationCache.key("model/1", classInfo("return a - b;", true)));
+        assertNotEquals(key, RecommendationCache.key("model/1", classInfo("return a + b;", false)));
+        assertNotEquals(key, RecommendationCache.key("model/2", original));
+    }
+
+    @Test
+    @DisplayName("Least recently used answers should be evicted past the size bound")
+    void shouldEvictLeastRecentlyUsed() throws IOException {
+        RecommendationCache cache = new RecommendationCache(tempDir.resolve("cache"), 250);
+        Path answer = Files.writeString(tempDir.resolve("answer.json"), "x".repeat(100));
+        for (String key : List.of("a", "b", "c")) {
+            cache.put(key, answer);
+        }
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(tempDir.resolve("cache/a.json"), FileTime.fromMillis(now - 30_000));
+        Files.setLastModifiedTime(tempDir.resolve("cache/b.json"), FileTime.fromMillis(now - 20_000));
+        Files.setLastModifiedTime(tempDir.resolve("cache/c.json"), FileTime.fromMillis(now - 10_000));
+
+        assertNotNull(cache.get("a"));
+        assertEquals(200, cache.evict());
+
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.getEvicted());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(cache.report(200).contains("66.7% hit rate"));
+    }
+
+    private static DeepSeekAnalyzer.ClassInfo classInfo(String body, boolean covered) {
+        return new DeepSeekAnalyzer.ClassInfo("Calculator", Path.of("Calculator.java"), List.of(
+                new DeepSeekAnalyzer.MethodInfo("add", "public int add", body, covered, List.of())));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scaling curve of rendering the HTML report on a ForkJoin pool: render time for 1, 2,
+ * 4, ... threads up to the number of cores, each checked to be byte-identical to the
+ * single-threaded report.
+ *
+ * Usage: ReportRenderingBenchmark [scenarios] [methods] [methodsPerScenario] [maxThreads]
+ * (defaults: 20000 scenarios, 10000 methods, 100 methods per scenario, all cores)
+ */
+public class ReportRenderingBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int scenarioCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int methodCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int methodsPerScenario = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("=== Report Rendering Benchmark ===");
+        System.out.printf("%d scenarios, %d methods, ~%d methods per scenario, %d cores%n",
+                scenarioCount, methodCount, methodsPerScenario, Runtime.getRuntime().availableProcessors());
+
+        CoverageData data = CoverageFormatBenchmark.generate(scenarioCount, methodCount, methodsPerScenario);
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+
+        Path dir = Files.createTempDirectory("report-rendering-benchmark");
+        Path sequential = dir.resolve("sequential.html");
+        Path parallel = dir.resolve("parallel.html");
+        try {
+            GenerateCoverageReport.writeHtmlReport(data, sequential, 1);
+            System.out.printf("%8s %12s %10s %10s%n", "Threads", "Time (ms)", "Speedup", "Identical");
+            long single = 0;
+            for (int threads : threadCounts) {
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    GenerateCoverageReport.writeHtmlReport(data, parallel, threads);
+                    best = Math.min(best, (System.nanoTime() - start) / 1_000_000);
+                }
+                if (threads == 1) {
+                    single = best;
+                }
+                System.out.printf("%8d %12d %9.2fx %10s%n", threads, best, (double) single / Math.max(1, best),
+                        Files.mismatch(sequential, parallel) == -1 ? "yes" : "NO");
+            }
+        } finally {
+            Files.deleteIfExists(sequential);
+            Files.deleteIfExists(parallel);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for per-scenario call counts and self-time
+ */
+public class ScenarioProfilerTest {
+
+    private static final long SLEEP_MILLIS = 200;
+    private static final long SLEEP_NANOS = SLEEP_MILLIS * 1_000_000L;
+
+    private static final String OUTER = "com.example.calculator.Calculator#perform(Operation, double)";
+    private static final String INNER = "com.example.calculator.Calculator#divide(double)";
+    private static final String LEAF = "com.example.calculator.Calculator#getResult()";
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void reset() {
+        ScenarioProfiler.reset();
+    }
+
+    @Test
+    @DisplayName("Self-time should exclude the time spent in nested tracked calls")
+    void shouldSubtractNestedCalls() throws InterruptedException {
+        long begin = System.nanoTime();
+        long outer = ScenarioProfiler.enter();
+        long inner = ScenarioProfiler.enter();
+        Thread.sleep(SLEEP_MILLIS);
+        for (int i = 0; i < 3; i++) {
+            ScenarioProfiler.exit("Dividing", LEAF, ScenarioProfiler.enter());
+        }
+        ScenarioProfiler.exit("Dividing", INNER, inner);
+        // Outside any scenario: not counted, but still a nested call of the outer method
+        long untracked = ScenarioProfiler.enter();
+        Thread.sleep(SLEEP_MILLIS);
+        ScenarioProfiler.exit(null, LEAF, untracked);
+        ScenarioProfiler.exit("Dividing", OUTER, outer);
+        long wall = System.nanoTime() - begin;
+
+        Map<String, ScenarioProfiler.MethodStats> stats = ScenarioProfiler.removeScenario("Dividing");
+
+        assertEquals(1, stats.get(OUTER).getCalls());
+        assertEquals(1, stats.get(INNER).getCalls());
+        assertEquals(3, stats.get(LEAF).getCalls());
+        assertTrue(stats.get(INNER).getSelfNanos() >= SLEEP_NANOS);
+        assertTrue(stats.get(OUTER).getSelfNanos() < SLEEP_NANOS,
+                "Both sleeps ran in nested calls, outer self-time was " + stats.get(OUTER).getSelfNanos());
+        long total = stats.values().stream().mapToLong(ScenarioProfiler.MethodStats::getSelfNanos).sum();
+        assertTrue(total <= wall - SLEEP_NANOS, "Self-times should add up to no more than the time tracked");
+        assertTrue(ScenarioProfiler.removeScenario("Dividing").isEmpty(), "A removed scenario should be gone");
+    }
+
+    @Test
+    @DisplayName("Calls on another thread should not be subtracted from this thread's frames")
+    void shouldKeepOneCallStackPerThread() throws InterruptedException {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try {
+                entered.await();
+                long start = ScenarioProfiler.enter();
+                Thread.sleep(SLEEP_MILLIS);
+                ScenarioProfiler.exit("Other", INNER, start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                otherDone.countDown();
+            }
+        });
+        other.start();
+
+        long start = ScenarioProfiler.enter();
+        entered.countDown();
+        otherDone.await();
+        ScenarioProfiler.exit("This", OUTER, start);
+        other.join();
+
+        assertTrue(ScenarioProfiler.removeScenario("This").get(OUTER).getSelfNanos() >= SLEEP_NANOS,
+                "The other thread's call ran while this frame was open but is not nested in it");
+        assertEquals(1, ScenarioProfiler.removeScenario("Other").get(INNER).getCalls());
+    }
+
+    @Test
+    @DisplayName("Profiling should add Calls and SelfTimeNanos columns, and leave the CSV as it was when off")
+    void shouldAddProfileColumnsOnlyWhenProfiling() throws IOException {
+        CoverageData data = new CoverageData();
+        data.addScenario("Dividing", List.of(OUTER, LEAF));
+        Path plain = tempDir.resolve("plain.csv");
+        CoverageCsv.write(data, plain);
+
+        assertEquals(List.of(CoverageCsv.HEADER,
+                "\"Dividing\",\"com.example.calculator.Calculator\",\"getResult()\",0",
+                "\"Dividing\",\"com.example.calculator.Calculator\",\"perform(Operation, double)\",2"),
+                Files.readAllLines(plain));
+
+        data.addProfile(data.scenarioId("Dividing"), data.methodId(OUTER), 2, 5000);
+        Path profiled = tempDir.resolve("profiled.csv");
+        CoverageCsv.write(data, profiled);
+
+        assertEquals(List.of(CoverageCsv.PROFILE_HEADER,
+                "\"Dividing\",\"com.example.calculator.Calculator\",\"getResult()\",0,0,0",
+                "\"Dividing\",\"com.example.calculator.Calculator\",\"perform(Operation, double)\",2,2,5000"),
+                Files.readAllLines(profiled));
+        CoverageData read = CoverageCsv.read(profiled);
+        assertArrayEquals(new long[]{2, 5000}, read.getProfile(read.scenarioId("Dividing"), read.findMethodId(OUTER)));
+    }
+
+    @Test
+    @DisplayName("The summary should have profile sections ranked by self-time only when profiling")
+    void shouldSummarizeProfileOnlyWhenProfiling() throws InterruptedException, IOException {
+        CoverageSummary summary = new CoverageSummary();
+        summary.addScenario("Adding", List.of(LEAF), Map.of());
+        Path plain = tempDir.resolve("plain.txt");
+        summary.write(plain.toString(), LocalDateTime.now(), false, new BranchCoverage());
+
+        String plainSummary = Files.readString(plain);
+        assertTrue(plainSummary.contains("Adding: 1 methods\n"));
+        assertFalse(plainSummary.contains("Profile by"));
+        assertFalse(plainSummary.contains("Profiler Overhead"));
+
+        long outer = ScenarioProfiler.enter();
+        Thread.sleep(SLEEP_MILLIS);
+        ScenarioProfiler.exit("Dividing", LEAF, ScenarioProfiler.enter());
+        ScenarioProfiler.exit("Dividing", OUTER, outer);
+        summary.addScenario("Dividing", List.of(OUTER, LEAF), ScenarioProfiler.removeScenario("Dividing"));
+        Path profiled = tempDir.resolve("profiled.txt");
+        summary.write(profiled.toString(), LocalDateTime.now(), true, new BranchCoverage());
+
+        String profiledSummary = Files.readString(profiled);
+        assertTrue(profiledSummary.startsWith(plainSummary.substring(0, plainSummary.indexOf("Generated:"))));
+        assertTrue(profiledSummary.contains("Profile by Scenario (calls, self time)\n"));
+        assertTrue(profiledSummary.contains("Dividing: 2 calls, "));
+        int methods = profiledSummary.indexOf("Profile by Method (calls, self time)\n");
+        int outerLine = profiledSummary.indexOf(OUTER + ": 1 calls", methods);
+        assertTrue(methods > 0 && outerLine > methods);
+        assertTrue(outerLine < profiledSummary.indexOf(LEAF + ": 1 calls", methods), "Methods should be ranked by self-time");
+        assertTrue(profiledSummary.contains("Profiled Calls: 2\n"));
+    }
+}
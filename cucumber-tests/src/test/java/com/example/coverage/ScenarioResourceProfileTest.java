@@ -0,0 +1,77 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the per-scenario resource profile
+ */
+public class ScenarioResourceProfileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void reset() {
+        ScenarioResourceProfile.reset();
+    }
+
+    @Test
+    @DisplayName("A scenario's wall time, CPU time and allocations should be measured on its thread")
+    void shouldMeasureScenario() throws IOException {
+        ScenarioResourceProfile.start();
+        byte[][] garbage = new byte[64][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new byte[64 * 1024];
+        }
+        ScenarioResourceProfile.stop("Allocating scenario");
+
+        Path csv = tempDir.resolve("profile.csv");
+        ScenarioResourceProfile.write(csv, tempDir.resolve("profile.txt"), tempDir.resolve("missing.csv"));
+        ScenarioResourceProfile.Resources resources = ScenarioResourceProfile.read(csv).get("Allocating scenario");
+
+        assertEquals(1, resources.getRuns());
+        assertTrue(resources.getWallNanos() > 0);
+        assertTrue(resources.getAllocatedBytes() == -1 || resources.getAllocatedBytes() >= garbage.length * 64 * 1024L);
+        assertTrue(Files.readString(tempDir.resolve("profile.txt")).contains("Allocating scenario"));
+    }
+
+    @Test
+    @DisplayName("Scenarios should be ranked by wall time and regressions flagged against the baseline")
+    void shouldFlagRegressions() throws IOException {
+        Path baselineFile = tempDir.resolve("baseline.csv");
+        ScenarioResourceProfile.writeCsv(Map.of(
+            "Adding numbers", resources(1, 100_000_000L, 50_000_000L, 1_000_000L),
+            "Dividing by zero", resources(2, 20_000_000L, 10_000_000L, 2_000_000L)), baselineFile);
+        Map<String, ScenarioResourceProfile.Resources> baseline = ScenarioResourceProfile.read(baselineFile);
+
+        ScenarioResourceProfile.Resources slower = resources(1, 400_000_000L, 55_000_000L, 1_000_000L);
+        ScenarioResourceProfile.Resources noisy = resources(2, 40_000_000L, 10_000_000L, 2_000_000L);
+        assertEquals(1, ScenarioResourceProfile.regressions(slower, baseline.get("Adding numbers")).size());
+        assertTrue(ScenarioResourceProfile.regressions(noisy, baseline.get("Dividing by zero")).isEmpty());
+
+        Path reportFile = tempDir.resolve("report.txt");
+        try (var writer = Files.newBufferedWriter(reportFile)) {
+            ScenarioResourceProfile.writeReport(Map.of("Adding numbers", slower, "Dividing by zero", noisy),
+                baseline, baselineFile, writer);
+        }
+        String report = Files.readString(reportFile);
+        assertTrue(report.indexOf("Adding numbers") < report.indexOf("Dividing by zero"));
+        assertTrue(report.contains("Adding numbers: wall time 100.000 -> 400.000 ms per run (+300%)"));
+    }
+
+    private static ScenarioResourceProfile.Resources resources(int runs, long wall, long cpu, long allocated) {
+        ScenarioResourceProfile.Resources resources = new ScenarioResourceProfile.Resources();
+        resources.add(runs, wall, cpu, allocated);
+        return resources;
+    }
+}
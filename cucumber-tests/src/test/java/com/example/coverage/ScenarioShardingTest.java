@@ -0,0 +1,106 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for timing-balanced scenario sharding
+ */
+public class ScenarioShardingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Shards should be balanced by recorded run time, not by scenario count")
+    void shouldBalanceByRunTime() {
+        Map<String, Long> timings = Map.of("Slow", 90L, "Medium", 50L, "Fast 1", 30L, "Fast 2", 10L, "Fast 3", 10L);
+
+        List<ScenarioSharding.Shard> shards = ScenarioSharding.plan(timings.keySet(), timings, 2);
+
+        assertEquals(Set.of("Slow", "Fast 3"), shards.get(0).getScenarios());
+        assertEquals(Set.of("Medium", "Fast 1", "Fast 2"), shards.get(1).getScenarios());
+        assertEquals(100, shards.get(0).getEstimatedNanos());
+        assertEquals(90, shards.get(1).getEstimatedNanos());
+        assertEquals(shards.get(0).getScenarios(), ScenarioSharding.plan(timings.keySet(), timings, 2).get(0).getScenarios());
+    }
+
+    @Test
+    @DisplayName("Scenarios without history should be spread evenly")
+    void shouldSpreadScenariosWithoutHistory() {
+        Set<String> scenarios = new TreeSet<>();
+        for (int i = 0; i < 10; i++) {
+            scenarios.add("Scenario " + i);
+        }
+
+        List<ScenarioSharding.Shard> shards = ScenarioSharding.plan(scenarios, Map.of(), 3);
+
+        assertEquals(List.of(4, 3, 3), shards.stream().map(s -> s.getScenarios().size()).toList());
+        Pattern filter = Pattern.compile(TestImpactAnalysis.nameFilter(shards.get(1).getScenarios()));
+        assertEquals(3, scenarios.stream().filter(s -> filter.matcher(s).find()).count());
+    }
+
+    @Test
+    @DisplayName("Outlines should be expanded into one scenario per Examples row, as Cucumber names them")
+    void shouldExpandScenarioOutlines() throws IOException {
+        Path features = Files.createDirectories(tempDir.resolve("features"));
+        Files.writeString(features.resolve("calculator.feature"), String.join("\n",
+            "Feature: Calculator", "  Scenario: Adding numbers", "    Given I have a calculator",
+            "    \"\"\"", "    Scenario: Not a scenario", "    \"\"\"",
+            "  @smoke", "  Scenario Outline: Dividing <a> by <b>", "    When I divide <a> by <b>",
+            "    Examples: Small", "      | a | b |", "      # no zero", "      | 1 | 2 |", "      | 3 | 4 |",
+            "    Examples:", "      | a  | b     |", "      | 10 | \\|x\\| |",
+            "  Scenario Template: Without examples",
+            "  Scenario Outline: No rows", "    Examples:", "      | a |",
+            "  Rule: Subtraction", "    Example: Subtracting <a>"));
+
+        Set<String> scenarios = ScenarioSharding.findScenarios(features);
+
+        assertEquals(Set.of("Adding numbers", "Dividing 1 by 2", "Dividing 3 by 4", "Dividing 10 by |x|",
+            "Without examples", "Subtracting <a>"), scenarios);
+        Pattern filter = Pattern.compile(TestImpactAnalysis.nameFilter(scenarios));
+        assertTrue(filter.matcher("Dividing 10 by |x|").find());
+        assertFalse(filter.matcher("Dividing <a> by <b>").find());
+    }
+
+    @Test
+    @DisplayName("Timings should be updated from the profiles of the last run only")
+    void shouldUpdateTimingsFromProfiles() throws IOException {
+        Path reports = Files.createDirectories(tempDir.resolve("reports"));
+        writeProfile(reports.resolve("cucumber-scenario-profile-0.csv"), "Adding numbers", 300L);
+        writeProfile(reports.resolve("cucumber-scenario-profile-1.csv"), "Dividing 1 by 2", 20L);
+        // Left behind by earlier runs: unsharded, and with three shards
+        writeProfile(reports.resolve("cucumber-scenario-profile.csv"), "Dividing 1 by 2", 900L);
+        writeProfile(reports.resolve("cucumber-scenario-profile-2.csv"), "Adding numbers", 900L);
+
+        Path timingsFile = tempDir.resolve("timings.csv");
+        Map<String, Long> timings = new TreeMap<>(Map.of("Adding numbers", 100L, "Dividing 1 by 2", 80L, "Other", 50L));
+        assertEquals(2, ScenarioSharding.updateTimings(timings, reports, 2));
+        ScenarioSharding.writeTimings(timings, timingsFile);
+
+        assertEquals(Map.of("Adding numbers", 200L, "Dividing 1 by 2", 50L, "Other", 50L),
+            ScenarioSharding.readTimings(timingsFile));
+
+        assertEquals(1, ScenarioSharding.updateTimings(timings, reports, 0));
+        assertEquals(475L, timings.get("Dividing 1 by 2"));
+    }
+
+    private static void writeProfile(Path file, String scenario, long wallNanos) throws IOException {
+        ScenarioResourceProfile.Resources resources = new ScenarioResourceProfile.Resources();
+        resources.add(1, wallNanos, 100L, 10L);
+        ScenarioResourceProfile.writeCsv(Map.of(scenario, resources), file);
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.coverage;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Measures extracting the methods of synthetic source trees with the pipelined
+ * {@link SourceScanner}, against walking the tree first and reading every file with
+ * Files.readString, keeping all method bodies, the way DeepSeekAnalyzer used to. Both
+ * extract each method body; the sequential one also holds them until the end, as the
+ * analyzer did. Peak heap is measured by {@link PeakHeap}.
+ *
+ * Usage: SourceScanBenchmark [files...] (default: 10000 100000 1000000)
+ */
+public class SourceScanBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 500;
+    private static final int DIRECTORIES_PER_PARENT = 50;
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        for (String arg : args) {
+            sizes.add(Integer.parseInt(arg));
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(10_000, 100_000, 1_000_000);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("=== Source Scan Benchmark ===");
+        System.out.printf("%d scanner threads%n", threads);
+        System.out.printf("%-10s %-24s %10s %12s %10s %14s%n", "Files", "Scanner", "Time (ms)", "Files/s", "MB/s", "Peak heap (MB)");
+        for (int fileCount : sizes) {
+            Path root = Files.createTempDirectory("source-scan-benchmark");
+            try {
+                long bytes = generate(root, fileCount);
+                report(fileCount, "Walk, then readString", bytes, () -> sequential(root));
+                report(fileCount, "Pipelined", bytes, () -> pipelined(root, threads));
+            } finally {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long generate(Path root, int fileCount) throws IOException {
+        long bytes = 0;
+        Path dir = root;
+        for (int i = 0; i < fileCount; i++) {
+            if (i % FILES_PER_DIRECTORY == 0) {
+                int directory = i / FILES_PER_DIRECTORY;
+                dir = Files.createDirectories(root.resolve("module" + directory / DIRECTORIES_PER_PARENT)
+                        .resolve("pkg" + directory % DIRECTORIES_PER_PARENT));
+            }
+            String source = String.join("\n",
+                    "package com.example.generated;",
+                    "",
+                    "public class Service" + i + " {",
+                    "    private int count;",
+                    "",
+                    "    public int handle(String command, int value) {",
+                    "        if (\"add\".equals(command)) {",
+                    "            count += value;",
+                    "        } else {",
+                    "            throw new IllegalArgumentException(\"Unknown command }\" + command);",
+                    "        }",
+                    "        return count;",
+                    "    }",
+                    "",
+                    "    public void reset() {",
+                    "        count = 0;",
+                    "    }",
+                    "}",
+                    "");
+            Files.writeString(dir.resolve("Service" + i + ".java"), source);
+            bytes += source.length();
+        }
+        return bytes;
+    }
+
+    private static long sequential(Path root) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.toString().endsWith(".java")) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        List<List<String>> classes = new ArrayList<>();
+        for (Path file : files) {
+            String content = Files.readString(file);
+            List<String> bodies = new ArrayList<>();
+            for (MethodBoundaryParser.MethodBoundary method : MethodBoundaryParser.findMethods(content)) {
+                bodies.add(content.substring(method.getStart(), method.getEnd()));
+            }
+            classes.add(bodies);
+        }
+        long methods = 0;
+        for (List<String> bodies : classes) {
+            methods += bodies.size();
+        }
+        return methods;
+    }
+
+    private static long pipelined(Path root, int threads) throws IOException {
+        AtomicLong methods = new AtomicLong();
+        SourceScanner.scan(root, threads, (file, source) -> {
+            List<String> bodies = new ArrayList<>();
+            for (MethodBoundaryParser.MethodBoundary method : MethodBoundaryParser.findMethods(source)) {
+                bodies.add(source.subSequence(method.getStart(), method.getEnd()).toString());
+            }
+            return bodies;
+        }, bodies -> methods.addAndGet(bodies.size()));
+        return methods.get();
+    }
+
+    private static void report(int fileCount, String name, long bytes, Scan scan) throws IOException {
+        long methods;
+        long nanos;
+        long peak;
+        try (PeakHeap heap = new PeakHeap()) {
+            long start = System.nanoTime();
+            methods = scan.run();
+            nanos = System.nanoTime() - start;
+            peak = heap.bytes();
+        }
+        if (methods != 2L * fileCount) {
+            throw new IllegalStateException(name + " found " + methods + " methods in " + fileCount + " files");
+        }
+        System.out.printf("%-10d %-24s %10d %12.0f %10.1f %14.1f%n", fileCount, name, nanos / 1_000_000,
+                fileCount / (nanos / 1e9), bytes / 1e6 / (nanos / 1e9), peak / 1e6);
+    }
+
+    private interface Scan {
+        long run() throws IOException;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the pipelined source scanner
+ */
+public class SourceScannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Every source in the tree should be parsed, whether read, mapped or decoded")
+    void shouldScanWholeTree() throws IOException {
+        Map<String, String> expected = new TreeMap<>();
+        for (int i = 0; i < 300; i++) {
+            Path dir = Files.createDirectories(tempDir.resolve("pkg" + i % 7).resolve("sub" + i % 3));
+            String source = "class Source" + i + " { int value() { return " + i + "; } }";
+            Files.writeString(dir.resolve("Source" + i + ".java"), source);
+            expected.put("Source" + i, source);
+        }
+        String large = "class Large {\n" + "    int value() { return 1; }\n".repeat(SourceScanner.MAP_THRESHOLD / 20) + "}";
+        Files.writeString(tempDir.resolve("Large.java"), large);
+        expected.put("Large", large);
+        String unicode = "class Size { String value() { return \"gr\u00f6\u00dfer { als\"; } }";
+        Files.writeString(tempDir.resolve("pkg0/Size.java"), unicode);
+        expected.put("Size", unicode);
+        Files.writeString(tempDir.resolve("pkg1/README.md"), "not a source");
+
+        Map<String, String> scanned = new TreeMap<>();
+        long count = SourceScanner.scan(tempDir, 3,
+                (file, source) -> Map.entry(file.getFileName().toString().replace(".java", ""), source.toString()),
+                entry -> scanned.put(entry.getKey(), entry.getValue()));
+
+        assertEquals(302, count);
+        assertEquals(expected, scanned);
+    }
+
+    @Test
+    @DisplayName("A file that fails to parse should fail the scan, naming the file")
+    void shouldReportParseFailures() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            Files.writeString(tempDir.resolve("Source" + i + ".java"), "class Source" + i + " { }");
+        }
+
+        IOException failure = assertThrows(IOException.class, () -> SourceScanner.scan(tempDir, 2, (file, source) -> {
+            if (file.endsWith("Source17.java")) {
+                throw new IllegalStateException("Unexpected token");
+            }
+            return file;
+        }, file -> { }));
+
+        assertTrue(failure.getMessage().contains("Source17.java: Unexpected token"), failure.getMessage());
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for the model script in tests and benchmarks. With --worker it serves framed
+ * requests on stdin as a {@link ModelWorkerPool} worker, answering them concurrently;
+ * otherwise it answers the classes in --input into --output, as a process per call.
+ * Every call answers each of its classes with one recommendation.
+ *
+ *   --load-millis N     sleep at startup, as a model being loaded
+ *   --latency-millis N  sleep for each call, whatever its size
+ *   --state-dir DIR     where starts.log, calls.log and first-attempt markers are written
+ *
+ * calls.log gets a line per call with the names of its classes, and running.log, in worker
+ * mode, the number of calls being answered when each one arrives. A call with a class
+ * named Crashing exits the worker and one with Freezing stops it reading requests, both
+ * on their first attempt only; one with Broken always gets an error answer.
+ */
+public class StubModelWorker {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private boolean worker;
+    private long loadMillis;
+    private long latencyMillis;
+    private Path stateDir;
+    private Path input;
+    private Path output;
+    private final AtomicInteger running = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        StubModelWorker stub = new StubModelWorker();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--worker" -> stub.worker = true;
+                case "--load-millis" -> stub.loadMillis = Long.parseLong(args[++i]);
+                case "--latency-millis" -> stub.latencyMillis = Long.parseLong(args[++i]);
+                case "--state-dir" -> stub.stateDir = Path.of(args[++i]);
+                case "--input" -> stub.input = Path.of(args[++i]);
+                case "--output" -> stub.output = Path.of(args[++i]);
+                case "--model" -> i++;
+                case "--packed" -> { }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        stub.log("starts.log", "start");
+        Thread.sleep(stub.loadMillis);
+        if (stub.worker) {
+            stub.serve();
+        } else {
+            List<String> classNames = new ArrayList<>();
+            for (String line : Files.readAllLines(stub.input)) {
+                if (!line.isBlank()) {
+                    classNames.add(MAPPER.readTree(line).get("className").asText());
+                }
+            }
+            stub.log("calls.log", String.join(" ", classNames));
+            Thread.sleep(stub.latencyMillis);
+            StringBuilder answers = new StringBuilder();
+            for (String className : classNames) {
+                answers.append(MAPPER.writeValueAsString(recommendation(className))).append('\n');
+            }
+            Files.writeString(stub.output, answers);
+        }
+    }
+
+    private void serve() throws IOException, InterruptedException {
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(System.out));
+        ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        while (true) {
+            JsonNode request;
+            try {
+                byte[] frame = new byte[requests.readInt()];
+                requests.readFully(frame);
+                request = MAPPER.readTree(frame);
+            } catch (EOFException e) {
+                return;
+            }
+            long id = request.get("id").asLong();
+            if (request.get("type").asText().equals("ping")) {
+                send(responses, MAPPER.createObjectNode().put("id", id).put("pong", true));
+                continue;
+            }
+            List<String> classNames = new ArrayList<>();
+            for (JsonNode classNode : request.get("classes")) {
+                classNames.add(classNode.get("className").asText());
+            }
+            log("calls.log", String.join(" ", classNames));
+            log("running.log", String.valueOf(running.incrementAndGet()));
+            if (classNames.contains("Crashing") && firstAttempt("Crashing")) {
+                Runtime.getRuntime().halt(1);
+            }
+            if (classNames.contains("Freezing") && firstAttempt("Freezing")) {
+                Thread.sleep(Long.MAX_VALUE);
+            }
+            pool.execute(() -> {
+                try {
+                    Thread.sleep(latencyMillis);
+                    ObjectNode response = MAPPER.createObjectNode().put("id", id);
+                    if (classNames.contains("Broken")) {
+                        response.put("error", "cannot analyze Broken");
+                    } else {
+                        ArrayNode recommendations = response.putArray("recommendations");
+                        classNames.forEach(className -> recommendations.add(recommendation(className)));
+                    }
+                    running.decrementAndGet();
+                    send(responses, response);
+                } catch (IOException | InterruptedException e) {
+                    Runtime.getRuntime().halt(2);
+                }
+            });
+        }
+    }
+
+    /**
+     * Command running the stub in a JVM of its own, keeping its state in a directory
+     */
+    static List<String> command(Path stateDir) {
+        List<String> classpath = new ArrayList<>();
+        for (Class<?> type : List.of(StubModelWorker.class, ObjectMapper.class, JsonFactory.class, JsonAutoDetect.class)) {
+            try {
+                classpath.add(Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return List.of(ProcessHandle.current().info().command().orElse("java"),
+                "-cp", String.join(File.pathSeparator, classpath),
+                StubModelWorker.class.getName(),
+                "--state-dir", stateDir.toString());
+    }
+
+    private static ObjectNode recommendation(String className) {
+        ObjectNode recommendation = MAPPER.createObjectNode()
+                .put("className", className)
+                .put("complexity", 2)
+                .put("testPriority", 4);
+        recommendation.putArray("suggestedTestScenarios").add("Test " + className);
+        return recommendation;
+    }
+
+    private static void send(DataOutputStream responses, ObjectNode response) throws IOException {
+        byte[] frame = MAPPER.writeValueAsBytes(response);
+        synchronized (responses) {
+            responses.writeInt(frame.length);
+            responses.write(frame);
+            responses.flush();
+        }
+    }
+
+    private boolean firstAttempt(String className) throws IOException {
+        if (stateDir == null) {
+            return false;
+        }
+        Path marker = stateDir.resolve(className + ".seen");
+        if (Files.exists(marker)) {
+            return false;
+        }
+        Files.createFile(marker);
+        return true;
+    }
+
+    private synchronized void log(String file, String line) throws IOException {
+        if (stateDir != null) {
+            Files.write(stateDir.resolve(file), List.of(line), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+}
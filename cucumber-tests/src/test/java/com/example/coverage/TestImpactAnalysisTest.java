@@ -0,0 +1,65 @@
+package com.example.coverage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.example.coverage.MethodBoundaryParserTest.CALCULATOR;
+import static com.example.coverage.MethodBoundaryParserTest.CLEAR;
+import static com.example.coverage.MethodBoundaryParserTest.GET_RESULT;
+import static com.example.coverage.MethodBoundaryParserTest.PERFORM;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for test impact analysis
+ */
+public class TestImpactAnalysisTest {
+
+    @Test
+    @DisplayName("Only scenarios covering a changed method should be selected")
+    void shouldSelectScenariosCoveringChangedMethods() {
+        String changed = CALCULATOR.replace("result = 0;", "result = 0.0;");
+
+        TestImpactAnalysis.Selection selection = TestImpactAnalysis.select(coverage(),
+            Map.of("com/example/calculator/Calculator.java", new String[]{CALCULATOR, changed}));
+
+        assertFalse(selection.runsAll());
+        assertEquals(Set.of(CLEAR), selection.getChangedMethods());
+        assertEquals(Set.of("Clearing (the) calculator"), selection.getScenarios());
+
+        Pattern filter = Pattern.compile(selection.getNameFilter());
+        assertTrue(filter.matcher("Clearing (the) calculator").find());
+        assertFalse(filter.matcher("Adding numbers").find());
+    }
+
+    @Test
+    @DisplayName("Changes that cannot be mapped to covered methods should fall back to all scenarios")
+    void shouldFallBackToAllScenarios() {
+        String fieldChanged = CALCULATOR.replace("private double result;", "private double result = 1;");
+        String methodAdded = CALCULATOR.replace("    public void clear() {",
+            "    public void reset() {\n        clear();\n    }\n\n    public void clear() {");
+        String uncoveredChanged = CALCULATOR.replace("return \"}{\" + entries;", "return \"{}\" + entries;");
+
+        for (String head : List.of(fieldChanged, methodAdded, uncoveredChanged)) {
+            TestImpactAnalysis.Selection selection = TestImpactAnalysis.select(coverage(),
+                Map.of("com/example/calculator/Calculator.java", new String[]{CALCULATOR, head}));
+            assertTrue(selection.runsAll(), head);
+            assertNull(selection.getNameFilter());
+        }
+
+        TestImpactAnalysis.Selection unchanged = TestImpactAnalysis.select(coverage(), Map.of());
+        assertEquals(TestImpactAnalysis.NO_SCENARIOS, unchanged.getNameFilter());
+        assertTrue(TestImpactAnalysis.select(new CoverageData(), Map.of()).runsAll());
+    }
+
+    private static CoverageData coverage() {
+        CoverageData coverage = new CoverageData();
+        coverage.addScenario("Adding numbers", List.of(PERFORM, GET_RESULT));
+        coverage.addScenario("Clearing (the) calculator", List.of(CLEAR, GET_RESULT));
+        return coverage;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures {@link TolerantJson} on model responses of several megabytes against the
+ * regex chain run_analysis.py used before: every match of a nested-brace pattern, longest
+ * first, cleaned up by substitutions and parsed until one succeeds. Responses are prose,
+ * Java code blocks and terminal escapes around one {"recommendations": [...]} value
+ * written with unquoted keys, single and smart quotes and trailing commas. Strict parsing
+ * of the same JSON, repaired beforehand, is the lower bound. Java's regex engine runs out
+ * of stack on the brace pattern long before Python's gives up, which is reported as such.
+ *
+ * Usage: TolerantJsonBenchmark [megabytes...] (default: 0.1 1 4 16)
+ */
+public class TolerantJsonBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern BRACES = Pattern.compile("\\{[^{}]*(?:\\{[^{}]*\\}[^{}]*)*\\}");
+    private static final Pattern SINGLE_QUOTED = Pattern.compile("'([^']*)'");
+    private static final Pattern TRAILING_COMMA = Pattern.compile(",(\\s*[}\\]])");
+    private static final Pattern UNQUOTED_KEY = Pattern.compile("(\\s*)(\\w+)(\\s*):([^:])");
+
+    public static void main(String[] args) throws Exception {
+        List<Double> sizes = new ArrayList<>();
+        for (String arg : args) {
+            sizes.add(Double.parseDouble(arg));
+        }
+        if (sizes.isEmpty()) {
+            sizes = List.of(0.1, 1.0, 4.0, 16.0);
+        }
+
+        System.out.println("=== Tolerant JSON Benchmark ===");
+        System.out.printf("%-8s %-24s %10s %10s %16s%n", "MB", "Extractor", "Time (ms)", "MB/s", "Recommendations");
+        for (double megabytes : sizes) {
+            StringBuilder strict = new StringBuilder();
+            String response = response((int) (megabytes * 1_000_000), strict);
+            String repaired = strict.toString();
+            double mb = response.length() / 1e6;
+            for (int round = 0; round < 5; round++) {
+                // Warm-up rounds, reported only once the JIT has settled
+                boolean last = round == 4;
+                measure(last, mb, "Strict parse (bound)", () -> count(repaired));
+                measure(last, mb, "TolerantJson", () -> count(TolerantJson.extract(response)));
+                measure(last, mb, "Former regex chain", () -> regexChain(response));
+            }
+        }
+    }
+
+    private static void measure(boolean report, double mb, String extractor, ToIntSupplier run) throws Exception {
+        long start = System.nanoTime();
+        int recommendations;
+        try {
+            recommendations = run.get();
+        } catch (StackOverflowError e) {
+            // Java's regex engine recurses for every repetition of the pattern's group
+            if (report) {
+                System.out.printf("%-8.2f %-24s %10s %10s %16s%n", mb, extractor, "-", "-", "stack overflow");
+            }
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        if (report) {
+            System.out.printf("%-8.2f %-24s %10d %10.1f %16d%n", mb, extractor, nanos / 1_000_000,
+                    mb / (nanos / 1e9), recommendations);
+        }
+    }
+
+    private interface ToIntSupplier {
+        int get() throws Exception;
+    }
+
+    private static int count(String json) throws Exception {
+        JsonNode node = MAPPER.readTree(json);
+        return node == null ? 0 : node.path("recommendations").size();
+    }
+
+    /**
+     * The second strategy of the former extract_json, which is the one that gets to see
+     * responses without a code block that parses
+     */
+    private static int regexChain(String response) {
+        List<String> matches = new ArrayList<>();
+        Matcher matcher = BRACES.matcher(response);
+        while (matcher.find()) {
+            matches.add(matcher.group());
+        }
+        matches.sort(Comparator.comparingInt(String::length).reversed());
+        for (String match : matches) {
+            String cleaned = match.replace('\u201c', '"').replace('\u201d', '"');
+            cleaned = SINGLE_QUOTED.matcher(cleaned).replaceAll("\"$1\"");
+            cleaned = TRAILING_COMMA.matcher(cleaned).replaceAll("$1");
+            cleaned = UNQUOTED_KEY.matcher(cleaned).replaceAll("$1\"$2\"$3:$4");
+            try {
+                return count(cleaned);
+            } catch (Exception e) {
+                // Next match
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * A response of about a size, with the strict form of its JSON written to strict
+     */
+    private static String response(int size, StringBuilder strict) {
+        StringBuilder text = new StringBuilder("\u001b[?25l\u280b \u001b[K\u001b[?25hHere are the test scenarios.\n\n");
+        StringBuilder json = new StringBuilder("{\n  recommendations: [\n");
+        strict.append("{\"recommendations\":[");
+        for (int i = 0; text.length() + json.length() < size; i++) {
+            if (i % 20 == 0) {
+                text.append("```java\npublic class Service").append(i).append("Test {\n")
+                        .append("    @Test\n    void handles").append(i).append("() {\n")
+                        .append("        Map<String, Integer> counts = new HashMap<>() {{ put(\"a\", ").append(i).append("); }};\n")
+                        .append("        assertEquals(").append(i).append(", new Service").append(i).append("().handle(counts));\n")
+                        .append("    }\n}\n```\n\nThis checks that the service handles its input [see above].\n\n");
+            }
+            if (i > 0) {
+                strict.append(',');
+            }
+            json.append("    {\n      className: 'Service").append(i).append("',\n")
+                    .append("      \"complexity\": ").append(i % 10).append(",\n")
+                    .append("      testPriority: ").append(i % 7).append(",\n")
+                    .append("      suggestedTestScenarios: [\n")
+                    .append("        \u201cHandle ").append(i).append(" commands, expect ").append(i * 2).append("\u201d,\n")
+                    .append("        'Reject an unknown command with IllegalArgumentException',\n")
+                    .append("      ],\n    },\n");
+            strict.append("{\"className\":\"Service").append(i).append("\",\"complexity\":").append(i % 10)
+                    .append(",\"testPriority\":").append(i % 7).append(",\"suggestedTestScenarios\":[\"Handle ")
+                    .append(i).append(" commands, expect ").append(i * 2)
+                    .append("\",\"Reject an unknown command with IllegalArgumentException\"]}");
+        }
+        strict.append("]}");
+        json.append("  ],\n}\n");
+        return text.append("```json\n").append(json).append("```\n\nHappy testing!\n").toString();
+    }
+}
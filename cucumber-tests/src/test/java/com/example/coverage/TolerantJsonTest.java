@@ -0,0 +1,119 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for extracting and repairing JSON in model responses
+ */
+public class TolerantJsonTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    @DisplayName("Smart quotes, single quotes, trailing commas and unquoted keys should be repaired")
+    void shouldRepairJson() {
+        assertEquals("{\"className\":\"Calculator\",\"complexity\":7,\"suggestedTestScenarios\":[\"Divide by 0\",\"it's \\\"quoted\\\"\"]}",
+                TolerantJson.extract("{\n  className: \u201cCalculator\u201d,\n  'complexity': 7,\n"
+                        + "  suggestedTestScenarios: ['Divide by 0', 'it\\'s \"quoted\"',],\n}"));
+        assertEquals("{\"note\":\"doesn't fail\",\"ok\":true,\"none\":null}",
+                TolerantJson.extract("{'note': 'doesn't fail', ok: true, none: null}"));
+    }
+
+    @Test
+    @DisplayName("The longest JSON value should be found among prose, code and terminal escapes")
+    void shouldFindJsonInFreeText() {
+        String response = "\u001b[?25l\u280b \u001b[K\u001b[?25hHere is a test:\n```java\npublic class CalculatorTest {\n"
+                + "    @Test void adds() { assertEquals(2, add(1, 1)); }\n}\n```\nThe JSON [1]:\n```json\n"
+                + "{\n  \"\u001b[?25l\u001b[?25hclassName\": \"Calculator\", // the class\n"
+                + "  /* scores */ \"complexity\": 5, \"testPriority\": 8,\n"
+                + "  \"suggestedTestScenarios\": [\"Add 1 and 1, expect 2\"]\n}\n```\nHappy coding!";
+        assertEquals("{\"className\":\"Calculator\",\"complexity\":5,\"testPriority\":8,"
+                + "\"suggestedTestScenarios\":[\"Add 1 and 1, expect 2\"]}", TolerantJson.extract(response));
+        assertNull(TolerantJson.extract("No JSON { here } at all [just text]"));
+    }
+
+    @Test
+    @DisplayName("The complete values of a response cut short should be kept")
+    void shouldKeepValuesOfTruncatedResponse() {
+        List<String> values = new ArrayList<>();
+        TolerantJson.extractAll("{\"recommendations\": [{\"className\": \"A\"}, {'className': 'B'}, {\"className\": \"C",
+                values::add);
+        assertEquals(List.of("{\"className\":\"A\"}", "{\"className\":\"B\"}"), values);
+    }
+
+    @Test
+    @DisplayName("Deeply nested and unclosed input should be scanned in linear time")
+    void shouldScanPathologicalInputInLinearTime() {
+        for (String unit : List.of("{", "[", "[{\"a\":", "{\"a\":{\"b\":[1,{", "{'", "\"{\n")) {
+            String text = unit.repeat(4_000_000 / unit.length());
+            long start = System.nanoTime();
+            TolerantJson.extractAll(text, value -> { });
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(millis < 5_000, "4 MB of " + unit + " took " + millis + " ms");
+        }
+        String deep = "[".repeat(1_000_000) + "]".repeat(1_000_000);
+        assertEquals(2_000_000, TolerantJson.extract(deep).length());
+    }
+
+    @Test
+    @DisplayName("Saved model responses, and random damage to them, should only ever yield strict JSON")
+    void shouldFuzzSavedResponses() throws IOException {
+        Path samples = Stream.of(Path.of("..", "debug_extractions"), Path.of("debug_extractions"))
+                .filter(Files::isDirectory).findFirst().orElse(null);
+        assumeTrue(samples != null, "no debug_extractions samples");
+        List<Path> files;
+        try (Stream<Path> list = Files.list(samples)) {
+            files = list.filter(path -> path.toString().endsWith(".txt")).sorted().toList();
+        }
+        assertFalse(files.isEmpty());
+
+        Random random = new Random(42);
+        String damage = "{}[]\"',:\u201c\u201d\u2018\u2019\\/\n\u001b*";
+        for (Path file : files) {
+            String sample = Files.readString(file);
+            if (file.getFileName().toString().contains("full_response")) {
+                JsonNode recommendation = MAPPER.readTree(TolerantJson.extract(sample));
+                assertTrue(recommendation.has("className"), file.getFileName() + ": " + recommendation);
+                assertTrue(recommendation.get("suggestedTestScenarios").size() > 0, file.getFileName().toString());
+            }
+            assertStrict(sample, file.getFileName().toString());
+            for (int round = 0; round < 50; round++) {
+                StringBuilder mutated = new StringBuilder(sample);
+                for (int edit = 0; edit < 1 + random.nextInt(8); edit++) {
+                    int at = random.nextInt(mutated.length() + 1);
+                    switch (random.nextInt(3)) {
+                        case 0 -> mutated.insert(at, damage.charAt(random.nextInt(damage.length())));
+                        case 1 -> mutated.delete(at, Math.min(mutated.length(), at + 1 + random.nextInt(20)));
+                        default -> mutated.setLength(at);
+                    }
+                }
+                assertStrict(mutated, file.getFileName() + " round " + round);
+            }
+        }
+    }
+
+    private static void assertStrict(CharSequence text, String description) {
+        TolerantJson.extractAll(text, value -> {
+            try {
+                JsonNode node = MAPPER.readTree(value);
+                assertTrue(node.isContainerNode(), description + ": " + value);
+            } catch (IOException e) {
+                fail(description + " gave invalid JSON " + value + ": " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.coverage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the virtualized report's shell and compressed data pages
+ */
+public class VirtualCoverageReportTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Pages should list each scenario's methods as positions in the sorted manifest")
+    void shouldWritePagedData() throws IOException {
+        CoverageData data = new CoverageData();
+        for (int s = VirtualCoverageReport.PAGE_SIZE; s >= 0; s--) {
+            int scenario = data.scenarioId(String.format("Scenario %04d", s));
+            data.addCoverage(scenario, data.methodId("Calculator#getResult()"));
+            if (s % 2 == 0) {
+                data.addCoverage(scenario, data.methodId("Calculator#add(double)"));
+            }
+        }
+        Files.createDirectories(tempDir.resolve("data"));
+        Files.writeString(tempDir.resolve("data/page-9.json.gz"), "stale");
+
+        assertEquals(2, VirtualCoverageReport.write(data, tempDir));
+
+        JsonNode manifest = read(tempDir.resolve("data/manifest.json.gz"));
+        assertEquals("Scenario 0000", manifest.get("scenarios").get(0).asText());
+        assertEquals("Calculator#add(double)", manifest.get("methods").get(0).asText());
+        assertEquals(VirtualCoverageReport.PAGE_SIZE + 1, manifest.get("methodScenarioCounts").get(1).asInt());
+        assertEquals("coverage-good", manifest.get("coverageClasses").get(1).asText());
+
+        JsonNode firstPage = read(tempDir.resolve("data/page-0.json.gz"));
+        assertEquals(VirtualCoverageReport.PAGE_SIZE, firstPage.size());
+        assertEquals("[0,1]", firstPage.get(0).toString());
+        assertEquals("[1]", firstPage.get(1).toString());
+        assertEquals("[[0,1]]", read(tempDir.resolve("data/page-1.json.gz")).toString());
+        assertFalse(Files.exists(tempDir.resolve("data/page-9.json.gz")));
+        assertTrue(Files.readString(tempDir.resolve("index.html")).contains("data/manifest.json.gz"));
+    }
+
+    private static JsonNode read(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new ObjectMapper().readTree(in);
+        }
+    }
+}
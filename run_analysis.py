@@ -6,101 +6,252 @@ import re
 import sys
 import time
 import os
+import struct
+import threading
+import urllib.request
+from concurrent.futures import ThreadPoolExecutor
 from pathlib import Path
 
-def extract_json(response, class_name):
-    """
-    Highly robust JSON extraction with multiple fallback strategies.
-    """
-    # Create debug directory
-    debug_dir = Path("debug_extractions")
-    debug_dir.mkdir(exist_ok=True)
-
-    # Save the full response for debugging
-    with open(debug_dir / f"{class_name}_full_response.txt", "w") as f:
-        f.write(response)
-
-    # Strategy 1: Extract from code blocks with JSON label
-    code_block_matches = re.findall(r'```(?:json)?\s*([\s\S]*?)```', response)
+ESC = "\x1b"
+OPENING_QUOTES = "\"'\u201c\u2018"
+JSON_ESCAPES = "\"\\/bfnrt"
+JSON_OPENING = re.compile(r"[{\[]")
+JSON_NUMBER = re.compile(r"-?(?:0|[1-9][0-9]*)(?:\.[0-9]+)?(?:[eE][+-]?[0-9]+)?")
+HEX4 = re.compile(r"[0-9a-fA-F]{4}")
 
-    for i, match in enumerate(code_block_matches):
-        try:
-            # Clean the potential JSON
-            cleaned = match.strip()
-            cleaned = cleaned.replace('\u201c', '"').replace('\u201d', '"')  # Smart quotes
-            cleaned = re.sub(r"'([^']*)'", r'"\1"', cleaned)  # Single to double quotes
-            cleaned = re.sub(r',(\s*[}\]])', r'\1', cleaned)  # Remove trailing commas
-
-            # Try to parse
-            parsed = json.loads(cleaned)
-            return parsed
-        except:
-            pass
-
-    # Strategy 2: Find the largest JSON-like structure between braces
-    # This uses a regex that can handle nested objects
-    brace_pattern = r'{[^{}]*(?:{[^{}]*}[^{}]*)*}'
-    matches = list(re.finditer(brace_pattern, response))
-
-    # Sort matches by length (longest first)
-    matches.sort(key=lambda match: len(match.group(0)), reverse=True)
-
-    for i, match in enumerate(matches):
-        try:
-            # Extract and clean the potential JSON
-            potential_json = match.group(0)
-
-            # Save for debugging
-            with open(debug_dir / f"{class_name}_brace_match_{i}.txt", "w") as f:
-                f.write(potential_json)
-
-            # Clean the JSON
-            cleaned = potential_json
-            cleaned = cleaned.replace('\u201c', '"').replace('\u201d', '"')  # Smart quotes
-            cleaned = re.sub(r"'([^']*)'", r'"\1"', cleaned)  # Single to double quotes
-            cleaned = re.sub(r',(\s*[}\]])', r'\1', cleaned)  # Remove trailing commas
-
-            # Fix unquoted keys (property: value -> "property": value)
-            cleaned = re.sub(r'(\s*)(\w+)(\s*):([^:])', r'\1"\2"\3:\4', cleaned)
-
-            # Try to parse
-            parsed = json.loads(cleaned)
-            return parsed
-        except json.JSONDecodeError as e:
-            # Log the specific error for debugging
-            with open(debug_dir / f"{class_name}_error_{i}.txt", "w") as f:
-                f.write(f"Error: {str(e)}\n\nContent:\n{cleaned}")
-
-    # Strategy 3: Extreme extraction - take everything between first { and last }
-    start = response.find('{')
-    end = response.rfind('}')
-
-    if start != -1 and end != -1 and end > start:
-        try:
-            # Extract the largest possible JSON-like structure
-            potential_json = response[start:end+1]
 
-            # Save for debugging
-            with open(debug_dir / f"{class_name}_extreme_extraction.txt", "w") as f:
-                f.write(potential_json)
-
-            # Clean the JSON
-            cleaned = potential_json
-            cleaned = cleaned.replace('\u201c', '"').replace('\u201d', '"')  # Smart quotes
-            cleaned = re.sub(r"'([^']*)'", r'"\1"', cleaned)  # Single to double quotes
-            cleaned = re.sub(r',(\s*[}\]])', r'\1', cleaned)  # Remove trailing commas
+class _JsonScanner:
+    """
+    Single-pass port of the coverage package's TolerantJson: finds the JSON values in a
+    model response and repairs smart and single quotes, trailing commas, unquoted keys,
+    comments and terminal escapes as it goes. A candidate that fails is not retried from
+    its next character; the scan resumes where it failed, keeping the values completed
+    inside it, so any response takes linear time.
+    """
 
-            # Fix unquoted keys
-            cleaned = re.sub(r'(\s*)(\w+)(\s*):([^:])', r'\1"\2"\3:\4', cleaned)
+    def __init__(self, text):
+        self.text = text
+        self.length = len(text)
+        self.out = []
+        self.failure = 0
+
+    def values(self):
+        text, i = self.text, 0
+        while i < self.length:
+            opening = JSON_OPENING.search(text, i)
+            if not opening:
+                return
+            start = opening.start()
+            end, completed = self.parse(start)
+            out = "".join(self.out)
+            if end >= 0:
+                yield out
+                i = end
+            else:
+                for span_start, span_end in completed:
+                    yield out[span_start:span_end]
+                i = max(self.failure, start + 1)
+
+    def fail(self, at):
+        self.failure = at
+        return -1
+
+    def parse(self, i):
+        text, out = self.text, []
+        self.out = out
+        size = 0  # characters in out, which holds whole tokens
+        containers, completed = [], []
+        state = "value"
+        while True:
+            i = self.skip_space(i)
+            if i >= self.length:
+                return self.fail(i), completed
+            c = text[i]
+            if state in ("key", "element"):
+                if c == ",":
+                    i += 1
+                    continue
+                if c == ("}" if state == "key" else "]"):
+                    if out[-1] == ",":
+                        out.pop()
+                        size -= 1
+                    state = "after"
+                else:
+                    if state == "element":
+                        state = "value"
+                        continue
+                    if c in OPENING_QUOTES:
+                        i, token = self.string(i)
+                    elif c.isalpha() or c in "_$":
+                        end = i + 1
+                        while end < self.length and (text[end].isalnum() or text[end] in "_$-"):
+                            end += 1
+                        i, token = end, '"' + text[i:end] + '"'
+                    else:
+                        return self.fail(i), completed
+                    if i < 0:
+                        return -1, completed
+                    out.append(token)
+                    size += len(token)
+                    state = "colon"
+                    continue
+            elif state == "colon":
+                if c != ":":
+                    return self.fail(i), completed
+                out.append(":")
+                size += 1
+                state = "value"
+                i += 1
+                continue
+            elif state == "value":
+                if c in "{[":
+                    containers.append((c, size))
+                    out.append(c)
+                    size += 1
+                    state = "key" if c == "{" else "element"
+                    i += 1
+                    continue
+                if c in OPENING_QUOTES:
+                    i, token = self.string(i)
+                elif c == "-" or c.isdigit():
+                    i, token = self.number(i)
+                else:
+                    i, token = self.literal(i)
+                if i < 0:
+                    return -1, completed
+                out.append(token)
+                size += len(token)
+                state = "after"
+                continue
+            else:
+                open_char = containers[-1][0]
+                if c == ",":
+                    out.append(",")
+                    size += 1
+                    state = "key" if open_char == "{" else "element"
+                    i += 1
+                    continue
+                if c != ("}" if open_char == "{" else "]"):
+                    return self.fail(i), completed
+            # Close the innermost container; those completed inside it are now part of it
+            _, start = containers.pop()
+            out.append(c)
+            size += 1
+            while completed and completed[-1][0] >= start:
+                completed.pop()
+            completed.append((start, size))
+            i += 1
+            if not containers:
+                return i, completed
+            state = "after"
+
+    def closes(self, quote, c, following):
+        if quote == '"':
+            return c == '"'
+        if quote == "\u201c":
+            return c in "\u201d\u201c\""
+        # A single quote followed by a letter is an apostrophe, as in 'doesn't'
+        return c in "'\u2019" and (following >= self.length or not self.text[following].isalpha())
+
+    def string(self, i):
+        text, quote, chars = self.text, self.text[i], ['"']
+        i += 1
+        while i < self.length:
+            c = text[i]
+            if self.closes(quote, c, i + 1):
+                chars.append('"')
+                return i + 1, "".join(chars)
+            if c == ESC:
+                i = self.skip_escape(i)
+                continue
+            if c == "\n":
+                break
+            if c == "\\" and i + 1 < self.length:
+                following = text[i + 1]
+                if following == "u" and HEX4.fullmatch(text, i + 2, i + 6):
+                    chars.append(text[i:i + 6])
+                    i += 6
+                    continue
+                # \' and escapes JSON does not have stand for the character itself
+                chars.append(c + following if following in JSON_ESCAPES else json.dumps(following)[1:-1])
+                i += 2
+                continue
+            chars.append(json.dumps(c)[1:-1] if c in '"\\' or c < " " else c)
+            i += 1
+        return self.fail(i), None
+
+    def number(self, i):
+        match = JSON_NUMBER.match(self.text, i)
+        if not match:
+            return self.fail(i), None
+        return match.end(), match.group()
+
+    def literal(self, i):
+        end = i
+        while end < self.length and (self.text[end].isalnum() or self.text[end] in "_$-"):
+            end += 1
+        word = self.text[i:end]
+        if word not in ("true", "false", "null"):
+            return self.fail(i), None
+        return end, word
+
+    def skip_space(self, i):
+        text = self.text
+        while i < self.length:
+            c = text[i]
+            if c.isspace() or c == "\ufeff":
+                i += 1
+            elif c == ESC:
+                i = self.skip_escape(i)
+            elif text.startswith("//", i):
+                end = text.find("\n", i)
+                i = self.length if end < 0 else end
+            elif text.startswith("/*", i):
+                end = text.find("*/", i + 2)
+                i = self.length if end < 0 else end + 2
+            else:
+                return i
+        return i
+
+    def skip_escape(self, i):
+        i += 1
+        if i >= self.length:
+            return i
+        c = self.text[i]
+        i += 1
+        if c == "[":
+            # Parameters and intermediates, then one final byte
+            while i < self.length and " " <= self.text[i] <= "?":
+                i += 1
+            return min(self.length, i + 1)
+        if c == "]":
+            # Operating system command, up to BEL or ESC \
+            while i < self.length and self.text[i] not in ("\x07", ESC):
+                i += 1
+            if i < self.length and self.text[i] == ESC:
+                i += 1
+            return min(self.length, i + 1)
+        return i
 
-            # Try to parse
-            parsed = json.loads(cleaned)
-            return parsed
-        except:
-            pass
 
-    # If we get here, all extraction methods failed
-    return None
+def extract_json(response, class_name):
+    """
+    Find the longest JSON value in a model response, repairing it in one pass; an array
+    is returned as the recommendations of an object. Only when there is none is the
+    response saved to debug_extractions for a look.
+    """
+    longest = None
+    for value in _JsonScanner(response).values():
+        if longest is None or len(value) > len(longest):
+            longest = value
+    if longest is None:
+        debug_dir = Path("debug_extractions")
+        debug_dir.mkdir(exist_ok=True)
+        with open(debug_dir / f"{class_name}_full_response.txt", "w") as f:
+            f.write(response)
+        return None
+    parsed = json.loads(longest)
+    return {"recommendations": parsed} if isinstance(parsed, list) else parsed
 
 def create_detailed_test_prompt(class_name, file_path, methods, coverage_data=None):
     """
@@ -262,7 +413,30 @@ def create_fallback_test_recommendations(class_name, methods):
         "suggestedTestScenarios": scenarios
     }
 
-def call_model(class_name, file_path, methods, model, timeout=180, max_attempts=2):
+def run_model(prompt, model, timeout, ollama_url=None):
+    """
+    Run a prompt through the model. With an Ollama server URL the prompt goes to its HTTP
+    API, which keeps the model loaded between calls; otherwise a fresh `ollama run` is started.
+    """
+    if ollama_url:
+        request = urllib.request.Request(
+            f"{ollama_url}/api/generate",
+            data=json.dumps({"model": model, "prompt": prompt, "stream": False, "keep_alive": "30m"}).encode("utf-8"),
+            headers={"Content-Type": "application/json"},
+        )
+        with urllib.request.urlopen(request, timeout=timeout) as response:
+            return json.load(response)["response"].strip()
+
+    result = subprocess.run(
+        ["ollama", "run", model],
+        input=prompt.encode("utf-8"),
+        stdout=subprocess.PIPE,
+        stderr=subprocess.STDOUT,
+        timeout=timeout,
+    )
+    return result.stdout.decode("utf-8").strip()
+
+def call_model(class_name, file_path, methods, model, timeout=180, max_attempts=2, ollama_url=None):
     """
     Call the model to generate detailed test recommendations.
     """
@@ -284,16 +458,7 @@ REMEMBER: VALID JSON ONLY. NO TEXT BEFORE OR AFTER THE JSON OBJECT.
 
             # Call the model
             print(f"🔍 Analyzing tests for {class_name} (attempt {attempt+1}/{max_attempts})")
-            result = subprocess.run(
-                ["ollama", "run", model],
-                input=prompt.encode("utf-8"),
-                stdout=subprocess.PIPE,
-                stderr=subprocess.STDOUT,
-                timeout=timeout,
-            )
-
-            # Get the response
-            response = result.stdout.decode("utf-8").strip()
+            response = run_model(prompt, model, timeout, ollama_url)
 
             # Try to extract JSON
             parsed = extract_json(response, f"{class_name}_detailed_test_{attempt+1}")
@@ -311,7 +476,7 @@ REMEMBER: VALID JSON ONLY. NO TEXT BEFORE OR AFTER THE JSON OBJECT.
                 if len(methods) > 5 and attempt < max_attempts - 1:
                     methods = methods[:5]  # Drastically reduce for next attempt
                     print(f"📉 Reducing to 5 methods for next attempt")
-        except subprocess.TimeoutExpired:
+        except (subprocess.TimeoutExpired, TimeoutError):
             print(f"⏱ Timeout on attempt {attempt+1}")
             # Reduce methods by half for next attempt
             if len(methods) > 3 and attempt < max_attempts - 1:
@@ -324,6 +489,82 @@ REMEMBER: VALID JSON ONLY. NO TEXT BEFORE OR AFTER THE JSON OBJECT.
     print("⚠️ Creating fallback test recommendations")
     return create_fallback_test_recommendations(class_name, methods)
 
+def create_packed_test_prompt(classes):
+    """
+    Create one prompt for several classes, or parts of them, packed by DeepSeekAnalyzer
+    within its token budget. All methods are included; none are left out.
+    """
+    class_sections = []
+    for clazz in classes:
+        class_sections.append(f"""Class: '{clazz["className"]}' from '{clazz["filePath"]}'
+
+Methods:
+{json.dumps(clazz["methods"], indent=2)}
+""")
+    names = ", ".join(f'"{clazz["className"]}"' for clazz in classes)
+
+    return f"""
+I need detailed test scenarios for {len(classes)} Java classes. Analyze the code and suggest SPECIFIC test cases for each.
+
+{chr(10).join(class_sections)}
+
+Please return a VALID JSON object with one entry per class ({names}) in this structure:
+{{
+  "recommendations": [
+    {{
+      "className": "<class name>",
+      "complexity": 7,
+      "testPriority": 8,
+      "suggestedTestScenarios": [
+        "Given specific input X, verify method returns Y",
+        "Test with boundary condition Z to verify behavior W"
+      ]
+    }}
+  ]
+}}
+
+Your test scenarios must be specific to the class functionality, including concrete inputs and
+expected outputs, edge cases, error handling and complex logical branches.
+Methods named "(part i of n)" are a part of a longer method body.
+
+DO NOT use generic placeholders like "X", "Y", "Z" in your actual scenarios.
+DO NOT return your response in a code block or with backticks.
+The response MUST be valid JSON and start with {{
+"""
+
+def call_model_packed(classes, model, timeout=180, max_attempts=2, ollama_url=None):
+    """
+    Get recommendations for all classes of a packed prompt in one model call.
+    Classes the model leaves out get fallback recommendations.
+    """
+    if len(classes) == 1:
+        clazz = classes[0]
+        return [call_model(clazz["className"], clazz["filePath"], clazz["methods"], model, timeout, max_attempts, ollama_url)]
+
+    names = [clazz["className"] for clazz in classes]
+    found = {}
+    for attempt in range(max_attempts):
+        try:
+            print(f"🔍 Analyzing tests for {len(classes)} classes: {', '.join(names)} (attempt {attempt+1}/{max_attempts})")
+            response = run_model(create_packed_test_prompt(classes), model, timeout, ollama_url)
+            parsed = extract_json(response, f"packed_{names[0]}_{len(names)}_{attempt+1}")
+            if parsed:
+                for recommendation in parsed.get("recommendations", []):
+                    if recommendation.get("className") in names and "suggestedTestScenarios" in recommendation:
+                        found[recommendation["className"]] = recommendation
+                if len(found) == len(names):
+                    break
+                print(f"⚠️ Attempt {attempt+1} answered {len(found)} of {len(names)} classes")
+            else:
+                print(f"⚠️ Attempt {attempt+1} failed to extract valid JSON.")
+        except (subprocess.TimeoutExpired, TimeoutError):
+            print(f"⏱ Timeout on attempt {attempt+1}")
+        except Exception as e:
+            print(f"❌ Error during model call: {e}")
+
+    return [found.get(clazz["className"]) or create_fallback_test_recommendations(clazz["className"], clazz["methods"])
+            for clazz in classes]
+
 def load_coverage_data(coverage_file):
     """
     Load existing code coverage data if available.
@@ -336,25 +577,106 @@ def load_coverage_data(coverage_file):
         print(f"⚠️ Warning: Could not load coverage data: {e}")
     return None
 
+def read_classes(input_file):
+    """
+    Yield the classes of the input one at a time.
+    Newline-delimited JSON (.ndjson) holds one class per line and is read as it goes;
+    otherwise the input is a single object with a "classes" array.
+    """
+    with open(input_file) as f:
+        if input_file.endswith(".ndjson"):
+            for line in f:
+                if line.strip():
+                    yield json.loads(line)
+        else:
+            yield from json.load(f)["classes"]
+
+def serve(args):
+    """
+    Persistent worker for DeepSeekAnalyzer's ModelWorkerPool. Requests and responses are
+    frames on stdin and stdout: a 4-byte big-endian length, then that many bytes of JSON.
+    Pings are answered at once; the classes of each request share one model call, run on
+    up to --concurrency threads and answered as they finish, under the id of the request.
+    """
+    requests = sys.stdin.buffer
+    responses = sys.stdout.buffer
+    # Progress messages go to stderr, so they cannot corrupt the frames
+    sys.stdout = sys.stderr
+    lock = threading.Lock()
+
+    def send(message):
+        payload = json.dumps(message).encode("utf-8")
+        with lock:
+            responses.write(struct.pack(">I", len(payload)) + payload)
+            responses.flush()
+
+    def analyze(request):
+        try:
+            recommendations = call_model_packed(
+                request["classes"],
+                args.model,
+                timeout=args.timeout,
+                ollama_url=args.ollama_url
+            )
+            send({"id": request["id"], "recommendations": recommendations})
+        except Exception as e:
+            send({"id": request["id"], "error": str(e)})
+
+    with ThreadPoolExecutor(max_workers=args.concurrency) as pool:
+        while True:
+            header = requests.read(4)
+            if len(header) < 4:
+                break
+            (length,) = struct.unpack(">I", header)
+            request = json.loads(requests.read(length))
+            if request.get("type") == "ping":
+                send({"id": request["id"], "pong": True})
+            else:
+                pool.submit(analyze, request)
+
 def main():
     parser = argparse.ArgumentParser(description="Generate detailed test recommendations with coverage gap analysis")
     parser.add_argument("--model", required=True, help="Ollama model name to use")
-    parser.add_argument("--input", required=True, help="Input JSON file with class information")
-    parser.add_argument("--output", required=True, help="Output JSON file for results")
+    parser.add_argument("--input", help="Input JSON or NDJSON file with class information")
+    parser.add_argument("--output", help="Output JSON or NDJSON file for results")
     parser.add_argument("--coverage", help="Optional JSON file with existing code coverage data")
     parser.add_argument("--timeout", type=int, default=180, help="Timeout in seconds per model call")
     parser.add_argument("--max-methods", type=int, default=10, help="Maximum methods to analyze per class")
+    parser.add_argument("--packed", action="store_true",
+                        help="Analyze all classes of the input in one model call, as packed by DeepSeekAnalyzer")
+    parser.add_argument("--worker", action="store_true", help="Serve framed requests on stdin/stdout until stdin closes")
+    parser.add_argument("--concurrency", type=int, default=2, help="Classes analyzed at once in --worker mode")
+    parser.add_argument("--ollama-url", help="Ollama server to call over HTTP, keeping the model loaded "
+                                             "(default in --worker mode: http://localhost:11434)")
     args = parser.parse_args()
 
-    # Create necessary directories
-    os.makedirs("debug_extractions", exist_ok=True)
+    if args.worker:
+        args.ollama_url = args.ollama_url or "http://localhost:11434"
+        serve(args)
+        return
+    if not args.input or not args.output:
+        parser.error("--input and --output are required unless --worker is given")
 
     # Load coverage data if provided
     coverage_data = load_coverage_data(args.coverage)
 
-    # Load input data
-    with open(args.input) as f:
-        data = json.load(f)
+    if args.packed:
+        recommendations = call_model_packed(list(read_classes(args.input)), args.model, timeout=args.timeout,
+                                            ollama_url=args.ollama_url)
+        with open(args.output, "w") as out:
+            if args.output.endswith(".ndjson"):
+                for recommendation in recommendations:
+                    out.write(json.dumps(recommendation) + "\n")
+            else:
+                json.dump({"model": args.model, "timestamp": time.strftime("%Y-%m-%d %H:%M:%S"),
+                           "recommendations": recommendations}, out, indent=2)
+        print(f"✅ Saved test recommendations for {len(recommendations)} classes to {args.output}")
+        return
+
+    # NDJSON output gets one recommendation per line as soon as it is ready, so the
+    # reader can consume them while later classes are still being analyzed
+    streaming = args.output.endswith(".ndjson")
+    out = open(args.output, "w") if streaming else None
 
     # Prepare output structure - USING recommendations KEY TO MATCH DeepSeekAnalyzer.java
     output = {
@@ -365,7 +687,7 @@ def main():
 
     # Track statistics
     stats = {
-        "total_classes": len(data["classes"]),
+        "total_classes": 0,
         "successful": 0,
         "failed": 0,
         "processing_time": 0
@@ -373,8 +695,9 @@ def main():
 
     start_time = time.time()
 
-    # Process each class
-    for idx, clazz in enumerate(data["classes"]):
+    # Process each class as it is read
+    for idx, clazz in enumerate(read_classes(args.input)):
+        stats["total_classes"] += 1
         class_name = clazz["className"]
         file_path = clazz["filePath"]
         all_methods = clazz["methods"]
@@ -383,7 +706,7 @@ def main():
         methods = process_methods(all_methods, args.max_methods)
 
         # Print progress
-        print(f"🔍 [{idx+1}/{stats['total_classes']}] Analyzing tests for: {class_name} ({len(methods)}/{len(all_methods)} methods)")
+        print(f"🔍 [{idx+1}] Analyzing tests for: {class_name} ({len(methods)}/{len(all_methods)} methods)")
 
         # Call the model to get test recommendations
         class_start_time = time.time()
@@ -396,24 +719,31 @@ def main():
         )
         class_time = time.time() - class_start_time
 
-        # Add to output
         if test_recommendations:
-            output["recommendations"].append(test_recommendations)
             stats["successful"] += 1
             print(f"✅ Generated test recommendations for {class_name} in {class_time:.2f}s")
         else:
             # This should never happen due to fallback, but just in case
-            fallback = create_fallback_test_recommendations(class_name, methods)
-            output["recommendations"].append(fallback)
+            test_recommendations = create_fallback_test_recommendations(class_name, methods)
             stats["failed"] += 1
             print(f"⚠️ Using fallback recommendations for {class_name}")
 
+        # Add to output
+        if streaming:
+            out.write(json.dumps(test_recommendations) + "\n")
+            out.flush()
+        else:
+            output["recommendations"].append(test_recommendations)
+
     # Calculate total time
     stats["processing_time"] = time.time() - start_time
 
     # Save the output
-    with open(args.output, "w") as out:
-        json.dump(output, out, indent=2)
+    if streaming:
+        out.close()
+    else:
+        with open(args.output, "w") as out:
+            json.dump(output, out, indent=2)
     print(f"✅ Saved detailed test recommendations to {args.output}")
 
     # Print summary